@@ -24,7 +24,12 @@ package org.gatein.api;
 
 import org.gatein.api.application.Application;
 import org.gatein.api.application.ApplicationRegistry;
+import org.gatein.api.navigation.MergedNavigation;
 import org.gatein.api.navigation.Navigation;
+import org.gatein.api.navigation.NavigationResult;
+import org.gatein.api.navigation.NavigationListener;
+import org.gatein.api.navigation.NodeReference;
+import org.gatein.api.navigation.NodeVisitor;
 import org.gatein.api.oauth.OAuthProvider;
 import org.gatein.api.page.Page;
 import org.gatein.api.composition.Container;
@@ -37,6 +42,7 @@ import org.gatein.api.site.SiteQuery;
 import org.gatein.api.security.Permission;
 import org.gatein.api.security.User;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -122,6 +128,32 @@ public interface Portal {
      */
     Navigation getNavigation(SiteId siteId);
 
+    /**
+     * Returns the navigations of the sites with their root nodes, loaded concurrently, see
+     * {@link org.gatein.api.navigation.NavigationLoader}. A site which fails to load does not fail the other sites, its
+     * failure is reported in its result.
+     *
+     * @param siteIds the site ids
+     * @param visitor the visitor to determine which nodes of each navigation to load
+     * @return the results, in the order of the site ids
+     * @throws IllegalArgumentException if siteIds or visitor is null, or if siteIds contains null
+     * @throws ApiException if something prevented this operation to succeed
+     */
+    List<NavigationResult> getNavigations(Collection<SiteId> siteIds, NodeVisitor visitor);
+
+    /**
+     * Returns the top level nodes of the navigations of the sites merged into a single menu, with the visible nodes the user of
+     * the current request can access. The navigations are loaded in parallel, and the result is cached for the users with the
+     * same memberships until one of the navigations or its priority changes, see
+     * {@link org.gatein.api.navigation.MergedNavigationCache}.
+     *
+     * @param siteIds the ids of the sites, for instance the portal site followed by the group spaces of the user
+     * @return the merged navigation, without the sites which have no navigation
+     * @throws IllegalArgumentException if siteIds is null or contains null
+     * @throws ApiException if something prevented this operation to succeed
+     */
+    MergedNavigation getMergedNavigation(List<SiteId> siteIds);
+
     /**
      * Returns a representation of the Application Registry.
      * @return a representation of the Application Registry.
@@ -180,6 +212,38 @@ public interface Portal {
      */
     boolean removePage(PageId pageId);
 
+    /**
+     * Finds the nodes of the navigations of all the sites pointing at the page, without loading the navigations. The nodes are
+     * looked up in an index maintained as navigations are saved and pages are removed, see
+     * {@link org.gatein.api.navigation.PageNodeIndex}.
+     *
+     * @param pageId the page id
+     * @return list of the nodes pointing at the page. List is empty if no nodes were found.
+     * @throws IllegalArgumentException if pageId is null
+     * @throws ApiException if something prevented this operation to succeed
+     */
+    List<NodeReference> findNodes(PageId pageId);
+
+    /**
+     * Adds a listener notified asynchronously of the changes of the navigations of all the sites. Implementations must notify
+     * the changes of the nodes, and the changes of the priority of the navigations with
+     * {@link org.gatein.api.navigation.NavigationEvent.Type#PRIORITY_CHANGED} events, see
+     * {@link Navigation#setPriority(int)}.
+     *
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     * @see org.gatein.api.navigation.NavigationListener
+     */
+    void addNavigationListener(NavigationListener listener);
+
+    /**
+     * Removes a listener added to the portal.
+     *
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     */
+    void removeNavigationListener(NavigationListener listener);
+
     /**
      * Returns true if the given user has the rights represented by the permission
      *
@@ -24,10 +24,14 @@ package org.gatein.api;
 
 import java.util.Locale;
 
+import org.gatein.api.common.Clock;
 import org.gatein.api.common.URIResolver;
 import org.gatein.api.navigation.Navigation;
 import org.gatein.api.navigation.Node;
 import org.gatein.api.navigation.NodePath;
+import org.gatein.api.navigation.RoutingTable;
+import org.gatein.api.navigation.URIBuilder;
+import org.gatein.api.navigation.Visibility;
 import org.gatein.api.page.Page;
 import org.gatein.api.page.PageId;
 import org.gatein.api.security.User;
@@ -46,6 +50,7 @@ public abstract class PortalRequest {
     private Navigation navigation;
     private Page page;
     private boolean pageLoaded;
+    private URIBuilder uriBuilder;
 
     /**
      * The user of the request. If this request is for an unauthenticated user then {@link User#anonymous()} is returned.
@@ -95,8 +100,15 @@ public abstract class PortalRequest {
      */
     public Page getPage() {
         if (!pageLoaded) {
-            Node node = getNavigation().getNode(getNodePath());
-            PageId pageId = node != null ? node.getPageId() : null;
+            PageId pageId;
+            RoutingTable routingTable = getRoutingTable();
+            if (routingTable != null) {
+                RoutingTable.Route route = routingTable.getRoute(getNodePath());
+                pageId = route != null ? route.getPageId() : null;
+            } else {
+                Node node = getNavigation().getNode(getNodePath());
+                pageId = node != null ? node.getPageId() : null;
+            }
             page = (pageId == null) ? null : getPortal().getPage(pageId);
             pageLoaded = true;
         }
@@ -117,6 +129,16 @@ public abstract class PortalRequest {
         return navigation;
     }
 
+    /**
+     * The routing table of the navigation of the current portal request. When available it is used by {@link #getPage()} to
+     * resolve the page of the request without loading the node from the navigation. The default implementation returns null.
+     * 
+     * @return the routing table or null if none is available
+     */
+    protected RoutingTable getRoutingTable() {
+        return null;
+    }
+
     /**
      * Access to the portal interface
      * 
@@ -132,6 +154,30 @@ public abstract class PortalRequest {
      */
     public abstract URIResolver getURIResolver();
 
+    /**
+     * The builder of the URIs of the nodes, which resolves the base URI of each site with the {@link #getURIResolver() URI
+     * resolver} only once per request.
+     * 
+     * @return the URI builder
+     */
+    public URIBuilder getURIBuilder() {
+        if (uriBuilder == null) {
+            uriBuilder = new URIBuilder(getURIResolver());
+        }
+        return uriBuilder;
+    }
+
+    /**
+     * The clock of the request, used to evaluate the visibility of the nodes, see {@link Visibility#isVisible()} and
+     * {@link Node#isVisible()}. The default implementation returns the system clock, it can be overridden to render the
+     * portal as of another time.
+     * 
+     * @return the clock
+     */
+    public Clock getClock() {
+        return Clock.system();
+    }
+
     /**
      * Obtain the current instance of a <code>PortalRequest</code>
      * 
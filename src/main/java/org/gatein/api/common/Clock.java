@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.common;
+
+import java.io.Serializable;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+
+/**
+ * A source of the current time, which can be replaced to evaluate time dependent state such as the visibility of nodes at a
+ * fixed instant, or in tests.
+ *
+ * @see org.gatein.api.navigation.Visibility#isVisible(Clock)
+ * @see org.gatein.api.PortalRequest#getClock()
+ */
+public abstract class Clock implements Serializable {
+    private static final Clock SYSTEM = new SystemClock();
+
+    /**
+     * Returns a clock using the system time, see {@link System#currentTimeMillis()}.
+     *
+     * @return the system clock
+     */
+    public static Clock system() {
+        return SYSTEM;
+    }
+
+    /**
+     * Returns a clock which always returns the specified time.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the fixed clock
+     */
+    public static Clock fixed(long time) {
+        return new FixedClock(time);
+    }
+
+    /**
+     * The current time of this clock.
+     *
+     * @return the current time in milliseconds since the epoch
+     */
+    public abstract long currentTimeMillis();
+
+    private static class SystemClock extends Clock {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        private Object readResolve() {
+            return SYSTEM;
+        }
+
+        @Override
+        public String toString() {
+            return ObjectToStringBuilder.toStringBuilder(getClass()).toString();
+        }
+    }
+
+    private static class FixedClock extends Clock {
+        private final long time;
+
+        FixedClock(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return ObjectToStringBuilder.toStringBuilder(getClass()).add("time", time).toString();
+        }
+    }
+}
@@ -194,8 +194,8 @@ public abstract class Localized<T extends Serializable> implements Iterable<T>,
 
             Value<?> v = (Value<?>) o;
 
-            return (locale == null) ? v.locale == null : locale.equals(v.locale) && (value == null) ? v.value == null : value
-                    .equals(v.value);
+            return ((locale == null) ? v.locale == null : locale.equals(v.locale))
+                    && ((value == null) ? v.value == null : value.equals(v.value));
         }
 
         @Override
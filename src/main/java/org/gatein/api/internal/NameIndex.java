@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.internal;
+
+/**
+ * An open addressing map of names to indexes, using linear probing and backward shift deletion so no tombstones are left
+ * behind. Indexes can be shifted in bulk to follow insertions and removals in the indexed list. Not thread safe.
+ */
+public class NameIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public NameIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(String name) {
+        String[] keys = this.keys;
+        for (int slot = slot(name); ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null)
+                return -1;
+            if (key.equals(name))
+                return values[slot];
+        }
+    }
+
+    /**
+     * Maps the name to the index, returning the previous index or -1.
+     */
+    public int put(String name, int index) {
+        int slot = slot(name);
+        for (String key; (key = keys[slot]) != null; slot = (slot + 1) & mask) {
+            if (key.equals(name)) {
+                int previous = values[slot];
+                values[slot] = index;
+                return previous;
+            }
+        }
+
+        keys[slot] = name;
+        values[slot] = index;
+        if (++size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the name, returning its index or -1.
+     */
+    public int remove(String name) {
+        for (int slot = slot(name); ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null)
+                return -1;
+            if (key.equals(name)) {
+                int index = values[slot];
+                delete(slot);
+                size--;
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Adds delta to all the indexes in the range [fromIndex, toIndex).
+     */
+    public void shift(int fromIndex, int toIndex, int delta) {
+        int[] values = this.values;
+        for (int slot = 0; slot < values.length; slot++) {
+            int index = values[slot];
+            if (index >= fromIndex && index < toIndex && keys[slot] != null) {
+                values[slot] = index + delta;
+            }
+        }
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private void delete(int hole) {
+        // Moves back the following entries of the cluster which would no longer be reachable from their home slot
+        for (int slot = (hole + 1) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            int home = slot(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+        }
+        keys[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            String key = oldKeys[i];
+            if (key != null) {
+                int slot = slot(key);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
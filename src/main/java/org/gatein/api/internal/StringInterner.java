@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.internal;
+
+/**
+ * A bounded, lossy cache of strings. Each string is stored in a single slot selected by its hash code, and a colliding
+ * string simply replaces the previous one. Lookups are done on a region of a larger string, so a cache hit does not
+ * allocate anything. Unsynchronized access is safe since strings are immutable, a race can only cause a cache miss.
+ */
+public class StringInterner {
+    private final String[] table;
+    private final int mask;
+    private final int maxLength;
+
+    private StringInterner(int capacity, int maxLength) {
+        int size = Integer.highestOneBit(Math.max(capacity, 1));
+        if (size < capacity)
+            size <<= 1;
+
+        this.table = new String[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    public String intern(String string, int beginIndex, int endIndex) {
+        int length = endIndex - beginIndex;
+        if (length > maxLength)
+            return string.substring(beginIndex, endIndex);
+
+        int hash = 0;
+        for (int i = beginIndex; i < endIndex; i++) {
+            hash = 31 * hash + string.charAt(i);
+        }
+
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String cached = table[index];
+        if (cached != null && cached.hashCode() == hash && cached.length() == length
+                && cached.regionMatches(0, string, beginIndex, length)) {
+            return cached;
+        }
+
+        String value = string.substring(beginIndex, endIndex);
+        table[index] = value;
+        return value;
+    }
+
+    public static StringInterner interner(int capacity, int maxLength) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        return new StringInterner(capacity, maxLength);
+    }
+}
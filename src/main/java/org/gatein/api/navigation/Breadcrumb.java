@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.site.SiteId;
+
+/**
+ * The chain of the ancestors of a node from the top level down to the node itself, with the label and the URI of each node.
+ * The root node is not part of the chain. A breadcrumb is immutable.
+ *
+ * @see Nodes#breadcrumb(Node, Locale)
+ * @see BreadcrumbCache
+ */
+public final class Breadcrumb implements Iterable<Breadcrumb.Item>, Serializable {
+    static final Breadcrumb EMPTY = new Breadcrumb(Collections.<Item> emptyList());
+
+    static Breadcrumb of(List<Item> items) {
+        return items.isEmpty() ? EMPTY : new Breadcrumb(Collections.unmodifiableList(new ArrayList<Item>(items)));
+    }
+
+    private final List<Item> items;
+
+    private Breadcrumb(List<Item> items) {
+        this.items = items;
+    }
+
+    /**
+     * Returns the breadcrumb of a child node of the last node of this breadcrumb.
+     */
+    Breadcrumb append(Item item) {
+        List<Item> list = new ArrayList<Item>(items.size() + 1);
+        list.addAll(items);
+        list.add(item);
+        return new Breadcrumb(Collections.unmodifiableList(list));
+    }
+
+    /**
+     * Returns the breadcrumb with the URIs of its nodes built by the builder.
+     */
+    Breadcrumb resolve(SiteId siteId, URIBuilder builder) {
+        if (items.isEmpty())
+            return this;
+
+        List<NodePath> nodePaths = new ArrayList<NodePath>(items.size());
+        for (Item item : items) {
+            nodePaths.add(item.nodePath);
+        }
+        Map<NodePath, String> uris = builder.getURIs(siteId, nodePaths);
+        List<Item> list = new ArrayList<Item>(items.size());
+        for (Item item : items) {
+            list.add(new Item(item.nodePath, item.label, uris.get(item.nodePath)));
+        }
+        return new Breadcrumb(Collections.unmodifiableList(list));
+    }
+
+    /**
+     * The items from the top level node down to the node.
+     *
+     * @return the items, empty for the root node
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * The number of items, which is the depth of the node.
+     *
+     * @return the number of items
+     */
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return items.iterator();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Breadcrumb && items.equals(((Breadcrumb) o).items));
+    }
+
+    @Override
+    public int hashCode() {
+        return items.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("items", items).toString();
+    }
+
+    /**
+     * A node of a breadcrumb.
+     */
+    public static final class Item implements Serializable {
+        /**
+         * Creates the item of the node, labelled with its display name in the locale, falling back to the language of the
+         * locale and then to the name of the node.
+         */
+        static Item of(Node node, Locale locale) {
+            return new Item(node.getNodePath(), label(node, locale), node.getURI());
+        }
+
+        /**
+         * Creates the item of the node without its URI, see {@link Breadcrumb#resolve(SiteId, URIBuilder)}.
+         */
+        static Item unresolved(Node node, Locale locale) {
+            return new Item(node.getNodePath(), label(node, locale), null);
+        }
+
+        private static String label(Node node, Locale locale) {
+            String label = null;
+            LocalizedString displayNames = node.getDisplayNames();
+            if (displayNames != null) {
+                label = displayNames.getValue();
+                if (label == null) {
+                    label = displayNames.getValue(locale);
+                }
+                if (label == null && locale.getCountry().length() > 0) {
+                    label = displayNames.getValue(new Locale(locale.getLanguage()));
+                }
+            }
+            return (label == null) ? node.getName() : label;
+        }
+
+        private final NodePath nodePath;
+        private final String label;
+        private final String uri;
+
+        private Item(NodePath nodePath, String label, String uri) {
+            this.nodePath = nodePath;
+            this.label = label;
+            this.uri = uri;
+        }
+
+        /**
+         * The path of the node of the item.
+         *
+         * @return the node path
+         */
+        public NodePath getNodePath() {
+            return nodePath;
+        }
+
+        /**
+         * The display name of the node in the locale of the breadcrumb, or its name if it has no display name.
+         *
+         * @return the label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * The URI of the node of the item, as resolved when the breadcrumb was created.
+         *
+         * @return the URI
+         */
+        public String getURI() {
+            return uri;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Item))
+                return false;
+
+            Item other = (Item) o;
+            return nodePath.equals(other.nodePath) && label.equals(other.label)
+                    && (uri == null ? other.uri == null : uri.equals(other.uri));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * nodePath.hashCode() + label.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return ObjectToStringBuilder.toStringBuilder(getClass()).add("nodePath", nodePath).add("label", label)
+                    .add("uri", uri).toString();
+        }
+    }
+}
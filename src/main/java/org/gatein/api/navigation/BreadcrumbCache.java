@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gatein.api.PortalRequest;
+import org.gatein.api.common.Filter;
+import org.gatein.api.internal.LruCache;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * A bounded cache of the {@link Breadcrumb}s of the nodes of {@link NavigationSnapshot}s, per site, node path and locale. Only
+ * the labels and the paths of the nodes are cached, the URIs are built on each call with the {@link URIBuilder} of the
+ * current request. The breadcrumb of a node extends the cached breadcrumb of its parent, so the ancestors of a node are only
+ * walked once for all their descendants.
+ * <p>
+ * The cache is a {@link NavigationListener}, the breadcrumbs of a node and of its descendants are removed when the node is
+ * renamed, moved, removed or updated, as an update may change its label or its URI. It must be added as a listener of the
+ * portal, or of the {@link NavigationEventDispatcher} of the snapshots. The least recently used breadcrumbs are evicted when
+ * the cache is full.
+ * </p>
+ * <p>
+ * Each breadcrumb records the version of the snapshot it was built from. A breadcrumb is only cached if it was built from the
+ * most recent snapshot of the site the cache has seen, and a cached breadcrumb is rebuilt when a more recent snapshot is
+ * given, so a caller still holding an older snapshot once the changes were published never caches stale labels.
+ * </p>
+ * <p>
+ * This class is thread safe. URIs are resolved in the calling thread, see {@link PortalRequest#getURIBuilder()}.
+ * </p>
+ */
+public final class BreadcrumbCache implements NavigationListener {
+    private final LruCache<Key, Entry> cache;
+
+    // The version of the most recent snapshot of each site given to the cache
+    private final ConcurrentMap<SiteId, Long> versions = new ConcurrentHashMap<SiteId, Long>();
+
+    // Incremented by each invalidation, a breadcrumb built concurrently with an invalidation is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of cached breadcrumbs
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public BreadcrumbCache(int maxSize) {
+        this.cache = new LruCache<Key, Entry>(maxSize);
+    }
+
+    /**
+     * Returns the breadcrumb of the node of the snapshot, building it if it is not cached.
+     *
+     * @param snapshot the snapshot of the navigation
+     * @param nodePath the path of the node
+     * @param locale the locale of the labels
+     * @return the breadcrumb, empty for the root node, or null if the snapshot has no node at the path
+     * @throws IllegalArgumentException if an argument is null
+     * @throws IllegalStateException if there is no current portal request to build the URIs with
+     * @see Nodes#breadcrumb(Node, Locale)
+     */
+    public Breadcrumb getBreadcrumb(NavigationSnapshot snapshot, NodePath nodePath, Locale locale) {
+        Parameters.requireNonNull(snapshot, "snapshot");
+        Parameters.requireNonNull(nodePath, "nodePath");
+        Parameters.requireNonNull(locale, "locale");
+
+        PortalRequest request = PortalRequest.getInstance();
+        if (request == null)
+            throw new IllegalStateException("A portal request is required to resolve the URIs of the breadcrumb of node "
+                    + nodePath);
+
+        Node node = snapshot.getNode(nodePath);
+        if (node == null)
+            return null;
+
+        SiteId siteId = snapshot.getSiteId();
+        long version = snapshot.getVersion();
+        boolean current = updateVersion(siteId, version);
+        return get(siteId, version, current, node, locale).resolve(siteId, request.getURIBuilder());
+    }
+
+    /**
+     * Records the version of the snapshot, and returns whether it is the most recent snapshot of the site seen so far.
+     */
+    private boolean updateVersion(SiteId siteId, long version) {
+        while (true) {
+            Long latest = versions.get(siteId);
+            if (latest == null) {
+                if (versions.putIfAbsent(siteId, version) == null)
+                    return true;
+            } else if (latest > version) {
+                return false;
+            } else if (latest == version || versions.replace(siteId, latest, version)) {
+                return true;
+            }
+        }
+    }
+
+    private Breadcrumb get(SiteId siteId, long version, boolean current, Node node, Locale locale) {
+        Node parent = node.getParent();
+        if (parent == null)
+            return Breadcrumb.EMPTY;
+
+        Key key = new Key(siteId, node.getNodePath(), locale);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.version >= version)
+            return entry.breadcrumb;
+
+        long expected = generation.get();
+        Breadcrumb breadcrumb = get(siteId, version, current, parent, locale).append(Breadcrumb.Item.unresolved(node, locale));
+        if (current) {
+            synchronized (generation) {
+                if (generation.get() == expected && version >= versions.get(siteId)) {
+                    cache.put(key, new Entry(breadcrumb, version));
+                }
+            }
+        }
+        return breadcrumb;
+    }
+
+    /**
+     * Removes the breadcrumbs of the node and of its descendants.
+     *
+     * @param siteId the site id
+     * @param nodePath the path of the node
+     * @return the number of removed breadcrumbs
+     * @throws IllegalArgumentException if siteId or nodePath is null
+     */
+    public int invalidate(SiteId siteId, NodePath nodePath) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        List<NodePath> paths = new ArrayList<NodePath>(1);
+        paths.add(nodePath);
+        return invalidate(siteId, paths);
+    }
+
+    private int invalidate(final SiteId siteId, final List<NodePath> paths) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            return cache.removeAll(new Filter<Key>() {
+                @Override
+                public boolean accept(Key key) {
+                    if (!key.siteId.equals(siteId))
+                        return false;
+
+                    for (NodePath path : paths) {
+                        if (path.equals(key.nodePath) || path.isParent(key.nodePath))
+                            return true;
+                    }
+                    return false;
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes the breadcrumbs of the changed nodes and of their descendants, in a single pass over the cache.
+     */
+    @Override
+    public void navigationChanged(SiteId siteId, List<NavigationEvent> events) {
+        List<NodePath> paths = new ArrayList<NodePath>(events.size());
+        for (NavigationEvent event : events) {
+            switch (event.getType()) {
+                case NODE_MOVED:
+                case NODE_RENAMED:
+                    paths.add(event.getPreviousPath());
+                    paths.add(event.getNodePath());
+                    break;
+                case NODE_REMOVED:
+                case NODE_UPDATED:
+                case INVALIDATED:
+                    paths.add(event.getNodePath());
+                    break;
+                default:
+                    // Added nodes have no breadcrumb yet, and priorities do not change the breadcrumbs
+                    break;
+            }
+        }
+        if (!paths.isEmpty()) {
+            invalidate(siteId, paths);
+        }
+    }
+
+    /**
+     * Removes all the cached breadcrumbs.
+     */
+    public void clear() {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    /**
+     * The number of cached breadcrumbs
+     *
+     * @return the number of cached breadcrumbs
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("size", cache.size())
+                .add("maxSize", cache.getMaxSize()).toString();
+    }
+
+    private static class Entry {
+        private final Breadcrumb breadcrumb;
+        private final long version;
+
+        Entry(Breadcrumb breadcrumb, long version) {
+            this.breadcrumb = breadcrumb;
+            this.version = version;
+        }
+    }
+
+    private static class Key {
+        private final SiteId siteId;
+        private final NodePath nodePath;
+        private final Locale locale;
+
+        Key(SiteId siteId, NodePath nodePath, Locale locale) {
+            this.siteId = siteId;
+            this.nodePath = nodePath;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return nodePath.equals(key.nodePath) && siteId.equals(key.siteId) && locale.equals(key.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = siteId.hashCode();
+            result = 31 * result + nodePath.hashCode();
+            result = 31 * result + locale.hashCode();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.NameIndex;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+
+/**
+ * An immutable, compact copy of a node tree, intended to keep large navigations in memory. The fields of the nodes are
+ * stored in parallel arrays indexed by node, and values shared by many nodes, such as names, display names, visibilities,
+ * page ids and attributes, are stored once in tables referenced from these arrays.
+ * <p>
+ * Nodes are numbered in breadth first order, so the children of a node are stored next to each other and are accessed by
+ * index in constant time. The nodes returned by the tree are lightweight views over the arrays, created on access. They are
+ * read only, all mutators throw an <code>UnsupportedOperationException</code>. Only the fields of the
+ * {@link NodeProjection} of the tree are copied, accessing the other fields throws an <code>IllegalStateException</code>.
+ * </p>
+ *
+ * @see NavigationSnapshot
+ */
+public final class CompactNodeTree implements Serializable {
+    private static final int NONE = -1;
+
+    /**
+     * Creates a compact copy of the loaded nodes of the tree of the specified root node.
+     *
+     * @param siteId the id of the site the nodes belong to
+     * @param root the root node
+     * @return the compact tree
+     * @throws IllegalArgumentException if siteId or root is null, or if root is not the root node
+     */
+    public static CompactNodeTree of(SiteId siteId, Node root) {
+        return of(siteId, root, NodeProjection.all());
+    }
+
+    /**
+     * Creates a compact copy of the loaded nodes of the tree of the specified root node, copying only the fields of the
+     * projection.
+     *
+     * @param siteId the id of the site the nodes belong to
+     * @param root the root node
+     * @param projection the fields to copy
+     * @return the compact tree
+     * @throws IllegalArgumentException if siteId, root or projection is null, or if root is not the root node
+     */
+    public static CompactNodeTree of(SiteId siteId, Node root, NodeProjection projection) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(root, "root");
+        Parameters.requireNonNull(projection, "projection");
+        if (!root.isRoot())
+            throw new IllegalArgumentException("node " + root.getNodePath() + " is not the root node");
+
+        return new CompactNodeTree(siteId, root, projection);
+    }
+
+    private final SiteId siteId;
+    private final NodeProjection projection;
+
+    // Structure, -1 for the parent of the root and the children of nodes whose children are not loaded
+    private final int[] parent;
+    private final int[] firstChild;
+    private final int[] childCount;
+
+    // Fields, as indexes in the tables below or -1 for null
+    private final int[] name;
+    private final int[] displayNames;
+    private final int[] iconName;
+    private final int[] visibility;
+    private final int[] pageId;
+    private final int[] attributes;
+
+    private final String[] strings;
+    private final LocalizedString[] localizedStrings;
+    private final Visibility[] visibilities;
+    private final PageId[] pageIds;
+    private final Attributes[] attributeSets;
+
+    // Built on first lookup of a wide node
+    private transient volatile ConcurrentMap<Integer, NameIndex> childIndexes;
+
+    // Computed for all the nodes on first access
+    private transient volatile long[] contentHashes;
+
+    // Collected from the visibilities on first access
+    private transient volatile long[] visibilityTransitions;
+
+    private CompactNodeTree(SiteId siteId, Node root, NodeProjection projection) {
+        this.siteId = siteId;
+        this.projection = projection;
+
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(root);
+        int[] parent = new int[16];
+        int[] firstChild = new int[16];
+        int[] childCount = new int[16];
+        parent[0] = NONE;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (node.isChildrenLoaded()) {
+                firstChild[i] = nodes.size();
+                childCount[i] = node.getChildCount();
+                for (Node child : node) {
+                    int index = nodes.size();
+                    if (index == parent.length) {
+                        parent = Arrays.copyOf(parent, index * 2);
+                        firstChild = Arrays.copyOf(firstChild, index * 2);
+                        childCount = Arrays.copyOf(childCount, index * 2);
+                    }
+                    parent[index] = i;
+                    nodes.add(child);
+                }
+            } else {
+                firstChild[i] = NONE;
+                childCount[i] = NONE;
+            }
+        }
+
+        int size = nodes.size();
+        this.parent = Arrays.copyOf(parent, size);
+        this.firstChild = Arrays.copyOf(firstChild, size);
+        this.childCount = Arrays.copyOf(childCount, size);
+        this.name = new int[size];
+        this.displayNames = new int[size];
+        this.iconName = new int[size];
+        this.visibility = new int[size];
+        this.pageId = new int[size];
+        this.attributes = new int[size];
+
+        Table<String> strings = new Table<String>();
+        Table<LocalizedString> localizedStrings = new Table<LocalizedString>();
+        Table<Visibility> visibilities = new Table<Visibility>();
+        Table<PageId> pageIds = new Table<PageId>();
+        Table<Attributes> attributeSets = new Table<Attributes>();
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get(i);
+            name[i] = strings.id(node.getName());
+
+            LocalizedString nodeDisplayNames = projection.includes(NodeProjection.Field.DISPLAY_NAMES) ? node
+                    .getDisplayNames() : null;
+            displayNames[i] = localizedStrings.id(nodeDisplayNames == null ? null : new LocalizedString(nodeDisplayNames));
+            iconName[i] = strings.id(projection.includes(NodeProjection.Field.ICON_NAME) ? node.getIconName() : null);
+            visibility[i] = visibilities.id(projection.includes(NodeProjection.Field.VISIBILITY) ? node.getVisibility()
+                    : null);
+            pageId[i] = pageIds.id(projection.includes(NodeProjection.Field.PAGE_ID) ? node.getPageId() : null);
+
+            Attributes nodeAttributes = projection.includes(NodeProjection.Field.ATTRIBUTES) ? node.getAttributes() : null;
+            attributes[i] = attributeSets.id((nodeAttributes == null || nodeAttributes.isEmpty()) ? null
+                    : new ReadOnlyNode.ReadOnlyAttributes(nodeAttributes));
+        }
+
+        this.strings = strings.toArray(new String[strings.size()]);
+        this.localizedStrings = localizedStrings.toArray(new LocalizedString[localizedStrings.size()]);
+        this.visibilities = visibilities.toArray(new Visibility[visibilities.size()]);
+        this.pageIds = pageIds.toArray(new PageId[pageIds.size()]);
+        this.attributeSets = attributeSets.toArray(new Attributes[attributeSets.size()]);
+    }
+
+    /**
+     * The <code>SiteId</code> of the navigation
+     *
+     * @return the site id
+     */
+    public SiteId getSiteId() {
+        return siteId;
+    }
+
+    /**
+     * The fields of the nodes copied in this tree.
+     *
+     * @return the projection
+     */
+    public NodeProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * The number of nodes in this tree
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return parent.length;
+    }
+
+    /**
+     * Returns an entity tag of the content of this tree, see {@link Nodes#contentHash(Node)}.
+     *
+     * @return the entity tag
+     */
+    public String getETag() {
+        return String.format("%016x", contentHash(0));
+    }
+
+    /**
+     * Returns the first time after the specified time at which the visibility of one of the nodes of this tree changes, or -1
+     * if it never changes, see {@link Nodes#nextVisibilityTransition(Node, long)}. The transitions are collected once per tree
+     * from the distinct visibilities of the nodes, so this is a binary search.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the time of the next visibility transition or -1
+     */
+    public long nextVisibilityTransition(long time) {
+        long[] transitions = visibilityTransitions;
+        if (transitions == null) {
+            VisibilityTransitions collected = new VisibilityTransitions();
+            for (Visibility visibility : visibilities) {
+                collected.add(visibility);
+            }
+            transitions = collected.toArray();
+            visibilityTransitions = transitions;
+        }
+        return VisibilityTransitions.next(transitions, time);
+    }
+
+    /**
+     * Returns the root node of the tree.
+     *
+     * @return the root node
+     */
+    public Node getRootNode() {
+        return new CompactNode(this, 0);
+    }
+
+    /**
+     * Returns a node represented by the node path or null if the node was not found or has not been loaded.
+     *
+     * @param nodePath the path to the node
+     * @return the node or null
+     * @throws IllegalArgumentException if nodePath is null
+     */
+    public Node getNode(NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        int node = 0;
+        for (String segment : nodePath) {
+            node = indexOf(node, segment);
+            if (node == NONE)
+                return null;
+        }
+        return new CompactNode(this, node);
+    }
+
+    private long contentHash(int node) {
+        long[] hashes = contentHashes;
+        if (hashes == null) {
+            // Children always come after their parent in breadth first order
+            hashes = new long[size()];
+            for (int i = hashes.length - 1; i >= 0; i--) {
+                long childrenHash;
+                if (childCount[i] == NONE) {
+                    childrenHash = NodeHash.notLoaded();
+                } else {
+                    childrenHash = NodeHash.emptyChildren();
+                    for (int child = firstChild[i]; child < firstChild[i] + childCount[i]; child++) {
+                        childrenHash = NodeHash.child(childrenHash, hashes[child]);
+                    }
+                }
+                hashes[i] = NodeHash.node(NodeHash.fields(name[i] == NONE ? null : strings[name[i]],
+                        displayNames[i] == NONE ? null : localizedStrings[displayNames[i]],
+                        iconName[i] == NONE ? null : strings[iconName[i]],
+                        visibility[i] == NONE ? null : visibilities[visibility[i]],
+                        pageId[i] == NONE ? null : pageIds[pageId[i]],
+                        attributes[i] == NONE ? null : attributeSets[attributes[i]]), childrenHash);
+            }
+            contentHashes = hashes;
+        }
+        return hashes[node];
+    }
+
+    /**
+     * Returns the index of the child of the node with the specified name, or -1.
+     */
+    private int indexOf(int node, String childName) {
+        int first = firstChild[node];
+        int count = childCount[node];
+        if (count <= NodeChildren.LINEAR_THRESHOLD) {
+            for (int i = first; i < first + count; i++) {
+                if (strings[name[i]].equals(childName))
+                    return i;
+            }
+            return NONE;
+        }
+
+        ConcurrentMap<Integer, NameIndex> indexes = childIndexes;
+        if (indexes == null) {
+            indexes = new ConcurrentHashMap<Integer, NameIndex>();
+            childIndexes = indexes;
+        }
+        NameIndex index = indexes.get(node);
+        if (index == null) {
+            index = new NameIndex(count);
+            for (int i = 0; i < count; i++) {
+                index.put(strings[name[first + i]], i);
+            }
+            indexes.put(node, index);
+        }
+        int i = index.get(childName);
+        return (i < 0) ? NONE : first + i;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("siteId", siteId).add("size", size()).toString();
+    }
+
+    /**
+     * Assigns an id to each distinct value, null is mapped to -1.
+     */
+    private static class Table<T> extends ArrayList<T> {
+        private final Map<T, Integer> ids = new HashMap<T, Integer>();
+
+        int id(T value) {
+            if (value == null)
+                return NONE;
+
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = size();
+                ids.put(value, id);
+                add(value);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Read only view of a node of the tree.
+     */
+    static final class CompactNode extends ReadOnlyNode {
+        private final CompactNodeTree tree;
+        private final int index;
+
+        CompactNode(CompactNodeTree tree, int index) {
+            this.tree = tree;
+            this.index = index;
+        }
+
+        @Override
+        SiteId getSiteId() {
+            return tree.siteId;
+        }
+
+        long getContentHash() {
+            return tree.contentHash(index);
+        }
+
+        CompactNodeTree getTree() {
+            return tree;
+        }
+
+        @Override
+        NodeProjection getProjection() {
+            return tree.projection;
+        }
+
+        @Override
+        public String getName() {
+            int id = tree.name[index];
+            return (id == NONE) ? null : tree.strings[id];
+        }
+
+        @Override
+        public Node getParent() {
+            int parent = tree.parent[index];
+            return (parent == NONE) ? null : new CompactNode(tree, parent);
+        }
+
+        @Override
+        public NodePath getNodePath() {
+            int depth = 0;
+            for (int i = index; tree.parent[i] != NONE; i = tree.parent[i]) {
+                depth++;
+            }
+            if (depth == 0)
+                return NodePath.root();
+
+            String[] segments = new String[depth];
+            for (int i = index; tree.parent[i] != NONE; i = tree.parent[i]) {
+                segments[--depth] = tree.strings[tree.name[i]];
+            }
+            return NodePath.path(segments);
+        }
+
+        @Override
+        public LocalizedString getDisplayNames() {
+            checkLoaded(NodeProjection.Field.DISPLAY_NAMES);
+            int id = tree.displayNames[index];
+            return (id == NONE) ? null : new LocalizedString(tree.localizedStrings[id]);
+        }
+
+        @Override
+        public String getDisplayName() {
+            checkLoaded(NodeProjection.Field.DISPLAY_NAMES);
+            int id = tree.displayNames[index];
+            if (id != NONE && !tree.localizedStrings[id].isLocalized())
+                return tree.localizedStrings[id].getValue();
+
+            return super.getDisplayName();
+        }
+
+        @Override
+        public String getIconName() {
+            checkLoaded(NodeProjection.Field.ICON_NAME);
+            int id = tree.iconName[index];
+            return (id == NONE) ? null : tree.strings[id];
+        }
+
+        @Override
+        public Visibility getVisibility() {
+            checkLoaded(NodeProjection.Field.VISIBILITY);
+            return tree.visibilities[tree.visibility[index]];
+        }
+
+        @Override
+        public PageId getPageId() {
+            checkLoaded(NodeProjection.Field.PAGE_ID);
+            int id = tree.pageId[index];
+            return (id == NONE) ? null : tree.pageIds[id];
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            checkLoaded(NodeProjection.Field.ATTRIBUTES);
+            int id = tree.attributes[index];
+            return (id == NONE) ? ReadOnlyAttributes.EMPTY : tree.attributeSets[id];
+        }
+
+        @Override
+        public boolean isChildrenLoaded() {
+            return tree.childCount[index] != NONE;
+        }
+
+        @Override
+        public int getChildCount() {
+            return checkChildrenLoaded();
+        }
+
+        @Override
+        public Node getChild(int childIndex) {
+            int count = checkChildrenLoaded();
+            if (childIndex < 0 || childIndex >= count)
+                throw new IndexOutOfBoundsException("Index: " + childIndex + ", Size: " + count);
+
+            return new CompactNode(tree, tree.firstChild[index] + childIndex);
+        }
+
+        @Override
+        public Node getChild(String childName) {
+            Parameters.requireNonNull(childName, "childName");
+            checkChildrenLoaded();
+
+            int child = tree.indexOf(index, childName);
+            return (child == NONE) ? null : new CompactNode(tree, child);
+        }
+
+        @Override
+        public int indexOf(String childName) {
+            Parameters.requireNonNull(childName, "childName");
+            checkChildrenLoaded();
+
+            int child = tree.indexOf(index, childName);
+            return (child == NONE) ? NONE : child - tree.firstChild[index];
+        }
+
+        @Override
+        public Iterator<Node> iterator() {
+            final int first = tree.firstChild[index];
+            final int end = first + checkChildrenLoaded();
+            return new Iterator<Node>() {
+                private int next = first;
+
+                @Override
+                public boolean hasNext() {
+                    return next < end;
+                }
+
+                @Override
+                public Node next() {
+                    if (next >= end)
+                        throw new NoSuchElementException();
+
+                    return new CompactNode(tree, next++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Node " + getNodePath() + " is read only");
+                }
+            };
+        }
+
+        private int checkChildrenLoaded() {
+            int count = tree.childCount[index];
+            if (count == NONE)
+                throw new IllegalStateException("Children of node " + getNodePath() + " have not been loaded");
+
+            return count;
+        }
+
+        private void checkLoaded(NodeProjection.Field field) {
+            if (!tree.projection.includes(field)) {
+                tree.projection.checkLoaded(field, getNodePath());
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof CompactNode))
+                return false;
+
+            CompactNode that = (CompactNode) o;
+            return tree == that.tree && index == that.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(tree) + index;
+        }
+    }
+}
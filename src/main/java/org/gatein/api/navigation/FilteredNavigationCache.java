@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import org.gatein.api.common.Clock;
+import org.gatein.api.common.Filter;
+import org.gatein.api.internal.LruCache;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.security.MembershipFingerprint;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+
+/**
+ * A bounded cache of the filtered views of navigation snapshots, shared by all the users with the same memberships. The
+ * filtered view of a snapshot only contains the nodes which are visible and which the user can access, see
+ * {@link FilteredNode#showVisible()} and {@link FilteredNode#showHasAccess(User)}, or can edit, see
+ * {@link FilteredNode#showHasEdit(User)}. It is computed for the first user with a given {@link MembershipFingerprint}, and
+ * copied to an immutable snapshot which is then returned to the other users with the same fingerprint.
+ * <p>
+ * The API cannot look up the memberships of a user, so the fingerprint is provided by the caller. It must be built from all
+ * the memberships the permission checks depend on, including the membership of the user itself if permissions are granted
+ * to users directly, see {@link MembershipFingerprint}. Otherwise a user is returned a view computed for another user.
+ * </p>
+ * <p>
+ * A cached view is recomputed when the snapshot it was computed from changes, or when the visibility of one of the nodes
+ * changes, see {@link NavigationSnapshot#nextVisibilityTransition(long)}. The least recently used views are evicted when
+ * the cache is full.
+ * </p>
+ * <p>
+ * This class is thread safe. Permissions are checked with the portal of the current {@link org.gatein.api.PortalRequest}.
+ * Concurrent requests for a view which is not cached may compute it more than once.
+ * </p>
+ */
+public final class FilteredNavigationCache {
+    private final LruCache<Key, Entry> cache;
+    private final Clock clock;
+
+    /**
+     * Creates a cache using the system clock.
+     *
+     * @param maxSize the maximum number of cached views
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public FilteredNavigationCache(int maxSize) {
+        this(maxSize, Clock.system());
+    }
+
+    /**
+     * Creates a cache evaluating the visibility of nodes with the specified clock.
+     *
+     * @param maxSize the maximum number of cached views
+     * @param clock the clock
+     * @throws IllegalArgumentException if maxSize is not positive or clock is null
+     */
+    public FilteredNavigationCache(int maxSize, Clock clock) {
+        this.cache = new LruCache<Key, Entry>(maxSize);
+        this.clock = Parameters.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Returns the root node of the view of the snapshot with the visible nodes the user can access.
+     *
+     * @param snapshot the snapshot of the navigation
+     * @param user the user
+     * @param fingerprint the fingerprint of all the memberships of the user the permission checks depend on, the view
+     *        computed for the first user is returned to all the users with the same fingerprint
+     * @return the read only root node of the filtered view
+     * @throws IllegalArgumentException if snapshot, user or fingerprint is null
+     */
+    public Node getAccessibleRoot(NavigationSnapshot snapshot, User user, MembershipFingerprint fingerprint) {
+        return getRoot(snapshot, user, fingerprint, false);
+    }
+
+    /**
+     * Returns the root node of the view of the snapshot with the visible nodes the user can edit.
+     *
+     * @param snapshot the snapshot of the navigation
+     * @param user the user
+     * @param fingerprint the fingerprint of all the memberships of the user the permission checks depend on, the view
+     *        computed for the first user is returned to all the users with the same fingerprint
+     * @return the read only root node of the filtered view
+     * @throws IllegalArgumentException if snapshot, user or fingerprint is null
+     */
+    public Node getEditableRoot(NavigationSnapshot snapshot, User user, MembershipFingerprint fingerprint) {
+        return getRoot(snapshot, user, fingerprint, true);
+    }
+
+    /**
+     * Removes the cached views of the navigation of a site.
+     *
+     * @param siteId the site id
+     * @return the number of removed views
+     * @throws IllegalArgumentException if siteId is null
+     */
+    public int invalidate(final SiteId siteId) {
+        Parameters.requireNonNull(siteId, "siteId");
+
+        return cache.removeAll(new Filter<Key>() {
+            @Override
+            public boolean accept(Key key) {
+                return key.siteId.equals(siteId);
+            }
+        });
+    }
+
+    /**
+     * Removes all the cached views.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * The number of cached views
+     *
+     * @return the number of cached views
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private Node getRoot(NavigationSnapshot snapshot, User user, MembershipFingerprint fingerprint, boolean edit) {
+        Parameters.requireNonNull(snapshot, "snapshot");
+        Parameters.requireNonNull(user, "user");
+        Parameters.requireNonNull(fingerprint, "fingerprint");
+
+        long time = clock.currentTimeMillis();
+        Key key = new Key(snapshot.getSiteId(), fingerprint, edit);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.isValid(snapshot, time))
+            return entry.view.getRootNode();
+
+        entry = new Entry(snapshot, snapshot.nextVisibilityTransition(time), filter(snapshot, user, edit, time));
+        cache.put(key, entry);
+        return entry.view.getRootNode();
+    }
+
+    private static NavigationSnapshot filter(NavigationSnapshot snapshot, User user, boolean edit, final long time) {
+        FilteredNode root = snapshot.getRootNode().filter().show(new Filter<Node>() {
+            @Override
+            public boolean accept(Node element) {
+                return element.getVisibility().isVisible(time);
+            }
+        });
+        root = edit ? root.showHasEdit(user) : root.showHasAccess(user);
+
+        return NavigationSnapshot.of(snapshot.getSiteId(), root, snapshot.getProjection());
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("size", cache.size())
+                .add("maxSize", cache.getMaxSize()).toString();
+    }
+
+    private static class Key {
+        private final SiteId siteId;
+        private final MembershipFingerprint fingerprint;
+        private final boolean edit;
+
+        Key(SiteId siteId, MembershipFingerprint fingerprint, boolean edit) {
+            this.siteId = siteId;
+            this.fingerprint = fingerprint;
+            this.edit = edit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return edit == key.edit && siteId.equals(key.siteId) && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = siteId.hashCode();
+            result = 31 * result + fingerprint.hashCode();
+            result = 31 * result + (edit ? 1 : 0);
+            return result;
+        }
+    }
+
+    private static class Entry {
+        private final NavigationSnapshot source;
+        private final long expiresAt;
+        private final NavigationSnapshot view;
+
+        Entry(NavigationSnapshot source, long expiresAt, NavigationSnapshot view) {
+            this.source = source;
+            this.expiresAt = expiresAt;
+            this.view = view;
+        }
+
+        boolean isValid(NavigationSnapshot snapshot, long time) {
+            // Unchanged snapshots are the same instance, see NavigationSnapshot#withNode
+            return source == snapshot && (expiresAt == -1 || time < expiresAt);
+        }
+    }
+}
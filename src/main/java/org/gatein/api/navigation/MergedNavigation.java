@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * The top level nodes of the navigations of several sites merged into a single menu, for instance the navigation of the
+ * portal site followed by the navigations of the group spaces of a user. Navigations are ordered by {@link SiteId#getType()
+ * site type}, then by {@link Navigation#getPriority() priority}, then in the order the sites were specified, and the nodes of
+ * a navigation keep their order.
+ * <p>
+ * A merged navigation is immutable, its nodes are read only and can be shared by any number of threads.
+ * </p>
+ *
+ * @see MergedNavigationCache
+ */
+public final class MergedNavigation implements Iterable<MergedNavigation.Item> {
+    private static final Comparator<Member> ORDER = new Comparator<Member>() {
+        @Override
+        public int compare(Member a, Member b) {
+            int result = a.siteId.getType().compareTo(b.siteId.getType());
+            if (result == 0) {
+                result = (a.priority < b.priority) ? -1 : (a.priority == b.priority ? 0 : 1);
+            }
+            return result;
+        }
+    };
+
+    /**
+     * Sorts the navigations by site type and priority, then appends their top level nodes. The sort is stable, so navigations
+     * of the same type and priority keep the order of the members.
+     *
+     * @param members the navigations, in the order the sites were specified
+     * @return the merged navigation
+     */
+    static MergedNavigation merge(List<Member> members) {
+        List<Member> sorted = new ArrayList<Member>(members);
+        Collections.sort(sorted, ORDER);
+
+        List<Item> items = new ArrayList<Item>();
+        List<SiteId> siteIds = new ArrayList<SiteId>(sorted.size());
+        for (Member member : sorted) {
+            if (!member.root.isChildrenLoaded() || member.root.getChildCount() == 0)
+                continue;
+
+            siteIds.add(member.siteId);
+            for (Node child : member.root) {
+                items.add(new Item(member.siteId, member.priority, child));
+            }
+        }
+        return new MergedNavigation(Collections.unmodifiableList(siteIds), Collections.unmodifiableList(items));
+    }
+
+    private final List<SiteId> siteIds;
+    private final List<Item> items;
+
+    private MergedNavigation(List<SiteId> siteIds, List<Item> items) {
+        this.siteIds = siteIds;
+        this.items = items;
+    }
+
+    /**
+     * The ids of the sites with at least one node, in the order of their nodes.
+     *
+     * @return the site ids
+     */
+    public List<SiteId> getSiteIds() {
+        return siteIds;
+    }
+
+    /**
+     * The merged top level nodes.
+     *
+     * @return the items of the menu
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return items.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("siteIds", siteIds).add("size", items.size()).toString();
+    }
+
+    /**
+     * A top level node of the merged navigation, with the site it belongs to.
+     */
+    public static final class Item {
+        private final SiteId siteId;
+        private final int priority;
+        private final Node node;
+
+        Item(SiteId siteId, int priority, Node node) {
+            this.siteId = siteId;
+            this.priority = priority;
+            this.node = node;
+        }
+
+        public SiteId getSiteId() {
+            return siteId;
+        }
+
+        /**
+         * The priority of the navigation of the site when the menu was merged.
+         *
+         * @return the priority
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * The read only node, with its descendants.
+         *
+         * @return the node
+         */
+        public Node getNode() {
+            return node;
+        }
+
+        @Override
+        public String toString() {
+            return ObjectToStringBuilder.toStringBuilder(getClass()).add("siteId", siteId).add("priority", priority)
+                    .add("node", node.getName()).toString();
+        }
+    }
+
+    /**
+     * The navigation of a site to merge.
+     */
+    static final class Member {
+        final SiteId siteId;
+        final int priority;
+        final Node root;
+
+        Member(SiteId siteId, int priority, Node root) {
+            this.siteId = Parameters.requireNonNull(siteId, "siteId");
+            this.priority = priority;
+            this.root = Parameters.requireNonNull(root, "root");
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gatein.api.Portal;
+import org.gatein.api.common.Clock;
+import org.gatein.api.common.Filter;
+import org.gatein.api.internal.LruCache;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.security.MembershipFingerprint;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+
+/**
+ * A bounded cache of {@link MergedNavigation}s, shared by all the users with the same memberships and the same sites. The
+ * navigations of the sites are loaded in parallel by a {@link NavigationLoader}, then filtered with the
+ * {@link FilteredNavigationCache} and merged.
+ * <p>
+ * The cache is a {@link NavigationListener}, the merged navigations including a site are removed when the nodes or the
+ * priority of its navigation change. It must be added as a listener of the portal, or of the
+ * {@link NavigationEventDispatcher} of the snapshots. A merged navigation is also recomputed when the visibility of one of
+ * the nodes of its sites changes, see {@link NavigationSnapshot#nextVisibilityTransition(long)}. The least recently used
+ * merged navigations are evicted when the cache is full.
+ * </p>
+ * <p>
+ * This class is thread safe. Permissions are checked in the calling thread, with the portal of the current
+ * {@link org.gatein.api.PortalRequest}.
+ * </p>
+ *
+ * @see Portal#getMergedNavigation(List)
+ */
+public final class MergedNavigationCache implements NavigationListener {
+    private final LruCache<Key, Entry> cache;
+    private final NavigationSnapshots snapshots;
+    private final FilteredNavigationCache filteredCache;
+    private final NavigationLoader loader;
+    private final Clock clock;
+
+    // Incremented by each invalidation, a navigation merged concurrently with an invalidation is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a cache using the system clock.
+     *
+     * @param maxSize the maximum number of cached merged navigations
+     * @param snapshots the snapshots of the navigations
+     * @param filteredCache the cache of the filtered views of the snapshots
+     * @param loader the loader of the navigations
+     * @throws IllegalArgumentException if maxSize is not positive, or if snapshots, filteredCache or loader is null
+     */
+    public MergedNavigationCache(int maxSize, NavigationSnapshots snapshots, FilteredNavigationCache filteredCache,
+            NavigationLoader loader) {
+        this(maxSize, snapshots, filteredCache, loader, Clock.system());
+    }
+
+    /**
+     * Creates a cache expiring the merged navigations with the specified clock, which should be the clock of the filtered
+     * cache.
+     *
+     * @param maxSize the maximum number of cached merged navigations
+     * @param snapshots the snapshots of the navigations
+     * @param filteredCache the cache of the filtered views of the snapshots
+     * @param loader the loader of the navigations
+     * @param clock the clock
+     * @throws IllegalArgumentException if maxSize is not positive, or if snapshots, filteredCache, loader or clock is null
+     */
+    public MergedNavigationCache(int maxSize, NavigationSnapshots snapshots, FilteredNavigationCache filteredCache,
+            NavigationLoader loader, Clock clock) {
+        this.cache = new LruCache<Key, Entry>(maxSize);
+        this.snapshots = Parameters.requireNonNull(snapshots, "snapshots");
+        this.filteredCache = Parameters.requireNonNull(filteredCache, "filteredCache");
+        this.loader = Parameters.requireNonNull(loader, "loader");
+        this.clock = Parameters.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Returns the merged navigation of the sites with the visible nodes the user can access. Sites without a navigation are
+     * ignored. Sites whose navigation fails to load are left out, and the merged navigation is then not cached so that they
+     * are loaded again by the next call.
+     *
+     * @param portal the portal to load the navigations from
+     * @param siteIds the ids of the sites, which determine the order of the navigations of the same type and priority
+     * @param user the user
+     * @param fingerprint the fingerprint of all the memberships of the user the permission checks depend on, see
+     *        {@link FilteredNavigationCache}
+     * @return the merged navigation
+     * @throws IllegalArgumentException if an argument is null, or if siteIds contains null
+     * @throws org.gatein.api.ApiException if interrupted while loading the navigations
+     */
+    public MergedNavigation getMergedNavigation(Portal portal, List<SiteId> siteIds, User user,
+            MembershipFingerprint fingerprint) {
+        Parameters.requireNonNull(portal, "portal");
+        Parameters.requireNonNull(siteIds, "siteIds");
+        Parameters.requireNonNull(user, "user");
+        Parameters.requireNonNull(fingerprint, "fingerprint");
+        for (SiteId siteId : siteIds) {
+            Parameters.requireNonNull(siteId, "siteId");
+        }
+
+        long time = clock.currentTimeMillis();
+        Key key = new Key(new ArrayList<SiteId>(siteIds), fingerprint);
+        Entry entry = cache.get(key);
+        if (entry != null && (entry.expiresAt == -1 || time < entry.expiresAt))
+            return entry.merged;
+
+        long expected = generation.get();
+        long expiresAt = -1;
+        List<NavigationResult> results = loader.getSnapshots(portal, key.siteIds, snapshots);
+        List<MergedNavigation.Member> members = new ArrayList<MergedNavigation.Member>(results.size());
+        boolean complete = true;
+        for (NavigationResult result : results) {
+            if (result.isFailed()) {
+                complete = false;
+            } else if (result.getNavigation() != null) {
+                // Computed from the snapshot, as the nodes becoming visible are not in the filtered view
+                long next = result.getSnapshot().nextVisibilityTransition(time);
+                if (next != -1 && (expiresAt == -1 || next < expiresAt)) {
+                    expiresAt = next;
+                }
+                Node root = filteredCache.getAccessibleRoot(result.getSnapshot(), user, fingerprint);
+                members.add(new MergedNavigation.Member(result.getSiteId(), result.getNavigation().getPriority(), root));
+            }
+        }
+        MergedNavigation merged = MergedNavigation.merge(members);
+
+        synchronized (generation) {
+            if (complete && generation.get() == expected) {
+                cache.put(key, new Entry(merged, expiresAt));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Removes the merged navigations including the site.
+     *
+     * @param siteId the site id
+     * @return the number of removed merged navigations
+     * @throws IllegalArgumentException if siteId is null
+     */
+    public int invalidate(final SiteId siteId) {
+        Parameters.requireNonNull(siteId, "siteId");
+
+        synchronized (generation) {
+            generation.incrementAndGet();
+            return cache.removeAll(new Filter<Key>() {
+                @Override
+                public boolean accept(Key key) {
+                    return key.siteIds.contains(siteId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes the merged navigations including the site, as any change of the navigation may change its nodes or its order.
+     */
+    @Override
+    public void navigationChanged(SiteId siteId, List<NavigationEvent> events) {
+        invalidate(siteId);
+    }
+
+    /**
+     * Removes all the cached merged navigations.
+     */
+    public void clear() {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    /**
+     * The number of cached merged navigations
+     *
+     * @return the number of cached merged navigations
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("size", cache.size())
+                .add("maxSize", cache.getMaxSize()).toString();
+    }
+
+    private static class Entry {
+        private final MergedNavigation merged;
+        private final long expiresAt;
+
+        Entry(MergedNavigation merged, long expiresAt) {
+            this.merged = merged;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Key {
+        private final List<SiteId> siteIds;
+        private final MembershipFingerprint fingerprint;
+
+        Key(List<SiteId> siteIds, MembershipFingerprint fingerprint) {
+            this.siteIds = siteIds;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return siteIds.equals(key.siteIds) && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * siteIds.hashCode() + fingerprint.hashCode();
+        }
+    }
+}
@@ -24,8 +24,12 @@ package org.gatein.api.navigation;
 
 import org.gatein.api.ApiException;
 import org.gatein.api.EntityNotFoundException;
+import org.gatein.api.common.Pagination;
 import org.gatein.api.site.SiteId;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Navigation for a site responsible for the retrieval, saving, and removal of navigation nodes.
  * 
@@ -50,6 +54,11 @@ public interface Navigation {
 
     /**
      * Saves the priority for this navigation.
+     * <p>
+     * Implementations must publish a {@link NavigationEvent.Type#PRIORITY_CHANGED} event to the navigation listeners when the
+     * priority changes, as the cached merged navigations are ordered by priority and are only invalidated by events, see
+     * {@link MergedNavigationCache}.
+     * </p>
      *
      * @param integer the priority to save
      * @throws ApiException if something prevented this operation to succeed
@@ -93,6 +102,25 @@ public interface Navigation {
      */
     Node getNode(NodePath nodePath, NodeVisitor visitor);
 
+    /**
+     * Returns the nodes represented by the node paths, loaded in a single pass. Ancestors shared by several paths are only
+     * loaded once, and all the returned nodes belong to the same node tree. The NodeVisitor is then used to determine further
+     * loading of nodes, relative to each of the nodes represented by the node paths.
+     * <p>
+     * This is equivalent to loading the root node with <code>Nodes.visitNodes(nodePaths, visitor)</code> and resolving each
+     * of the node paths from the root node.
+     * </p>
+     *
+     * @param nodePaths the paths to the nodes
+     * @param visitor the visitor used to determine further loading of nodes. The visitor is relative to each of the nodes
+     *        represented by the node paths.
+     * @return the nodes mapped by node path, in the iteration order of nodePaths. Nodes which were not found are not included.
+     * @throws IllegalArgumentException if nodePaths or visitor is null, or if nodePaths contains null
+     * @throws ApiException if something prevented this operation to succeed
+     * @see Nodes#visitNodes(Collection, NodeVisitor)
+     */
+    Map<NodePath, Node> getNodes(Collection<NodePath> nodePaths, NodeVisitor visitor);
+
     /**
      * Returns the root node of the navigation with nodes loaded dependent on the <code>NodeVisitor</code>
      *
@@ -103,6 +131,24 @@ public interface Navigation {
      */
     Node getRootNode(NodeVisitor visitor);
 
+    /**
+     * Returns a window of the children of the parent node, loading only the children of the window and the exact number of
+     * children. This is intended for nodes with a large number of children, where loading all of them is not needed to display
+     * a page of children.
+     * <p>
+     * The parent node is not changed, its children remain loaded or not loaded as before. The children of the returned nodes
+     * are not loaded.
+     * </p>
+     *
+     * @param parent the parent node
+     * @param window the offset and limit of the children to return
+     * @return the window of children
+     * @throws IllegalArgumentException if parent or window is null
+     * @throws EntityNotFoundException if the parent node could not be found
+     * @throws ApiException if something prevented this operation to succeed
+     */
+    NodeWindow getChildren(Node parent, Pagination window);
+
     /**
      * Will refresh the node with latest from storage. For example if nodes were added/removed, etc you can refresh/sync those
      * changes. The refresh will affect the entire tree even if the node is not the root of the tree. When conflicting changes
@@ -139,10 +185,44 @@ public interface Navigation {
 
     /**
      * Saves a node. All changes to the entire tree will be saved even if the node is not the root of the tree.
+     * <p>
+     * The save is a compare-and-set on the {@link Node#getVersion() versions} of the nodes: it fails if a saved node or one of
+     * its descendants was changed since it was loaded, and none of the changes are saved. Nodes with version 0 are not checked.
+     * </p>
      *
      * @param node the node to save
      * @throws IllegalArgumentException if node is null
+     * @throws NodeConflictException if some of the nodes were changed since they were loaded
      * @throws ApiException if something prevented this operation to succeed
      */
     void saveNode(Node node);
+
+    /**
+     * Applies the operations of the patch to the navigation and saves them as a single write, instead of saving each changed
+     * node of the tree.
+     *
+     * @param patch the patch to apply
+     * @throws IllegalArgumentException if patch is null
+     * @throws EntityNotFoundException if the node of the patch or the node of one of its operations could not be found
+     * @throws ApiException if something prevented this operation to succeed, in which case none of the operations are saved
+     * @see NodePatch#diff(Node, Node)
+     */
+    void applyPatch(NodePatch patch);
+
+    /**
+     * Adds a listener notified asynchronously of the changes of this navigation, whoever made them.
+     *
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     * @see NavigationListener
+     */
+    void addNavigationListener(NavigationListener listener);
+
+    /**
+     * Removes a listener added to this navigation.
+     *
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     */
+    void removeNavigationListener(NavigationListener listener);
 }
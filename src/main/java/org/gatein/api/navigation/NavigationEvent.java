@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * A change of the navigation of a site. The events of a site have increasing versions, in the order the changes were made.
+ *
+ * @see NavigationListener
+ */
+public final class NavigationEvent implements Serializable {
+    /**
+     * The type of change of a node.
+     */
+    public enum Type {
+        /**
+         * The node was added.
+         */
+        NODE_ADDED,
+
+        /**
+         * The node and its descendants were removed.
+         */
+        NODE_REMOVED,
+
+        /**
+         * The node was moved from the previous path, with its descendants.
+         */
+        NODE_MOVED,
+
+        /**
+         * The node was renamed from the previous path, changing the path of its descendants.
+         */
+        NODE_RENAMED,
+
+        /**
+         * The display names, icon name, visibility, page or attributes of the node changed.
+         */
+        NODE_UPDATED,
+
+        /**
+         * The priority of the navigation changed, the path is the root path.
+         */
+        PRIORITY_CHANGED,
+
+        /**
+         * Any node below the path may have changed, sent instead of the individual changes when too many changes are waiting to
+         * be delivered.
+         */
+        INVALIDATED
+    }
+
+    private final SiteId siteId;
+    private final Type type;
+    private final NodePath nodePath;
+    private final NodePath previousPath;
+    private final long version;
+
+    /**
+     * @param siteId the id of the site of the navigation
+     * @param type the type of the change
+     * @param nodePath the path of the node after the change
+     * @param previousPath the path of the node before the change for {@link Type#NODE_MOVED} and {@link Type#NODE_RENAMED},
+     *        null otherwise
+     * @param version the version of the change
+     * @throws IllegalArgumentException if siteId, type or nodePath is null, or if previousPath is null for a move or a rename
+     */
+    public NavigationEvent(SiteId siteId, Type type, NodePath nodePath, NodePath previousPath, long version) {
+        this.siteId = Parameters.requireNonNull(siteId, "siteId");
+        this.type = Parameters.requireNonNull(type, "type");
+        this.nodePath = Parameters.requireNonNull(nodePath, "nodePath");
+        if (type == Type.NODE_MOVED || type == Type.NODE_RENAMED) {
+            this.previousPath = Parameters.requireNonNull(previousPath, "previousPath");
+        } else {
+            this.previousPath = null;
+        }
+        this.version = version;
+    }
+
+    /**
+     * The id of the site whose navigation changed.
+     *
+     * @return the site id
+     */
+    public SiteId getSiteId() {
+        return siteId;
+    }
+
+    /**
+     * The type of the change.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The path of the node after the change. For {@link Type#NODE_REMOVED} it is the path of the removed node.
+     *
+     * @return the path of the node
+     */
+    public NodePath getNodePath() {
+        return nodePath;
+    }
+
+    /**
+     * The path of the node before a move or a rename.
+     *
+     * @return the previous path, or null for the other types of changes
+     */
+    public NodePath getPreviousPath() {
+        return previousPath;
+    }
+
+    /**
+     * The version of the change, greater than the versions of the previous changes of the navigation of the site.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof NavigationEvent))
+            return false;
+
+        NavigationEvent other = (NavigationEvent) o;
+        return version == other.version && type == other.type && siteId.equals(other.siteId)
+                && nodePath.equals(other.nodePath)
+                && (previousPath == null ? other.previousPath == null : previousPath.equals(other.previousPath));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = siteId.hashCode();
+        result = 31 * result + type.hashCode();
+        result = 31 * result + nodePath.hashCode();
+        result = 31 * result + (int) (version ^ (version >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        ObjectToStringBuilder builder = ObjectToStringBuilder.toStringBuilder(getClass()).add("siteId", siteId)
+                .add("type", type).add("nodePath", nodePath);
+        if (previousPath != null) {
+            builder.add("previousPath", previousPath);
+        }
+        return builder.add("version", version).toString();
+    }
+}
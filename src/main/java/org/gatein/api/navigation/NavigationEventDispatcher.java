@@ -0,0 +1,385 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Publishes the changes of navigations to {@link NavigationListener}s, used by the implementations of
+ * {@link Navigation#addNavigationListener(NavigationListener)} and
+ * {@link org.gatein.api.Portal#addNavigationListener(NavigationListener)}.
+ * <p>
+ * Publishing a change only assigns it the next version of its site and queues it, the listeners are notified by a task of the
+ * executor. Each site has at most one task at a time, which notifies the listeners of all the changes queued so far, so a
+ * burst of changes is delivered in a few notifications. Within a notification, an update of a node is dropped when the same
+ * node is updated again later without a structural change in between, and only the last priority change is kept. When more
+ * changes than the maximum are queued for a site, they are replaced by a single {@link NavigationEvent.Type#INVALIDATED}
+ * change of the root node, so a slow listener never makes the queue grow without bounds. The queued changes are collapsed the
+ * same way when the executor rejects the task, and are then delivered with the next change of the site.
+ * </p>
+ * <p>
+ * This class is thread safe. An exception thrown by a listener does not prevent the other listeners from being notified, and
+ * is rethrown to the executor once they have been.
+ * </p>
+ */
+public class NavigationEventDispatcher {
+    private final Executor executor;
+    private final int maxQueuedEvents;
+    private final ConcurrentMap<SiteId, SiteQueue> queues = new ConcurrentHashMap<SiteId, SiteQueue>();
+    private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+    /**
+     * Creates a dispatcher queuing up to 1000 changes per site.
+     *
+     * @param executor the executor notifying the listeners
+     * @throws IllegalArgumentException if executor is null
+     */
+    public NavigationEventDispatcher(Executor executor) {
+        this(executor, 1000);
+    }
+
+    /**
+     * @param executor the executor notifying the listeners
+     * @param maxQueuedEvents the maximum number of changes queued for a site before they are replaced by a single change
+     * @throws IllegalArgumentException if executor is null or maxQueuedEvents is less than 1
+     */
+    public NavigationEventDispatcher(Executor executor, int maxQueuedEvents) {
+        this.executor = Parameters.requireNonNull(executor, "executor");
+        if (maxQueuedEvents < 1)
+            throw new IllegalArgumentException("maxQueuedEvents must be at least 1");
+
+        this.maxQueuedEvents = maxQueuedEvents;
+    }
+
+    /**
+     * Adds a listener notified of the changes of all the sites.
+     *
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     */
+    public void addListener(NavigationListener listener) {
+        registrations.add(new Registration(null, Parameters.requireNonNull(listener, "listener")));
+    }
+
+    /**
+     * Adds a listener notified of the changes of the site.
+     *
+     * @param siteId the site id
+     * @param listener the listener
+     * @throws IllegalArgumentException if siteId or listener is null
+     */
+    public void addListener(SiteId siteId, NavigationListener listener) {
+        registrations.add(new Registration(Parameters.requireNonNull(siteId, "siteId"), Parameters.requireNonNull(listener,
+                "listener")));
+    }
+
+    /**
+     * Removes the listener, for all the sites it was added for.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(NavigationListener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the last change published for the site.
+     *
+     * @param siteId the site id
+     * @return the version, 0 if no change was published
+     * @throws IllegalArgumentException if siteId is null
+     */
+    public long getVersion(SiteId siteId) {
+        SiteQueue queue = queues.get(Parameters.requireNonNull(siteId, "siteId"));
+        if (queue == null)
+            return 0;
+
+        synchronized (queue) {
+            return queue.version;
+        }
+    }
+
+    /**
+     * Publishes a change of a node which was not moved or renamed.
+     *
+     * @param siteId the site id
+     * @param type the type of the change
+     * @param nodePath the path of the node
+     * @return the published change
+     * @throws IllegalArgumentException if an argument is null, or if type is a move or a rename
+     */
+    public NavigationEvent publish(SiteId siteId, NavigationEvent.Type type, NodePath nodePath) {
+        return publish(siteId, type, null, nodePath);
+    }
+
+    /**
+     * Publishes the change of a node moved or renamed.
+     *
+     * @param siteId the site id
+     * @param type the type of the change
+     * @param previousPath the path of the node before the change
+     * @param nodePath the path of the node after the change
+     * @return the published change
+     * @throws IllegalArgumentException if siteId, type or nodePath is null, or if previousPath is null for a move or a rename
+     */
+    public NavigationEvent publish(SiteId siteId, NavigationEvent.Type type, NodePath previousPath, NodePath nodePath) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(type, "type");
+        Parameters.requireNonNull(nodePath, "nodePath");
+        if (previousPath == null && (type == NavigationEvent.Type.NODE_MOVED || type == NavigationEvent.Type.NODE_RENAMED))
+            throw new IllegalArgumentException("previousPath cannot be null for " + type);
+
+        return publish(siteId, Collections.singletonList(new Change(type, previousPath, nodePath))).get(0);
+    }
+
+    /**
+     * Publishes the changes of the operations of a patch, with consecutive versions.
+     *
+     * @param siteId the site id
+     * @param patch the patch applied to the navigation of the site
+     * @return the published changes
+     * @throws IllegalArgumentException if siteId or patch is null
+     */
+    public List<NavigationEvent> publish(SiteId siteId, NodePatch patch) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(patch, "patch");
+
+        NodePath base = patch.getNodePath();
+        List<Change> changes = new ArrayList<Change>(patch.size());
+        for (NodePatch.Operation operation : patch) {
+            NodePath path = base.append(operation.getNodePath());
+            switch (operation.getType()) {
+                case ADD:
+                    changes.add(new Change(NavigationEvent.Type.NODE_ADDED, null, path));
+                    break;
+                case REMOVE:
+                    changes.add(new Change(NavigationEvent.Type.NODE_REMOVED, null, path));
+                    break;
+                case RENAME:
+                    changes.add(new Change(NavigationEvent.Type.NODE_RENAMED, path, path.parent().append(operation.getName())));
+                    break;
+                case MOVE:
+                    changes.add(new Change(NavigationEvent.Type.NODE_MOVED, path, base.append(operation.getParentPath())
+                            .append(path.getLastSegment())));
+                    break;
+                case UPDATE:
+                    changes.add(new Change(NavigationEvent.Type.NODE_UPDATED, null, path));
+                    break;
+            }
+        }
+        return publish(siteId, changes);
+    }
+
+    private List<NavigationEvent> publish(SiteId siteId, List<Change> changes) {
+        if (changes.isEmpty())
+            return Collections.emptyList();
+
+        SiteQueue queue = queues.get(siteId);
+        if (queue == null) {
+            queue = new SiteQueue(siteId);
+            SiteQueue existing = queues.putIfAbsent(siteId, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+
+        List<NavigationEvent> events = new ArrayList<NavigationEvent>(changes.size());
+        boolean schedule;
+        synchronized (queue) {
+            for (Change change : changes) {
+                NavigationEvent event = new NavigationEvent(siteId, change.type, change.nodePath, change.previousPath,
+                        ++queue.version);
+                events.add(event);
+                queue.add(event);
+            }
+            schedule = !queue.scheduled;
+            queue.scheduled = true;
+        }
+        if (schedule) {
+            queue.schedule();
+        }
+        return events;
+    }
+
+    /**
+     * Drops the updates followed by an update of the same node without a structural change in between, and the priority
+     * changes followed by another one.
+     */
+    static List<NavigationEvent> coalesce(List<NavigationEvent> events) {
+        Set<NodePath> updated = new HashSet<NodePath>();
+        boolean priorityChanged = false;
+        List<NavigationEvent> coalesced = new ArrayList<NavigationEvent>(events.size());
+        for (int i = events.size() - 1; i >= 0; i--) {
+            NavigationEvent event = events.get(i);
+            switch (event.getType()) {
+                case NODE_UPDATED:
+                    if (!updated.add(event.getNodePath()))
+                        continue;
+                    break;
+                case PRIORITY_CHANGED:
+                    if (priorityChanged)
+                        continue;
+                    priorityChanged = true;
+                    break;
+                default:
+                    updated.clear();
+                    break;
+            }
+            coalesced.add(event);
+        }
+        Collections.reverse(coalesced);
+        return coalesced;
+    }
+
+    private static final class Change {
+        private final NavigationEvent.Type type;
+        private final NodePath previousPath;
+        private final NodePath nodePath;
+
+        Change(NavigationEvent.Type type, NodePath previousPath, NodePath nodePath) {
+            this.type = type;
+            this.previousPath = previousPath;
+            this.nodePath = nodePath;
+        }
+    }
+
+    private static final class Registration {
+        private final SiteId siteId;
+        private final NavigationListener listener;
+
+        Registration(SiteId siteId, NavigationListener listener) {
+            this.siteId = siteId;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * The changes of a site waiting to be delivered, and the task delivering them.
+     */
+    private final class SiteQueue implements Runnable {
+        private final SiteId siteId;
+
+        // Guarded by this
+        private long version;
+        private List<NavigationEvent> queued = new ArrayList<NavigationEvent>();
+        private boolean overflow;
+        private boolean scheduled;
+
+        SiteQueue(SiteId siteId) {
+            this.siteId = siteId;
+        }
+
+        void add(NavigationEvent event) {
+            if (overflow) {
+                // The change is covered by the invalidation, which takes its version
+                queued.set(0, invalidation(event.getVersion()));
+            } else if (queued.size() >= maxQueuedEvents) {
+                queued.clear();
+                queued.add(invalidation(event.getVersion()));
+                overflow = true;
+            } else {
+                queued.add(event);
+            }
+        }
+
+        private NavigationEvent invalidation(long version) {
+            return new NavigationEvent(siteId, NavigationEvent.Type.INVALIDATED, NodePath.root(), null, version);
+        }
+
+        /**
+         * Submits the task, or if the executor rejects it, collapses the queued changes into an invalidation delivered by the
+         * task scheduled for the next change, so that publishing never fails.
+         */
+        void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    scheduled = false;
+                    if (!overflow && !queued.isEmpty()) {
+                        NavigationEvent last = queued.get(queued.size() - 1);
+                        queued.clear();
+                        queued.add(invalidation(last.getVersion()));
+                        overflow = true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<NavigationEvent> events;
+            synchronized (this) {
+                events = queued;
+                queued = new ArrayList<NavigationEvent>();
+                overflow = false;
+            }
+
+            RuntimeException failure = null;
+            try {
+                if (!events.isEmpty()) {
+                    List<NavigationEvent> coalesced = Collections.unmodifiableList(coalesce(events));
+                    for (Registration registration : registrations) {
+                        if (registration.siteId == null || registration.siteId.equals(siteId)) {
+                            try {
+                                registration.listener.navigationChanged(siteId, coalesced);
+                            } catch (RuntimeException e) {
+                                if (failure == null) {
+                                    failure = e;
+                                }
+                            }
+                        }
+                    }
+                }
+            } finally {
+                boolean reschedule;
+                synchronized (this) {
+                    reschedule = !queued.isEmpty();
+                    scheduled = reschedule;
+                }
+                if (reschedule) {
+                    schedule();
+                }
+            }
+
+            if (failure != null)
+                throw failure;
+        }
+    }
+}
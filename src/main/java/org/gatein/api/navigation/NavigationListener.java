@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.List;
+
+import org.gatein.api.site.SiteId;
+
+/**
+ * Listener notified of the changes of navigations, for instance to invalidate the caches built from them.
+ * <p>
+ * Notifications are asynchronous, so the thread saving the navigation never waits for the listeners. The changes of a site are
+ * delivered in the order of their versions, and never concurrently, but the changes of different sites can be delivered
+ * concurrently. Changes made while a listener is being notified are delivered together in the next notification, and
+ * repeated updates of the same node may be merged into the last one.
+ * </p>
+ *
+ * @see NavigationEventDispatcher
+ * @see Navigation#addNavigationListener(NavigationListener)
+ * @see org.gatein.api.Portal#addNavigationListener(NavigationListener)
+ */
+public interface NavigationListener {
+    /**
+     * Called with the changes of the navigation of a site.
+     *
+     * @param siteId the id of the site
+     * @param events the changes, in the order of their versions
+     */
+    void navigationChanged(SiteId siteId, List<NavigationEvent> events);
+}
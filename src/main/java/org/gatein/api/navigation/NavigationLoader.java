@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.gatein.api.ApiException;
+import org.gatein.api.Portal;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Loads the navigations of many sites concurrently, for instance the group spaces of a user with many memberships. Each call
+ * uses at most <code>maxConcurrency</code> workers, the calling thread being one of them, which take the next site to load
+ * until all the sites are loaded. A site which fails to load is reported in its {@link NavigationResult} and does not prevent
+ * the other sites to be loaded.
+ * <p>
+ * This class is thread safe. Loading is blocking, so the executor should either have enough threads for the concurrent calls
+ * or use virtual threads, see {@link #newExecutor(int)}. When the executor rejects a worker, the remaining workers load its
+ * share of the sites.
+ * </p>
+ */
+public class NavigationLoader {
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    /**
+     * Creates an executor for the loaders: one thread per task with virtual threads when the JVM supports them, otherwise a
+     * fixed pool of daemon threads.
+     *
+     * @param maxThreads the number of threads of the pool if virtual threads are not supported
+     * @return the executor, which should be shut down when no longer used
+     * @throws IllegalArgumentException if maxThreads is less than 1
+     */
+    public static ExecutorService newExecutor(int maxThreads) {
+        if (maxThreads < 1)
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            // Virtual threads are not supported by this JVM
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(maxThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "navigation-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param executor the executor running the workers
+     * @param maxConcurrency the maximum number of sites loaded concurrently by a call
+     * @throws IllegalArgumentException if executor is null or maxConcurrency is less than 1
+     */
+    public NavigationLoader(Executor executor, int maxConcurrency) {
+        this.executor = Parameters.requireNonNull(executor, "executor");
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Loads the navigations of the sites and their root nodes.
+     *
+     * @param portal the portal to load the navigations from
+     * @param siteIds the ids of the sites
+     * @param visitor the visitor to determine which nodes to load
+     * @return the results, in the order of the site ids
+     * @throws IllegalArgumentException if an argument is null, or if siteIds contains null
+     * @throws ApiException if interrupted while waiting for the navigations
+     * @see org.gatein.api.Portal#getNavigations(Collection, NodeVisitor)
+     */
+    public List<NavigationResult> getNavigations(final Portal portal, Collection<SiteId> siteIds, final NodeVisitor visitor) {
+        Parameters.requireNonNull(portal, "portal");
+        Parameters.requireNonNull(visitor, "visitor");
+
+        return load(siteIds, new Task() {
+            @Override
+            public NavigationResult load(SiteId siteId) {
+                Navigation navigation = portal.getNavigation(siteId);
+                return NavigationResult.loaded(siteId, navigation, (navigation == null) ? null : navigation
+                        .getRootNode(visitor));
+            }
+        });
+    }
+
+    /**
+     * Loads the snapshots of the navigations of the sites, only loading the navigations not in the snapshots yet.
+     */
+    List<NavigationResult> getSnapshots(final Portal portal, Collection<SiteId> siteIds, final NavigationSnapshots snapshots) {
+        return load(siteIds, new Task() {
+            @Override
+            public NavigationResult load(SiteId siteId) {
+                Navigation navigation = portal.getNavigation(siteId);
+                if (navigation == null)
+                    return NavigationResult.loaded(siteId, null, (Node) null);
+
+                return NavigationResult.loaded(siteId, navigation, snapshots.getSnapshot(navigation));
+            }
+        });
+    }
+
+    private List<NavigationResult> load(Collection<SiteId> siteIds, final Task task) {
+        Parameters.requireNonNull(siteIds, "siteIds");
+        final SiteId[] ids = siteIds.toArray(new SiteId[siteIds.size()]);
+        for (SiteId siteId : ids) {
+            Parameters.requireNonNull(siteId, "siteId");
+        }
+
+        final AtomicReferenceArray<NavigationResult> results = new AtomicReferenceArray<NavigationResult>(ids.length);
+        final AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(ids.length, maxConcurrency);
+        final CountDownLatch done = new CountDownLatch(Math.max(0, workers - 1));
+
+        final Runnable drain = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < ids.length) {
+                    NavigationResult result;
+                    try {
+                        result = task.load(ids[index]);
+                    } catch (RuntimeException e) {
+                        result = NavigationResult.failed(ids[index], e);
+                    }
+                    results.set(index, result);
+                }
+            }
+        };
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drain.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        for (int i = 1; i < workers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                done.countDown();
+            }
+        }
+
+        // The calling thread is a worker as well
+        drain.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            // Makes the workers stop after their current site
+            next.set(ids.length);
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while loading the navigations of " + Arrays.asList(ids), e);
+        }
+
+        List<NavigationResult> list = new ArrayList<NavigationResult>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("maxConcurrency", maxConcurrency).toString();
+    }
+
+    private interface Task {
+        NavigationResult load(SiteId siteId);
+    }
+}
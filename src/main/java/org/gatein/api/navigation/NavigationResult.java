@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.site.SiteId;
+
+/**
+ * The outcome of loading the navigation of a site as part of a bulk load: the navigation and its root node, no navigation if
+ * the site has none, or the failure which prevented it to be loaded.
+ *
+ * @see NavigationLoader
+ * @see org.gatein.api.Portal#getNavigations(java.util.Collection, NodeVisitor)
+ */
+public final class NavigationResult {
+    static NavigationResult loaded(SiteId siteId, Navigation navigation, Node rootNode) {
+        return new NavigationResult(siteId, navigation, rootNode, null, null);
+    }
+
+    static NavigationResult loaded(SiteId siteId, Navigation navigation, NavigationSnapshot snapshot) {
+        return new NavigationResult(siteId, navigation, snapshot.getRootNode(), snapshot, null);
+    }
+
+    static NavigationResult failed(SiteId siteId, RuntimeException failure) {
+        return new NavigationResult(siteId, null, null, null, failure);
+    }
+
+    private final SiteId siteId;
+    private final Navigation navigation;
+    private final Node rootNode;
+    private final NavigationSnapshot snapshot;
+    private final RuntimeException failure;
+
+    private NavigationResult(SiteId siteId, Navigation navigation, Node rootNode, NavigationSnapshot snapshot,
+            RuntimeException failure) {
+        this.siteId = siteId;
+        this.navigation = navigation;
+        this.rootNode = rootNode;
+        this.snapshot = snapshot;
+        this.failure = failure;
+    }
+
+    public SiteId getSiteId() {
+        return siteId;
+    }
+
+    /**
+     * The navigation of the site.
+     *
+     * @return the navigation, or null if the site has no navigation or if it failed to load
+     */
+    public Navigation getNavigation() {
+        return navigation;
+    }
+
+    /**
+     * The root node loaded with the visitor.
+     *
+     * @return the root node, or null if the site has no navigation or if it failed to load
+     */
+    public Node getRootNode() {
+        return rootNode;
+    }
+
+    /**
+     * The snapshot the root node belongs to, when loaded from snapshots
+     */
+    NavigationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The exception thrown while loading the navigation of the site.
+     *
+     * @return the failure, or null if the navigation was loaded
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    @Override
+    public String toString() {
+        ObjectToStringBuilder builder = ObjectToStringBuilder.toStringBuilder(getClass()).add("siteId", siteId);
+        if (failure != null) {
+            builder.add("failure", failure);
+        } else {
+            builder.add("found", navigation != null);
+        }
+        return builder.toString();
+    }
+}
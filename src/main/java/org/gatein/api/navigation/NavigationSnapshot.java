@@ -0,0 +1,668 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.NameIndex;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+
+/**
+ * An immutable, versioned copy of the node tree of a navigation. A snapshot can be shared by any number of threads, its
+ * nodes are read only and all mutators throw an <code>UnsupportedOperationException</code>.
+ * <p>
+ * Changes are applied with {@link #withNode(Node)} and {@link #withoutNode(NodePath)}, which return a new snapshot with the
+ * next version. Only the changed nodes and their ancestors are copied, all the other nodes are shared with the previous
+ * snapshot.
+ * </p>
+ * <p>
+ * Only the fields of the {@link NodeProjection} of a snapshot are copied, accessing the other fields of its nodes throws an
+ * <code>IllegalStateException</code>.
+ * </p>
+ *
+ * @see NavigationSnapshots
+ */
+public final class NavigationSnapshot {
+    /**
+     * Creates a snapshot of the navigation with the nodes loaded by the visitor, and the fields of the projection declared by
+     * the visitor.
+     *
+     * @param navigation the navigation
+     * @param visitor the visitor to determine which nodes to load
+     * @return the snapshot
+     * @throws IllegalArgumentException if navigation or visitor is null
+     * @throws org.gatein.api.ApiException if something prevented the nodes to be loaded
+     */
+    public static NavigationSnapshot of(Navigation navigation, NodeVisitor visitor) {
+        Parameters.requireNonNull(navigation, "navigation");
+        Parameters.requireNonNull(visitor, "visitor");
+
+        return of(navigation.getSiteId(), navigation.getRootNode(visitor), NodeProjection.of(visitor));
+    }
+
+    /**
+     * Creates a snapshot with the loaded nodes of the tree of the specified root node.
+     *
+     * @param siteId the id of the site the nodes belong to
+     * @param root the root node
+     * @return the snapshot
+     * @throws IllegalArgumentException if siteId or root is null, or if root is not the root node
+     */
+    public static NavigationSnapshot of(SiteId siteId, Node root) {
+        return of(siteId, root, NodeProjection.all());
+    }
+
+    /**
+     * Creates a snapshot with the loaded nodes of the tree of the specified root node, copying only the fields of the
+     * projection.
+     *
+     * @param siteId the id of the site the nodes belong to
+     * @param root the root node
+     * @param projection the fields to copy
+     * @return the snapshot
+     * @throws IllegalArgumentException if siteId, root or projection is null, or if root is not the root node
+     */
+    public static NavigationSnapshot of(SiteId siteId, Node root, NodeProjection projection) {
+        return of(siteId, root, projection, 1);
+    }
+
+    /**
+     * Creates a snapshot with the specified version, used to keep the versions increasing when a snapshot is recreated.
+     */
+    static NavigationSnapshot of(SiteId siteId, Node root, NodeProjection projection, long version) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(root, "root");
+        Parameters.requireNonNull(projection, "projection");
+        if (!root.isRoot())
+            throw new IllegalArgumentException("node " + root.getNodePath() + " is not the root node");
+
+        return new NavigationSnapshot(siteId, version, projection, NodeData.copy(root, null, version, projection));
+    }
+
+    private final SiteId siteId;
+    private final long version;
+    private final NodeProjection projection;
+    private final NodeData data;
+    private final SnapshotNode root;
+
+    // Collected from all the nodes on first access
+    private volatile long[] visibilityTransitions;
+
+    private NavigationSnapshot(SiteId siteId, long version, NodeProjection projection, NodeData data) {
+        this.siteId = siteId;
+        this.version = version;
+        this.projection = projection;
+        this.data = data;
+        this.root = new SnapshotNode(this, data, null, NodePath.root());
+    }
+
+    /**
+     * The <code>SiteId</code> of the navigation
+     *
+     * @return the site id
+     */
+    public SiteId getSiteId() {
+        return siteId;
+    }
+
+    /**
+     * The version of this snapshot, incremented for each change.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The fields of the nodes copied in this snapshot.
+     *
+     * @return the projection
+     */
+    public NodeProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * The content hash of the root node, see {@link Nodes#contentHash(Node)}. Only the nodes changed since the previous
+     * snapshot and their ancestors are hashed again, the hashes of the other nodes are shared with the previous snapshot.
+     *
+     * @return the content hash
+     */
+    public long getContentHash() {
+        return data.contentHash();
+    }
+
+    /**
+     * Returns the first time after the specified time at which the visibility of one of the nodes of this snapshot changes,
+     * or -1 if it never changes, see {@link Nodes#nextVisibilityTransition(Node, long)}. The transitions of the nodes are
+     * collected once per snapshot, so this is a binary search.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the time of the next visibility transition or -1
+     */
+    public long nextVisibilityTransition(long time) {
+        long[] transitions = visibilityTransitions;
+        if (transitions == null) {
+            VisibilityTransitions collected = new VisibilityTransitions();
+            data.addVisibilityTransitions(collected);
+            transitions = collected.toArray();
+            visibilityTransitions = transitions;
+        }
+        return VisibilityTransitions.next(transitions, time);
+    }
+
+    /**
+     * Returns an entity tag of the content of this snapshot, which only changes when the content of the nodes changes.
+     *
+     * @return the entity tag
+     */
+    public String getETag() {
+        return String.format("%016x", data.contentHash());
+    }
+
+    /**
+     * Returns the root node of the snapshot.
+     *
+     * @return the root node
+     */
+    public Node getRootNode() {
+        return root;
+    }
+
+    /**
+     * Returns a node represented by the node path or null if the node was not found or has not been loaded.
+     *
+     * @param nodePath the path to the node
+     * @return the node or null
+     * @throws IllegalArgumentException if nodePath is null
+     */
+    public Node getNode(NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        SnapshotNode node = root;
+        for (String segment : nodePath) {
+            if (!node.isChildrenLoaded())
+                return null;
+
+            node = node.getChild(segment);
+            if (node == null)
+                return null;
+        }
+        return node;
+    }
+
+    /**
+     * Returns a snapshot where the node and its loaded descendants replace the nodes at the node's path. Nodes which have not
+     * changed are shared with this snapshot, and if the children of a node have not been loaded the previous children are
+     * kept.
+     *
+     * @param node the node which has been added or changed
+     * @return the new snapshot, or this snapshot if nothing changed
+     * @throws IllegalArgumentException if node is null, or if the parent of the node is not part of this snapshot
+     */
+    public NavigationSnapshot withNode(Node node) {
+        Parameters.requireNonNull(node, "node");
+
+        NodePath path = node.getNodePath();
+        NodeData previous = getData(path);
+        int insertAt = -1;
+        if (path.size() > 0 && previous == null) {
+            NodeData parent = getData(path.parent());
+            if (parent == null || parent.children == null)
+                throw new IllegalArgumentException("Parent of node " + path + " is not part of the snapshot");
+
+            insertAt = insertionIndex(parent, node);
+        }
+
+        long next = version + 1;
+        NodeData copy = NodeData.copy(node, previous, next, projection);
+        if (copy == previous)
+            return this;
+
+        return new NavigationSnapshot(siteId, next, projection, replace(data, path, 0, copy, insertAt, next));
+    }
+
+    /**
+     * Returns a snapshot without the node represented by the node path.
+     *
+     * @param nodePath the path of the node which has been removed
+     * @return the new snapshot, or this snapshot if the node was not part of this snapshot
+     * @throws IllegalArgumentException if nodePath is null or is the root path
+     */
+    public NavigationSnapshot withoutNode(NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+        if (nodePath.size() == 0)
+            throw new IllegalArgumentException("The root node cannot be removed");
+
+        if (getData(nodePath) == null)
+            return this;
+
+        long next = version + 1;
+        return new NavigationSnapshot(siteId, next, projection, replace(data, nodePath, 0, null, -1, next));
+    }
+
+    private NodeData getData(NodePath nodePath) {
+        NodeData node = data;
+        for (String segment : nodePath) {
+            int index = (node.children == null) ? -1 : node.indexOf(segment);
+            if (index < 0)
+                return null;
+
+            node = node.children[index];
+        }
+        return node;
+    }
+
+    /**
+     * The index of a new node among the children of its parent in the snapshot: after the siblings which precede it in its
+     * saved parent, or last if its parent is not loaded.
+     */
+    private static int insertionIndex(NodeData parent, Node node) {
+        Node saved = node.getParent();
+        if (saved == null || !saved.isChildrenLoaded())
+            return parent.children.length;
+
+        int index = 0;
+        for (Node sibling : saved) {
+            if (sibling.getName().equals(node.getName()))
+                return index;
+            if (parent.indexOf(sibling.getName()) >= 0) {
+                index++;
+            }
+        }
+        return parent.children.length;
+    }
+
+    /**
+     * Copies the nodes from the specified node down to the changed path, all other nodes are shared. A replacement which is
+     * not a child of its parent yet is inserted at insertAt.
+     */
+    private static NodeData replace(NodeData node, NodePath path, int depth, NodeData replacement, int insertAt,
+            long version) {
+        if (depth == path.size())
+            return replacement;
+
+        String segment = path.getSegment(depth);
+        int index = node.indexOf(segment);
+        NodeData child = (index < 0) ? null : node.children[index];
+        NodeData newChild = replace(child, path, depth + 1, replacement, insertAt, version);
+
+        NodeData[] children;
+        if (newChild == null) {
+            children = new NodeData[node.children.length - 1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            System.arraycopy(node.children, index + 1, children, index, children.length - index);
+        } else if (index < 0) {
+            children = new NodeData[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0, insertAt);
+            children[insertAt] = newChild;
+            System.arraycopy(node.children, insertAt, children, insertAt + 1, node.children.length - insertAt);
+        } else {
+            children = node.children.clone();
+            children[index] = newChild;
+        }
+        return node.withChildren(children, version);
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("siteId", siteId).add("version", version).toString();
+    }
+
+    /**
+     * The immutable state of a node, shared between snapshots.
+     */
+    static final class NodeData {
+        private static final NodeData[] NO_CHILDREN = new NodeData[0];
+
+        final String name;
+        final LocalizedString displayNames;
+        final String iconName;
+        final Visibility visibility;
+        final PageId pageId;
+        final Attributes attributes;
+        final NodeData[] children;
+        final long version;
+
+        // Built on first lookup of a wide node, never modified once published
+        private volatile NameIndex childIndex;
+
+        // Computed on first access, 0 if not computed yet
+        private volatile long contentHash;
+
+        private NodeData(String name, LocalizedString displayNames, String iconName, Visibility visibility, PageId pageId,
+                Attributes attributes, NodeData[] children, long version) {
+            this.name = name;
+            this.displayNames = displayNames;
+            this.iconName = iconName;
+            this.visibility = visibility;
+            this.pageId = pageId;
+            this.attributes = attributes;
+            this.children = children;
+            this.version = version;
+        }
+
+        /**
+         * Copies the fields of the projection of the node, reusing the previous data of the node and of its descendants when
+         * they have not changed.
+         */
+        static NodeData copy(Node node, NodeData previous, long version, NodeProjection projection) {
+            NodeData[] children;
+            boolean childrenChanged;
+            if (node.isChildrenLoaded()) {
+                int count = node.getChildCount();
+                children = (count == 0) ? NO_CHILDREN : new NodeData[count];
+                childrenChanged = previous == null || previous.children == null || previous.children.length != count;
+                int i = 0;
+                for (Node child : node) {
+                    NodeData previousChild = null;
+                    if (previous != null && previous.children != null) {
+                        int index = previous.indexOf(child.getName());
+                        previousChild = (index < 0) ? null : previous.children[index];
+                    }
+                    children[i] = copy(child, previousChild, version, projection);
+                    if (!childrenChanged) {
+                        childrenChanged = previousChild == null || children[i] != previous.children[i];
+                    }
+                    i++;
+                }
+            } else {
+                children = (previous == null) ? null : previous.children;
+                childrenChanged = false;
+            }
+
+            NodeData data = new NodeData(node.getName(), displayNames(node, projection), iconName(node, projection),
+                    visibility(node, projection), pageId(node, projection), attributes(node, projection), children, version);
+            if (previous != null && !childrenChanged && previous.sameState(data))
+                return previous;
+
+            return data;
+        }
+
+        private static LocalizedString displayNames(Node node, NodeProjection projection) {
+            if (!projection.includes(NodeProjection.Field.DISPLAY_NAMES))
+                return null;
+
+            LocalizedString displayNames = node.getDisplayNames();
+            return (displayNames == null) ? null : new LocalizedString(displayNames);
+        }
+
+        private static String iconName(Node node, NodeProjection projection) {
+            return projection.includes(NodeProjection.Field.ICON_NAME) ? node.getIconName() : null;
+        }
+
+        private static Visibility visibility(Node node, NodeProjection projection) {
+            return projection.includes(NodeProjection.Field.VISIBILITY) ? node.getVisibility() : null;
+        }
+
+        private static PageId pageId(Node node, NodeProjection projection) {
+            return projection.includes(NodeProjection.Field.PAGE_ID) ? node.getPageId() : null;
+        }
+
+        private static Attributes attributes(Node node, NodeProjection projection) {
+            Attributes attributes = projection.includes(NodeProjection.Field.ATTRIBUTES) ? node.getAttributes() : null;
+            return (attributes == null || attributes.isEmpty()) ? ReadOnlyNode.ReadOnlyAttributes.EMPTY
+                    : new ReadOnlyNode.ReadOnlyAttributes(attributes);
+        }
+
+        NodeData withChildren(NodeData[] children, long version) {
+            return new NodeData(name, displayNames, iconName, visibility, pageId, attributes, children, version);
+        }
+
+        long contentHash() {
+            long hash = contentHash;
+            if (hash == 0) {
+                long childrenHash;
+                if (children == null) {
+                    childrenHash = NodeHash.notLoaded();
+                } else {
+                    childrenHash = NodeHash.emptyChildren();
+                    for (NodeData child : children) {
+                        childrenHash = NodeHash.child(childrenHash, child.contentHash());
+                    }
+                }
+                hash = NodeHash.node(NodeHash.fields(name, displayNames, iconName, visibility, pageId, attributes),
+                        childrenHash);
+                contentHash = hash;
+            }
+            return hash;
+        }
+
+        void addVisibilityTransitions(VisibilityTransitions transitions) {
+            transitions.add(visibility);
+            if (children != null) {
+                for (NodeData child : children) {
+                    child.addVisibilityTransitions(transitions);
+                }
+            }
+        }
+
+        int indexOf(String childName) {
+            NodeData[] children = this.children;
+            if (children.length <= NodeChildren.LINEAR_THRESHOLD) {
+                for (int i = 0; i < children.length; i++) {
+                    if (children[i].name.equals(childName))
+                        return i;
+                }
+                return -1;
+            }
+
+            NameIndex index = childIndex;
+            if (index == null) {
+                index = new NameIndex(children.length);
+                for (int i = 0; i < children.length; i++) {
+                    index.put(children[i].name, i);
+                }
+                childIndex = index;
+            }
+            return index.get(childName);
+        }
+
+        private boolean sameState(NodeData data) {
+            return equal(name, data.name) && equal(displayNames, data.displayNames) && equal(iconName, data.iconName)
+                    && equal(visibility, data.visibility) && equal(pageId, data.pageId) && attributes.equals(data.attributes);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Read only node view of the data of a snapshot. Children views are created on first access and then shared.
+     */
+    static final class SnapshotNode extends ReadOnlyNode {
+        private final NavigationSnapshot snapshot;
+        private final NodeData data;
+        private final SnapshotNode parent;
+        private final NodePath nodePath;
+        private volatile SnapshotNode[] children;
+
+        SnapshotNode(NavigationSnapshot snapshot, NodeData data, SnapshotNode parent, NodePath nodePath) {
+            this.snapshot = snapshot;
+            this.data = data;
+            this.parent = parent;
+            this.nodePath = nodePath;
+        }
+
+        /**
+         * The version of the snapshot in which this node or one of its descendants was last changed
+         */
+        @Override
+        public long getVersion() {
+            return data.version;
+        }
+
+        long getContentHash() {
+            return data.contentHash();
+        }
+
+        NavigationSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        @Override
+        NodeProjection getProjection() {
+            return snapshot.projection;
+        }
+
+        @Override
+        SiteId getSiteId() {
+            return snapshot.siteId;
+        }
+
+        @Override
+        public String getName() {
+            return data.name;
+        }
+
+        @Override
+        public Node getParent() {
+            return parent;
+        }
+
+        @Override
+        public NodePath getNodePath() {
+            return nodePath;
+        }
+
+        @Override
+        public Visibility getVisibility() {
+            snapshot.projection.checkLoaded(NodeProjection.Field.VISIBILITY, nodePath);
+            return data.visibility;
+        }
+
+        @Override
+        public String getIconName() {
+            snapshot.projection.checkLoaded(NodeProjection.Field.ICON_NAME, nodePath);
+            return data.iconName;
+        }
+
+        @Override
+        public PageId getPageId() {
+            snapshot.projection.checkLoaded(NodeProjection.Field.PAGE_ID, nodePath);
+            return data.pageId;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            snapshot.projection.checkLoaded(NodeProjection.Field.ATTRIBUTES, nodePath);
+            return data.attributes;
+        }
+
+        @Override
+        public LocalizedString getDisplayNames() {
+            snapshot.projection.checkLoaded(NodeProjection.Field.DISPLAY_NAMES, nodePath);
+            return (data.displayNames == null) ? null : new LocalizedString(data.displayNames);
+        }
+
+        @Override
+        public String getDisplayName() {
+            snapshot.projection.checkLoaded(NodeProjection.Field.DISPLAY_NAMES, nodePath);
+            if (data.displayNames != null && !data.displayNames.isLocalized())
+                return data.displayNames.getValue();
+
+            return super.getDisplayName();
+        }
+
+        @Override
+        public boolean isChildrenLoaded() {
+            return data.children != null;
+        }
+
+        @Override
+        public SnapshotNode getChild(String childName) {
+            Parameters.requireNonNull(childName, "childName");
+
+            SnapshotNode[] nodes = children();
+            int index = (nodes.length == 0) ? -1 : data.indexOf(childName);
+            return (index < 0) ? null : nodes[index];
+        }
+
+        @Override
+        public SnapshotNode getChild(int index) {
+            return children()[index];
+        }
+
+        @Override
+        public int getChildCount() {
+            return children().length;
+        }
+
+        @Override
+        public int indexOf(String childName) {
+            Parameters.requireNonNull(childName, "childName");
+
+            return children().length == 0 ? -1 : data.indexOf(childName);
+        }
+
+        @Override
+        public Iterator<Node> iterator() {
+            final SnapshotNode[] nodes = children();
+            return new Iterator<Node>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < nodes.length;
+                }
+
+                @Override
+                public Node next() {
+                    if (index >= nodes.length)
+                        throw new NoSuchElementException();
+
+                    return nodes[index++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Node " + nodePath + " is read only");
+                }
+            };
+        }
+
+        private SnapshotNode[] children() {
+            SnapshotNode[] nodes = children;
+            if (nodes == null) {
+                if (data.children == null)
+                    throw new IllegalStateException("Children of node " + nodePath + " have not been loaded");
+
+                nodes = new SnapshotNode[data.children.length];
+                for (int i = 0; i < nodes.length; i++) {
+                    NodeData child = data.children[i];
+                    nodes[i] = new SnapshotNode(snapshot, child, this, nodePath.append(child.name));
+                }
+                children = nodes;
+            }
+            return nodes;
+        }
+    }
+}
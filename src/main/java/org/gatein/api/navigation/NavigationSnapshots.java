@@ -0,0 +1,422 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Holds one {@link NavigationSnapshot} per site, shared by all the threads reading the navigation. Writes done through
+ * {@link #saveNode(Navigation, Node)} and {@link #removeNode(Navigation, NodePath)} are saved to the navigation and then
+ * published as a new version of the snapshot, whose changes are published to the {@link NavigationEventDispatcher} if one is
+ * given.
+ */
+public class NavigationSnapshots {
+    private final ConcurrentMap<SiteId, NavigationSnapshot> snapshots = new ConcurrentHashMap<SiteId, NavigationSnapshot>();
+    private final NodeVisitor visitor;
+    private final PageNodeIndex index;
+    private final NavigationEventDispatcher dispatcher;
+
+    // The locks publishing the snapshots of each site, kept for the lifetime of this object as there are few sites
+    private final ConcurrentMap<SiteId, Object> publishLocks = new ConcurrentHashMap<SiteId, Object>();
+
+    // The subtrees being saved per site, guarded by itself
+    private final Map<SiteId, List<NodePath>> saving = new HashMap<SiteId, List<NodePath>>();
+
+    // The versions of the discarded snapshots, so that recreated snapshots never reuse a version
+    private final ConcurrentMap<SiteId, Long> discardedVersions = new ConcurrentHashMap<SiteId, Long>();
+
+    /**
+     * Creates snapshots with all the nodes of the navigations.
+     */
+    public NavigationSnapshots() {
+        this(Nodes.visitAll());
+    }
+
+    /**
+     * Creates snapshots with the nodes loaded by the visitor.
+     *
+     * @param visitor the visitor to determine which nodes to load when a snapshot is created
+     * @throws IllegalArgumentException if visitor is null
+     */
+    public NavigationSnapshots(NodeVisitor visitor) {
+        this(visitor, null, null);
+    }
+
+    /**
+     * Creates snapshots with the nodes loaded by the visitor, and keeps the index up to date with the published snapshots.
+     *
+     * @param visitor the visitor to determine which nodes to load when a snapshot is created, which should load all the nodes
+     *        for the index to be complete, and whose projection must include the page id
+     * @param index the index of the nodes pointing at each page
+     * @throws IllegalArgumentException if visitor or index is null, or if the projection of the visitor does not include the
+     *         page id
+     */
+    public NavigationSnapshots(NodeVisitor visitor, PageNodeIndex index) {
+        this(visitor, Parameters.requireNonNull(index, "index"), null);
+    }
+
+    /**
+     * Creates snapshots with the nodes loaded by the visitor, keeps the index up to date with the published snapshots and
+     * publishes the changes between consecutive snapshots to the dispatcher.
+     *
+     * @param visitor the visitor to determine which nodes to load when a snapshot is created, whose projection must include
+     *        the page id when index is not null
+     * @param index the index of the nodes pointing at each page, or null
+     * @param dispatcher the dispatcher notifying the listeners of the changes, or null
+     * @throws IllegalArgumentException if visitor is null, or if index is not null and the projection of the visitor does not
+     *         include the page id
+     */
+    public NavigationSnapshots(NodeVisitor visitor, PageNodeIndex index, NavigationEventDispatcher dispatcher) {
+        this.visitor = Parameters.requireNonNull(visitor, "visitor");
+        if (index != null && !NodeProjection.of(visitor).includes(NodeProjection.Field.PAGE_ID))
+            throw new IllegalArgumentException("The projection of the visitor must include the page id to update the index");
+
+        this.index = index;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the current snapshot of the navigation, creating it if needed.
+     *
+     * @param navigation the navigation
+     * @return the current snapshot
+     * @throws IllegalArgumentException if navigation is null
+     * @throws org.gatein.api.ApiException if something prevented the nodes to be loaded
+     */
+    public NavigationSnapshot getSnapshot(Navigation navigation) {
+        Parameters.requireNonNull(navigation, "navigation");
+
+        SiteId siteId = navigation.getSiteId();
+        NavigationSnapshot snapshot = snapshots.get(siteId);
+        if (snapshot == null) {
+            Long discarded = discardedVersions.get(siteId);
+            snapshot = NavigationSnapshot.of(siteId, navigation.getRootNode(visitor), NodeProjection.of(visitor),
+                    (discarded == null) ? 1 : discarded + 1);
+            synchronized (publishLock(siteId)) {
+                NavigationSnapshot existing = snapshots.putIfAbsent(siteId, snapshot);
+                if (existing != null) {
+                    snapshot = existing;
+                } else if (index != null) {
+                    index.update(siteId, snapshot);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Saves the node to the navigation, and publishes the changes as a new snapshot.
+     * <p>
+     * When the node is versioned, the save is a compare-and-set on the node's subtree: it fails if the subtree was changed
+     * since the node was loaded, otherwise only the changes of the subtree are saved, as a patch of the current snapshot. The
+     * versions of the nodes are the versions of the snapshots, so the nodes must be loaded from the snapshots. Nodes of
+     * independent subtrees can be saved concurrently, but saving a node while one of its ancestors or descendants is being
+     * saved fails as well.
+     * </p>
+     * <p>
+     * When the node is not versioned, the entire tree is saved and compared to the snapshot. Such saves never fail because
+     * of concurrent saves, the last one wins.
+     * </p>
+     *
+     * @param navigation the navigation the node belongs to
+     * @param node the node to save
+     * @return the snapshot including the changes
+     * @throws IllegalArgumentException if navigation or node is null
+     * @throws NodeConflictException if the node's subtree was changed since it was loaded, or is being saved concurrently
+     * @throws org.gatein.api.ApiException if something prevented the node to be saved
+     * @see Navigation#saveNode(Node)
+     * @see Node#getVersion()
+     */
+    public NavigationSnapshot saveNode(Navigation navigation, Node node) {
+        Parameters.requireNonNull(navigation, "navigation");
+        Parameters.requireNonNull(node, "node");
+
+        SiteId siteId = navigation.getSiteId();
+        if (node.getVersion() == 0) {
+            // Saving a node saves the entire tree, so the whole tree is compared to the snapshot
+            Node root = node;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+
+            // Not claimed, so that unversioned saves never fail because of concurrent saves, the last save wins
+            navigation.saveNode(node);
+            return publishNode(navigation, root, null);
+        }
+
+        // The node may have been renamed locally, so the subtree is claimed at the path it was loaded from
+        Node loaded = loaded(getSnapshot(navigation), node);
+        NodePath nodePath = (loaded == null) ? node.getNodePath() : loaded.getNodePath();
+        claim(siteId, nodePath);
+        try {
+            // No other thread can change the subtree until it is released, so the check holds until the patch is published
+            Node current = loaded(getSnapshot(navigation), node);
+            if (current != null && !current.getNodePath().equals(nodePath)) {
+                current = null;
+            }
+            List<NodePath> conflicts = new ArrayList<NodePath>();
+            conflicts(current, node, conflicts);
+            if (!conflicts.isEmpty())
+                throw new NodeConflictException("Nodes " + conflicts + " of site " + siteId
+                        + " were changed since they were loaded", conflicts);
+
+            NodePatch patch = NodePatch.diff(current, node);
+            boolean renamed = !current.getName().equals(node.getName());
+            if (renamed) {
+                patch = NodePatch.renamed(patch, node.getName());
+            } else if (patch.isEmpty()) {
+                return getSnapshot(navigation);
+            }
+
+            navigation.applyPatch(patch);
+            return publishNode(navigation, node, renamed ? nodePath : null);
+        } finally {
+            release(siteId, nodePath);
+        }
+    }
+
+    /**
+     * Finds the node of the snapshot a node was loaded from, following the renames of the node and of its ancestors.
+     */
+    private static Node loaded(NavigationSnapshot snapshot, Node node) {
+        Node parent = node.getParent();
+        if (parent == null)
+            return snapshot.getRootNode();
+
+        return loaded(loaded(snapshot, parent), node);
+    }
+
+    /**
+     * Finds the child of the current parent a node was loaded from: the child with the same name, or for a node renamed
+     * locally, the child which is no longer a child of the local parent, preferring the one with the same version.
+     */
+    private static Node loaded(Node currentParent, Node node) {
+        if (currentParent == null || !currentParent.isChildrenLoaded())
+            return null;
+
+        Node child = currentParent.getChild(node.getName());
+        if (child != null)
+            return child;
+
+        Node parent = node.getParent();
+        if (node.getVersion() == 0 || parent == null || !parent.isChildrenLoaded())
+            return null;
+
+        Node candidate = null;
+        int candidates = 0;
+        for (Node sibling : currentParent) {
+            if (!parent.hasChild(sibling.getName())) {
+                if (sibling.getVersion() == node.getVersion())
+                    return sibling;
+
+                candidate = sibling;
+                candidates++;
+            }
+        }
+        return (candidates == 1) ? candidate : null;
+    }
+
+    /**
+     * Collects the top most nodes of the subtree whose version differs from the current version. Nodes added locally have no
+     * version and are never conflicting.
+     */
+    private static void conflicts(Node current, Node node, List<NodePath> conflicts) {
+        if (node.getVersion() == 0)
+            return;
+        if (current == null) {
+            conflicts.add(node.getNodePath());
+            return;
+        }
+        if (current.getVersion() == node.getVersion())
+            return;
+
+        int count = conflicts.size();
+        if (current.isChildrenLoaded() && node.isChildrenLoaded()) {
+            for (Node child : node) {
+                conflicts(loaded(current, child), child, conflicts);
+            }
+        }
+        if (conflicts.size() == count) {
+            // The node itself or its children list changed
+            conflicts.add(node.getNodePath());
+        }
+    }
+
+    /**
+     * Publishes the node, replacing the node at the previous path if it was renamed.
+     */
+    private NavigationSnapshot publishNode(Navigation navigation, Node node, NodePath previousPath) {
+        SiteId siteId = navigation.getSiteId();
+        while (true) {
+            NavigationSnapshot current = snapshots.get(siteId);
+            if (current == null)
+                return getSnapshot(navigation);
+
+            NavigationSnapshot updated = (previousPath == null) ? current.withNode(node) : current.withoutNode(
+                    previousPath).withNode(node);
+            if (updated == current || publish(siteId, current, updated, (previousPath == null) ? node.getNodePath()
+                    : previousPath.parent()))
+                return updated;
+        }
+    }
+
+    /**
+     * Removes the node from the navigation, and publishes a new snapshot without the node.
+     *
+     * @param navigation the navigation the node belongs to
+     * @param nodePath the path of the node to remove
+     * @return true if the node was removed, false otherwise
+     * @throws IllegalArgumentException if navigation or nodePath is null
+     * @throws org.gatein.api.EntityNotFoundException if the node could not be found
+     * @throws NodeConflictException if the node, one of its ancestors or one of its descendants is being saved concurrently
+     * @throws org.gatein.api.ApiException if something prevented the node to be removed
+     * @see Navigation#removeNode(NodePath)
+     */
+    public boolean removeNode(Navigation navigation, NodePath nodePath) {
+        Parameters.requireNonNull(navigation, "navigation");
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        SiteId siteId = navigation.getSiteId();
+        claim(siteId, nodePath);
+        try {
+            boolean removed = navigation.removeNode(nodePath);
+            while (true) {
+                NavigationSnapshot current = snapshots.get(siteId);
+                if (current == null)
+                    return removed;
+
+                NavigationSnapshot updated = current.withoutNode(nodePath);
+                if (updated == current || publish(siteId, current, updated, nodePath.parent()))
+                    return removed;
+            }
+        } finally {
+            release(siteId, nodePath);
+        }
+    }
+
+    /**
+     * Marks the subtree as being saved, failing if an overlapping subtree is already being saved. The lock is only held to
+     * update the marks, never while saving.
+     */
+    private void claim(SiteId siteId, NodePath nodePath) {
+        synchronized (saving) {
+            List<NodePath> paths = saving.get(siteId);
+            if (paths == null) {
+                paths = new ArrayList<NodePath>(2);
+                saving.put(siteId, paths);
+            }
+            for (NodePath path : paths) {
+                if (path.equals(nodePath) || path.isParent(nodePath) || nodePath.isParent(path))
+                    throw new NodeConflictException("Node " + path + " of site " + siteId + " is being saved",
+                            Collections.singletonList(path));
+            }
+            paths.add(nodePath);
+        }
+    }
+
+    private void release(SiteId siteId, NodePath nodePath) {
+        synchronized (saving) {
+            List<NodePath> paths = saving.get(siteId);
+            paths.remove(nodePath);
+            if (paths.isEmpty()) {
+                saving.remove(siteId);
+            }
+        }
+    }
+
+    /**
+     * Computes the changes of the snapshot, which are all in the subtree of the changed node or of its closest ancestor in
+     * both snapshots.
+     */
+    private static NodePatch diff(NavigationSnapshot current, NavigationSnapshot updated, NodePath changed) {
+        Node from = current.getNode(changed);
+        Node to = updated.getNode(changed);
+        while (from == null || to == null) {
+            changed = changed.parent();
+            from = current.getNode(changed);
+            to = updated.getNode(changed);
+        }
+        return NodePatch.diff(from, to);
+    }
+
+    /**
+     * Replaces the current snapshot of the site, then updates the index and publishes the changes. This is done under the lock
+     * of the site so that the index and the listeners see the snapshots of a site in the order they were published, while the
+     * snapshots of other sites are published concurrently.
+     */
+    private boolean publish(SiteId siteId, NavigationSnapshot current, NavigationSnapshot updated, NodePath changed) {
+        // Diffing is the expensive part, so it is done before taking the lock even if the replace may fail
+        NodePatch patch = dispatcher == null ? null : diff(current, updated, changed);
+        synchronized (publishLock(siteId)) {
+            if (!snapshots.replace(siteId, current, updated))
+                return false;
+
+            if (index != null) {
+                index.update(siteId, updated);
+            }
+            if (patch != null) {
+                dispatcher.publish(siteId, patch);
+            }
+            return true;
+        }
+    }
+
+    private Object publishLock(SiteId siteId) {
+        Object lock = publishLocks.get(siteId);
+        if (lock == null) {
+            Object existing = publishLocks.putIfAbsent(siteId, lock = new Object());
+            if (existing != null) {
+                lock = existing;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Discards the snapshot of the site, the next call to {@link #getSnapshot(Navigation)} creates a new one.
+     *
+     * @param siteId the site id
+     * @throws IllegalArgumentException if siteId is null
+     */
+    public void invalidate(SiteId siteId) {
+        Parameters.requireNonNull(siteId, "siteId");
+        synchronized (publishLock(siteId)) {
+            NavigationSnapshot removed = snapshots.remove(siteId);
+            if (removed != null) {
+                discardedVersions.put(siteId, removed.getVersion());
+                if (dispatcher != null) {
+                    dispatcher.publish(siteId, NavigationEvent.Type.INVALIDATED, NodePath.root());
+                }
+            }
+        }
+    }
+}
@@ -33,6 +33,10 @@ import org.gatein.api.page.PageId;
 /**
  * A node object which represents the current state of a node retrieved from the portal. All changes to the node are not saved
  * until {@link Navigation#saveNode(Node)} is called.
+ * <p>
+ * When a node is loaded with a {@link NodeProjection}, accessing a field which is not part of the projection throws an
+ * <code>IllegalStateException</code>.
+ * </p>
  *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -67,6 +71,17 @@ public interface Node extends LocalizedDisplayable, Iterable<Node>, Serializable
      */
     NodePath getNodePath();
 
+    /**
+     * The version of the subtree of this node when it was loaded. The version changes whenever the node or one of its
+     * descendants is changed and saved, but not when the node is modified locally, so it is used to detect the concurrent
+     * changes when the node is saved.
+     *
+     * @return the version of the subtree, or 0 if the node was not loaded from a versioned navigation
+     * @see Navigation#saveNode(Node)
+     * @see NodeConflictException
+     */
+    long getVersion();
+
     /**
      * Resolves the URI given the current context.
      *
@@ -78,6 +93,7 @@ public interface Node extends LocalizedDisplayable, Iterable<Node>, Serializable
      * If the node is visible. Convenience method for doing <code>Node.getVisibility().isVisible()</code>
      *
      * @return true if the node is visible, false otherwise
+     * @throws IllegalStateException if the node was loaded without {@link NodeProjection.Field#VISIBILITY}
      */
     boolean isVisible();
 
@@ -85,6 +101,7 @@ public interface Node extends LocalizedDisplayable, Iterable<Node>, Serializable
      * Returns the visibility object of this navigation node. This should never be null.
      *
      * @return the visibility of this node. This should never be null.
+     * @throws IllegalStateException if the node was loaded without {@link NodeProjection.Field#VISIBILITY}
      */
     Visibility getVisibility();
 
@@ -117,6 +134,7 @@ public interface Node extends LocalizedDisplayable, Iterable<Node>, Serializable
      * Name of the icon for this navigation node. Can be null.
      *
      * @return the icon name or null
+     * @throws IllegalStateException if the node was loaded without {@link NodeProjection.Field#ICON_NAME}
      */
     String getIconName();
 
@@ -131,6 +149,7 @@ public interface Node extends LocalizedDisplayable, Iterable<Node>, Serializable
      * The <code>PageId</code> of the page this node points to.
      *
      * @return the page id or null
+     * @throws IllegalStateException if the node was loaded without {@link NodeProjection.Field#PAGE_ID}
      */
     PageId getPageId();
 
@@ -149,6 +168,7 @@ public interface Node extends LocalizedDisplayable, Iterable<Node>, Serializable
      * called.
      *
      * @return {@link Attributes} of this node.
+     * @throws IllegalStateException if the node was loaded without {@link NodeProjection.Field#ATTRIBUTES}
      */
     Attributes getAttributes();
 
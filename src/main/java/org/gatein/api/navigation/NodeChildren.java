@@ -0,0 +1,399 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.gatein.api.internal.NameIndex;
+import org.gatein.api.internal.Parameters;
+
+/**
+ * An ordered container of the children of a node, which can be used by <code>Node</code> implementations. Children are kept
+ * in insertion order, and looked up by name in constant time with a hash table which is kept consistent when children are
+ * added, removed, moved, renamed or sorted. Children names are unique.
+ * <p>
+ * The table is only created when the number of children exceeds a small threshold, so that the many small nodes of a tree
+ * do not each allocate one; below it children are looked up with a linear scan.
+ * This class is not thread safe.
+ * </p>
+ *
+ * @param <N> the type of the nodes
+ */
+public final class NodeChildren<N extends Node> implements Iterable<N> {
+    static final int LINEAR_THRESHOLD = 8;
+
+    private Object[] nodes;
+    private String[] names;
+    private int size;
+    private NameIndex index;
+
+    /**
+     * Creates an empty container.
+     */
+    public NodeChildren() {
+        this(LINEAR_THRESHOLD);
+    }
+
+    /**
+     * Creates an empty container with the specified initial capacity.
+     *
+     * @param capacity the initial capacity
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public NodeChildren(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity cannot be negative");
+
+        nodes = new Object[capacity];
+        names = new String[capacity];
+    }
+
+    /**
+     * The number of children
+     *
+     * @return the number of children
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * If there are no children
+     *
+     * @return true if there are no children
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the child at the specified index.
+     *
+     * @param index the index of the child
+     * @return the child
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public N get(int index) {
+        checkIndex(index, size);
+        return (N) nodes[index];
+    }
+
+    /**
+     * Returns the child with the specified name.
+     *
+     * @param name the name of the child
+     * @return the child or null if there is no child with this name
+     * @throws IllegalArgumentException if name is null
+     */
+    @SuppressWarnings("unchecked")
+    public N get(String name) {
+        int i = indexOf(name);
+        return (i < 0) ? null : (N) nodes[i];
+    }
+
+    /**
+     * Returns the index of the child with the specified name.
+     *
+     * @param name the name of the child
+     * @return the index of the child or -1 if there is no child with this name
+     * @throws IllegalArgumentException if name is null
+     */
+    public int indexOf(String name) {
+        Parameters.requireNonNull(name, "name");
+
+        if (index != null)
+            return index.get(name);
+
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * If there is a child with the specified name.
+     *
+     * @param name the name of the child
+     * @return true if there is a child with this name
+     * @throws IllegalArgumentException if name is null
+     */
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Adds a child after the last child.
+     *
+     * @param node the child to add
+     * @throws IllegalArgumentException if node is null or if there is already a child with the same name
+     */
+    public void add(N node) {
+        add(size, node);
+    }
+
+    /**
+     * Adds a child at the specified index, shifting the following children.
+     *
+     * @param index the index of the new child
+     * @param node the child to add
+     * @throws IllegalArgumentException if node is null or if there is already a child with the same name
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void add(int index, N node) {
+        Parameters.requireNonNull(node, "node");
+        String name = node.getName();
+        checkIndex(index, size + 1);
+        if (contains(name))
+            throw new IllegalArgumentException("Node with name " + name + " already exists");
+
+        if (size == nodes.length) {
+            int capacity = Math.max(size + (size >> 1), LINEAR_THRESHOLD);
+            nodes = Arrays.copyOf(nodes, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        if (this.index != null && index < size) {
+            this.index.shift(index, size, 1);
+        }
+        System.arraycopy(nodes, index, nodes, index + 1, size - index);
+        System.arraycopy(names, index, names, index + 1, size - index);
+        nodes[index] = node;
+        names[index] = name;
+        size++;
+
+        if (this.index != null) {
+            this.index.put(name, index);
+        } else if (size > LINEAR_THRESHOLD) {
+            reindex();
+        }
+    }
+
+    /**
+     * Removes the child at the specified index, shifting the following children.
+     *
+     * @param index the index of the child
+     * @return the removed child
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public N remove(int index) {
+        N node = get(index);
+        if (this.index != null) {
+            this.index.remove(names[index]);
+            this.index.shift(index + 1, size, -1);
+        }
+        System.arraycopy(nodes, index + 1, nodes, index, size - index - 1);
+        System.arraycopy(names, index + 1, names, index, size - index - 1);
+        size--;
+        nodes[size] = null;
+        names[size] = null;
+        return node;
+    }
+
+    /**
+     * Removes the child with the specified name.
+     *
+     * @param name the name of the child
+     * @return the removed child or null if there is no child with this name
+     * @throws IllegalArgumentException if name is null
+     */
+    public N remove(String name) {
+        int i = indexOf(name);
+        return (i < 0) ? null : remove(i);
+    }
+
+    /**
+     * Moves a child to another index, shifting the children in between.
+     *
+     * @param fromIndex the current index of the child
+     * @param toIndex the index of the child after the move
+     * @throws IndexOutOfBoundsException if an index is out of range
+     */
+    public void move(int fromIndex, int toIndex) {
+        checkIndex(fromIndex, size);
+        checkIndex(toIndex, size);
+        if (fromIndex == toIndex)
+            return;
+
+        Object node = nodes[fromIndex];
+        String name = names[fromIndex];
+        if (fromIndex < toIndex) {
+            if (index != null) {
+                index.shift(fromIndex + 1, toIndex + 1, -1);
+            }
+            System.arraycopy(nodes, fromIndex + 1, nodes, fromIndex, toIndex - fromIndex);
+            System.arraycopy(names, fromIndex + 1, names, fromIndex, toIndex - fromIndex);
+        } else {
+            if (index != null) {
+                index.shift(toIndex, fromIndex, 1);
+            }
+            System.arraycopy(nodes, toIndex, nodes, toIndex + 1, fromIndex - toIndex);
+            System.arraycopy(names, toIndex, names, toIndex + 1, fromIndex - toIndex);
+        }
+        nodes[toIndex] = node;
+        names[toIndex] = name;
+        if (index != null) {
+            index.put(name, toIndex);
+        }
+    }
+
+    /**
+     * Changes the name under which a child is indexed. This must be called whenever the name of a child changes, either
+     * before or after the node itself is renamed.
+     *
+     * @param oldName the current name of the child
+     * @param newName the new name of the child
+     * @return true if the child was renamed, false if there is no child with the old name
+     * @throws IllegalArgumentException if oldName or newName is null, or if there is already another child with the new name
+     */
+    public boolean rename(String oldName, String newName) {
+        Parameters.requireNonNull(newName, "newName");
+        int i = indexOf(oldName);
+        if (i < 0)
+            return false;
+        if (oldName.equals(newName))
+            return true;
+        if (contains(newName))
+            throw new IllegalArgumentException("Node with name " + newName + " already exists");
+
+        names[i] = newName;
+        if (index != null) {
+            index.remove(oldName);
+            index.put(newName, i);
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the children.
+     *
+     * @param comparator the comparator to determine the order of the children
+     * @throws IllegalArgumentException if comparator is null
+     */
+    @SuppressWarnings("unchecked")
+    public void sort(final Comparator<? super N> comparator) {
+        Parameters.requireNonNull(comparator, "comparator");
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        final Object[] nodes = this.nodes;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return comparator.compare((N) nodes[a], (N) nodes[b]);
+            }
+        });
+
+        Object[] sortedNodes = new Object[nodes.length];
+        String[] sortedNames = new String[names.length];
+        for (int i = 0; i < size; i++) {
+            sortedNodes[i] = nodes[order[i]];
+            sortedNames[i] = names[order[i]];
+        }
+        this.nodes = sortedNodes;
+        this.names = sortedNames;
+        if (index != null) {
+            reindex();
+        }
+    }
+
+    /**
+     * Removes all the children.
+     */
+    public void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+        index = null;
+    }
+
+    /**
+     * Returns an unmodifiable list view of the children.
+     *
+     * @return the list of children
+     */
+    public List<N> asList() {
+        return new AbstractList<N>() {
+            @Override
+            public N get(int index) {
+                return NodeChildren.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the children, which does not support removal.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<N> iterator() {
+        return new Iterator<N>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public N next() {
+                if (next >= size)
+                    throw new NoSuchElementException();
+
+                return (N) nodes[next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void reindex() {
+        NameIndex index = new NameIndex(size);
+        for (int i = 0; i < size; i++) {
+            index.put(names[i], i);
+        }
+        this.index = index;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.gatein.api.ApiException;
+
+/**
+ * Exception thrown when saving nodes which were changed by someone else since they were loaded. The node should be refreshed
+ * and the changes made again on the latest version.
+ *
+ * @see Node#getVersion()
+ * @see Navigation#saveNode(Node)
+ */
+public class NodeConflictException extends ApiException {
+    private final List<NodePath> nodePaths;
+
+    /**
+     * @param message the message
+     * @param nodePaths the paths of the conflicting nodes
+     */
+    public NodeConflictException(final String message, final List<NodePath> nodePaths) {
+        super(message);
+        this.nodePaths = Collections.unmodifiableList(new ArrayList<NodePath>(nodePaths));
+    }
+
+    /**
+     * The paths of the nodes changed concurrently. When a node and some of its descendants were changed, only the top most
+     * changed nodes are included.
+     *
+     * @return the paths of the conflicting nodes
+     */
+    public List<NodePath> getNodePaths() {
+        return nodePaths;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.i18n.Localized;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.page.PageId;
+
+/**
+ * Deterministic 64 bit Merkle hash of node trees. The hash of a node covers its own fields and the hashes of its children in
+ * order, so equal hashes mean equal subtrees with a very high probability, and a changed node only changes the hashes of its
+ * ancestors. Hashes only depend on strings, numbers and enum names, so they are stable across JVMs.
+ *
+ * @see Nodes#contentHash(Node)
+ */
+final class NodeHash {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NULL = 0x9e3779b97f4a7c15L;
+    private static final long NOT_LOADED = 0xc2b2ae3d27d4eb4fL;
+
+    private NodeHash() {
+    }
+
+    /**
+     * Hashes the node and its loaded descendants, only including the fields of the projection.
+     */
+    static long hash(Node node, NodeProjection projection) {
+        long children;
+        if (node.isChildrenLoaded()) {
+            children = FNV_OFFSET;
+            for (Node child : node) {
+                children = child(children, hash(child, projection));
+            }
+        } else {
+            children = NOT_LOADED;
+        }
+        return node(fields(node, projection), children);
+    }
+
+    /**
+     * Hashes the fields of the projection of the node, without its children.
+     */
+    static long fields(Node node, NodeProjection projection) {
+        return fields(node.getName(),
+                projection.includes(NodeProjection.Field.DISPLAY_NAMES) ? node.getDisplayNames() : null,
+                projection.includes(NodeProjection.Field.ICON_NAME) ? node.getIconName() : null,
+                projection.includes(NodeProjection.Field.VISIBILITY) ? node.getVisibility() : null,
+                projection.includes(NodeProjection.Field.PAGE_ID) ? node.getPageId() : null,
+                projection.includes(NodeProjection.Field.ATTRIBUTES) ? node.getAttributes() : null);
+    }
+
+    static long fields(String name, LocalizedString displayNames, String iconName, Visibility visibility, PageId pageId,
+            Attributes attributes) {
+        long hash = FNV_OFFSET;
+        hash = field(hash, string(name));
+        hash = field(hash, displayNames(displayNames));
+        hash = field(hash, string(iconName));
+        hash = field(hash, visibility(visibility));
+        hash = field(hash, pageId(pageId));
+        hash = field(hash, attributes(attributes));
+        return hash;
+    }
+
+    /**
+     * Adds the hash of the next child to the hash of the previous children.
+     */
+    static long child(long children, long child) {
+        return mix(children * FNV_PRIME + child);
+    }
+
+    /**
+     * Combines the hash of the fields of a node with the hash of its children, see {@link #child(long, long)}, or with
+     * {@link #notLoaded()} if its children are not loaded.
+     */
+    static long node(long fields, long children) {
+        return mix(fields ^ Long.rotateLeft(children, 31));
+    }
+
+    static long notLoaded() {
+        return NOT_LOADED;
+    }
+
+    static long emptyChildren() {
+        return FNV_OFFSET;
+    }
+
+    private static long field(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    private static long string(String value) {
+        if (value == null)
+            return NULL;
+
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    // Sum of the hashes of the entries, so the order of the map does not matter
+    private static long displayNames(LocalizedString displayNames) {
+        if (displayNames == null)
+            return NULL;
+
+        long hash = 0;
+        for (Localized.Value<String> value : displayNames.getLocalizedValues()) {
+            Locale locale = value.getLocale();
+            hash += mix(string(locale == null ? null : locale.toString()) ^ Long.rotateLeft(string(value.getValue()), 17));
+        }
+        return hash;
+    }
+
+    // Null and empty attributes are the same
+    private static long attributes(Attributes attributes) {
+        long hash = 0;
+        if (attributes == null)
+            return hash;
+
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            hash += mix(string(entry.getKey()) ^ Long.rotateLeft(string(entry.getValue()), 17));
+        }
+        return hash;
+    }
+
+    private static long visibility(Visibility visibility) {
+        if (visibility == null)
+            return NULL;
+
+        long hash = string(visibility.getStatus().name());
+        PublicationDate publicationDate = visibility.getPublicationDate();
+        if (publicationDate != null) {
+            hash = field(hash, mix(publicationDate.getStart() == null ? -1 : publicationDate.getStart().getTime()));
+            hash = field(hash, mix(publicationDate.getEnd() == null ? -1 : publicationDate.getEnd().getTime()));
+        }
+        return hash;
+    }
+
+    private static long pageId(PageId pageId) {
+        if (pageId == null)
+            return NULL;
+
+        long hash = string(pageId.getSiteId().getType().name());
+        hash = field(hash, string(pageId.getSiteId().getName()));
+        hash = field(hash, string(pageId.getPageName()));
+        return hash;
+    }
+
+    // Finalizer of MurmurHash3
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
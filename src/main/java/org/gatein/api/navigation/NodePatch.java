@@ -0,0 +1,999 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.gatein.api.EntityNotFoundException;
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+
+/**
+ * An ordered list of operations turning one tree of nodes into another. The path of each operation is relative to the node
+ * the patch was computed from, and refers to the tree as left by the previous operations, so the operations have to be
+ * applied in order.
+ * <p>
+ * A patch computed by {@link #diff(Node, Node)} only compares the children loaded in both trees, and the fields which can be
+ * read from both trees, i.e. the fields of the projections of snapshots. It skips the subtrees with the same
+ * {@link Nodes#contentHash(Node) content hash}. Children are matched by name. Removed subtrees found unchanged
+ * elsewhere in the new tree are moved instead of being removed and added again, and renamed if needed when they are renamed
+ * in place or have children. Children are reordered with the fewest moves.
+ * </p>
+ *
+ * @see Navigation#applyPatch(NodePatch)
+ */
+public final class NodePatch implements Iterable<NodePatch.Operation>, Serializable {
+    /**
+     * Computes the operations turning the tree of the <code>from</code> node into the tree of the <code>to</code> node. The
+     * names of the two nodes are not compared. Only the fields which can be read from both nodes are compared, and copied to
+     * the operations: the fields of the {@link NodeProjection} of a {@link NavigationSnapshot} or {@link CompactNodeTree}
+     * node, and all of them for other nodes.
+     *
+     * @param from the node to patch
+     * @param to the node with the expected content
+     * @return the patch, empty if the trees have the same content
+     * @throws IllegalArgumentException if from or to is null
+     */
+    public static NodePatch diff(Node from, Node to) {
+        Parameters.requireNonNull(from, "from");
+        Parameters.requireNonNull(to, "to");
+
+        Set<NodeProjection.Field> fields = EnumSet.copyOf(NodeProjection.loaded(from).getFields());
+        fields.retainAll(NodeProjection.loaded(to).getFields());
+        return new Diff(Entry.copy(from, null, fields), Entry.copy(to, null, fields)).run(from.getNodePath());
+    }
+
+    /**
+     * Returns a patch of the parent of the node of the patch, which renames the node before applying the operations of the
+     * patch.
+     */
+    static NodePatch renamed(NodePatch patch, String name) {
+        NodePath path = patch.nodePath;
+        NodePath prefix = NodePath.path(name);
+        List<Operation> operations = new ArrayList<Operation>(patch.size() + 1);
+        operations.add(Operation.rename(NodePath.path(path.getLastSegment()), name));
+        for (Operation operation : patch.operations) {
+            operations.add(operation.rebase(prefix));
+        }
+        return new NodePatch(path.parent(), operations);
+    }
+
+    private final NodePath nodePath;
+    private final List<Operation> operations;
+
+    /**
+     * Creates a patch of the node with the specified operations.
+     *
+     * @param nodePath the path of the node to patch
+     * @param operations the operations, in order
+     * @throws IllegalArgumentException if nodePath or operations is null, or if operations contains null
+     */
+    public NodePatch(NodePath nodePath, List<Operation> operations) {
+        this.nodePath = Parameters.requireNonNull(nodePath, "nodePath");
+        Parameters.requireNonNull(operations, "operations");
+
+        List<Operation> list = new ArrayList<Operation>(operations);
+        for (Operation operation : list) {
+            Parameters.requireNonNull(operation, "operation");
+        }
+        this.operations = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * The path of the node to patch, which the paths of the operations are relative to.
+     *
+     * @return the path of the node
+     */
+    public NodePath getNodePath() {
+        return nodePath;
+    }
+
+    /**
+     * The operations of the patch, in the order they have to be applied.
+     *
+     * @return an unmodifiable list of the operations
+     */
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * The number of operations of the patch
+     *
+     * @return the number of operations
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Returns true if the patch has no operation, for instance when it was computed from two trees with the same content.
+     *
+     * @return true if the patch has no operation
+     */
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    @Override
+    public Iterator<Operation> iterator() {
+        return operations.iterator();
+    }
+
+    /**
+     * Applies the operations to the node and its descendants. The changes are not saved.
+     *
+     * @param node the node to patch, corresponding to the node the patch was computed from
+     * @throws IllegalArgumentException if node is null
+     * @throws EntityNotFoundException if the node of an operation could not be found
+     * @throws org.gatein.api.EntityAlreadyExistsException if a node added, moved or renamed by an operation already exists
+     */
+    public void applyTo(Node node) {
+        Parameters.requireNonNull(node, "node");
+
+        for (Operation operation : operations) {
+            NodePath path = operation.getNodePath();
+            switch (operation.getType()) {
+                case ADD:
+                    Node parent = resolve(node, path.parent());
+                    operation.update(parent.addChild(operation.getIndex(), path.getLastSegment()));
+                    break;
+                case REMOVE:
+                    resolve(node, path.parent()).removeChild(path.getLastSegment());
+                    break;
+                case RENAME:
+                    resolve(node, path).setName(operation.getName());
+                    break;
+                case MOVE:
+                    Node moved = resolve(node, path);
+                    if (path.parent().equals(operation.getParentPath())) {
+                        moved.moveTo(operation.getIndex());
+                    } else {
+                        moved.moveTo(operation.getIndex(), resolve(node, operation.getParentPath()));
+                    }
+                    break;
+                case UPDATE:
+                    operation.update(resolve(node, path));
+                    break;
+            }
+        }
+    }
+
+    private static Node resolve(Node node, NodePath path) {
+        Node resolved = (path.size() == 0) ? node : node.getNode(path);
+        if (resolved == null)
+            throw new EntityNotFoundException("Node " + path + " not found");
+
+        return resolved;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof NodePatch))
+            return false;
+
+        NodePatch other = (NodePatch) o;
+        return nodePath.equals(other.nodePath) && operations.equals(other.operations);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * nodePath.hashCode() + operations.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("nodePath", nodePath).add("operations", operations)
+                .toString();
+    }
+
+    /**
+     * A single change of a tree of nodes.
+     */
+    public static final class Operation implements Serializable {
+        public enum Type {
+            /**
+             * Adds the node at the index of its parent, with the values of the fields of the operation.
+             */
+            ADD,
+
+            /**
+             * Removes the node and its descendants.
+             */
+            REMOVE,
+
+            /**
+             * Renames the node to the name of the operation.
+             */
+            RENAME,
+
+            /**
+             * Moves the node to the index of the parent of the operation. The index is the position of the node after the
+             * move.
+             */
+            MOVE,
+
+            /**
+             * Sets the fields of the operation on the node.
+             */
+            UPDATE
+        }
+
+        /**
+         * Creates an operation adding a node with the values of the fields of a node, without its children.
+         *
+         * @param nodePath the path of the added node
+         * @param index the index of the node in its parent
+         * @param values the node to copy the values of the fields from, only the fields of its projection for the node of a
+         *        snapshot
+         * @return the operation
+         */
+        public static Operation add(NodePath nodePath, int index, Node values) {
+            Parameters.requireNonNull(values, "values");
+            return of(Type.ADD, nodePath, index, NodeProjection.loaded(values).getFields(), values);
+        }
+
+        /**
+         * Creates an operation removing a node and its descendants.
+         *
+         * @param nodePath the path of the removed node
+         * @return the operation
+         */
+        public static Operation remove(NodePath nodePath) {
+            return new Operation(Type.REMOVE, nodePath, null, null, -1, null, null, null, null, null, null);
+        }
+
+        /**
+         * Creates an operation renaming a node.
+         *
+         * @param nodePath the path of the node before it is renamed
+         * @param name the new name
+         * @return the operation
+         * @throws IllegalArgumentException if name is null
+         */
+        public static Operation rename(NodePath nodePath, String name) {
+            return new Operation(Type.RENAME, nodePath, Parameters.requireNonNull(name, "name"), null, -1, null, null, null,
+                    null, null, null);
+        }
+
+        /**
+         * Creates an operation moving a node, within its parent or to another parent.
+         *
+         * @param nodePath the path of the node before it is moved
+         * @param parentPath the path of the new parent
+         * @param index the index of the node in the new parent after the move
+         * @return the operation
+         * @throws IllegalArgumentException if parentPath is null
+         */
+        public static Operation move(NodePath nodePath, NodePath parentPath, int index) {
+            return new Operation(Type.MOVE, nodePath, null, Parameters.requireNonNull(parentPath, "parentPath"), index, null,
+                    null, null, null, null, null);
+        }
+
+        /**
+         * Creates an operation updating fields of a node.
+         *
+         * @param nodePath the path of the updated node
+         * @param fields the updated fields
+         * @param values the node to copy the values of the fields from
+         * @return the operation
+         */
+        public static Operation update(NodePath nodePath, Set<NodeProjection.Field> fields, Node values) {
+            Parameters.requireNonNull(fields, "fields");
+            Parameters.requireNonNull(values, "values");
+            return of(Type.UPDATE, nodePath, -1, fields, values);
+        }
+
+        /**
+         * Creates an operation with the values of the fields read from the node, the other fields are not read.
+         */
+        private static Operation of(Type type, NodePath nodePath, int index, Set<NodeProjection.Field> fields, Node values) {
+            return new Operation(type, nodePath, null, null, index, fields,
+                    fields.contains(NodeProjection.Field.DISPLAY_NAMES) ? values.getDisplayNames() : null,
+                    fields.contains(NodeProjection.Field.ICON_NAME) ? values.getIconName() : null,
+                    fields.contains(NodeProjection.Field.VISIBILITY) ? values.getVisibility() : null,
+                    fields.contains(NodeProjection.Field.PAGE_ID) ? values.getPageId() : null,
+                    fields.contains(NodeProjection.Field.ATTRIBUTES) ? values.getAttributes() : null);
+        }
+
+        private final Type type;
+        private final NodePath nodePath;
+        private final String name;
+        private final NodePath parentPath;
+        private final int index;
+        private final Set<NodeProjection.Field> fields;
+        private final LocalizedString displayNames;
+        private final String iconName;
+        private final Visibility visibility;
+        private final PageId pageId;
+        private final Attributes attributes;
+
+        private Operation(Type type, NodePath nodePath, String name, NodePath parentPath, int index,
+                Set<NodeProjection.Field> fields, LocalizedString displayNames, String iconName, Visibility visibility,
+                PageId pageId, Attributes attributes) {
+            this.type = type;
+            this.nodePath = Parameters.requireNonNull(nodePath, "nodePath");
+            this.name = name;
+            this.parentPath = parentPath;
+            this.index = index;
+            Set<NodeProjection.Field> copy = EnumSet.noneOf(NodeProjection.Field.class);
+            if (fields != null) {
+                copy.addAll(fields);
+            }
+            this.fields = Collections.unmodifiableSet(copy);
+
+            // Only keep the values of the fields of the operation, as copies since nodes are mutable
+            boolean hasDisplayNames = this.fields.contains(NodeProjection.Field.DISPLAY_NAMES) && displayNames != null;
+            this.displayNames = hasDisplayNames ? new LocalizedString(displayNames) : null;
+            this.iconName = this.fields.contains(NodeProjection.Field.ICON_NAME) ? iconName : null;
+            this.visibility = this.fields.contains(NodeProjection.Field.VISIBILITY) ? visibility : null;
+            this.pageId = this.fields.contains(NodeProjection.Field.PAGE_ID) ? pageId : null;
+            boolean hasAttributes = this.fields.contains(NodeProjection.Field.ATTRIBUTES) && attributes != null;
+            this.attributes = hasAttributes ? new Attributes(attributes) : null;
+        }
+
+        /**
+         * Returns a copy of the operation with its paths relative to the parent of its patch, with the prefix being the path
+         * of the node of its patch relative to that parent.
+         */
+        Operation rebase(NodePath prefix) {
+            return new Operation(type, prefix.append(nodePath), name, (parentPath == null) ? null : prefix.append(parentPath),
+                    index, fields, displayNames, iconName, visibility, pageId, attributes);
+        }
+
+        /**
+         * The type of the operation
+         *
+         * @return the type
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * The path of the node the operation applies to. For {@link Type#ADD} it is the path of the node to add.
+         *
+         * @return the path of the node
+         */
+        public NodePath getNodePath() {
+            return nodePath;
+        }
+
+        /**
+         * The new name of the node, for {@link Type#RENAME}.
+         *
+         * @return the new name, or null
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The path of the parent the node is moved to, for {@link Type#MOVE}.
+         *
+         * @return the path of the new parent, or null
+         */
+        public NodePath getParentPath() {
+            return parentPath;
+        }
+
+        /**
+         * The index of the node in its parent, for {@link Type#ADD} and {@link Type#MOVE}.
+         *
+         * @return the index, or -1
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * The fields set by the operation, for {@link Type#ADD} and {@link Type#UPDATE}.
+         *
+         * @return the fields, empty for the other types
+         */
+        public Set<NodeProjection.Field> getFields() {
+            return fields;
+        }
+
+        /**
+         * The display names of the node, for {@link Type#ADD} and {@link Type#UPDATE}.
+         *
+         * @return the display names, or null
+         */
+        public LocalizedString getDisplayNames() {
+            return displayNames;
+        }
+
+        /**
+         * The icon name of the node, for {@link Type#ADD} and {@link Type#UPDATE}.
+         *
+         * @return the icon name, or null
+         */
+        public String getIconName() {
+            return iconName;
+        }
+
+        /**
+         * The visibility of the node, for {@link Type#ADD} and {@link Type#UPDATE}.
+         *
+         * @return the visibility, or null
+         */
+        public Visibility getVisibility() {
+            return visibility;
+        }
+
+        /**
+         * The page id of the node, for {@link Type#ADD} and {@link Type#UPDATE}.
+         *
+         * @return the page id, or null
+         */
+        public PageId getPageId() {
+            return pageId;
+        }
+
+        /**
+         * The attributes of the node, for {@link Type#ADD} and {@link Type#UPDATE}.
+         *
+         * @return the attributes, or null
+         */
+        public Attributes getAttributes() {
+            return attributes;
+        }
+
+        void update(Node node) {
+            if (fields.contains(NodeProjection.Field.DISPLAY_NAMES)) {
+                node.setDisplayNames((displayNames == null) ? null : new LocalizedString(displayNames));
+            }
+            if (fields.contains(NodeProjection.Field.ICON_NAME)) {
+                node.setIconName(iconName);
+            }
+            if (fields.contains(NodeProjection.Field.VISIBILITY) && visibility != null) {
+                node.setVisibility(visibility);
+            }
+            if (fields.contains(NodeProjection.Field.PAGE_ID)) {
+                node.setPageId(pageId);
+            }
+            if (fields.contains(NodeProjection.Field.ATTRIBUTES)) {
+                Attributes nodeAttributes = node.getAttributes();
+                nodeAttributes.clear();
+                if (attributes != null) {
+                    nodeAttributes.putAll(attributes);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Operation))
+                return false;
+
+            Operation other = (Operation) o;
+            return type == other.type && index == other.index && nodePath.equals(other.nodePath)
+                    && equal(name, other.name) && equal(parentPath, other.parentPath) && fields.equals(other.fields)
+                    && equal(displayNames, other.displayNames) && equal(iconName, other.iconName)
+                    && equal(visibility, other.visibility) && equal(pageId, other.pageId)
+                    && equal(attributes, other.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] { type, nodePath, name, parentPath, index, fields, displayNames, iconName,
+                    visibility, pageId, attributes });
+        }
+
+        @Override
+        public String toString() {
+            ObjectToStringBuilder builder = ObjectToStringBuilder.toStringBuilder(getClass()).add("type", type)
+                    .add("nodePath", nodePath);
+            switch (type) {
+                case ADD:
+                    builder.add("index", index);
+                    break;
+                case RENAME:
+                    builder.add("name", name);
+                    break;
+                case MOVE:
+                    builder.add("parentPath", parentPath).add("index", index);
+                    break;
+                case UPDATE:
+                    builder.add("fields", fields);
+                    break;
+                default:
+                    break;
+            }
+            return builder.toString();
+        }
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return (o1 == null) ? o2 == null : o1.equals(o2);
+    }
+
+    // Null and empty attributes are the same
+    private static boolean sameAttributes(Attributes a1, Attributes a2) {
+        return (a1 == null || a1.isEmpty()) ? (a2 == null || a2.isEmpty()) : a1.equals(a2);
+    }
+
+    /**
+     * A mutable copy of a node, the nodes of the old tree are changed as the operations are computed so that the paths and
+     * indexes of the operations refer to the tree as left by the previous operations.
+     * <p>
+     * The children of the nodes of snapshots are only copied when the diff needs them: their content hash is cached, so
+     * unchanged subtrees are skipped without being walked. Only the compared fields are copied, the others are left null.
+     * </p>
+     */
+    private static final class Entry {
+        static Entry copy(Node node, Entry parent, Set<NodeProjection.Field> fields) {
+            Entry entry = new Entry(node.getName(), parent, fields);
+            if (fields.contains(NodeProjection.Field.DISPLAY_NAMES)) {
+                entry.displayNames = node.getDisplayNames();
+            }
+            if (fields.contains(NodeProjection.Field.ICON_NAME)) {
+                entry.iconName = node.getIconName();
+            }
+            if (fields.contains(NodeProjection.Field.VISIBILITY)) {
+                entry.visibility = node.getVisibility();
+            }
+            if (fields.contains(NodeProjection.Field.PAGE_ID)) {
+                entry.pageId = node.getPageId();
+            }
+            if (fields.contains(NodeProjection.Field.ATTRIBUTES)) {
+                entry.attributes = node.getAttributes();
+            }
+
+            if (node instanceof NavigationSnapshot.SnapshotNode || node instanceof CompactNodeTree.CompactNode) {
+                entry.source = node;
+                entry.hash = Nodes.contentHash(node);
+            } else {
+                entry.copyChildren(node);
+                entry.hash = NodeHash.node(NodeHash.fields(entry.name, entry.displayNames, entry.iconName,
+                        entry.visibility, entry.pageId, entry.attributes), entry.childrenHash());
+            }
+            return entry;
+        }
+
+        private String name;
+        private Entry parent;
+        // The compared fields, shared by all the entries of a diff
+        private final Set<NodeProjection.Field> fields;
+        private LocalizedString displayNames;
+        private String iconName;
+        private Visibility visibility;
+        private PageId pageId;
+        private Attributes attributes;
+        private List<Entry> children;
+        // The node whose children are not copied yet
+        private Node source;
+        // The index of the entry in the children of its parent, kept up to date as the children are reordered
+        private int position;
+
+        private long hash;
+        // Hash of the content without the name of the node, to find moved and renamed subtrees, computed on demand
+        private long unnamedHash;
+        private boolean unnamedHashed;
+
+        // The entry of the other tree
+        private Entry match;
+        // If the children were compared with the children of the matching entry
+        private boolean compared;
+        // If the entry is the descendant of a removed entry, or a removed entry
+        private boolean removed;
+        // If the entry or one of its descendants or ancestors has been moved
+        private boolean claimed;
+
+        private Entry(String name, Entry parent, Set<NodeProjection.Field> fields) {
+            this.name = name;
+            this.parent = parent;
+            this.fields = fields;
+        }
+
+        /**
+         * The children, copied from the node on the first call, or null if the children of the node are not loaded.
+         */
+        List<Entry> children() {
+            if (source != null) {
+                Node node = source;
+                source = null;
+                copyChildren(node);
+            }
+            return children;
+        }
+
+        private void copyChildren(Node node) {
+            if (node.isChildrenLoaded()) {
+                children = new ArrayList<Entry>(node.getChildCount());
+                for (Node child : node) {
+                    Entry copy = copy(child, this, fields);
+                    copy.position = children.size();
+                    children.add(copy);
+                }
+            }
+        }
+
+        private long childrenHash() {
+            List<Entry> children = children();
+            if (children == null)
+                return NodeHash.notLoaded();
+
+            long childrenHash = NodeHash.emptyChildren();
+            for (Entry child : children) {
+                childrenHash = NodeHash.child(childrenHash, child.hash);
+            }
+            return childrenHash;
+        }
+
+        long unnamedHash() {
+            if (!unnamedHashed) {
+                unnamedHash = NodeHash.node(NodeHash.fields(null, displayNames, iconName, visibility, pageId, attributes),
+                        childrenHash());
+                unnamedHashed = true;
+            }
+            return unnamedHash;
+        }
+
+        /**
+         * Updates the positions of the children from the index to the end of the range, once they were shifted.
+         */
+        void renumber(int from, int to) {
+            for (int i = from; i <= to && i < children.size(); i++) {
+                children.get(i).position = i;
+            }
+        }
+
+        NodePath path() {
+            LinkedList<String> names = new LinkedList<String>();
+            for (Entry entry = this; entry.parent != null; entry = entry.parent) {
+                names.addFirst(entry.name);
+            }
+            return names.isEmpty() ? NodePath.root() : NodePath.path(names.toArray(new String[names.size()]));
+        }
+
+        Entry child(String childName) {
+            for (Entry child : children) {
+                if (child.name.equals(childName))
+                    return child;
+            }
+            return null;
+        }
+
+        /**
+         * The compared fields with different values in the other entry.
+         */
+        Set<NodeProjection.Field> changedFields(Entry other) {
+            Set<NodeProjection.Field> changed = EnumSet.noneOf(NodeProjection.Field.class);
+            if (fields.contains(NodeProjection.Field.DISPLAY_NAMES) && !equal(displayNames, other.displayNames))
+                changed.add(NodeProjection.Field.DISPLAY_NAMES);
+            if (fields.contains(NodeProjection.Field.ICON_NAME) && !equal(iconName, other.iconName))
+                changed.add(NodeProjection.Field.ICON_NAME);
+            if (fields.contains(NodeProjection.Field.VISIBILITY) && !equal(visibility, other.visibility))
+                changed.add(NodeProjection.Field.VISIBILITY);
+            if (fields.contains(NodeProjection.Field.PAGE_ID) && !equal(pageId, other.pageId))
+                changed.add(NodeProjection.Field.PAGE_ID);
+            if (fields.contains(NodeProjection.Field.ATTRIBUTES) && !sameAttributes(attributes, other.attributes))
+                changed.add(NodeProjection.Field.ATTRIBUTES);
+            return changed;
+        }
+    }
+
+    private static final class Diff {
+        private final Entry from;
+        private final Entry to;
+        private final List<Operation> operations = new ArrayList<Operation>();
+        // Removed entries of the old tree by hash of their content without their name, in tree order
+        private final Map<Long, List<Entry>> removed = new LinkedHashMap<Long, List<Entry>>();
+
+        Diff(Entry from, Entry to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        NodePatch run(NodePath nodePath) {
+            match(from, to);
+            reconcile(from, to);
+            removeUnmatched(from);
+            return new NodePatch(nodePath, operations);
+        }
+
+        /**
+         * Matches the children of the entries by name, and collects the children of the old tree without a match.
+         */
+        private void match(Entry old, Entry entry) {
+            old.match = entry;
+            entry.match = old;
+            if (old.hash == entry.hash || old.children() == null || entry.children() == null)
+                return;
+
+            old.compared = true;
+            Map<String, Entry> oldChildren = new HashMap<String, Entry>();
+            for (Entry child : old.children) {
+                oldChildren.put(child.name, child);
+            }
+            for (Entry child : entry.children) {
+                Entry oldChild = oldChildren.remove(child.name);
+                if (oldChild != null) {
+                    match(oldChild, child);
+                }
+            }
+            for (Entry child : old.children) {
+                if (child.match == null) {
+                    addRemoved(child);
+                }
+            }
+        }
+
+        private void addRemoved(Entry old) {
+            old.removed = true;
+            List<Entry> entries = removed.get(old.unnamedHash());
+            if (entries == null) {
+                entries = new ArrayList<Entry>(1);
+                removed.put(old.unnamedHash(), entries);
+            }
+            entries.add(old);
+
+            if (old.children() != null) {
+                for (Entry child : old.children) {
+                    addRemoved(child);
+                }
+            }
+        }
+
+        /**
+         * Updates the old entry and reorders its children to match the entry, adding the new children or moving them from the
+         * removed entries. Removed children are left at the end and removed once all the entries have been reconciled, as
+         * their descendants may still be moved elsewhere.
+         */
+        private void reconcile(Entry old, Entry entry) {
+            if (old.hash == entry.hash)
+                return;
+
+            Set<NodeProjection.Field> fields = old.changedFields(entry);
+            if (!fields.isEmpty()) {
+                operations.add(new Operation(Operation.Type.UPDATE, old.path(), null, null, -1, fields,
+                        entry.displayNames, entry.iconName, entry.visibility, entry.pageId, entry.attributes));
+                old.displayNames = entry.displayNames;
+                old.iconName = entry.iconName;
+                old.visibility = entry.visibility;
+                old.pageId = entry.pageId;
+                old.attributes = entry.attributes;
+            }
+            if (!old.compared)
+                return;
+
+            boolean[] stay = stay(old, entry);
+            Entry previous = null;
+            for (int i = 0; i < entry.children.size(); i++) {
+                Entry child = entry.children.get(i);
+                int index = (previous == null) ? 0 : previous.position + 1;
+
+                Entry oldChild = child.match;
+                if (oldChild == null) {
+                    oldChild = moveRemoved(old, child, index);
+                }
+                if (oldChild == null) {
+                    oldChild = add(old, child, index);
+                } else if (!stay[i]) {
+                    int current = oldChild.position;
+                    if (current < index) {
+                        index--;
+                    }
+                    if (current != index) {
+                        operations.add(Operation.move(oldChild.path(), old.path(), index));
+                        old.children.remove(current);
+                        old.children.add(index, oldChild);
+                        old.renumber(Math.min(current, index), Math.max(current, index));
+                    }
+                }
+                previous = oldChild;
+            }
+
+            for (Entry child : entry.children) {
+                reconcile(child.match, child);
+            }
+        }
+
+        /**
+         * Finds the children matched by name which keep their position, the longest sequence of children in the same order in
+         * both trees.
+         */
+        private static boolean[] stay(Entry old, Entry entry) {
+            int size = entry.children.size();
+            int[] positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                Entry match = entry.children.get(i).match;
+                positions[i] = (match == null) ? -1 : match.position;
+            }
+
+            // tails[k] is the child ending the increasing sequence of length k + 1 with the smallest position
+            int[] tails = new int[size];
+            int[] previous = new int[size];
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                if (positions[i] < 0)
+                    continue;
+
+                int low = 0;
+                int high = length;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (positions[tails[middle]] < positions[i]) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                previous[i] = (low == 0) ? -1 : tails[low - 1];
+                tails[low] = i;
+                if (low == length) {
+                    length++;
+                }
+            }
+
+            boolean[] stay = new boolean[size];
+            for (int i = (length == 0) ? -1 : tails[length - 1]; i >= 0; i = previous[i]) {
+                stay[i] = true;
+            }
+            return stay;
+        }
+
+        /**
+         * Moves a removed subtree with the same content as the child to the old entry, renaming it if needed.
+         */
+        private Entry moveRemoved(Entry old, Entry child, int index) {
+            List<Entry> candidates = removed.get(child.unnamedHash());
+            if (candidates == null)
+                return null;
+
+            for (Iterator<Entry> iterator = candidates.iterator(); iterator.hasNext();) {
+                Entry candidate = iterator.next();
+                if (candidate.claimed) {
+                    iterator.remove();
+                    continue;
+                }
+
+                boolean renamed = !candidate.name.equals(child.name);
+                boolean sameParent = candidate.parent == old;
+                // Leaves only have their fields in common, which is not enough to tell a node was moved and renamed
+                if (renamed && !sameParent && (candidate.children() == null || candidate.children.isEmpty()))
+                    continue;
+
+                boolean renameFirst = renamed && !sameParent && old.child(candidate.name) != null;
+                if (renameFirst && candidate.parent.child(child.name) != null)
+                    continue;
+
+                iterator.remove();
+                claim(candidate);
+
+                if (renameFirst || (renamed && sameParent)) {
+                    rename(candidate, child.name);
+                }
+
+                int current = sameParent ? candidate.position : -1;
+                if (current >= 0 && current < index) {
+                    index--;
+                }
+                if (current != index) {
+                    operations.add(Operation.move(candidate.path(), old.path(), index));
+                    Entry parent = candidate.parent;
+                    parent.children.remove(candidate.position);
+                    old.children.add(index, candidate);
+                    candidate.parent = old;
+                    if (sameParent) {
+                        old.renumber(Math.min(current, index), Math.max(current, index));
+                    } else {
+                        parent.renumber(candidate.position, parent.children.size() - 1);
+                        old.renumber(index, old.children.size() - 1);
+                    }
+                }
+
+                if (renamed && !renameFirst && !sameParent) {
+                    rename(candidate, child.name);
+                }
+
+                candidate.removed = false;
+                candidate.match = child;
+                child.match = candidate;
+                return candidate;
+            }
+            return null;
+        }
+
+        private void rename(Entry old, String name) {
+            operations.add(Operation.rename(old.path(), name));
+            old.name = name;
+        }
+
+        /**
+         * Once a subtree is moved, neither its removed ancestors nor its descendants have the same content anymore.
+         */
+        private static void claim(Entry old) {
+            for (Entry ancestor = old.parent; ancestor != null && ancestor.removed; ancestor = ancestor.parent) {
+                ancestor.claimed = true;
+            }
+            claimDescendants(old);
+        }
+
+        private static void claimDescendants(Entry old) {
+            old.claimed = true;
+            if (old.children() != null) {
+                for (Entry child : old.children) {
+                    claimDescendants(child);
+                }
+            }
+        }
+
+        private Entry add(Entry old, Entry child, int index) {
+            Entry added = new Entry(child.name, old, child.fields);
+            added.displayNames = child.displayNames;
+            added.iconName = child.iconName;
+            added.visibility = child.visibility;
+            added.pageId = child.pageId;
+            added.attributes = child.attributes;
+            added.hash = ~child.hash;
+            added.match = child;
+            child.match = added;
+            if (child.children() != null) {
+                added.children = new ArrayList<Entry>(child.children.size());
+                added.compared = true;
+            }
+
+            old.children.add(index, added);
+            old.renumber(index, old.children.size() - 1);
+            operations.add(new Operation(Operation.Type.ADD, added.path(), null, null, index, child.fields,
+                    child.displayNames, child.iconName, child.visibility, child.pageId, child.attributes));
+            return added;
+        }
+
+        private void removeUnmatched(Entry old) {
+            if (!old.compared)
+                return;
+
+            for (Iterator<Entry> iterator = old.children.iterator(); iterator.hasNext();) {
+                Entry child = iterator.next();
+                if (child.match == null) {
+                    operations.add(Operation.remove(child.path()));
+                    iterator.remove();
+                } else {
+                    removeUnmatched(child);
+                }
+            }
+        }
+    }
+}
@@ -23,22 +23,41 @@
 package org.gatein.api.navigation;
 
 import org.gatein.api.internal.Parameters;
-import org.gatein.api.internal.StringJoiner;
-import org.gatein.api.internal.StringSplitter;
+import org.gatein.api.internal.StringInterner;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
+ * An immutable path to a navigation node. A path is stored as a pointer to its parent path plus its last segment, so
+ * appending to a path or taking its parent shares the common prefix instead of copying it.
+ *
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
  */
 public class NodePath implements Iterable<String>, Comparable<NodePath>, Serializable {
+    private static final long serialVersionUID = -42634032118722478L;
+
+    /**
+     * Keeps the serialized form of the former list based implementation, see {@link #writeObject(ObjectOutputStream)}
+     */
+    private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("pathList", List.class) };
+
     private static final NodePath ROOT_PATH = new NodePath();
 
+    /**
+     * Segments parsed by {@link #fromString(String)} are looked up here, so hot paths reuse the same segment strings
+     */
+    private static final StringInterner SEGMENTS = StringInterner.interner(1024, 64);
+
     /**
      * Creates a node path with the value of the specified elements
      * 
@@ -46,7 +65,7 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return a node path
      */
     public static NodePath path(String... elements) {
-        return new NodePath(Parameters.requireNonEmpty(elements, "elements"));
+        return ROOT_PATH.append(Parameters.requireNonEmpty(elements, "elements"));
     }
 
     /**
@@ -59,27 +78,62 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
     }
 
     /**
-     * Creates a node path with a value represented by the specified path (for example '/home/node1')
+     * Creates a node path with a value represented by the specified path (for example '/home/node1'). Segments are trimmed
+     * and empty segments are ignored, so '/home//node1/' and ' home / node1 ' both result in the path '/home/node1'.
      * 
      * @param path the string representation of a path
      * @return a node path
+     * @throws IllegalArgumentException if path is null
      */
     public static NodePath fromString(String path) {
-        return new NodePath(StringSplitter.splitter("/").trim().ignoreEmptyStrings().split(path));
+        Parameters.requireNonNull(path, "path");
+
+        NodePath nodePath = ROOT_PATH;
+        int length = path.length();
+        int start = 0;
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = length;
+
+            // Same trimming as String.trim()
+            int from = start;
+            int to = end;
+            while (from < to && path.charAt(from) <= ' ')
+                from++;
+            while (to > from && path.charAt(to - 1) <= ' ')
+                to--;
+
+            if (from < to) {
+                nodePath = new NodePath(nodePath, SEGMENTS.intern(path, from, to));
+            }
+            start = end + 1;
+        }
+
+        return nodePath;
     }
 
-    private final List<String> pathList;
+    private final transient NodePath parent;
+    private final transient String segment;
+    private final transient int size;
+    private final transient int hash;
 
-    private NodePath() {
-        this(Collections.<String> emptyList());
-    }
+    private transient volatile String[] segments;
+    private transient volatile String string;
+    private transient List<String> deserializedPathList;
 
-    private NodePath(String... pathList) {
-        this(Arrays.asList(pathList));
+    private NodePath() {
+        this.parent = null;
+        this.segment = null;
+        this.size = 0;
+        this.hash = 1;
     }
 
-    private NodePath(List<String> pathList) {
-        this.pathList = new ArrayList<String>(pathList);
+    private NodePath(NodePath parent, String segment) {
+        this.parent = parent;
+        this.segment = segment;
+        this.size = parent.size + 1;
+        this.hash = 31 * parent.hash + (segment == null ? 0 : segment.hashCode());
     }
 
     /**
@@ -89,7 +143,23 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the combined path
      */
     public NodePath append(String... elements) {
-        return append(new NodePath(Parameters.requireNonNull(elements, "elements")));
+        Parameters.requireNonNull(elements, "elements");
+
+        NodePath path = this;
+        for (String element : elements) {
+            path = new NodePath(path, element);
+        }
+        return path;
+    }
+
+    /**
+     * Adds the specified element to the end of this path
+     *
+     * @param element the element to append
+     * @return the combined path
+     */
+    public NodePath append(String element) {
+        return new NodePath(this, element);
     }
 
     /**
@@ -99,11 +169,12 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the combined path
      */
     public NodePath append(NodePath path) {
-        List<String> list = new ArrayList<String>(pathList.size() + path.pathList.size());
-        list.addAll(pathList);
-        list.addAll(path.pathList);
+        if (path.size == 0)
+            return this;
+        if (size == 0)
+            return path;
 
-        return new NodePath(list);
+        return append(path.segments());
     }
 
     /**
@@ -124,7 +195,22 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the sub-path
      */
     public NodePath subPath(int fromIndex, int toIndex) {
-        return new NodePath(new ArrayList<String>(pathList.subList(fromIndex, toIndex)));
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex = " + fromIndex);
+        if (toIndex > size)
+            throw new IndexOutOfBoundsException("toIndex = " + toIndex);
+        if (fromIndex > toIndex)
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+
+        if (fromIndex == 0)
+            return ancestor(toIndex);
+
+        String[] segments = segments();
+        NodePath path = ROOT_PATH;
+        for (int i = fromIndex; i < toIndex; i++) {
+            path = new NodePath(path, segments[i]);
+        }
+        return path;
     }
 
     /**
@@ -134,7 +220,10 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the specific part of the path
      */
     public String getSegment(int index) {
-        return pathList.get(index);
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        return ancestor(index + 1).segment;
     }
 
     /**
@@ -143,8 +232,7 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the last part of the path
      */
     public String getLastSegment() {
-        int size = size();
-        return (size == 0) ? null : getSegment(size - 1);
+        return segment;
     }
 
     /**
@@ -153,10 +241,7 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the path
      */
     public NodePath parent() {
-        if (pathList.isEmpty())
-            return null;
-
-        return subPath(0, size() - 1);
+        return parent;
     }
 
     /**
@@ -166,17 +251,10 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return true if the specified path is a descendant of this path
      */
     public boolean isParent(NodePath path) {
-        if (size() >= path.size())
+        if (size >= path.size)
             return false;
 
-        for (int i = 0; i < size(); i++) {
-            String name = getSegment(i);
-            if (!name.equals(path.getSegment(i))) {
-                return false;
-            }
-        }
-
-        return true;
+        return equals(path.ancestor(size));
     }
 
     /**
@@ -185,7 +263,7 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the size of the node path
      */
     public int size() {
-        return pathList.size();
+        return size;
     }
 
     /**
@@ -194,7 +272,7 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the path as an unmodifiable list of strings
      */
     public List<String> asList() {
-        return Collections.unmodifiableList(pathList);
+        return Collections.unmodifiableList(Arrays.asList(segments()));
     }
 
     /**
@@ -203,38 +281,44 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
      * @return the path as an array of strings
      */
     public String[] asArray() {
-        return pathList.toArray(new String[pathList.size()]);
+        return segments().clone();
     }
 
     @Override
     public int compareTo(NodePath other) {
-        int size = size();
-        int otherSize = other.size();
+        if (this == other)
+            return 0;
 
-        for (int i = 0; i < otherSize; i++) {
-            if (i >= size)
-                break;
+        String[] segments = segments();
+        String[] otherSegments = other.segments();
+        int length = Math.min(size, other.size);
 
-            int result = getSegment(i).compareTo(other.getSegment(i));
+        for (int i = 0; i < length; i++) {
+            int result = segments[i].compareTo(otherSegments[i]);
             if (result != 0)
                 return result;
         }
 
-        return (size < otherSize ? -1 : (size == otherSize ? 0 : 1));
+        return (size < other.size ? -1 : (size == other.size ? 0 : 1));
     }
 
     @Override
     public Iterator<String> iterator() {
-        final Iterator<String> iterator = pathList.iterator();
+        final String[] segments = segments();
         return new Iterator<String>() {
+            private int index;
+
             @Override
             public boolean hasNext() {
-                return iterator.hasNext();
+                return index < segments.length;
             }
 
             @Override
             public String next() {
-                return iterator.next();
+                if (index >= segments.length)
+                    throw new NoSuchElementException();
+
+                return segments[index++];
             }
 
             @Override
@@ -252,17 +336,85 @@ public class NodePath implements Iterable<String>, Comparable<NodePath>, Seriali
             return false;
 
         NodePath that = (NodePath) o;
+        if (size != that.size || hash != that.hash)
+            return false;
+
+        // Walk both paths towards the root, paths sharing a prefix meet at the same parent instance
+        NodePath left = this;
+        NodePath right = that;
+        while (left != right) {
+            String s = left.segment;
+            if (s == null ? right.segment != null : !s.equals(right.segment))
+                return false;
+
+            left = left.parent;
+            right = right.parent;
+        }
 
-        return pathList.equals(that.pathList);
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return pathList.hashCode();
+        return hash;
     }
 
     @Override
     public String toString() {
-        return StringJoiner.joiner("/").leading().join(pathList);
+        String s = string;
+        if (s == null) {
+            // Built from the string of the parent, which is cached as well
+            s = (size == 0) ? "/" : (parent.size == 0) ? "/" + segment : parent.toString() + "/" + segment;
+            string = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the ancestor of this path (or this path itself) with the specified size
+     */
+    private NodePath ancestor(int size) {
+        NodePath path = this;
+        for (int i = this.size; i > size; i--) {
+            path = path.parent;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the segments of this path, computed once and shared by all the array based operations. The returned array
+     * must not be modified.
+     */
+    private String[] segments() {
+        String[] s = segments;
+        if (s == null) {
+            s = new String[size];
+            NodePath path = this;
+            for (int i = size - 1; i >= 0; i--) {
+                s[i] = path.segment;
+                path = path.parent;
+            }
+            segments = s;
+        }
+        return s;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("pathList", new ArrayList<String>(asList()));
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        deserializedPathList = (List<String>) fields.get("pathList", null);
+    }
+
+    private Object readResolve() {
+        if (deserializedPathList == null || deserializedPathList.isEmpty())
+            return ROOT_PATH;
+
+        return ROOT_PATH.append(deserializedPathList.toArray(new String[deserializedPathList.size()]));
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+
+/**
+ * The fields of the nodes to load. The name, path, URI and children of a node are always loaded, the other fields can be
+ * excluded to reduce the memory used by each node and the data read from storage. Accessing a field which was not loaded
+ * throws an <code>IllegalStateException</code>.
+ * <p>
+ * A projection is declared with the visitor used to load the nodes, for example
+ * <code>navigation.getRootNode(Nodes.project(Nodes.visitAll(), NodeProjection.of(Field.VISIBILITY)))</code> loads all the
+ * nodes with only their names and visibility.
+ * </p>
+ *
+ * @see Nodes#project(NodeVisitor, NodeProjection)
+ */
+public final class NodeProjection implements Serializable {
+    private static final NodeProjection ALL = new NodeProjection(EnumSet.allOf(Field.class));
+
+    /**
+     * Returns the projection including all the fields of the nodes.
+     *
+     * @return the projection
+     */
+    public static NodeProjection all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a projection including only the specified fields.
+     *
+     * @param fields the fields to include
+     * @return the projection
+     * @throws IllegalArgumentException if fields is null or contains null
+     */
+    public static NodeProjection of(Field... fields) {
+        Parameters.requireNonNull(fields, "fields");
+
+        EnumSet<Field> set = EnumSet.noneOf(Field.class);
+        for (Field field : fields) {
+            set.add(Parameters.requireNonNull(field, "field"));
+        }
+        return new NodeProjection(set);
+    }
+
+    /**
+     * Returns the projection declared by the visitor, or {@link #all()} if the visitor does not declare a projection. A
+     * combination of visitors declares the union of the projections declared by the visitors it combines.
+     *
+     * @param visitor the visitor used to load the nodes
+     * @return the projection
+     * @throws IllegalArgumentException if visitor is null
+     * @see Nodes#project(NodeVisitor, NodeProjection)
+     */
+    public static NodeProjection of(NodeVisitor visitor) {
+        Parameters.requireNonNull(visitor, "visitor");
+
+        NodeProjection projection = Nodes.declaredProjection(visitor);
+        return (projection == null) ? ALL : projection;
+    }
+
+    /**
+     * Returns the fields which can be read from the node: the projection of the snapshot or tree of a read only node, or all
+     * the fields for other nodes.
+     */
+    static NodeProjection loaded(Node node) {
+        return (node instanceof ReadOnlyNode) ? ((ReadOnlyNode) node).getProjection() : ALL;
+    }
+
+    private final EnumSet<Field> fields;
+
+    private NodeProjection(EnumSet<Field> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Returns true if the field is included in this projection.
+     *
+     * @param field the field
+     * @return true if the field is included
+     */
+    public boolean includes(Field field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * Returns the fields included in this projection.
+     *
+     * @return an unmodifiable set of fields
+     */
+    public Set<Field> getFields() {
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Returns a projection including the fields of this projection and the specified fields.
+     *
+     * @param fields the fields to add
+     * @return the projection
+     * @throws IllegalArgumentException if fields is null or contains null
+     */
+    public NodeProjection with(Field... fields) {
+        Parameters.requireNonNull(fields, "fields");
+
+        EnumSet<Field> set = EnumSet.copyOf(this.fields);
+        for (Field field : fields) {
+            set.add(Parameters.requireNonNull(field, "field"));
+        }
+        return new NodeProjection(set);
+    }
+
+    /**
+     * Returns a projection including the fields of this projection except the specified fields.
+     *
+     * @param fields the fields to remove
+     * @return the projection
+     * @throws IllegalArgumentException if fields is null or contains null
+     */
+    public NodeProjection without(Field... fields) {
+        Parameters.requireNonNull(fields, "fields");
+
+        EnumSet<Field> set = EnumSet.copyOf(this.fields);
+        for (Field field : fields) {
+            set.remove(Parameters.requireNonNull(field, "field"));
+        }
+        return new NodeProjection(set);
+    }
+
+    /**
+     * Checks that the field is included in this projection.
+     *
+     * @param field the field being accessed
+     * @param nodePath the path of the node being accessed
+     * @throws IllegalStateException if the field is not included in this projection
+     */
+    public void checkLoaded(Field field, NodePath nodePath) {
+        if (!fields.contains(field))
+            throw new IllegalStateException("Field " + field + " of node " + nodePath + " has not been loaded");
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("fields", fields).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof NodeProjection))
+            return false;
+
+        return fields.equals(((NodeProjection) o).fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+
+    /**
+     * The optional fields of a node
+     */
+    public static enum Field {
+        /**
+         * The display names, see {@link Node#getDisplayName()} and {@link Node#getDisplayNames()}
+         */
+        DISPLAY_NAMES,
+
+        /**
+         * The icon name, see {@link Node#getIconName()}
+         */
+        ICON_NAME,
+
+        /**
+         * The visibility, see {@link Node#getVisibility()} and {@link Node#isVisible()}
+         */
+        VISIBILITY,
+
+        /**
+         * The page id, see {@link Node#getPageId()}
+         */
+        PAGE_ID,
+
+        /**
+         * The attributes, see {@link Node#getAttributes()}
+         */
+        ATTRIBUTES
+    }
+}
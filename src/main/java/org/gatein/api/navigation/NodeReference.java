@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * A reference to a node of the navigation of a site.
+ */
+public final class NodeReference implements Serializable {
+    private final SiteId siteId;
+    private final NodePath nodePath;
+
+    /**
+     * @param siteId the id of the site of the navigation
+     * @param nodePath the path of the node
+     * @throws IllegalArgumentException if siteId or nodePath is null
+     */
+    public NodeReference(SiteId siteId, NodePath nodePath) {
+        this.siteId = Parameters.requireNonNull(siteId, "siteId");
+        this.nodePath = Parameters.requireNonNull(nodePath, "nodePath");
+    }
+
+    /**
+     * The id of the site whose navigation contains the node.
+     *
+     * @return the site id
+     */
+    public SiteId getSiteId() {
+        return siteId;
+    }
+
+    /**
+     * The path of the node in the navigation.
+     *
+     * @return the node path
+     */
+    public NodePath getNodePath() {
+        return nodePath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof NodeReference))
+            return false;
+
+        NodeReference other = (NodeReference) o;
+        return siteId.equals(other.siteId) && nodePath.equals(other.nodePath);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * siteId.hashCode() + nodePath.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("siteId", siteId).add("nodePath", nodePath).toString();
+    }
+}
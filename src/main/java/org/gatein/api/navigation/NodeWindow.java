@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gatein.api.common.Pagination;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+
+/**
+ * A window of the children of a node, containing only the children of the requested page and the exact number of children of
+ * the node.
+ * <p>
+ * The list of the nodes of a window is immutable, but not the nodes themselves: a window holds the nodes it was created with,
+ * not copies. A window is serialized with its nodes, so a window of nodes which are part of a larger tree is serialized with
+ * that tree.
+ * </p>
+ *
+ * @see Navigation#getChildren(Node, Pagination)
+ */
+public final class NodeWindow implements Iterable<Node>, Serializable {
+    /**
+     * Creates a window of the loaded children of the specified node. The nodes of the window are the children of the node
+     * themselves, with the children they have loaded, so changes made to them are visible through the window. Use a read
+     * only node, for instance of a {@link NavigationSnapshot}, for a window which can be shared.
+     *
+     * @param parent the parent node
+     * @param pagination the window to return
+     * @return the window
+     * @throws IllegalArgumentException if parent or pagination is null
+     * @throws IllegalStateException if the children of the parent have not been loaded
+     */
+    public static NodeWindow of(Node parent, Pagination pagination) {
+        Parameters.requireNonNull(parent, "parent");
+        Parameters.requireNonNull(pagination, "pagination");
+
+        int count = parent.getChildCount();
+        int from = Math.min(Math.max(pagination.getOffset(), 0), count);
+        int to = (pagination.getLimit() < 0) ? count : (int) Math.min((long) from + pagination.getLimit(), count);
+
+        List<Node> nodes = new ArrayList<Node>(to - from);
+        for (int i = from; i < to; i++) {
+            nodes.add(parent.getChild(i));
+        }
+        return new NodeWindow(parent.getNodePath(), pagination, nodes, count);
+    }
+
+    private final NodePath parentPath;
+    private final Pagination pagination;
+    private final List<Node> nodes;
+    private final int totalCount;
+
+    /**
+     * Creates a window of the children of a node.
+     *
+     * @param parentPath the path of the parent node
+     * @param pagination the requested window
+     * @param nodes the children in the window
+     * @param totalCount the number of children of the parent node
+     * @throws IllegalArgumentException if parentPath, pagination or nodes is null, or if totalCount is less than the number of
+     *         nodes
+     */
+    public NodeWindow(NodePath parentPath, Pagination pagination, List<Node> nodes, int totalCount) {
+        this.parentPath = Parameters.requireNonNull(parentPath, "parentPath");
+        this.pagination = Parameters.requireNonNull(pagination, "pagination");
+        Parameters.requireNonNull(nodes, "nodes");
+        if (totalCount < nodes.size())
+            throw new IllegalArgumentException("totalCount " + totalCount + " is less than the number of nodes "
+                    + nodes.size());
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<Node>(nodes));
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * The path of the parent node
+     *
+     * @return the parent path
+     */
+    public NodePath getParentPath() {
+        return parentPath;
+    }
+
+    /**
+     * The requested window
+     *
+     * @return the pagination
+     */
+    public Pagination getPagination() {
+        return pagination;
+    }
+
+    /**
+     * The children in this window, in the order of the parent node. The children of the nodes returned by
+     * {@link Navigation#getChildren(Node, Pagination)} are not loaded.
+     *
+     * @return an unmodifiable list of nodes
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * The exact number of children of the parent node
+     *
+     * @return the total number of children
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * If there are more children after this window
+     *
+     * @return true if there are more children
+     */
+    public boolean hasNext() {
+        return Math.max(pagination.getOffset(), 0) + nodes.size() < totalCount;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return nodes.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("parentPath", parentPath).add("pagination", pagination)
+                .add("size", nodes.size()).add("totalCount", totalCount).toString();
+    }
+}
@@ -22,9 +22,30 @@
 
 package org.gatein.api.navigation;
 
+import org.gatein.api.Portal;
+import org.gatein.api.PortalRequest;
+import org.gatein.api.common.Clock;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.Page;
+import org.gatein.api.page.PageId;
+import org.gatein.api.security.User;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author <a href="mailto:nscavell@redhat.com">Nick Scavelli</a>
@@ -45,6 +66,182 @@ public class Nodes {
         return Collections.unmodifiableList(l);
     }
 
+    /**
+     * Returns a lazy view of the node and its descendants in pre-order, i.e. each node comes before its children. The visitor
+     * is used to determine whether the children of a node are traversed, the specified node being visited at depth 0. Children
+     * which have not been loaded are never traversed.
+     * <p>
+     * Nodes are traversed through their iterators when needed, no list of nodes is created. The tree should not be modified
+     * while it is traversed. The spliterator of the view splits the tree by subtrees, as described by
+     * {@link #parallelStream(Node, NodeVisitor)}.
+     * </p>
+     *
+     * @param node the node to start from
+     * @param visitor the visitor to determine which nodes to traverse
+     * @return the nodes in pre-order
+     * @throws IllegalArgumentException if node or visitor is null
+     */
+    public static Iterable<Node> preOrder(final Node node, final NodeVisitor visitor) {
+        Parameters.requireNonNull(node, "node");
+        Parameters.requireNonNull(visitor, "visitor");
+
+        return new Iterable<Node>() {
+            @Override
+            public Iterator<Node> iterator() {
+                return new PreOrderIterator(node, 0, visitor);
+            }
+
+            @Override
+            public Spliterator<Node> spliterator() {
+                return new NodeSpliterator(node, visitor, false);
+            }
+        };
+    }
+
+    /**
+     * Returns a lazy view of the node and its descendants in post-order, i.e. each node comes after its children. The visitor
+     * is used to determine whether the children of a node are traversed, the specified node being visited at depth 0. Children
+     * which have not been loaded are never traversed.
+     * <p>
+     * Nodes are traversed through their iterators when needed, no list of nodes is created. The tree should not be modified
+     * while it is traversed. The spliterator of the view splits the tree by subtrees, so a parallel post-order stream can be
+     * created with <code>StreamSupport.stream(Nodes.postOrder(node, visitor).spliterator(), true)</code>.
+     * </p>
+     *
+     * @param node the node to start from
+     * @param visitor the visitor to determine which nodes to traverse
+     * @return the nodes in post-order
+     * @throws IllegalArgumentException if node or visitor is null
+     */
+    public static Iterable<Node> postOrder(final Node node, final NodeVisitor visitor) {
+        Parameters.requireNonNull(node, "node");
+        Parameters.requireNonNull(visitor, "visitor");
+
+        return new Iterable<Node>() {
+            @Override
+            public Iterator<Node> iterator() {
+                return new PostOrderIterator(node, 0, visitor);
+            }
+
+            @Override
+            public Spliterator<Node> spliterator() {
+                return new NodeSpliterator(node, visitor, true);
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of the node and its descendants in pre-order. The visitor is used as by
+     * {@link #preOrder(Node, NodeVisitor)}, and the tree is traversed lazily, as the stream is consumed.
+     *
+     * @param node the node to start from
+     * @param visitor the visitor to determine which nodes to traverse
+     * @return the nodes in pre-order
+     * @throws IllegalArgumentException if node or visitor is null
+     */
+    public static Stream<Node> stream(Node node, NodeVisitor visitor) {
+        return StreamSupport.stream(preOrder(node, visitor).spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of the node and its descendants in pre-order. The visitor is used as by
+     * {@link #preOrder(Node, NodeVisitor)}, and may be called concurrently by several threads.
+     * <p>
+     * The stream is split by subtrees: a node is split into ranges of its children, which are accessed by index, and the
+     * child lists are never copied. The stream is ordered, so operations like <code>collect</code> or
+     * <code>forEachOrdered</code> see the nodes in pre-order. The tree should not be modified while it is traversed.
+     * </p>
+     *
+     * @param node the node to start from
+     * @param visitor the visitor to determine which nodes to traverse
+     * @return the nodes in pre-order
+     * @throws IllegalArgumentException if node or visitor is null
+     */
+    public static Stream<Node> parallelStream(Node node, NodeVisitor visitor) {
+        return StreamSupport.stream(preOrder(node, visitor).spliterator(), true);
+    }
+
+    /**
+     * Returns the first time after the specified time at which the visibility of the node or of one of its loaded
+     * descendants changes, or -1 if it never changes. State computed from the visibility of the nodes at the specified time,
+     * for example a menu of the visible nodes, stays valid until the returned time.
+     * <p>
+     * The transitions of the root node of a {@link NavigationSnapshot} or a {@link CompactNodeTree} are collected once and
+     * cached, other nodes are walked on each call.
+     * </p>
+     *
+     * @param node the node
+     * @param time the time in milliseconds since the epoch
+     * @return the time of the next visibility transition or -1
+     * @throws IllegalArgumentException if node is null
+     * @see Visibility#nextTransition(long)
+     */
+    public static long nextVisibilityTransition(Node node, long time) {
+        Parameters.requireNonNull(node, "node");
+
+        if (node instanceof NavigationSnapshot.SnapshotNode && node.isRoot())
+            return ((NavigationSnapshot.SnapshotNode) node).getSnapshot().nextVisibilityTransition(time);
+        if (node instanceof CompactNodeTree.CompactNode && node.isRoot())
+            return ((CompactNodeTree.CompactNode) node).getTree().nextVisibilityTransition(time);
+
+        long next = -1;
+        for (Node n : preOrder(node, visitAll())) {
+            long transition = n.getVisibility().nextTransition(time);
+            if (transition != -1 && (next == -1 || transition < next)) {
+                next = transition;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns a deterministic 64 bit hash of the content of the node and its loaded descendants. The hash covers the name,
+     * display names, icon name, visibility, page id and attributes of each node, and the children of each node in order.
+     * Display names and attributes are hashed regardless of their iteration order. Two trees with equal hashes have the same
+     * content with a very high probability, and comparing the hashes of subtrees finds the changed nodes without walking
+     * unchanged subtrees.
+     * <p>
+     * Hashes are stable across JVMs, and only comparable between trees loaded with the same visitor and projection. The hashes
+     * of the nodes of a {@link NavigationSnapshot} or a {@link CompactNodeTree} are computed once and cached.
+     * </p>
+     *
+     * @param node the node
+     * @return the content hash
+     * @throws IllegalArgumentException if node is null
+     */
+    public static long contentHash(Node node) {
+        Parameters.requireNonNull(node, "node");
+
+        if (node instanceof NavigationSnapshot.SnapshotNode)
+            return ((NavigationSnapshot.SnapshotNode) node).getContentHash();
+        if (node instanceof CompactNodeTree.CompactNode)
+            return ((CompactNodeTree.CompactNode) node).getContentHash();
+
+        return NodeHash.hash(node, NodeProjection.all());
+    }
+
+    /**
+     * Returns the chain of the ancestors of the node, from the top level node down to the node itself, with their labels in
+     * the locale and their URIs. Use a {@link BreadcrumbCache} to avoid walking the ancestors on each request.
+     *
+     * @param node the node
+     * @param locale the locale of the labels
+     * @return the breadcrumb, empty for the root node
+     * @throws IllegalArgumentException if node or locale is null
+     * @throws IllegalStateException if the URI of a read only node is resolved without a portal request
+     */
+    public static Breadcrumb breadcrumb(Node node, Locale locale) {
+        Parameters.requireNonNull(node, "node");
+        Parameters.requireNonNull(locale, "locale");
+
+        List<Breadcrumb.Item> items = new ArrayList<Breadcrumb.Item>();
+        for (Node current = node; current.getParent() != null; current = current.getParent()) {
+            items.add(Breadcrumb.Item.of(current, locale));
+        }
+        Collections.reverse(items);
+        return Breadcrumb.of(items);
+    }
+
     // ----------------- Node Visitor Utility Methods
 
     /**
@@ -120,6 +317,188 @@ public class Nodes {
         return new DelegatingPathVisitor(path, visitor);
     }
 
+    /**
+     * Creates a <code>NodeVisitor</code> which will visit the nodes matching any of the paths. Ancestors shared by several
+     * paths are visited once. Once the end of a path is met, the visitor parameter is used to determine further visiting,
+     * relative to the node represented by the path.
+     * <p>
+     * This can be used to load several nodes in a single pass, for example
+     * <code>visitNodes(Arrays.asList(NodePath.path("foo"), NodePath.path("bar", "baz")), visitChildren())</code> would load
+     * the nodes /foo and /bar/baz along with their children.
+     * </p>
+     *
+     * @param paths the paths to the nodes
+     * @param visitor the visitor object used once the end of a path is met.
+     * @return a visitor object
+     * @throws IllegalArgumentException if paths or visitor is null, or if paths contains null
+     */
+    public static NodeVisitor visitNodes(Collection<NodePath> paths, NodeVisitor visitor) {
+        Parameters.requireNonNull(paths, "paths");
+        Parameters.requireNonNull(visitor, "visitor");
+
+        PathTrie trie = new PathTrie();
+        for (NodePath path : paths) {
+            trie.add(Parameters.requireNonNull(path, "path"));
+        }
+        return new DelegatingPathsVisitor(trie, visitor);
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which visits the children of a node only if all the specified visitors do. Visitors
+     * are called in order, until one of them returns false.
+     * <p>
+     * Combined with {@link #visible()} and {@link #pageAccessible(User)} this prunes subtrees at load time, for example
+     * <code>and(visitNodes(3), visible())</code> loads 3 levels of nodes without loading the children of hidden nodes.
+     * </p>
+     *
+     * @param visitors the visitors to combine
+     * @return a visitor object
+     * @throws IllegalArgumentException if visitors is null or empty, or contains null
+     */
+    public static NodeVisitor and(NodeVisitor... visitors) {
+        return new CompositeVisitor(visitors, true);
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which visits the children of a node if any of the specified visitors does. Visitors
+     * are called in order, until one of them returns true.
+     *
+     * @param visitors the visitors to combine
+     * @return a visitor object
+     * @throws IllegalArgumentException if visitors is null or empty, or contains null
+     */
+    public static NodeVisitor or(NodeVisitor... visitors) {
+        return new CompositeVisitor(visitors, false);
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which visits the children of a node only if the specified visitor does not.
+     *
+     * @param visitor the visitor to negate
+     * @return a visitor object
+     * @throws IllegalArgumentException if visitor is null
+     */
+    public static NodeVisitor not(final NodeVisitor visitor) {
+        Parameters.requireNonNull(visitor, "visitor");
+
+        return new DeclaringVisitor() {
+            @Override
+            public boolean visit(int depth, String name, NodeDetails details) {
+                return !visitor.visit(depth, name, details);
+            }
+
+            @Override
+            public NodeProjection getProjection() {
+                return declaredProjection(visitor);
+            }
+        };
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which only visits the children of visible nodes, see {@link Visibility#isVisible()}.
+     * Hidden nodes are loaded as children of their parent, however their descendants are not. This visitor does not limit the
+     * depth and should be combined with another visitor using {@link #and(NodeVisitor...)}.
+     *
+     * @return a visitor object
+     */
+    public static NodeVisitor visible() {
+        return VISIBLE;
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which only visits the children of nodes visible at the current time of the clock,
+     * see {@link Visibility#isVisible(Clock)}. This visitor does not limit the depth and should be combined with another
+     * visitor using {@link #and(NodeVisitor...)}.
+     *
+     * @param clock the clock
+     * @return a visitor object
+     * @throws IllegalArgumentException if clock is null
+     */
+    public static NodeVisitor visible(final Clock clock) {
+        Parameters.requireNonNull(clock, "clock");
+
+        return new NodeVisitor() {
+            @Override
+            public boolean visit(int depth, String name, NodeDetails details) {
+                return details == null || details.getVisibility().isVisible(clock);
+            }
+        };
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which only visits the children of nodes whose page the user has permissions to
+     * access. Nodes which do not point to a page are visited. The portal of the current <code>PortalRequest</code> is used to
+     * check the permissions. This visitor does not limit the depth and should be combined with another visitor using
+     * {@link #and(NodeVisitor...)}.
+     *
+     * @param user the user
+     * @return a visitor object
+     * @throws IllegalArgumentException if user is null
+     */
+    public static NodeVisitor pageAccessible(User user) {
+        return new PageAccessVisitor(null, Parameters.requireNonNull(user, "user"));
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which only visits the children of nodes whose page the user has permissions to
+     * access. Nodes which do not point to a page are visited. This visitor does not limit the depth and should be combined
+     * with another visitor using {@link #and(NodeVisitor...)}.
+     *
+     * @param portal the portal used to check the permissions
+     * @param user the user
+     * @return a visitor object
+     * @throws IllegalArgumentException if portal or user is null
+     */
+    public static NodeVisitor pageAccessible(Portal portal, User user) {
+        return new PageAccessVisitor(Parameters.requireNonNull(portal, "portal"), Parameters.requireNonNull(user, "user"));
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which only expands the first <code>max</code> children of each node, that is visits
+     * their children. This does not limit the number of loaded children: all the children of a node are loaded together,
+     * including the children past the limit, only their descendants are not loaded. This visitor does not limit the depth
+     * and should be combined with another visitor using {@link #and(NodeVisitor...)}.
+     * <p>
+     * The returned visitor is single use: it counts the children of each node it is called for, and the counts are never
+     * reset, so a new instance must be created each time nodes are loaded. {@link #and(NodeVisitor...)} and
+     * {@link #or(NodeVisitor...)} stop calling the visitors they combine once the result is known, so when this visitor is
+     * not the first one of a combination, only the children the previous visitors did not decide on are counted.
+     * </p>
+     *
+     * @param max the maximum number of children of a node to expand
+     * @return a visitor object
+     * @throws IllegalArgumentException if max is negative
+     */
+    public static NodeVisitor expandFirstChildren(int max) {
+        if (max < 0)
+            throw new IllegalArgumentException("max cannot be negative");
+
+        return new FirstChildrenVisitor(max);
+    }
+
+    /**
+     * Creates a <code>NodeVisitor</code> which visits the same nodes as the specified visitor, and declares the fields of the
+     * nodes to load. The projection is also taken into account when the returned visitor is combined with others by
+     * {@link #and(NodeVisitor...)}, {@link #or(NodeVisitor...)}, {@link #not(NodeVisitor)} and the <code>visitNodes</code>
+     * methods: a combination declares the union of the projections declared by the visitors it combines, so that every
+     * visitor gets the fields it needs.
+     *
+     * @param visitor the visitor to determine which nodes to load
+     * @param projection the fields of the nodes to load
+     * @return a visitor object
+     * @throws IllegalArgumentException if visitor or projection is null
+     * @see NodeProjection#of(NodeVisitor)
+     */
+    public static NodeVisitor project(NodeVisitor visitor, NodeProjection projection) {
+        Parameters.requireNonNull(visitor, "visitor");
+        Parameters.requireNonNull(projection, "projection");
+
+        if (visitor instanceof ProjectingVisitor) {
+            visitor = ((ProjectingVisitor) visitor).visitor;
+        }
+        return new ProjectingVisitor(visitor, projection);
+    }
+
     // ----------------- Private visitor stuff
 
     private static final NodeVisitor NONE = new DepthVisitor(0);
@@ -128,6 +507,32 @@ public class Nodes {
 
     public static final NodeVisitor ALL = new DepthVisitor(-1);
 
+    private static final NodeVisitor VISIBLE = new NodeVisitor() {
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            return details == null || details.getVisibility().isVisible();
+        }
+    };
+
+    /**
+     * A visitor which may declare the fields of the nodes to load, see {@link NodeProjection#of(NodeVisitor)}.
+     */
+    interface DeclaringVisitor extends NodeVisitor {
+        /**
+         * The declared projection
+         *
+         * @return the projection, or null if the visitor does not declare one
+         */
+        NodeProjection getProjection();
+    }
+
+    /**
+     * Returns the projection declared by the visitor, or null if it does not declare one.
+     */
+    static NodeProjection declaredProjection(NodeVisitor visitor) {
+        return (visitor instanceof DeclaringVisitor) ? ((DeclaringVisitor) visitor).getProjection() : null;
+    }
+
     // Depth visitor
     private static class DepthVisitor implements NodeVisitor {
         private final int height;
@@ -143,7 +548,7 @@ public class Nodes {
     }
 
     // NodePath visitor
-    private static class DelegatingPathVisitor implements NodeVisitor {
+    private static class DelegatingPathVisitor implements DeclaringVisitor {
         private final NodePath path;
         private final NodeVisitor visitor;
 
@@ -152,6 +557,11 @@ public class Nodes {
             this.visitor = visitor;
         }
 
+        @Override
+        public NodeProjection getProjection() {
+            return declaredProjection(visitor);
+        }
+
         @Override
         public boolean visit(int depth, String name, NodeDetails details) {
             if (depth < path.size()) {
@@ -168,6 +578,457 @@ public class Nodes {
         }
     }
 
+    // And/Or visitor
+    private static class CompositeVisitor implements DeclaringVisitor {
+        private final NodeVisitor[] visitors;
+        private final boolean and;
+
+        public CompositeVisitor(NodeVisitor[] visitors, boolean and) {
+            Parameters.requireNonEmpty(visitors, "visitors");
+            for (NodeVisitor visitor : visitors) {
+                Parameters.requireNonNull(visitor, "visitor");
+            }
+
+            this.visitors = visitors.clone();
+            this.and = and;
+        }
+
+        @Override
+        public NodeProjection getProjection() {
+            NodeProjection union = null;
+            for (NodeVisitor visitor : visitors) {
+                NodeProjection projection = declaredProjection(visitor);
+                if (projection != null) {
+                    union = (union == null) ? projection : union.with(projection.getFields().toArray(
+                            new NodeProjection.Field[0]));
+                }
+            }
+            return union;
+        }
+
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            for (NodeVisitor visitor : visitors) {
+                if (visitor.visit(depth, name, details) != and)
+                    return !and;
+            }
+            return and;
+        }
+    }
+
+    // Page access visitor
+    private static class PageAccessVisitor implements NodeVisitor {
+        private final Portal portal;
+        private final User user;
+        private final ConcurrentMap<PageId, Boolean> accessible = new ConcurrentHashMap<PageId, Boolean>();
+
+        public PageAccessVisitor(Portal portal, User user) {
+            this.portal = portal;
+            this.user = user;
+        }
+
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            PageId pageId = (details == null) ? null : details.getPageId();
+            if (pageId == null)
+                return true;
+
+            Boolean result = accessible.get(pageId);
+            if (result == null) {
+                Portal p = (portal == null) ? PortalRequest.getInstance().getPortal() : portal;
+                Page page = p.getPage(pageId);
+                result = page != null && p.hasPermission(user, page.getAccessPermission());
+                accessible.put(pageId, result);
+            }
+            return result;
+        }
+    }
+
+    // Max children visitor
+    private static class FirstChildrenVisitor implements NodeVisitor {
+        private final int max;
+        private final ConcurrentMap<NodePath, AtomicInteger> counts = new ConcurrentHashMap<NodePath, AtomicInteger>();
+
+        public FirstChildrenVisitor(int max) {
+            this.max = max;
+        }
+
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            if (details == null)
+                return true;
+
+            NodePath parent = details.getNodePath().parent();
+            AtomicInteger count = counts.get(parent);
+            if (count == null) {
+                AtomicInteger existing = counts.putIfAbsent(parent, count = new AtomicInteger());
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+            return count.incrementAndGet() <= max;
+        }
+    }
+
+    // Projection visitor
+    private static class ProjectingVisitor implements DeclaringVisitor {
+        private final NodeVisitor visitor;
+        private final NodeProjection projection;
+
+        public ProjectingVisitor(NodeVisitor visitor, NodeProjection projection) {
+            this.visitor = visitor;
+            this.projection = projection;
+        }
+
+        @Override
+        public NodeProjection getProjection() {
+            return projection;
+        }
+
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            return visitor.visit(depth, name, details);
+        }
+    }
+
+    // NodePath collection visitor
+    private static class DelegatingPathsVisitor implements DeclaringVisitor {
+        private final PathTrie trie;
+        private final NodeVisitor visitor;
+
+        public DelegatingPathsVisitor(PathTrie trie, NodeVisitor visitor) {
+            this.trie = trie;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public NodeProjection getProjection() {
+            return declaredProjection(visitor);
+        }
+
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            boolean result = false;
+
+            // Walk down the trie, any path ending on the way delegates to the visitor relative to the end of that path
+            PathTrie current = trie;
+            NodePath nodePath = (depth == 0 || details == null) ? NodePath.root() : details.getNodePath();
+            Iterator<String> segments = nodePath.iterator();
+            for (int i = 0; current != null; i++) {
+                if (current.end && !result) {
+                    result = visitor.visit(depth - i, name, details);
+                }
+
+                if (i == depth) {
+                    return result || !current.children.isEmpty();
+                }
+                current = current.children.get(segments.next());
+            }
+            return result;
+        }
+    }
+
+    private static class PathTrie {
+        private final Map<String, PathTrie> children = new HashMap<String, PathTrie>(4);
+        private boolean end;
+
+        void add(NodePath path) {
+            PathTrie current = this;
+            for (String segment : path) {
+                PathTrie child = current.children.get(segment);
+                if (child == null) {
+                    child = new PathTrie();
+                    current.children.put(segment, child);
+                }
+                current = child;
+            }
+            current.end = true;
+        }
+    }
+
     private Nodes() {
     }
+
+    // ----------------- Private traversal stuff
+
+    /**
+     * Asks the visitor if the children of the node should be traversed. The details are reused for every node of a traversal.
+     */
+    static boolean visitChildren(Node node, int depth, NodeVisitor visitor, LoadedNodeDetails details) {
+        if (!node.isChildrenLoaded() || node.getChildCount() == 0)
+            return false;
+        if (node.isRoot())
+            return visitor.visit(depth, null, null);
+
+        details.node = node;
+        return visitor.visit(depth, node.getName(), details);
+    }
+
+    private static class PreOrderIterator implements Iterator<Node> {
+        private final int depth;
+        private final NodeVisitor visitor;
+        private final LoadedNodeDetails details = new LoadedNodeDetails();
+        private final List<Iterator<Node>> stack = new ArrayList<Iterator<Node>>();
+        private Node next;
+
+        PreOrderIterator(Node node, int depth, NodeVisitor visitor) {
+            this.depth = depth;
+            this.visitor = visitor;
+            this.next = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Node next() {
+            Node current = next;
+            if (current == null)
+                throw new NoSuchElementException();
+
+            if (visitChildren(current, depth + stack.size(), visitor, details)) {
+                stack.add(current.iterator());
+            }
+
+            next = null;
+            while (!stack.isEmpty()) {
+                Iterator<Node> children = stack.get(stack.size() - 1);
+                if (children.hasNext()) {
+                    next = children.next();
+                    break;
+                }
+                stack.remove(stack.size() - 1);
+            }
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove operation not supported");
+        }
+    }
+
+    private static class PostOrderIterator implements Iterator<Node> {
+        private final int depth;
+        private final NodeVisitor visitor;
+        private final LoadedNodeDetails details = new LoadedNodeDetails();
+        private final List<Node> nodes = new ArrayList<Node>();
+        private final List<Iterator<Node>> stack = new ArrayList<Iterator<Node>>();
+
+        PostOrderIterator(Node node, int depth, NodeVisitor visitor) {
+            this.depth = depth;
+            this.visitor = visitor;
+            push(node);
+        }
+
+        private void push(Node node) {
+            int depth = this.depth + nodes.size();
+            nodes.add(node);
+            stack.add(visitChildren(node, depth, visitor, details) ? node.iterator() : null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !nodes.isEmpty();
+        }
+
+        @Override
+        public Node next() {
+            if (nodes.isEmpty())
+                throw new NoSuchElementException();
+
+            while (true) {
+                int top = nodes.size() - 1;
+                Iterator<Node> children = stack.get(top);
+                if (children != null && children.hasNext()) {
+                    push(children.next());
+                } else {
+                    stack.remove(top);
+                    return nodes.remove(top);
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove operation not supported");
+        }
+    }
+
+    /**
+     * Spliterator of a tree in pre-order or post-order. It covers, in order: a node without its descendants (pre-order only),
+     * a subtree being traversed by an iterator, a subtree not started yet, a range of children of a parent, each with its
+     * descendants, and nodes whose descendants come before them (post-order only). Splitting hands the first part of this
+     * sequence to the new spliterator: the first half of the range of children, after replacing a subtree not started yet by
+     * its node and the range of all its children. The size is unknown, so it is estimated by halving on each split.
+     */
+    private static class NodeSpliterator implements Spliterator<Node> {
+        private final NodeVisitor visitor;
+        private final boolean postOrder;
+        private final LoadedNodeDetails details = new LoadedNodeDetails();
+        private Node head;
+        private Iterator<Node> current;
+        private Node subtree;
+        private int subtreeDepth;
+        private Node parent;
+        private int from;
+        private int to;
+        private List<Node> tails;
+        private long estimate;
+
+        NodeSpliterator(Node node, NodeVisitor visitor, boolean postOrder) {
+            this.visitor = visitor;
+            this.postOrder = postOrder;
+            this.subtree = node;
+            this.estimate = Long.MAX_VALUE;
+        }
+
+        private NodeSpliterator(NodeSpliterator other) {
+            this.visitor = other.visitor;
+            this.postOrder = other.postOrder;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Node> action) {
+            if (head != null) {
+                Node node = head;
+                head = null;
+                action.accept(node);
+                return true;
+            }
+
+            while (true) {
+                if (current != null && current.hasNext()) {
+                    action.accept(current.next());
+                    return true;
+                }
+
+                current = null;
+                if (subtree != null) {
+                    current = iterator(subtree, subtreeDepth);
+                    subtree = null;
+                } else if (from < to) {
+                    current = iterator(parent.getChild(from++), subtreeDepth);
+                } else if (tails != null && !tails.isEmpty()) {
+                    action.accept(tails.remove(tails.size() - 1));
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        private Iterator<Node> iterator(Node node, int depth) {
+            return postOrder ? new PostOrderIterator(node, depth, visitor) : new PreOrderIterator(node, depth, visitor);
+        }
+
+        @Override
+        public Spliterator<Node> trySplit() {
+            while (to - from < 2) {
+                if (to - from == 1) {
+                    subtree = parent.getChild(from++);
+                }
+                if (subtree == null)
+                    return null;
+                if (head != null || current != null)
+                    return splitStarted();
+                if (!expand())
+                    return null;
+            }
+
+            NodeSpliterator prefix = splitStarted();
+            if (prefix == null) {
+                prefix = new NodeSpliterator(this);
+                estimate >>>= 1;
+                prefix.estimate = estimate;
+            }
+            int middle = from + (to - from) / 2;
+            prefix.parent = parent;
+            prefix.subtreeDepth = subtreeDepth;
+            prefix.from = from;
+            prefix.to = middle;
+            from = middle;
+            return prefix;
+        }
+
+        /**
+         * Hands the node without descendants and the subtree being traversed to a new spliterator, if any.
+         */
+        private NodeSpliterator splitStarted() {
+            if (head == null && current == null)
+                return null;
+
+            NodeSpliterator prefix = new NodeSpliterator(this);
+            prefix.head = head;
+            prefix.current = current;
+            head = null;
+            current = null;
+            estimate >>>= 1;
+            prefix.estimate = estimate;
+            return prefix;
+        }
+
+        /**
+         * Replaces the subtree by its node and the range of its children.
+         */
+        private boolean expand() {
+            Node node = subtree;
+            if (!visitChildren(node, subtreeDepth, visitor, details))
+                return false;
+
+            subtree = null;
+            if (postOrder) {
+                if (tails == null) {
+                    tails = new ArrayList<Node>();
+                }
+                tails.add(node);
+            } else {
+                head = node;
+            }
+            parent = node;
+            from = 0;
+            to = node.getChildCount();
+            subtreeDepth++;
+            return true;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Node details of a loaded node
+     */
+    static class LoadedNodeDetails implements NodeVisitor.NodeDetails {
+        private Node node;
+
+        @Override
+        public Visibility getVisibility() {
+            return node.getVisibility();
+        }
+
+        @Override
+        public String getIconName() {
+            return node.getIconName();
+        }
+
+        @Override
+        public PageId getPageId() {
+            return node.getPageId();
+        }
+
+        @Override
+        public NodePath getNodePath() {
+            return node.getNodePath();
+        }
+    }
 }
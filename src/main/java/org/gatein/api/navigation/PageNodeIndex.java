@@ -0,0 +1,221 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+
+/**
+ * An index of the nodes pointing at each page, across the navigations of all the sites. Lookups are a single hash lookup
+ * which never blocks, whatever the number of sites and nodes.
+ * <p>
+ * The nodes of a site are indexed from a {@link NavigationSnapshot}, see {@link #update(SiteId, NavigationSnapshot)}. When a
+ * site is indexed again from a new version of its snapshot, only the subtrees whose {@link Nodes#contentHash(Node) content
+ * hash} changed are compared. {@link NavigationSnapshots} keeps an index up to date as snapshots are published, and the portal
+ * should call {@link #removePage(PageId)} when a page is removed.
+ * </p>
+ * <p>
+ * Only the nodes loaded in the snapshots are indexed, so they should contain all the nodes of the navigations. This class is
+ * thread safe, updates are serialized.
+ * </p>
+ *
+ * @see org.gatein.api.Portal#findNodes(PageId)
+ */
+public class PageNodeIndex {
+    private final ConcurrentMap<PageId, Set<NodeReference>> nodes = new ConcurrentHashMap<PageId, Set<NodeReference>>();
+
+    // Guarded by this
+    private final Map<SiteId, Map<NodePath, PageId>> sites = new HashMap<SiteId, Map<NodePath, PageId>>();
+    private final Map<SiteId, NavigationSnapshot> indexed = new HashMap<SiteId, NavigationSnapshot>();
+    // The sets of the pages changed by the current update, published once the update is done
+    private final Map<PageId, Set<NodeReference>> changes = new HashMap<PageId, Set<NodeReference>>();
+
+    /**
+     * Returns the nodes pointing at the page.
+     *
+     * @param pageId the page id
+     * @return an unmodifiable set of the nodes, empty if no node points at the page
+     * @throws IllegalArgumentException if pageId is null
+     */
+    public Set<NodeReference> getNodes(PageId pageId) {
+        Set<NodeReference> references = nodes.get(Parameters.requireNonNull(pageId, "pageId"));
+        return (references == null) ? Collections.<NodeReference> emptySet() : references;
+    }
+
+    /**
+     * Indexes the nodes of the snapshot, replacing the nodes of the site indexed before. If the site was indexed from a
+     * previous version of the snapshot, only the changed subtrees are compared.
+     *
+     * @param siteId the site id
+     * @param snapshot the snapshot of the navigation of the site, or null to remove the nodes of the site
+     * @throws IllegalArgumentException if siteId is null, or if the snapshot does not include the page ids of the nodes
+     */
+    public synchronized void update(SiteId siteId, NavigationSnapshot snapshot) {
+        Parameters.requireNonNull(siteId, "siteId");
+        if (snapshot != null && !snapshot.getProjection().includes(NodeProjection.Field.PAGE_ID))
+            throw new IllegalArgumentException("The snapshot does not include the page ids of the nodes");
+
+        NavigationSnapshot previous = indexed.get(siteId);
+        if (snapshot == previous)
+            return;
+
+        if (snapshot == null) {
+            removeSite(siteId);
+            return;
+        }
+
+        if (previous == null) {
+            clear(siteId);
+            compare(siteId, NodePath.root(), null, snapshot.getRootNode());
+        } else {
+            compare(siteId, NodePath.root(), previous.getRootNode(), snapshot.getRootNode());
+        }
+        publish();
+        indexed.put(siteId, snapshot);
+    }
+
+    /**
+     * Indexes the loaded nodes of the tree, replacing the nodes of the site indexed before.
+     *
+     * @param siteId the site id
+     * @param root the root node of the navigation of the site
+     * @throws IllegalArgumentException if siteId or root is null
+     */
+    public synchronized void update(SiteId siteId, Node root) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(root, "root");
+
+        clear(siteId);
+        compare(siteId, NodePath.root(), null, root);
+        publish();
+        indexed.remove(siteId);
+    }
+
+    /**
+     * Removes the page from the index.
+     *
+     * @param pageId the id of the removed page
+     * @throws IllegalArgumentException if pageId is null
+     */
+    public synchronized void removePage(PageId pageId) {
+        Set<NodeReference> references = nodes.remove(Parameters.requireNonNull(pageId, "pageId"));
+        if (references != null) {
+            for (NodeReference reference : references) {
+                sites.get(reference.getSiteId()).remove(reference.getNodePath());
+            }
+        }
+    }
+
+    /**
+     * Removes the nodes of the site from the index.
+     *
+     * @param siteId the site id
+     * @throws IllegalArgumentException if siteId is null
+     */
+    public synchronized void removeSite(SiteId siteId) {
+        clear(Parameters.requireNonNull(siteId, "siteId"));
+        publish();
+        indexed.remove(siteId);
+    }
+
+    private void clear(SiteId siteId) {
+        Map<NodePath, PageId> pages = sites.remove(siteId);
+        if (pages != null) {
+            for (Map.Entry<NodePath, PageId> entry : pages.entrySet()) {
+                changes(entry.getValue()).remove(new NodeReference(siteId, entry.getKey()));
+            }
+        }
+    }
+
+    private void compare(SiteId siteId, NodePath path, Node previous, Node node) {
+        if (previous != null && node != null && Nodes.contentHash(previous) == Nodes.contentHash(node))
+            return;
+
+        PageId previousPageId = (previous == null) ? null : previous.getPageId();
+        PageId pageId = (node == null) ? null : node.getPageId();
+        if (previousPageId == null ? pageId != null : !previousPageId.equals(pageId)) {
+            Map<NodePath, PageId> pages = sites.get(siteId);
+            if (pages == null) {
+                pages = new HashMap<NodePath, PageId>();
+                sites.put(siteId, pages);
+            }
+
+            NodeReference reference = new NodeReference(siteId, path);
+            if (previousPageId != null) {
+                changes(previousPageId).remove(reference);
+                pages.remove(path);
+            }
+            if (pageId != null) {
+                changes(pageId).add(reference);
+                pages.put(path, pageId);
+            }
+        }
+
+        boolean previousLoaded = previous != null && previous.isChildrenLoaded();
+        boolean loaded = node != null && node.isChildrenLoaded();
+        if (previousLoaded) {
+            for (Node child : previous) {
+                Node current = loaded ? node.getChild(child.getName()) : null;
+                compare(siteId, path.append(child.getName()), child, current);
+            }
+        }
+        if (loaded) {
+            for (Node child : node) {
+                if (!previousLoaded || !previous.hasChild(child.getName())) {
+                    compare(siteId, path.append(child.getName()), null, child);
+                }
+            }
+        }
+    }
+
+    private Set<NodeReference> changes(PageId pageId) {
+        Set<NodeReference> references = changes.get(pageId);
+        if (references == null) {
+            Set<NodeReference> current = nodes.get(pageId);
+            references = (current == null) ? new LinkedHashSet<NodeReference>(2) : new LinkedHashSet<NodeReference>(current);
+            changes.put(pageId, references);
+        }
+        return references;
+    }
+
+    // The sets are replaced rather than modified, so that lookups never see a set being modified
+    private void publish() {
+        for (Map.Entry<PageId, Set<NodeReference>> entry : changes.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                nodes.remove(entry.getKey());
+            } else {
+                nodes.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+            }
+        }
+        changes.clear();
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.gatein.api.internal.Parameters;
+
+/**
+ * Processes large node trees in parallel on a {@link ForkJoinPool}. A node above the maximum split depth and having at least
+ * as many children as the split threshold is split: its children are divided into halves, recursively, each half being
+ * processed by a task which idle threads of the pool can steal. A task stops splitting and processes its part sequentially
+ * when the thread running it already has a few tasks queued that no one has stolen, so the number of tasks stays close to
+ * what the parallelism of the pool can use, even for very wide nodes.
+ * <p>
+ * The tree should not be modified while it is processed, and callbacks may be called concurrently by several threads.
+ * </p>
+ * <p>
+ * For example to count the visible nodes of a navigation:
+ * </p>
+ * <pre>
+ * int count = new ParallelNodeProcessor().reduce(root, Nodes.visitAll(), new Reduction&lt;Integer&gt;() {
+ *     public Integer map(Node node) {
+ *         return node.isVisible() ? 1 : 0;
+ *     }
+ *
+ *     public Integer combine(Integer left, Integer right) {
+ *         return left + right;
+ *     }
+ * });
+ * </pre>
+ */
+public class ParallelNodeProcessor {
+    /**
+     * The number of tasks queued by a thread and not stolen yet above which a task is processed sequentially.
+     */
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    private final ForkJoinPool pool;
+    private final int splitThreshold;
+    private final int maxSplitDepth;
+
+    /**
+     * Creates a processor running on the common pool, which splits nodes with at least 2 children, up to a depth of 4.
+     */
+    public ParallelNodeProcessor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a processor running on the specified pool, which splits nodes with at least 2 children, up to a depth of 4.
+     *
+     * @param pool the pool running the tasks
+     * @throws IllegalArgumentException if pool is null
+     */
+    public ParallelNodeProcessor(ForkJoinPool pool) {
+        this(Parameters.requireNonNull(pool, "pool"), 2, 4);
+    }
+
+    private ParallelNodeProcessor(ForkJoinPool pool, int splitThreshold, int maxSplitDepth) {
+        this.pool = pool;
+        this.splitThreshold = splitThreshold;
+        this.maxSplitDepth = maxSplitDepth;
+    }
+
+    /**
+     * Returns a processor which only splits nodes having at least the specified number of children.
+     *
+     * @param splitThreshold the minimum number of children of a node to be split
+     * @return a new processor
+     * @throws IllegalArgumentException if splitThreshold is less than 1
+     */
+    public ParallelNodeProcessor splitThreshold(int splitThreshold) {
+        if (splitThreshold < 1)
+            throw new IllegalArgumentException("splitThreshold must be at least 1");
+
+        return new ParallelNodeProcessor(pool, splitThreshold, maxSplitDepth);
+    }
+
+    /**
+     * Returns a processor which only splits nodes above the specified depth, relative to the node being processed. A value of
+     * 0 processes the whole tree in a single task.
+     *
+     * @param maxSplitDepth the maximum depth of the nodes to split
+     * @return a new processor
+     * @throws IllegalArgumentException if maxSplitDepth is negative
+     */
+    public ParallelNodeProcessor maxSplitDepth(int maxSplitDepth) {
+        if (maxSplitDepth < 0)
+            throw new IllegalArgumentException("maxSplitDepth cannot be negative");
+
+        return new ParallelNodeProcessor(pool, splitThreshold, maxSplitDepth);
+    }
+
+    /**
+     * Calls the callback for the node and its descendants. Children which have not been loaded are never processed.
+     *
+     * @param node the node to start from
+     * @param callback the callback, which also determines if the children of a node are processed
+     * @throws IllegalArgumentException if node or callback is null
+     */
+    public void forEach(Node node, final Callback callback) {
+        Parameters.requireNonNull(node, "node");
+        Parameters.requireNonNull(callback, "callback");
+
+        process(node, new Step<Void>() {
+            @Override
+            public Void map(Node node) {
+                return null;
+            }
+
+            @Override
+            public boolean visitChildren(Node node, int depth, Nodes.LoadedNodeDetails details) {
+                return callback.visit(depth, node) && node.isChildrenLoaded() && node.getChildCount() > 0;
+            }
+
+            @Override
+            public Void combine(Void left, Void right) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Maps the node and its descendants and combines the results. Results are always combined in pre-order, so as long as
+     * the combine operation is associative the result is the same as the one of a sequential pre-order traversal, whatever the
+     * split of the tree. Children which have not been loaded are never processed.
+     *
+     * @param node the node to start from
+     * @param visitor the visitor used to determine if the children of a node are processed, the node being visited at depth 0
+     * @param reduction the reduction
+     * @param <T> the result type
+     * @return the combined result
+     * @throws IllegalArgumentException if node, visitor or reduction is null
+     */
+    public <T> T reduce(Node node, final NodeVisitor visitor, final Reduction<T> reduction) {
+        Parameters.requireNonNull(node, "node");
+        Parameters.requireNonNull(visitor, "visitor");
+        Parameters.requireNonNull(reduction, "reduction");
+
+        return process(node, new Step<T>() {
+            @Override
+            public T map(Node node) {
+                return reduction.map(node);
+            }
+
+            @Override
+            public boolean visitChildren(Node node, int depth, Nodes.LoadedNodeDetails details) {
+                return Nodes.visitChildren(node, depth, visitor, details);
+            }
+
+            @Override
+            public T combine(T left, T right) {
+                return reduction.combine(left, right);
+            }
+        });
+    }
+
+    private <T> T process(Node node, Step<T> step) {
+        return pool.invoke(new NodeTask<T>(this, step, node, 0));
+    }
+
+    private static <T> T sequential(Node node, int depth, Step<T> step, Nodes.LoadedNodeDetails details) {
+        T result = step.map(node);
+        if (step.visitChildren(node, depth, details)) {
+            for (Node child : node) {
+                result = step.combine(result, sequential(child, depth + 1, step, details));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Processes a node and its descendants, splitting its children if the node can be split.
+     */
+    private static class NodeTask<T> extends RecursiveTask<T> {
+        private final ParallelNodeProcessor processor;
+        private final Step<T> step;
+        private final Node node;
+        private final int depth;
+
+        NodeTask(ParallelNodeProcessor processor, Step<T> step, Node node, int depth) {
+            this.processor = processor;
+            this.step = step;
+            this.node = node;
+            this.depth = depth;
+        }
+
+        @Override
+        protected T compute() {
+            Nodes.LoadedNodeDetails details = new Nodes.LoadedNodeDetails();
+            if (depth >= processor.maxSplitDepth || !node.isChildrenLoaded()
+                    || node.getChildCount() < processor.splitThreshold || surplus())
+                return sequential(node, depth, step, details);
+
+            T result = step.map(node);
+            if (step.visitChildren(node, depth, details)) {
+                T children = new ChildrenTask<T>(processor, step, node, 0, node.getChildCount(), depth + 1).compute();
+                result = step.combine(result, children);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Processes a range of children of a node, with their descendants, splitting the range in halves.
+     */
+    private static class ChildrenTask<T> extends RecursiveTask<T> {
+        private final ParallelNodeProcessor processor;
+        private final Step<T> step;
+        private final Node parent;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        ChildrenTask(ParallelNodeProcessor processor, Step<T> step, Node parent, int from, int to, int depth) {
+            this.processor = processor;
+            this.step = step;
+            this.parent = parent;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1)
+                return new NodeTask<T>(processor, step, parent.getChild(from), depth).compute();
+
+            if (surplus()) {
+                Nodes.LoadedNodeDetails details = new Nodes.LoadedNodeDetails();
+                T result = sequential(parent.getChild(from), depth, step, details);
+                for (int i = from + 1; i < to; i++) {
+                    result = step.combine(result, sequential(parent.getChild(i), depth, step, details));
+                }
+                return result;
+            }
+
+            int middle = from + (to - from) / 2;
+            ChildrenTask<T> left = new ChildrenTask<T>(processor, step, parent, from, middle, depth);
+            ChildrenTask<T> right = new ChildrenTask<T>(processor, step, parent, middle, to, depth);
+            right.fork();
+            T result = left.compute();
+            return step.combine(result, right.join());
+        }
+    }
+
+    /**
+     * Whether the current thread already has enough tasks queued for the idle threads to steal.
+     */
+    private static boolean surplus() {
+        return RecursiveTask.getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS;
+    }
+
+    private interface Step<T> {
+        T map(Node node);
+
+        boolean visitChildren(Node node, int depth, Nodes.LoadedNodeDetails details);
+
+        T combine(T left, T right);
+    }
+
+    /**
+     * Callback called for each processed node.
+     */
+    public interface Callback {
+        /**
+         * Called for each processed node, possibly concurrently by several threads.
+         *
+         * @param depth the depth of the node, relative to the node the processing started from
+         * @param node the node
+         * @return true to process the children of the node
+         */
+        boolean visit(int depth, Node node);
+    }
+
+    /**
+     * A reduction of the nodes of a tree to a single result.
+     *
+     * @param <T> the result type
+     */
+    public interface Reduction<T> {
+        /**
+         * Maps a node to a result, possibly concurrently by several threads.
+         *
+         * @param node the node
+         * @return the result for the node
+         */
+        T map(Node node);
+
+        /**
+         * Combines two results. This operation should be associative.
+         *
+         * @param left the result of the nodes coming first in pre-order
+         * @param right the result of the nodes coming next in pre-order
+         * @return the combined result
+         */
+        T combine(T left, T right);
+    }
+}
@@ -119,6 +119,23 @@ public class PublicationDate implements Serializable {
         return true;
     }
 
+    /**
+     * Returns the first time after the specified time at which the result of {@link #within(long)} changes, or -1 if it never
+     * changes. The publication date is entered at the start date, and left one millisecond after the end date.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the time of the next transition or -1
+     */
+    public long nextTransition(long time) {
+        if (start != -1 && start > time) {
+            return start;
+        }
+        if (end != -1 && end != Long.MAX_VALUE && end + 1 > time) {
+            return end + 1;
+        }
+        return -1;
+    }
+
     /**
      * Returns the start date or null if no start date is set
      * 
@@ -0,0 +1,470 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.gatein.api.common.Clock;
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Schedules the visibility transitions of nodes with a {@link PublicationDate}, and notifies listeners when the visibility of
+ * nodes changes, so state derived from the visibility of nodes can be refreshed without any write to the navigation.
+ * <p>
+ * Transitions are kept in a hierarchical timing wheel, so scheduling and cancelling the transitions of a node takes constant
+ * time regardless of the number of scheduled nodes. Time is divided in ticks, all the transitions within a tick are notified
+ * together when the scheduler is advanced past the end of the tick. The scheduler does not create any thread, it is advanced
+ * by calling {@link #advance()} or {@link #advanceTo(long)}, typically from a timer.
+ * </p>
+ * <p>
+ * This class is thread safe. Listeners are notified by the thread advancing the scheduler, after all the transitions up to
+ * the new time have been processed.
+ * </p>
+ */
+public final class PublicationScheduler {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+    private static final long WHEEL_MASK = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final Clock clock;
+    private final long tickMillis;
+    private final Entry[][] wheels = new Entry[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private final Entry overflow = Entry.sentinel();
+    private final Map<SiteId, Map<NodePath, Entry>> entries = new HashMap<SiteId, Map<NodePath, Entry>>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates a scheduler using the system clock and a tick of one second.
+     */
+    public PublicationScheduler() {
+        this(Clock.system(), 1000);
+    }
+
+    /**
+     * Creates a scheduler starting at the current time of the clock.
+     *
+     * @param clock the clock used by {@link #advance()}
+     * @param tickMillis the duration of a tick in milliseconds
+     * @throws IllegalArgumentException if clock is null or tickMillis is not positive
+     */
+    public PublicationScheduler(Clock clock, long tickMillis) {
+        this.clock = Parameters.requireNonNull(clock, "clock");
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tickMillis must be positive");
+
+        this.tickMillis = tickMillis;
+        this.currentTick = clock.currentTimeMillis() / tickMillis;
+        for (Entry[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = Entry.sentinel();
+            }
+        }
+    }
+
+    /**
+     * Adds a listener notified of visibility changes.
+     *
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     */
+    public void addListener(Listener listener) {
+        listeners.add(Parameters.requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The time up to which transitions have been processed, i.e. the end of the last processed tick.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public synchronized long getTime() {
+        return currentTick * tickMillis;
+    }
+
+    /**
+     * The number of nodes with a scheduled transition.
+     *
+     * @return the number of scheduled nodes
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Schedules the transitions of a node, replacing any previously scheduled transitions of the same node. Only the next
+     * transition is kept in the scheduler, the following one is scheduled when it occurs.
+     *
+     * @param siteId the site of the node
+     * @param nodePath the path of the node
+     * @param publicationDate the publication date of the node
+     * @return true if a transition was scheduled, false if the visibility of the node no longer changes
+     * @throws IllegalArgumentException if siteId, nodePath or publicationDate is null
+     */
+    public synchronized boolean schedule(SiteId siteId, NodePath nodePath, PublicationDate publicationDate) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(nodePath, "nodePath");
+        Parameters.requireNonNull(publicationDate, "publicationDate");
+
+        cancel(siteId, nodePath);
+
+        long transition = publicationDate.nextTransition(getTime());
+        if (transition == -1)
+            return false;
+
+        Map<NodePath, Entry> siteEntries = entries.get(siteId);
+        if (siteEntries == null) {
+            siteEntries = new HashMap<NodePath, Entry>();
+            entries.put(siteId, siteEntries);
+        }
+
+        Entry entry = new Entry(siteId, nodePath, publicationDate);
+        entry.transition = transition;
+        siteEntries.put(nodePath, entry);
+        insert(entry, Math.max(tickOf(transition), currentTick + 1));
+        size++;
+        return true;
+    }
+
+    /**
+     * Schedules the transitions of the loaded nodes of the tree of the specified node.
+     *
+     * @param siteId the site of the nodes
+     * @param node the node to start from
+     * @return the number of nodes with a scheduled transition
+     * @throws IllegalArgumentException if siteId or node is null
+     */
+    public int scheduleAll(SiteId siteId, Node node) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(node, "node");
+
+        int count = 0;
+        for (Node n : Nodes.preOrder(node, Nodes.visitAll())) {
+            PublicationDate publicationDate = n.getVisibility().getPublicationDate();
+            if (publicationDate != null && schedule(siteId, n.getNodePath(), publicationDate)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Cancels the scheduled transitions of a node.
+     *
+     * @param siteId the site of the node
+     * @param nodePath the path of the node
+     * @return true if transitions were scheduled for the node
+     * @throws IllegalArgumentException if siteId or nodePath is null
+     */
+    public synchronized boolean cancel(SiteId siteId, NodePath nodePath) {
+        Parameters.requireNonNull(siteId, "siteId");
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        Map<NodePath, Entry> siteEntries = entries.get(siteId);
+        Entry entry = (siteEntries == null) ? null : siteEntries.remove(nodePath);
+        if (entry == null)
+            return false;
+
+        if (siteEntries.isEmpty()) {
+            entries.remove(siteId);
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Cancels the scheduled transitions of all the nodes of a site.
+     *
+     * @param siteId the site
+     * @return the number of nodes whose transitions were cancelled
+     * @throws IllegalArgumentException if siteId is null
+     */
+    public synchronized int cancelAll(SiteId siteId) {
+        Parameters.requireNonNull(siteId, "siteId");
+
+        Map<NodePath, Entry> siteEntries = entries.remove(siteId);
+        if (siteEntries == null)
+            return 0;
+
+        for (Entry entry : siteEntries.values()) {
+            unlink(entry);
+        }
+        size -= siteEntries.size();
+        return siteEntries.size();
+    }
+
+    /**
+     * Advances the scheduler to the current time of its clock.
+     *
+     * @see #advanceTo(long)
+     */
+    public void advance() {
+        advanceTo(clock.currentTimeMillis());
+    }
+
+    /**
+     * Advances the scheduler to the specified time, processing all the ticks which end at or before this time and notifying
+     * the listeners of the transitions which occurred. Advancing to a time before the current time of the scheduler does
+     * nothing.
+     *
+     * @param time the time in milliseconds since the epoch
+     */
+    public void advanceTo(long time) {
+        List<Event> events = new ArrayList<Event>();
+        synchronized (this) {
+            long target = time / tickMillis;
+            while (currentTick < target) {
+                if (size == 0) {
+                    currentTick = target;
+                    break;
+                }
+
+                long next = nextTick();
+                if (next > target) {
+                    currentTick = target;
+                    break;
+                }
+
+                currentTick = next;
+                if ((currentTick & SLOT_MASK) == 0) {
+                    cascade();
+                }
+                fire(events);
+            }
+        }
+
+        for (Event event : events) {
+            for (Listener listener : listeners) {
+                listener.visibilityChanged(event.siteId, event.time, event.nodePaths);
+            }
+        }
+    }
+
+    /**
+     * Returns the next tick at which a slot of the first wheel has to be fired or a slot of an upper wheel has to be
+     * cascaded, skipping empty slots. The first candidate found in a lower wheel always comes before the candidates of the
+     * upper wheels, since it is within the current slot of the upper wheels.
+     */
+    private long nextTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            int slot = (int) ((currentTick >>> shift) & SLOT_MASK);
+            long bits = (slot == SLOT_MASK) ? 0 : occupied[level] & (-1L << (slot + 1));
+            if (bits != 0) {
+                long block = currentTick & ~((1L << (shift + SLOT_BITS)) - 1);
+                return block | ((long) Long.numberOfTrailingZeros(bits) << shift);
+            }
+        }
+        return (overflow.next == overflow) ? Long.MAX_VALUE : (currentTick | WHEEL_MASK) + 1;
+    }
+
+    /**
+     * Moves the entries of the slots of the upper wheels starting at the current tick to the lower wheels.
+     */
+    private void cascade() {
+        if ((currentTick & WHEEL_MASK) == 0) {
+            reinsert(overflow);
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                occupied[level] &= ~(1L << slot);
+                reinsert(wheels[level][slot]);
+            }
+        }
+    }
+
+    private void reinsert(Entry head) {
+        Entry entry = head.next;
+        head.next = head.previous = head;
+        while (entry != head) {
+            Entry next = entry.next;
+            insert(entry, entry.tick);
+            entry = next;
+        }
+    }
+
+    private void fire(List<Event> events) {
+        int slot = (int) (currentTick & SLOT_MASK);
+        Entry head = wheels[0][slot];
+        occupied[0] &= ~(1L << slot);
+        if (head.next == head)
+            return;
+
+        Entry entry = head.next;
+        head.next = head.previous = head;
+
+        Map<SiteId, List<NodePath>> changes = new LinkedHashMap<SiteId, List<NodePath>>();
+        while (entry != head) {
+            Entry next = entry.next;
+            List<NodePath> paths = changes.get(entry.siteId);
+            if (paths == null) {
+                paths = new ArrayList<NodePath>();
+                changes.put(entry.siteId, paths);
+            }
+            paths.add(entry.nodePath);
+
+            // Transitions within the same tick are notified once
+            long transition = entry.publicationDate.nextTransition(entry.transition);
+            while (transition != -1 && tickOf(transition) <= currentTick) {
+                transition = entry.publicationDate.nextTransition(transition);
+            }
+            if (transition == -1) {
+                entry.next = entry.previous = null;
+                Map<NodePath, Entry> siteEntries = entries.get(entry.siteId);
+                siteEntries.remove(entry.nodePath);
+                if (siteEntries.isEmpty()) {
+                    entries.remove(entry.siteId);
+                }
+                size--;
+            } else {
+                entry.transition = transition;
+                insert(entry, tickOf(transition));
+            }
+            entry = next;
+        }
+
+        long time = currentTick * tickMillis;
+        for (Map.Entry<SiteId, List<NodePath>> change : changes.entrySet()) {
+            events.add(new Event(change.getKey(), time, change.getValue()));
+        }
+    }
+
+    /**
+     * Links the entry in the slot of the lowest wheel covering the distance from the current tick. The entry is placed in
+     * the wheel of the highest bits it does not share with the current tick, so the slot is reached by a cascade before the
+     * tick of the entry.
+     */
+    private void insert(Entry entry, long tick) {
+        entry.tick = tick;
+
+        Entry head;
+        if (((tick ^ currentTick) & ~WHEEL_MASK) != 0 && tick > currentTick) {
+            head = overflow;
+        } else {
+            int level = 0;
+            while (level < LEVELS - 1 && (tick >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+                level++;
+            }
+            int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            head = wheels[level][slot];
+            occupied[level] |= 1L << slot;
+        }
+
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.next == null)
+            return;
+
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.next = entry.previous = null;
+    }
+
+    private long tickOf(long time) {
+        // A transition at a time within a tick is processed at the end of the tick
+        return (time <= 0) ? 0 : (time + tickMillis - 1) / tickMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("time", getTime()).add("tickMillis", tickMillis)
+                .add("size", size).toString();
+    }
+
+    /**
+     * Listener notified when the visibility of nodes changes.
+     */
+    public static interface Listener {
+        /**
+         * Called when the visibility of nodes of a site changes.
+         *
+         * @param siteId the site of the nodes
+         * @param time the end of the tick in which the visibility changed, at which the new visibility is effective
+         * @param nodePaths the paths of the nodes whose visibility changed
+         */
+        void visibilityChanged(SiteId siteId, long time, List<NodePath> nodePaths);
+    }
+
+    private static class Event {
+        private final SiteId siteId;
+        private final long time;
+        private final List<NodePath> nodePaths;
+
+        Event(SiteId siteId, long time, List<NodePath> nodePaths) {
+            this.siteId = siteId;
+            this.time = time;
+            this.nodePaths = nodePaths;
+        }
+    }
+
+    /**
+     * A scheduled node, linked in a doubly linked list of its slot so it can be removed in constant time.
+     */
+    private static class Entry {
+        private final SiteId siteId;
+        private final NodePath nodePath;
+        private final PublicationDate publicationDate;
+        private long transition;
+        private long tick;
+        private Entry previous;
+        private Entry next;
+
+        Entry(SiteId siteId, NodePath nodePath, PublicationDate publicationDate) {
+            this.siteId = siteId;
+            this.nodePath = nodePath;
+            this.publicationDate = publicationDate;
+        }
+
+        static Entry sentinel() {
+            Entry head = new Entry(null, null, null);
+            head.previous = head.next = head;
+            return head;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.gatein.api.Portal;
+import org.gatein.api.PortalRequest;
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.Filter;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.Page;
+import org.gatein.api.page.PageId;
+import org.gatein.api.security.Permission;
+import org.gatein.api.security.User;
+import org.gatein.api.site.Site;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Filtered view of a read only node. All the views of a tree share the same filters, so adding a filter to one of them
+ * applies to the whole tree.
+ */
+class ReadOnlyFilteredNode extends ReadOnlyNode implements FilteredNode {
+    private final ReadOnlyNode node;
+    private final Filters filters;
+
+    private int[] accepted;
+    private int acceptedVersion = -1;
+
+    ReadOnlyFilteredNode(ReadOnlyNode node) {
+        this(node, new Filters());
+    }
+
+    private ReadOnlyFilteredNode(ReadOnlyNode node, Filters filters) {
+        this.node = node;
+        this.filters = filters;
+    }
+
+    @Override
+    public FilteredNode showAll() {
+        filters.clear();
+        return this;
+    }
+
+    @Override
+    public FilteredNode showDefault() {
+        return showVisible().showHasAccess(PortalRequest.getInstance().getUser());
+    }
+
+    @Override
+    public FilteredNode showVisible() {
+        return show(new Filter<Node>() {
+            @Override
+            public boolean accept(Node element) {
+                return element.isVisible();
+            }
+        });
+    }
+
+    @Override
+    public FilteredNode showHasAccess(User user) {
+        return show(new PagePermissionFilter(user, false));
+    }
+
+    @Override
+    public FilteredNode showHasEdit(User user) {
+        return show(new PagePermissionFilter(user, true));
+    }
+
+    @Override
+    public FilteredNode show(Filter<Node> filter) {
+        filters.add(Parameters.requireNonNull(filter, "filter"));
+        return this;
+    }
+
+    @Override
+    SiteId getSiteId() {
+        return node.getSiteId();
+    }
+
+    @Override
+    NodeProjection getProjection() {
+        return node.getProjection();
+    }
+
+    @Override
+    public String getName() {
+        return node.getName();
+    }
+
+    @Override
+    public Node getParent() {
+        ReadOnlyNode parent = (ReadOnlyNode) node.getParent();
+        return (parent == null) ? null : new ReadOnlyFilteredNode(parent, filters);
+    }
+
+    @Override
+    public NodePath getNodePath() {
+        return node.getNodePath();
+    }
+
+    @Override
+    public Visibility getVisibility() {
+        return node.getVisibility();
+    }
+
+    @Override
+    public String getIconName() {
+        return node.getIconName();
+    }
+
+    @Override
+    public PageId getPageId() {
+        return node.getPageId();
+    }
+
+    @Override
+    public Attributes getAttributes() {
+        return node.getAttributes();
+    }
+
+    @Override
+    public LocalizedString getDisplayNames() {
+        return node.getDisplayNames();
+    }
+
+    @Override
+    public long getVersion() {
+        return node.getVersion();
+    }
+
+    @Override
+    public boolean isChildrenLoaded() {
+        return node.isChildrenLoaded();
+    }
+
+    @Override
+    public FilteredNode getChild(String childName) {
+        int index = indexOf(childName);
+        return (index < 0) ? null : getChild(index);
+    }
+
+    @Override
+    public FilteredNode getChild(int index) {
+        int[] accepted = accepted();
+        if (index < 0 || index >= accepted.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + accepted.length);
+
+        return new ReadOnlyFilteredNode((ReadOnlyNode) node.getChild(accepted[index]), filters);
+    }
+
+    @Override
+    public int getChildCount() {
+        return accepted().length;
+    }
+
+    @Override
+    public int indexOf(String childName) {
+        int index = node.indexOf(childName);
+        if (index < 0)
+            return -1;
+
+        int[] accepted = accepted();
+        for (int i = 0; i < accepted.length; i++) {
+            if (accepted[i] == index)
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        final int[] accepted = accepted();
+        return new Iterator<Node>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < accepted.length;
+            }
+
+            @Override
+            public Node next() {
+                if (index >= accepted.length)
+                    throw new NoSuchElementException();
+
+                return new ReadOnlyFilteredNode((ReadOnlyNode) node.getChild(accepted[index++]), filters);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Node " + getNodePath() + " is read only");
+            }
+        };
+    }
+
+    /**
+     * Indexes of the children of the underlying node accepted by the filters, computed again when the filters change.
+     */
+    private int[] accepted() {
+        if (accepted == null || acceptedVersion != filters.version) {
+            int count = node.getChildCount();
+            int[] indexes = new int[count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                if (filters.accept(node.getChild(i))) {
+                    indexes[size++] = i;
+                }
+            }
+
+            if (size < count) {
+                int[] trimmed = new int[size];
+                System.arraycopy(indexes, 0, trimmed, 0, size);
+                indexes = trimmed;
+            }
+            accepted = indexes;
+            acceptedVersion = filters.version;
+        }
+        return accepted;
+    }
+
+    private static class Filters {
+        private final List<Filter<Node>> filters = new ArrayList<Filter<Node>>();
+        private int version;
+
+        void add(Filter<Node> filter) {
+            filters.add(filter);
+            version++;
+        }
+
+        void clear() {
+            filters.clear();
+            version++;
+        }
+
+        boolean accept(Node node) {
+            for (Filter<Node> filter : filters) {
+                if (!filter.accept(node))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Accepts nodes whose page the user can access or edit. Nodes without a page are checked against the permissions of
+     * the site. Results are cached per page, as many nodes usually share the same pages.
+     */
+    private static class PagePermissionFilter implements Filter<Node> {
+        private final User user;
+        private final boolean edit;
+        private final Map<Object, Boolean> cache = new HashMap<Object, Boolean>();
+
+        private PagePermissionFilter(User user, boolean edit) {
+            this.user = Parameters.requireNonNull(user, "user");
+            this.edit = edit;
+        }
+
+        @Override
+        public boolean accept(Node element) {
+            PageId pageId = element.getPageId();
+            Object key = (pageId == null) ? ((ReadOnlyNode) element).getSiteId() : pageId;
+
+            Boolean result = cache.get(key);
+            if (result == null) {
+                Portal portal = PortalRequest.getInstance().getPortal();
+                Permission permission = (pageId == null) ? sitePermission(portal, (SiteId) key) : pagePermission(portal,
+                        pageId);
+                result = permission != null && portal.hasPermission(user, permission);
+                cache.put(key, result);
+            }
+            return result;
+        }
+
+        private Permission pagePermission(Portal portal, PageId pageId) {
+            Page page = portal.getPage(pageId);
+            if (page == null)
+                return null;
+
+            return edit ? page.getEditPermission() : page.getAccessPermission();
+        }
+
+        private Permission sitePermission(Portal portal, SiteId siteId) {
+            if (!edit)
+                return Permission.everyone();
+
+            Site site = portal.getSite(siteId);
+            return (site == null) ? null : site.getEditPermission();
+        }
+    }
+}
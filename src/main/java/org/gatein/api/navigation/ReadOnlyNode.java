@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.gatein.api.PortalRequest;
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Base class of the nodes which can not be modified. All the mutators throw an <code>UnsupportedOperationException</code>.
+ *
+ * @see NavigationSnapshot
+ */
+abstract class ReadOnlyNode implements Node {
+    /**
+     * The id of the site the node belongs to, used to resolve the URI of the node.
+     */
+    abstract SiteId getSiteId();
+
+    @Override
+    public String getDisplayName() {
+        LocalizedString displayNames = getDisplayNames();
+        if (displayNames == null)
+            return null;
+
+        String value = displayNames.getValue();
+        if (value == null && displayNames.isLocalized()) {
+            PortalRequest request = PortalRequest.getInstance();
+            Locale locale = (request == null) ? null : request.getLocale();
+            if (locale != null) {
+                value = displayNames.getValue(locale);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The fields which can be read from the node, all of them unless overridden.
+     */
+    NodeProjection getProjection() {
+        return NodeProjection.all();
+    }
+
+    @Override
+    public String getURI() {
+        PortalRequest request = PortalRequest.getInstance();
+        if (request == null)
+            throw new IllegalStateException("A portal request is required to resolve the URI of node " + getNodePath());
+
+        return request.getURIBuilder().getURI(getSiteId(), getNodePath());
+    }
+
+    /**
+     * Read only nodes are not versioned unless overridden.
+     */
+    @Override
+    public long getVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean isVisible() {
+        return getVisibility().isVisible();
+    }
+
+    @Override
+    public boolean isRoot() {
+        return getParent() == null;
+    }
+
+    @Override
+    public boolean hasChild(String childName) {
+        return indexOf(childName) >= 0;
+    }
+
+    @Override
+    public Node getNode(String... nodePath) {
+        return getNode(NodePath.path(nodePath));
+    }
+
+    @Override
+    public Node getNode(NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        Node node = this;
+        for (String segment : nodePath) {
+            node = node.getChild(segment);
+            if (node == null)
+                return null;
+        }
+        return node;
+    }
+
+    @Override
+    public FilteredNode filter() {
+        return new ReadOnlyFilteredNode(this);
+    }
+
+    // ----------------- Mutators
+
+    @Override
+    public void setName(String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDisplayName(String displayName) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDisplayNames(LocalizedString displayName) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setVisibility(Visibility visibility) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setVisibility(boolean visible) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setVisibility(PublicationDate publicationDate) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setIconName(String iconName) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setPageId(PageId pageId) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node addChild(String childName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node addChild(int index, String childName) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeChild(String childName) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort(Comparator<Node> comparator) {
+        throw readOnly();
+    }
+
+    @Override
+    public void moveTo(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public void moveTo(Node parent) {
+        throw readOnly();
+    }
+
+    @Override
+    public void moveTo(int index, Node parent) {
+        throw readOnly();
+    }
+
+    private UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Node " + getNodePath() + " is read only");
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getNodePath() + "]";
+    }
+
+    /**
+     * Attributes which can not be modified, including through the mutators added to maps by Java 8.
+     */
+    static class ReadOnlyAttributes extends Attributes {
+        static final Attributes EMPTY = new ReadOnlyAttributes(new Attributes());
+
+        /**
+         * Unmodifiable view of the attributes backing the collection views, which also prevents setting the values of the
+         * entries.
+         */
+        private transient Map<String, String> view;
+
+        ReadOnlyAttributes(Attributes attributes) {
+            super(attributes);
+        }
+
+        private Map<String, String> view() {
+            if (view == null) {
+                view = Collections.unmodifiableMap(new AbstractMap<String, String>() {
+                    @Override
+                    public Set<Map.Entry<String, String>> entrySet() {
+                        return ReadOnlyAttributes.super.entrySet();
+                    }
+                });
+            }
+            return view;
+        }
+
+        @Override
+        public String put(String key, String value) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends String> m) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String remove(Object key) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String putIfAbsent(String key, String value) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public boolean replace(String key, String oldValue, String newValue) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String replace(String key, String value) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String computeIfAbsent(String key, Function<? super String, ? extends String> mappingFunction) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String computeIfPresent(String key,
+                BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public String merge(String key, String value,
+                BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+            throw new UnsupportedOperationException("Attributes are read only");
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return view().keySet();
+        }
+
+        @Override
+        public Collection<String> values() {
+            return view().values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return view().entrySet();
+        }
+    }
+}
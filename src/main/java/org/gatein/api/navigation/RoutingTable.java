@@ -0,0 +1,300 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable routing table compiled from the loaded nodes of a navigation. Each node is stored in a segment trie where
+ * the children of a node are kept in a hash table, so resolving a <code>NodePath</code> to its {@link Route} is done
+ * entirely in memory, without walking the node tree or accessing storage.
+ * <p>
+ * A routing table is never modified. {@link #update(Node)}, {@link #update(Node, NodePath)} and {@link #remove(NodePath)}
+ * return a new routing table which shares all the entries except the ones on the path from the root to the changed node.
+ * The intended use is to keep a reference to the current routing table and replace it after
+ * {@link Navigation#saveNode(Node)} or {@link Navigation#removeNode(NodePath)}.
+ * </p>
+ *
+ * @see org.gatein.api.PortalRequest#getPage()
+ */
+public final class RoutingTable {
+    /**
+     * Compiles a routing table with all the nodes of the navigation.
+     *
+     * @param navigation the navigation
+     * @return the routing table
+     * @throws IllegalArgumentException if navigation is null
+     * @throws org.gatein.api.ApiException if something prevented the nodes to be loaded
+     */
+    public static RoutingTable compile(Navigation navigation) {
+        Parameters.requireNonNull(navigation, "navigation");
+
+        return compile(navigation.getRootNode(Nodes.visitAll()));
+    }
+
+    /**
+     * Compiles a routing table with the nodes loaded in the tree of the specified root node. Nodes whose children have not
+     * been loaded are routed without any children.
+     *
+     * @param root the root node
+     * @return the routing table
+     * @throws IllegalArgumentException if root is null or is not the root node
+     */
+    public static RoutingTable compile(Node root) {
+        Parameters.requireNonNull(root, "root");
+        if (!root.isRoot())
+            throw new IllegalArgumentException("node " + root.getNodePath() + " is not the root node");
+
+        return new RoutingTable(compile(root, NodePath.root(), null));
+    }
+
+    private final Entry root;
+
+    private RoutingTable(Entry root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the route for the specified node path, or null if no node is routed for the path.
+     *
+     * @param nodePath the node path
+     * @return the route or null
+     * @throws IllegalArgumentException if nodePath is null
+     */
+    public Route getRoute(NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        Entry entry = root;
+        for (String segment : nodePath) {
+            entry = entry.children.get(segment);
+            if (entry == null)
+                return null;
+        }
+        return entry.route;
+    }
+
+    /**
+     * Returns a routing table where the node and its loaded descendants replace the previous routes of the node's path. If
+     * the children of the node have not been loaded, the previous routes of the descendants are kept.
+     * <p>
+     * The node is routed at its current path only. If it was renamed or moved, the routes of its previous path are kept, so
+     * {@link #update(Node, NodePath)} must be used instead.
+     * </p>
+     *
+     * @param node the node which has been added or changed
+     * @return the updated routing table
+     * @throws IllegalArgumentException if node is null, or if the parent of the node is not routed
+     */
+    public RoutingTable update(Node node) {
+        Parameters.requireNonNull(node, "node");
+
+        NodePath path = node.getNodePath();
+        return update(node, path, getEntry(path));
+    }
+
+    /**
+     * Returns a routing table where the node, which has been renamed or moved from the previous path, and its loaded
+     * descendants are routed at the node's path, and the previous path and all of its descendants are no longer routed. If
+     * the children of the node have not been loaded, the previous routes of the descendants are moved to the node's path.
+     *
+     * @param node the node which has been renamed or moved
+     * @param previousPath the path of the node before it was renamed or moved
+     * @return the updated routing table
+     * @throws IllegalArgumentException if node or previousPath is null, if previousPath is the root path, or if the parent of
+     *         the node is not routed
+     */
+    public RoutingTable update(Node node, NodePath previousPath) {
+        Parameters.requireNonNull(node, "node");
+        Parameters.requireNonNull(previousPath, "previousPath");
+
+        NodePath path = node.getNodePath();
+        if (previousPath.equals(path))
+            return update(node);
+        if (previousPath.size() == 0)
+            throw new IllegalArgumentException("The root node cannot be moved");
+
+        Entry previous = getEntry(previousPath);
+        if (previous == null)
+            return update(node);
+
+        return remove(previousPath).update(node, path, node.isChildrenLoaded() ? null : rebase(previous, path));
+    }
+
+    private RoutingTable update(Node node, NodePath path, Entry previous) {
+        if (path.size() > 0 && previous == null && getEntry(path.parent()) == null)
+            throw new IllegalArgumentException("Parent of node " + path + " is not routed");
+
+        return new RoutingTable(replace(root, path, 0, compile(node, path, previous)));
+    }
+
+    /**
+     * Returns a routing table without the routes of the node path and all of its descendants.
+     *
+     * @param nodePath the path of the node which has been removed
+     * @return the updated routing table, or this routing table if the path was not routed
+     * @throws IllegalArgumentException if nodePath is null or is the root path
+     */
+    public RoutingTable remove(NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+        if (nodePath.size() == 0)
+            throw new IllegalArgumentException("The root node cannot be removed");
+
+        if (getEntry(nodePath) == null)
+            return this;
+
+        return new RoutingTable(replace(root, nodePath, 0, null));
+    }
+
+    private Entry getEntry(NodePath nodePath) {
+        Entry entry = root;
+        for (String segment : nodePath) {
+            entry = entry.children.get(segment);
+            if (entry == null)
+                return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Copies the entries from the specified entry down to the changed path, all other entries are shared.
+     */
+    private static Entry replace(Entry entry, NodePath path, int depth, Entry replacement) {
+        if (depth == path.size())
+            return replacement;
+
+        String segment = path.getSegment(depth);
+        Entry child = entry.children.get(segment);
+        Entry newChild = replace(child, path, depth + 1, replacement);
+
+        Map<String, Entry> children = new HashMap<String, Entry>(entry.children);
+        if (newChild == null) {
+            children.remove(segment);
+        } else {
+            children.put(segment, newChild);
+        }
+        return new Entry(entry.route, freeze(children));
+    }
+
+    private static Entry compile(Node node, NodePath path, Entry previous) {
+        Route route = new Route(node, path);
+
+        if (!node.isChildrenLoaded()) {
+            Map<String, Entry> children = (previous == null) ? Collections.<String, Entry> emptyMap() : previous.children;
+            return new Entry(route, children);
+        }
+
+        Map<String, Entry> children = new HashMap<String, Entry>((int) (node.getChildCount() / 0.75f) + 1);
+        for (Node child : node) {
+            String name = child.getName();
+            children.put(name, compile(child, path.append(name), null));
+        }
+        return new Entry(route, freeze(children));
+    }
+
+    /**
+     * Copies the entry and its descendants with the routes of the new path.
+     */
+    private static Entry rebase(Entry entry, NodePath path) {
+        Map<String, Entry> children = new HashMap<String, Entry>(entry.children.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Entry> child : entry.children.entrySet()) {
+            children.put(child.getKey(), rebase(child.getValue(), path.append(child.getKey())));
+        }
+        return new Entry(new Route(entry.route, path), freeze(children));
+    }
+
+    private static Map<String, Entry> freeze(Map<String, Entry> children) {
+        return children.isEmpty() ? Collections.<String, Entry> emptyMap() : Collections.unmodifiableMap(children);
+    }
+
+    private static class Entry {
+        private final Route route;
+        private final Map<String, Entry> children;
+
+        private Entry(Route route, Map<String, Entry> children) {
+            this.route = route;
+            this.children = children;
+        }
+    }
+
+    /**
+     * A route resolved by the routing table. The page id and visibility are the ones of the node at the time the route was
+     * compiled. A route does not keep a reference to the node, so it is immutable and does not retain the tree of nodes it
+     * was compiled from.
+     */
+    public static final class Route {
+        private final NodePath nodePath;
+        private final PageId pageId;
+        private final Visibility visibility;
+
+        private Route(Node node, NodePath nodePath) {
+            this.nodePath = nodePath;
+            this.pageId = node.getPageId();
+            this.visibility = node.getVisibility();
+        }
+
+        private Route(Route route, NodePath nodePath) {
+            this.nodePath = nodePath;
+            this.pageId = route.pageId;
+            this.visibility = route.visibility;
+        }
+
+        /**
+         * The path of the route
+         *
+         * @return the node path
+         */
+        public NodePath getNodePath() {
+            return nodePath;
+        }
+
+        /**
+         * The <code>PageId</code> of the node, or null if the node does not point to a page
+         *
+         * @return the page id or null
+         */
+        public PageId getPageId() {
+            return pageId;
+        }
+
+        /**
+         * The visibility of the node
+         *
+         * @return the visibility
+         */
+        public Visibility getVisibility() {
+            return visibility;
+        }
+
+        @Override
+        public String toString() {
+            return ObjectToStringBuilder.toStringBuilder(getClass()).add("nodePath", nodePath).add("pageId", pageId)
+                    .add("visibility", visibility).toString();
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.gatein.api.common.Clock;
+import org.gatein.api.common.Filter;
+import org.gatein.api.common.URIResolver;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Writes the sitemap of a navigation without loading the whole tree. The tree is walked depth first, and the children of the
+ * nodes are loaded with {@link Navigation#getNodes(Collection, NodeVisitor)} for a batch of nodes at a time, so only one batch
+ * of nodes and the paths of the nodes left to visit are held in memory. The URIs of the pages of each batch are built with
+ * {@link URIBuilder#getURIs(SiteId, Collection)}, and the URI of the site is only resolved once per sitemap. Hidden nodes, and
+ * nodes not accepted by the filter, are skipped with their descendants. Only nodes with a page are written.
+ * <p>
+ * The sitemap is split in chunks of at most 50,000 URLs and 50 MB, as required by the sitemaps protocol. Each chunk is written
+ * to a stream of the {@link Sink}, and several chunks can be referenced by a sitemap index, see
+ * {@link #writeIndex(Collection, OutputStream)}.
+ * </p>
+ * <p>
+ * For example to write the sitemap of a site to files:
+ * </p>
+ * <pre>
+ * int chunks = new SitemapWriter(Format.XML, resolver).write(navigation, new Sink() {
+ *     public OutputStream open(int chunk) throws IOException {
+ *         return new FileOutputStream(new File(directory, &quot;sitemap-&quot; + chunk + &quot;.xml&quot;));
+ *     }
+ * });
+ * </pre>
+ */
+public class SitemapWriter {
+    /**
+     * The maximum number of URLs of a sitemap.
+     */
+    public static final int MAX_URLS = 50000;
+
+    /**
+     * The maximum size in bytes of a sitemap.
+     */
+    public static final int MAX_BYTES = 50 * 1024 * 1024;
+
+    private static final String CHARSET = "UTF-8";
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    private static final String URLSET_START = "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+    private static final String URLSET_END = "</urlset>\n";
+    private static final String INDEX_START = "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+    private static final String INDEX_END = "</sitemapindex>\n";
+
+    public enum Format {
+        /**
+         * The XML format of the sitemaps protocol.
+         */
+        XML,
+
+        /**
+         * One URL per line.
+         */
+        TEXT
+    }
+
+    /**
+     * Opens the streams the chunks of a sitemap are written to.
+     */
+    public interface Sink {
+        /**
+         * Opens the stream of a chunk. The stream is closed by the writer once the chunk is written.
+         *
+         * @param chunk the index of the chunk, starting at 0
+         * @return the stream to write the chunk to
+         * @throws IOException if the stream could not be opened
+         */
+        OutputStream open(int chunk) throws IOException;
+    }
+
+    private final Format format;
+    private final URIResolver resolver;
+    private final Clock clock;
+    private final Filter<Node> filter;
+    private final int batchSize;
+    private final int maxURLs;
+
+    /**
+     * Creates a writer of sitemaps in the specified format, loading the children of 256 nodes at a time.
+     *
+     * @param format the format of the sitemaps
+     * @param resolver the resolver of the URIs of the sites, which should return absolute URIs
+     * @throws IllegalArgumentException if format or resolver is null
+     */
+    public SitemapWriter(Format format, URIResolver resolver) {
+        this(Parameters.requireNonNull(format, "format"), Parameters.requireNonNull(resolver, "resolver"), Clock.system(),
+                null, 256, MAX_URLS);
+    }
+
+    private SitemapWriter(Format format, URIResolver resolver, Clock clock, Filter<Node> filter, int batchSize, int maxURLs) {
+        this.format = format;
+        this.resolver = resolver;
+        this.clock = clock;
+        this.filter = filter;
+        this.batchSize = batchSize;
+        this.maxURLs = maxURLs;
+    }
+
+    /**
+     * Returns a writer using the clock to determine the visibility of the nodes.
+     *
+     * @param clock the clock
+     * @return a new writer
+     * @throws IllegalArgumentException if clock is null
+     */
+    public SitemapWriter clock(Clock clock) {
+        return new SitemapWriter(format, resolver, Parameters.requireNonNull(clock, "clock"), filter, batchSize, maxURLs);
+    }
+
+    /**
+     * Returns a writer which skips the nodes not accepted by the filter and their descendants, for instance the nodes an
+     * anonymous user has no access to.
+     *
+     * @param filter the filter
+     * @return a new writer
+     * @throws IllegalArgumentException if filter is null
+     */
+    public SitemapWriter filter(Filter<Node> filter) {
+        return new SitemapWriter(format, resolver, clock, Parameters.requireNonNull(filter, "filter"), batchSize, maxURLs);
+    }
+
+    /**
+     * Returns a writer loading the children of the specified number of nodes at a time.
+     *
+     * @param batchSize the number of nodes to load the children of at a time
+     * @return a new writer
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public SitemapWriter batchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1");
+
+        return new SitemapWriter(format, resolver, clock, filter, batchSize, maxURLs);
+    }
+
+    /**
+     * Returns a writer with at most the specified number of URLs per chunk.
+     *
+     * @param maxURLs the maximum number of URLs of a chunk
+     * @return a new writer
+     * @throws IllegalArgumentException if maxURLs is less than 1 or greater than {@link #MAX_URLS}
+     */
+    public SitemapWriter maxURLs(int maxURLs) {
+        if (maxURLs < 1 || maxURLs > MAX_URLS)
+            throw new IllegalArgumentException("maxURLs must be between 1 and " + MAX_URLS);
+
+        return new SitemapWriter(format, resolver, clock, filter, batchSize, maxURLs);
+    }
+
+    /**
+     * Writes the sitemap of the navigation. At least one chunk is written, even if the navigation has no visible pages.
+     *
+     * @param navigation the navigation
+     * @param sink the sink opening the streams of the chunks
+     * @return the number of chunks written
+     * @throws IllegalArgumentException if navigation or sink is null
+     * @throws IOException if a chunk could not be written
+     * @throws org.gatein.api.ApiException if the nodes could not be loaded
+     */
+    public int write(Navigation navigation, Sink sink) throws IOException {
+        Parameters.requireNonNull(navigation, "navigation");
+        Parameters.requireNonNull(sink, "sink");
+
+        long time = clock.currentTimeMillis();
+        SiteId siteId = navigation.getSiteId();
+        URIBuilder builder = new URIBuilder(resolver);
+        NodeVisitor visitor = new VisibleChildrenVisitor(time);
+
+        ChunkWriter out = new ChunkWriter(sink);
+        try {
+            // Paths of the nodes with a page, resolved in a single call for each batch
+            List<NodePath> pages = new ArrayList<NodePath>();
+            // Paths of the nodes whose children are left to visit, the last one is visited first
+            List<NodePath> stack = new ArrayList<NodePath>();
+
+            Node root = navigation.getRootNode(visitor);
+            if (root.getPageId() != null) {
+                pages.add(NodePath.root());
+            }
+            visitChildren(root, NodePath.root(), time, pages, stack);
+            reverse(stack, 0, stack.size());
+            write(builder, siteId, pages, out);
+
+            List<NodePath> batch = new ArrayList<NodePath>(batchSize);
+            while (!stack.isEmpty()) {
+                batch.clear();
+                for (int i = stack.size() - 1; i >= 0 && batch.size() < batchSize; i--) {
+                    batch.add(stack.remove(i));
+                }
+
+                Map<NodePath, Node> nodes = navigation.getNodes(batch, visitor);
+                int top = stack.size();
+                for (NodePath path : batch) {
+                    Node node = nodes.get(path);
+                    if (node != null) {
+                        visitChildren(node, path, time, pages, stack);
+                    }
+                }
+                // The first child of the first node of the batch is visited next
+                reverse(stack, top, stack.size());
+                write(builder, siteId, pages, out);
+            }
+
+            out.finish();
+            return out.chunk;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void visitChildren(Node node, NodePath path, long time, List<NodePath> pages, List<NodePath> stack) {
+        if (!node.isChildrenLoaded())
+            return;
+
+        for (Node child : node) {
+            if (!child.getVisibility().isVisible(time) || (filter != null && !filter.accept(child)))
+                continue;
+
+            NodePath childPath = path.append(child.getName());
+            if (child.getPageId() != null) {
+                pages.add(childPath);
+            }
+            stack.add(childPath);
+        }
+    }
+
+    private static void write(URIBuilder builder, SiteId siteId, List<NodePath> pages, ChunkWriter out) throws IOException {
+        if (pages.isEmpty())
+            return;
+
+        Map<NodePath, String> uris = builder.getURIs(siteId, pages);
+        for (NodePath page : pages) {
+            out.write(uris.get(page));
+        }
+        pages.clear();
+    }
+
+    private static void reverse(List<NodePath> list, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            list.set(i, list.set(j, list.get(i)));
+        }
+    }
+
+    /**
+     * Writes a sitemap index referencing the chunks of a sitemap.
+     *
+     * @param sitemapURIs the absolute URIs of the chunks
+     * @param out the stream to write to, which is not closed
+     * @throws IllegalArgumentException if sitemapURIs or out is null
+     * @throws IOException if the index could not be written
+     */
+    public static void writeIndex(Collection<String> sitemapURIs, OutputStream out) throws IOException {
+        Parameters.requireNonNull(sitemapURIs, "sitemapURIs");
+        Parameters.requireNonNull(out, "out");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET));
+        writer.write(XML_HEADER);
+        writer.write(INDEX_START);
+        for (String uri : sitemapURIs) {
+            writer.write("  <sitemap><loc>");
+            writer.write(escape(uri));
+            writer.write("</loc></sitemap>\n");
+        }
+        writer.write(INDEX_END);
+        writer.flush();
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String entity;
+            switch (c) {
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = "&quot;";
+                    break;
+                case '\'':
+                    entity = "&apos;";
+                    break;
+                default:
+                    entity = null;
+                    break;
+            }
+            if (entity != null && sb == null) {
+                sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (entity == null) {
+                    sb.append(c);
+                } else {
+                    sb.append(entity);
+                }
+            }
+        }
+        return (sb == null) ? value : sb.toString();
+    }
+
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Only loads the children of the node the visitor is relative to, if it is visible.
+     */
+    private static final class VisibleChildrenVisitor implements NodeVisitor {
+        private final long time;
+
+        VisibleChildrenVisitor(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public boolean visit(int depth, String name, NodeDetails details) {
+            return depth == 0 && (details == null || details.getVisibility().isVisible(time));
+        }
+    }
+
+    /**
+     * Writes the URLs to the current chunk, starting a new chunk when it is full.
+     */
+    private final class ChunkWriter {
+        private final Sink sink;
+        private final String header;
+        private final String footer;
+        private final int footerLength;
+        private Writer writer;
+        private int chunk;
+        private int urls;
+        private long bytes;
+
+        ChunkWriter(Sink sink) {
+            this.sink = sink;
+            this.header = (format == Format.XML) ? XML_HEADER + URLSET_START : "";
+            this.footer = (format == Format.XML) ? URLSET_END : "";
+            this.footerLength = utf8Length(footer);
+        }
+
+        void write(String uri) throws IOException {
+            String entry = (format == Format.XML) ? "  <url><loc>" + escape(uri) + "</loc></url>\n" : uri + "\n";
+            int length = utf8Length(entry);
+            if (writer != null && (urls == maxURLs || bytes + length + footerLength > MAX_BYTES)) {
+                finish();
+            }
+            if (writer == null) {
+                start();
+            }
+
+            writer.write(entry);
+            urls++;
+            bytes += length;
+        }
+
+        void start() throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(sink.open(chunk++), CHARSET));
+            writer.write(header);
+            urls = 0;
+            bytes = utf8Length(header);
+        }
+
+        void finish() throws IOException {
+            if (writer == null && chunk == 0) {
+                start();
+            }
+            if (writer != null) {
+                writer.write(footer);
+                Writer finished = writer;
+                writer = null;
+                finished.close();
+            }
+        }
+
+        void close() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // The failure which caused the chunk to be left open is reported instead
+                }
+                writer = null;
+            }
+        }
+    }
+}
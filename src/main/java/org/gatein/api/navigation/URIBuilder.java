@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gatein.api.common.URIResolver;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Builds the URIs of nodes, resolving the base URI of each site only once with the {@link URIResolver}. The string of a path
+ * is computed once per {@link NodePath} instance, so building the URI of a node only concatenates two strings. The segments of
+ * the path are not encoded, so the URIs are the same as the ones of {@link Node#getURI()} in the portal.
+ * <p>
+ * A builder should not outlive the resolver it wraps, for instance {@link org.gatein.api.PortalRequest#getURIBuilder()} is
+ * created once per request.
+ * </p>
+ */
+public class URIBuilder {
+    private final URIResolver resolver;
+    private final ConcurrentMap<SiteId, String> bases = new ConcurrentHashMap<SiteId, String>();
+
+    /**
+     * @param resolver the resolver of the base URIs of the sites
+     * @throws IllegalArgumentException if resolver is null
+     */
+    public URIBuilder(URIResolver resolver) {
+        this.resolver = Parameters.requireNonNull(resolver, "resolver");
+    }
+
+    /**
+     * Returns the URI of the node of the site.
+     *
+     * @param siteId the site id
+     * @param nodePath the path of the node
+     * @return the URI
+     * @throws IllegalArgumentException if siteId or nodePath is null
+     */
+    public String getURI(SiteId siteId, NodePath nodePath) {
+        Parameters.requireNonNull(nodePath, "nodePath");
+
+        return base(siteId) + nodePath.toString();
+    }
+
+    /**
+     * Returns the URIs of the nodes of the site.
+     *
+     * @param siteId the site id
+     * @param nodePaths the paths of the nodes
+     * @return the URIs mapped by node path, in the iteration order of nodePaths
+     * @throws IllegalArgumentException if siteId or nodePaths is null, or if nodePaths contains null
+     */
+    public Map<NodePath, String> getURIs(SiteId siteId, Collection<NodePath> nodePaths) {
+        Parameters.requireNonNull(nodePaths, "nodePaths");
+
+        String base = base(siteId);
+        Map<NodePath, String> uris = new LinkedHashMap<NodePath, String>(nodePaths.size() * 4 / 3 + 1);
+        for (NodePath nodePath : nodePaths) {
+            uris.put(Parameters.requireNonNull(nodePath, "nodePath"), base + nodePath.toString());
+        }
+        return uris;
+    }
+
+    /**
+     * Returns the base URI of the site without the trailing slash, the path of the nodes always starts with a slash.
+     */
+    private String base(SiteId siteId) {
+        String base = bases.get(Parameters.requireNonNull(siteId, "siteId"));
+        if (base == null) {
+            base = resolver.resolveURI(siteId);
+            if (base.endsWith("/")) {
+                base = base.substring(0, base.length() - 1);
+            }
+            bases.put(siteId, base);
+        }
+        return base;
+    }
+}
@@ -22,6 +22,8 @@
 
 package org.gatein.api.navigation;
 
+import org.gatein.api.PortalRequest;
+import org.gatein.api.common.Clock;
 import org.gatein.api.internal.ObjectToStringBuilder;
 import org.gatein.api.internal.Parameters;
 
@@ -68,21 +70,60 @@ public class Visibility implements Serializable {
 
     /**
      * Returns true if the status is {@link Status#VISIBLE} or if the status is {@link Status#PUBLICATION} and the
-     * publicationDate is within the current time.
+     * publicationDate is within the current time. The current time is the time of the clock of the current
+     * {@link PortalRequest}, see {@link PortalRequest#getClock()}, or the system time outside of a request.
      * 
      * @return true if visible
      */
     public boolean isVisible() {
+        PortalRequest request = PortalRequest.getInstance();
+        return isVisible((request == null) ? Clock.system() : request.getClock());
+    }
+
+    /**
+     * Returns true if the status is {@link Status#VISIBLE} or if the status is {@link Status#PUBLICATION} and the
+     * publicationDate is within the current time of the clock.
+     *
+     * @param clock the clock
+     * @return true if visible
+     * @throws IllegalArgumentException if clock is null
+     */
+    public boolean isVisible(Clock clock) {
+        Parameters.requireNonNull(clock, "clock");
+
+        return isVisible(clock.currentTimeMillis());
+    }
+
+    /**
+     * Returns true if the status is {@link Status#VISIBLE} or if the status is {@link Status#PUBLICATION} and the
+     * publicationDate is within the specified time.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return true if visible
+     */
+    public boolean isVisible(long time) {
         switch (status) {
             case VISIBLE:
                 return true;
             case PUBLICATION:
-                return publicationDate.within(System.currentTimeMillis());
+                return publicationDate.within(time);
             default:
                 return false;
         }
     }
 
+    /**
+     * Returns the first time after the specified time at which the result of {@link #isVisible(long)} changes, or -1 if it
+     * never changes. Only visibilities with the status {@link Status#PUBLICATION} can change.
+     *
+     * @param time the time in milliseconds since the epoch
+     * @return the time of the next transition or -1
+     * @see PublicationDate#nextTransition(long)
+     */
+    public long nextTransition(long time) {
+        return (publicationDate == null) ? -1 : publicationDate.nextTransition(time);
+    }
+
     /**
      * Returns the status
      * 
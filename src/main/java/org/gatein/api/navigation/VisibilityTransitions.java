@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import java.util.Arrays;
+
+/**
+ * The sorted times at which the visibility of the nodes of a tree changes. They are collected once for a tree, then the next
+ * transition after any time is found with a binary search instead of walking the tree.
+ *
+ * @see Nodes#nextVisibilityTransition(Node, long)
+ */
+final class VisibilityTransitions {
+    private long[] times = new long[8];
+    private int size;
+
+    /**
+     * Adds the transitions of the visibility, which may be null when the visibility is not part of the projection.
+     */
+    void add(Visibility visibility) {
+        if (visibility == null)
+            return;
+
+        for (long time = visibility.nextTransition(Long.MIN_VALUE); time != -1; time = visibility.nextTransition(time)) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+            }
+            times[size++] = time;
+        }
+    }
+
+    /**
+     * Returns the sorted distinct times of the added transitions.
+     */
+    long[] toArray() {
+        Arrays.sort(times, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || times[i] != times[distinct - 1]) {
+                times[distinct++] = times[i];
+            }
+        }
+        return Arrays.copyOf(times, distinct);
+    }
+
+    /**
+     * Returns the first of the sorted times after the specified time, or -1 if there is none.
+     */
+    static long next(long[] times, long time) {
+        int i = Arrays.binarySearch(times, time);
+        i = (i < 0) ? -i - 1 : i + 1;
+        return (i < times.length) ? times[i] : -1;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.security;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import org.gatein.api.internal.ObjectToStringBuilder;
+import org.gatein.api.internal.Parameters;
+
+/**
+ * A canonical representation of a set of memberships, used as a key to share state computed from permission checks between
+ * users with the same memberships. Two fingerprints are equal if and only if they represent the same set of memberships,
+ * regardless of the order the memberships were provided in.
+ * <p>
+ * Permissions can be granted to a user directly, see {@link Membership#Membership(User)}. If such permissions are used, the
+ * membership of the user itself must be included for the fingerprint to determine the result of the permission checks.
+ * </p>
+ */
+public final class MembershipFingerprint implements Serializable {
+    private static final MembershipFingerprint EMPTY = new MembershipFingerprint(new String[0]);
+
+    /**
+     * Returns the fingerprint of the anonymous user, which has no memberships.
+     *
+     * @return the empty fingerprint
+     */
+    public static MembershipFingerprint anonymous() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates the fingerprint of a set of memberships. Duplicates are ignored.
+     *
+     * @param memberships the memberships
+     * @return the fingerprint
+     * @throws IllegalArgumentException if memberships is null or contains null
+     */
+    public static MembershipFingerprint of(Collection<Membership> memberships) {
+        Parameters.requireNonNull(memberships, "memberships");
+        if (memberships.isEmpty())
+            return EMPTY;
+
+        TreeSet<String> canonical = new TreeSet<String>();
+        for (Membership membership : memberships) {
+            canonical.add(Parameters.requireNonNull(membership, "membership").toString());
+        }
+        return new MembershipFingerprint(canonical.toArray(new String[canonical.size()]));
+    }
+
+    private final String[] memberships;
+    private final long hash;
+
+    private MembershipFingerprint(String[] memberships) {
+        this.memberships = memberships;
+        this.hash = hash(memberships);
+    }
+
+    /**
+     * A 64 bit hash of the memberships, stable across JVMs.
+     *
+     * @return the hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * The number of distinct memberships
+     *
+     * @return the number of memberships
+     */
+    public int size() {
+        return memberships.length;
+    }
+
+    @Override
+    public String toString() {
+        return ObjectToStringBuilder.toStringBuilder(getClass()).add("hash", Long.toHexString(hash))
+                .add("size", memberships.length).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof MembershipFingerprint))
+            return false;
+
+        MembershipFingerprint that = (MembershipFingerprint) o;
+        return hash == that.hash && Arrays.equals(memberships, that.memberships);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // FNV-1a over the sorted memberships, each one followed by a separator
+    private static long hash(String[] memberships) {
+        long hash = 0xcbf29ce484222325L;
+        for (String membership : memberships) {
+            for (int i = 0; i < membership.length(); i++) {
+                hash = (hash ^ membership.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -96,6 +96,14 @@ public class LocalizedStringTest {
         assertEquals(one, two);
     }
 
+    @Test
+    public void testEquals_Values() {
+        assertEquals(new LocalizedString("Home"), new LocalizedString("Home"));
+        assertFalse(new LocalizedString("Home").equals(new LocalizedString("News")));
+        assertFalse(new LocalizedString(Locale.ENGLISH, "Home").equals(new LocalizedString(Locale.ENGLISH, "News")));
+        assertFalse(new LocalizedString(Locale.ENGLISH, "Home").equals(new LocalizedString(Locale.FRENCH, "Home")));
+    }
+
     @Test
     public void testLocalized_Unlocalized() {
         LocalizedString localizedString = new LocalizedString("simple");
@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.navigation.NavigationEvent.Type;
+import org.gatein.api.site.SiteId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BreadcrumbCacheTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+    private static final SiteId MOBILE = new SiteId("mobile");
+    private static final NodePath SPORTS = NodePath.path("news", "sports");
+
+    private SimpleNode root;
+    private NavigationSnapshot classic;
+    private NavigationSnapshot mobile;
+    private BreadcrumbCache cache;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news");
+        root.getChild("news").with("sports", "weather");
+        LocalizedString displayNames = new LocalizedString(Locale.ENGLISH, "News");
+        displayNames.setLocalizedValue(Locale.FRENCH, "Actualit\u00e9s");
+        root.getChild("news").setDisplayNames(displayNames);
+        root.getChild("home").setDisplayName("Home");
+
+        classic = NavigationSnapshot.of(CLASSIC, root);
+        mobile = NavigationSnapshot.of(MOBILE, root);
+        cache = new BreadcrumbCache(10);
+        TestRequest.set("/portal");
+    }
+
+    @After
+    public void after() {
+        TestRequest.clear();
+    }
+
+    @Test
+    public void breadcrumb() {
+        Breadcrumb breadcrumb = Nodes.breadcrumb(sports(), Locale.FRANCE);
+
+        // Falls back to the language of the locale, then to the name of the node
+        assertEquals(Arrays.asList("Actualit\u00e9s", "sports"), labels(breadcrumb));
+        assertEquals("/news/sports", breadcrumb.getItems().get(1).getURI());
+        assertEquals(NodePath.path("news"), breadcrumb.getItems().get(0).getNodePath());
+
+        assertEquals(Arrays.asList("Home"), labels(Nodes.breadcrumb(root.getChild("home"), Locale.FRENCH)));
+        assertEquals(0, Nodes.breadcrumb(root, Locale.ENGLISH).size());
+    }
+
+    @Test
+    public void getBreadcrumb() {
+        Breadcrumb breadcrumb = cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH);
+        assertEquals(Arrays.asList("News", "sports"), labels(breadcrumb));
+        assertEquals(Arrays.asList("/portal/classic/news", "/portal/classic/news/sports"), uris(breadcrumb));
+        assertEquals(breadcrumb, cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH));
+
+        // The breadcrumb of the parent was cached as well
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList("News"), labels(cache.getBreadcrumb(classic, NodePath.path("news"), Locale.ENGLISH)));
+        assertEquals(2, cache.size());
+
+        assertEquals(Arrays.asList("Actualit\u00e9s", "sports"), labels(cache.getBreadcrumb(classic, SPORTS,
+                Locale.FRENCH)));
+        cache.getBreadcrumb(mobile, SPORTS, Locale.ENGLISH);
+        assertEquals(6, cache.size());
+
+        assertEquals(0, cache.getBreadcrumb(classic, NodePath.root(), Locale.ENGLISH).size());
+        assertNull(cache.getBreadcrumb(classic, NodePath.path("missing"), Locale.ENGLISH));
+    }
+
+    @Test
+    public void getBreadcrumb_URIsOfCurrentRequest() {
+        cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH);
+
+        // The URIs are not cached, but built for each request
+        TestRequest.set("/mobile/");
+        assertEquals(Arrays.asList("/mobile/classic/news", "/mobile/classic/news/sports"), uris(cache.getBreadcrumb(
+                classic, SPORTS, Locale.ENGLISH)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getBreadcrumb_NoRequest() {
+        TestRequest.clear();
+        cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH);
+    }
+
+    @Test
+    public void navigationChanged() {
+        Breadcrumb before = cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH);
+        cache.getBreadcrumb(classic, NodePath.path("news", "weather"), Locale.ENGLISH);
+        cache.getBreadcrumb(classic, NodePath.path("home"), Locale.ENGLISH);
+        cache.getBreadcrumb(mobile, SPORTS, Locale.ENGLISH);
+        assertEquals(6, cache.size());
+
+        // Added nodes and priorities do not change existing breadcrumbs
+        cache.navigationChanged(CLASSIC, Arrays.asList(event(Type.NODE_ADDED, NodePath.path("news", "economy")),
+                event(Type.PRIORITY_CHANGED, NodePath.root())));
+        assertEquals(6, cache.size());
+
+        cache.navigationChanged(CLASSIC, Arrays.asList(event(Type.NODE_UPDATED, SPORTS)));
+        assertEquals(5, cache.size());
+
+        // A renamed node invalidates its descendants
+        cache.navigationChanged(CLASSIC, Arrays.asList(new NavigationEvent(CLASSIC, Type.NODE_RENAMED, NodePath.path(
+                "headlines"), NodePath.path("news"), 2)));
+        assertEquals(3, cache.size());
+
+        root.getChild("news").setDisplayName("Headlines");
+        Breadcrumb after = cache.getBreadcrumb(NavigationSnapshot.of(CLASSIC, root), SPORTS, Locale.ENGLISH);
+        assertNotSame(before, after);
+        assertEquals(Arrays.asList("Headlines", "sports"), labels(after));
+    }
+
+    @Test
+    public void navigationChanged_StaleSnapshot() {
+        root.getChild("news").setDisplayName("Headlines");
+        NavigationSnapshot updated = classic.withNode(root.getChild("news"));
+
+        // A caller still holding the previous snapshot once the change was delivered does not cache stale labels
+        cache.navigationChanged(CLASSIC, Arrays.asList(event(Type.NODE_UPDATED, NodePath.path("news"))));
+        assertEquals(Arrays.asList("News", "sports"), labels(cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH)));
+        assertEquals(Arrays.asList("Headlines", "sports"), labels(cache.getBreadcrumb(updated, SPORTS, Locale.ENGLISH)));
+
+        // Once a more recent snapshot was seen, breadcrumbs of older snapshots are not cached anymore
+        cache.clear();
+        cache.getBreadcrumb(classic, SPORTS, Locale.ENGLISH);
+        assertEquals(0, cache.size());
+        assertEquals(Arrays.asList("Headlines", "sports"), labels(cache.getBreadcrumb(updated, SPORTS, Locale.ENGLISH)));
+    }
+
+    private SimpleNode sports() {
+        return root.getChild("news").getChild("sports");
+    }
+
+    private static NavigationEvent event(Type type, NodePath nodePath) {
+        return new NavigationEvent(CLASSIC, type, nodePath, null, 1);
+    }
+
+    private static List<String> uris(Breadcrumb breadcrumb) {
+        List<String> uris = new ArrayList<String>();
+        for (Breadcrumb.Item item : breadcrumb) {
+            uris.add(item.getURI());
+        }
+        return uris;
+    }
+
+    private static List<String> labels(Breadcrumb breadcrumb) {
+        List<String> labels = new ArrayList<String>();
+        for (Breadcrumb.Item item : breadcrumb) {
+            labels.add(item.getLabel());
+        }
+        return labels;
+    }
+}
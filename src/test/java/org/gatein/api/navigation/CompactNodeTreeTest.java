@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactNodeTreeTest {
+    private SimpleNode root;
+    private CompactNodeTree tree;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news", "about");
+        root.getChild("home").page(new PageId("classic", "homepage")).setDisplayName("Home");
+        root.getChild("home").getAttributes().put("key", "value");
+        root.getChild("news").with("sports", "weather").setIconName("paper");
+        root.getChild("news").getChild("sports").with("football").setVisibility(
+                new Visibility(PublicationDate.startingOn(new Date(1000))));
+        root.getChild("news").getChild("weather").setVisibility(false);
+        root.getChild("about").unloadChildren();
+
+        tree = CompactNodeTree.of(new SiteId("classic"), root);
+    }
+
+    @Test
+    public void copy() {
+        assertEquals(7, tree.size());
+        assertSameTree(root, tree.getRootNode());
+    }
+
+    @Test
+    public void navigate() {
+        Node sports = tree.getNode(NodePath.path("news", "sports"));
+        assertEquals(NodePath.path("news", "sports"), sports.getNodePath());
+        assertEquals("news", sports.getParent().getName());
+        assertTrue(sports.getParent().getParent().isRoot());
+        assertEquals(sports, tree.getRootNode().getChild("news").getChild(0));
+        assertEquals(1, tree.getRootNode().getChild("news").indexOf("weather"));
+        assertNull(tree.getNode(NodePath.path("news", "missing")));
+        assertNull(tree.getNode(NodePath.path("about", "contact")));
+        assertFalse(tree.getRootNode().getChild("about").isChildrenLoaded());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void childrenNotLoaded() {
+        tree.getNode(NodePath.path("about")).getChildCount();
+    }
+
+    @Test
+    public void sharedValues() {
+        SimpleNode wide = SimpleNode.root();
+        for (int i = 0; i < 100; i++) {
+            wide.with("n" + i);
+            wide.getChild("n" + i).page(new PageId("classic", "page")).setDisplayName("Same");
+        }
+        CompactNodeTree wideTree = CompactNodeTree.of(new SiteId("classic"), wide);
+
+        assertSame(wideTree.getNode(NodePath.path("n1")).getPageId(), wideTree.getNode(NodePath.path("n99")).getPageId());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, wideTree.getRootNode().indexOf("n" + i));
+        }
+        assertEquals(-1, wideTree.getRootNode().indexOf("n100"));
+    }
+
+    @Test
+    public void projection() {
+        tree = CompactNodeTree.of(new SiteId("classic"), root, NodeProjection.of(NodeProjection.Field.VISIBILITY));
+
+        assertFalse(tree.getNode(NodePath.path("news", "weather")).isVisible());
+        try {
+            tree.getNode(NodePath.path("home")).getPageId();
+        } catch (IllegalStateException e) {
+            return;
+        }
+        throw new AssertionError();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnly() {
+        tree.getRootNode().getChild("home").setName("foo");
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(tree);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        CompactNodeTree copy = (CompactNodeTree) in.readObject();
+
+        assertSameTree(root, copy.getRootNode());
+    }
+
+    @Test
+    public void contentHash() {
+        NavigationSnapshot snapshot = NavigationSnapshot.of(new SiteId("classic"), root);
+
+        assertEquals(Nodes.contentHash(root), Nodes.contentHash(tree.getRootNode()));
+        assertEquals(snapshot.getETag(), tree.getETag());
+        assertEquals(Nodes.contentHash(root.getChild("news").getChild("sports")),
+                Nodes.contentHash(tree.getNode(NodePath.path("news", "sports"))));
+        assertEquals(Nodes.contentHash(root.getChild("about")), Nodes.contentHash(tree.getNode(NodePath.path("about"))));
+    }
+
+    private static void assertSameTree(Node expected, Node actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getNodePath(), actual.getNodePath());
+        assertEquals(expected.getDisplayNames(), actual.getDisplayNames());
+        assertEquals(expected.getIconName(), actual.getIconName());
+        assertEquals(expected.getVisibility(), actual.getVisibility());
+        assertEquals(expected.getPageId(), actual.getPageId());
+        assertEquals(expected.getAttributes(), actual.getAttributes());
+        assertEquals(expected.isChildrenLoaded(), actual.isChildrenLoaded());
+        if (expected.isChildrenLoaded()) {
+            assertEquals(expected.getChildCount(), actual.getChildCount());
+            Iterator<Node> iterator = actual.iterator();
+            for (Node child : expected) {
+                assertSameTree(child, iterator.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gatein.api.Portal;
+import org.gatein.api.common.Clock;
+import org.gatein.api.page.PageId;
+import org.gatein.api.security.Membership;
+import org.gatein.api.security.MembershipFingerprint;
+import org.gatein.api.security.Permission;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FilteredNavigationCacheTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+    private static final PageId ADMIN_PAGE = new PageId("classic", "admin");
+
+    private final AtomicInteger permissionChecks = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+    private SimpleNode root;
+    private NavigationSnapshot snapshot;
+    private FilteredNavigationCache cache;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "admin", "news");
+        root.getChild("admin").page(ADMIN_PAGE);
+        root.getChild("news").setVisibility(new Visibility(PublicationDate.startingOn(new Date(1000))));
+        snapshot = NavigationSnapshot.of(CLASSIC, root);
+        cache = new FilteredNavigationCache(10, clock);
+
+        TestRequest.set(portal());
+    }
+
+    @After
+    public void after() {
+        TestRequest.clear();
+    }
+
+    @Test
+    public void sharedByFingerprint() {
+        MembershipFingerprint users = fingerprint("member:/platform/users");
+
+        Node john = cache.getAccessibleRoot(snapshot, new User("john"), users);
+        Node mary = cache.getAccessibleRoot(snapshot, new User("mary"), users);
+
+        assertSame(john, mary);
+        assertEquals(1, cache.size());
+        // The site permission of nodes without page and the permission of the admin page, only checked for john
+        assertEquals(2, permissionChecks.get());
+        assertEquals(1, john.getChildCount());
+        assertEquals("home", john.getChild(0).getName());
+
+        Node root = cache.getAccessibleRoot(snapshot, new User("root"), fingerprint("*:/platform/administrators"));
+        assertEquals(2, root.getChildCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void expiresAtVisibilityTransition() {
+        MembershipFingerprint users = fingerprint("member:/platform/users");
+        Node before = cache.getAccessibleRoot(snapshot, new User("john"), users);
+        assertNull(before.getChild("news"));
+
+        clock.time = 999;
+        assertSame(before, cache.getAccessibleRoot(snapshot, new User("john"), users));
+
+        clock.time = 1000;
+        Node after = cache.getAccessibleRoot(snapshot, new User("john"), users);
+        assertNotSame(before, after);
+        assertEquals("news", after.getChild("news").getName());
+    }
+
+    @Test
+    public void snapshotChanged() {
+        MembershipFingerprint users = fingerprint("member:/platform/users");
+        Node before = cache.getAccessibleRoot(snapshot, new User("john"), users);
+
+        root.with("about");
+        NavigationSnapshot updated = snapshot.withNode(root);
+        Node after = cache.getAccessibleRoot(updated, new User("john"), users);
+
+        assertNotSame(before, after);
+        assertEquals(2, after.getChildCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictionAndInvalidation() {
+        cache = new FilteredNavigationCache(2, clock);
+        for (int i = 0; i < 5; i++) {
+            cache.getAccessibleRoot(snapshot, new User("user" + i), fingerprint("member:/group" + i));
+        }
+        assertEquals(2, cache.size());
+
+        assertEquals(2, cache.invalidate(CLASSIC));
+        assertEquals(0, cache.size());
+    }
+
+    private static MembershipFingerprint fingerprint(String... memberships) {
+        Membership[] values = new Membership[memberships.length];
+        for (int i = 0; i < memberships.length; i++) {
+            values[i] = Membership.fromString(memberships[i]);
+        }
+        return MembershipFingerprint.of(Arrays.asList(values));
+    }
+
+    private Portal portal() {
+        return new TestPortal() {
+            @Override
+            protected Permission getAccessPermission(PageId pageId) {
+                return Permission.any("platform", "administrators");
+            }
+
+            @Override
+            protected boolean hasPermission(User user, Permission permission) {
+                permissionChecks.incrementAndGet();
+                return permission.equals(Permission.everyone()) || user.getId().equals("root");
+            }
+        }.create();
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile long time;
+
+        @Override
+        public long currentTimeMillis() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gatein.api.ApiException;
+import org.gatein.api.Portal;
+import org.gatein.api.common.Clock;
+import org.gatein.api.security.Group;
+import org.gatein.api.security.Membership;
+import org.gatein.api.security.MembershipFingerprint;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MergedNavigationCacheTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+    private static final SiteId USERS = new SiteId(new Group("platform", "users"));
+    private static final SiteId ORGANIZATION = new SiteId(new Group("organization"));
+    private static final SiteId MISSING = new SiteId(new Group("missing"));
+    private static final MembershipFingerprint FINGERPRINT = MembershipFingerprint.of(Arrays.asList(
+            Membership.fromString("member:/platform/users"), Membership.fromString("member:/organization")));
+
+    private final Map<SiteId, SimpleNode> roots = new HashMap<SiteId, SimpleNode>();
+    private final Map<SiteId, Integer> priorities = new ConcurrentHashMap<SiteId, Integer>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+    private volatile SiteId failing;
+    private ExecutorService executor;
+    private NavigationSnapshots snapshots;
+    private MergedNavigationCache cache;
+    private Portal portal;
+
+    @Before
+    public void before() {
+        roots.put(CLASSIC, SimpleNode.root().with("home", "news"));
+        roots.put(USERS, SimpleNode.root().with("dashboard"));
+        roots.put(ORGANIZATION, SimpleNode.root().with("management"));
+        priorities.put(CLASSIC, 5);
+        priorities.put(USERS, 2);
+        priorities.put(ORGANIZATION, 1);
+
+        NavigationEventDispatcher dispatcher = new NavigationEventDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        executor = Executors.newFixedThreadPool(2);
+        snapshots = new NavigationSnapshots(Nodes.visitAll(), null, dispatcher);
+        cache = new MergedNavigationCache(10, snapshots, new FilteredNavigationCache(10, clock), new NavigationLoader(
+                executor, 4), clock);
+        dispatcher.addListener(cache);
+
+        portal = portal();
+        TestRequest.set(portal);
+    }
+
+    @After
+    public void after() {
+        TestRequest.clear();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void merge() {
+        MergedNavigation merged = cache.getMergedNavigation(portal, Arrays.asList(USERS, CLASSIC, ORGANIZATION, MISSING),
+                new User("john"), FINGERPRINT);
+
+        // The portal site first, then the group spaces by priority
+        assertEquals(Arrays.asList(CLASSIC, ORGANIZATION, USERS), merged.getSiteIds());
+        assertEquals(Arrays.asList("home", "news", "management", "dashboard"), names(merged));
+        assertEquals(CLASSIC, merged.getItems().get(1).getSiteId());
+        assertEquals(1, merged.getItems().get(2).getPriority());
+    }
+
+    @Test
+    public void merge_SamePriority() {
+        priorities.put(USERS, 1);
+        MergedNavigation merged = cache.getMergedNavigation(portal, Arrays.asList(USERS, ORGANIZATION), new User("john"),
+                FINGERPRINT);
+
+        assertEquals(Arrays.asList("dashboard", "management"), names(merged));
+    }
+
+    @Test
+    public void sharedByFingerprint() {
+        List<SiteId> siteIds = Arrays.asList(CLASSIC, USERS, ORGANIZATION);
+        MergedNavigation john = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        MergedNavigation mary = cache.getMergedNavigation(portal, siteIds, new User("mary"), FINGERPRINT);
+
+        assertSame(john, mary);
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.size());
+
+        cache.getMergedNavigation(portal, siteIds, User.anonymous(), MembershipFingerprint.anonymous());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void invalidatedByChanges() {
+        List<SiteId> siteIds = Arrays.asList(CLASSIC, USERS, ORGANIZATION);
+        MergedNavigation before = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        cache.getMergedNavigation(portal, Arrays.asList(CLASSIC), new User("john"), FINGERPRINT);
+        assertEquals(2, cache.size());
+
+        SimpleNode root = roots.get(USERS);
+        root.addChild("wiki");
+        snapshots.saveNode(portal.getNavigation(USERS), root);
+        assertEquals(1, cache.size());
+
+        MergedNavigation after = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        assertNotSame(before, after);
+        assertEquals(Arrays.asList("home", "news", "management", "dashboard", "wiki"), names(after));
+
+        // A priority change is published by the navigation, here directly to the cache
+        priorities.put(USERS, 0);
+        cache.navigationChanged(USERS, Arrays.asList(new NavigationEvent(USERS, NavigationEvent.Type.PRIORITY_CHANGED,
+                NodePath.root(), null, 2)));
+        after = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        assertEquals(Arrays.asList("home", "news", "dashboard", "wiki", "management"), names(after));
+    }
+
+    @Test
+    public void expiresAtVisibilityTransition() {
+        roots.get(USERS).getChild("dashboard").setVisibility(new Visibility(PublicationDate.endingOn(new Date(2000))));
+        roots.get(ORGANIZATION).getChild("management").setVisibility(
+                new Visibility(PublicationDate.startingOn(new Date(1000))));
+        List<SiteId> siteIds = Arrays.asList(CLASSIC, USERS, ORGANIZATION);
+        MergedNavigation before = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        assertEquals(Arrays.asList("home", "news", "dashboard"), names(before));
+
+        clock.time = 999;
+        assertSame(before, cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT));
+
+        // The earliest transition of the sites
+        clock.time = 1000;
+        MergedNavigation after = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        assertNotSame(before, after);
+        assertEquals(Arrays.asList("home", "news", "management", "dashboard"), names(after));
+
+        clock.time = 2001;
+        assertEquals(Arrays.asList("home", "news", "management"), names(cache.getMergedNavigation(portal, siteIds,
+                new User("john"), FINGERPRINT)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void failedSite() {
+        List<SiteId> siteIds = Arrays.asList(CLASSIC, USERS, ORGANIZATION);
+        failing = ORGANIZATION;
+        MergedNavigation merged = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+
+        // The other sites are merged, but the incomplete navigation is not cached
+        assertEquals(Arrays.asList("home", "news", "dashboard"), names(merged));
+        assertEquals(0, cache.size());
+
+        failing = null;
+        merged = cache.getMergedNavigation(portal, siteIds, new User("john"), FINGERPRINT);
+        assertEquals(Arrays.asList("home", "news", "management", "dashboard"), names(merged));
+        assertEquals(1, cache.size());
+    }
+
+    private static List<String> names(MergedNavigation merged) {
+        List<String> names = new ArrayList<String>();
+        for (MergedNavigation.Item item : merged) {
+            names.add(item.getNode().getName());
+        }
+        return names;
+    }
+
+    private Portal portal() {
+        return new TestPortal() {
+            @Override
+            protected Navigation getNavigation(SiteId siteId) {
+                if (siteId.equals(failing))
+                    throw new ApiException("Storage unavailable");
+
+                return roots.containsKey(siteId) ? navigation(siteId) : null;
+            }
+        }.create();
+    }
+
+    private Navigation navigation(final SiteId siteId) {
+        return new TestNavigation(siteId, roots.get(siteId)) {
+            @Override
+            protected int getPriority() {
+                return priorities.get(siteId);
+            }
+
+            @Override
+            protected Node getRootNode(NodeVisitor visitor) throws Exception {
+                loads.incrementAndGet();
+                return super.getRootNode(visitor);
+            }
+        }.create();
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile long time;
+
+        @Override
+        public long currentTimeMillis() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.gatein.api.navigation.NavigationEvent.Type;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NavigationEventDispatcherTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+    private static final SiteId MOBILE = new SiteId("mobile");
+
+    private QueueExecutor executor;
+    private NavigationEventDispatcher dispatcher;
+    private RecordingListener listener;
+
+    @Before
+    public void before() {
+        executor = new QueueExecutor();
+        dispatcher = new NavigationEventDispatcher(executor, 5);
+        listener = new RecordingListener();
+        dispatcher.addListener(listener);
+    }
+
+    @Test
+    public void publish() {
+        NavigationEvent added = dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("home"));
+        NavigationEvent moved = dispatcher.publish(CLASSIC, Type.NODE_MOVED, NodePath.path("home"),
+                NodePath.path("news", "home"));
+        assertEquals(1, added.getVersion());
+        assertEquals(2, moved.getVersion());
+        assertEquals(NodePath.path("home"), moved.getPreviousPath());
+        assertEquals(2, dispatcher.getVersion(CLASSIC));
+        assertEquals(0, dispatcher.getVersion(MOBILE));
+
+        // Delivered asynchronously, in a single notification
+        assertTrue(listener.notifications.isEmpty());
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(Arrays.asList(Arrays.asList(added, moved)), listener.notifications);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void publish_MoveWithoutPreviousPath() {
+        dispatcher.publish(CLASSIC, Type.NODE_MOVED, NodePath.path("home"));
+    }
+
+    @Test
+    public void publish_DuringNotification() {
+        final List<NavigationEvent> published = new ArrayList<NavigationEvent>();
+        dispatcher.addListener(new NavigationListener() {
+            @Override
+            public void navigationChanged(SiteId siteId, List<NavigationEvent> events) {
+                if (published.isEmpty()) {
+                    published.add(dispatcher.publish(CLASSIC, Type.NODE_REMOVED, NodePath.path("news")));
+                }
+            }
+        });
+        NavigationEvent added = dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("home"));
+
+        // The change published during the notification is delivered by a task scheduled once the notification is over
+        executor.runNext();
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(Arrays.asList(Arrays.asList(added), published), listener.notifications);
+    }
+
+    @Test
+    public void coalesce() {
+        NavigationEvent update1 = dispatcher.publish(CLASSIC, Type.NODE_UPDATED, NodePath.path("home"));
+        NavigationEvent priority1 = dispatcher.publish(CLASSIC, Type.PRIORITY_CHANGED, NodePath.root());
+        NavigationEvent update2 = dispatcher.publish(CLASSIC, Type.NODE_UPDATED, NodePath.path("home"));
+        NavigationEvent added = dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("news"));
+        NavigationEvent update3 = dispatcher.publish(CLASSIC, Type.NODE_UPDATED, NodePath.path("home"));
+        executor.runAll();
+
+        // update2 cannot be merged with update3 as a node was added in between
+        assertEquals(Arrays.asList(Arrays.asList(priority1, update2, added, update3)), listener.notifications);
+        assertTrue(!listener.notifications.get(0).contains(update1));
+    }
+
+    @Test
+    public void overflow() {
+        for (int i = 0; i < 8; i++) {
+            dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("node" + i));
+        }
+        executor.runAll();
+
+        assertEquals(1, listener.notifications.size());
+        assertEquals(Arrays.asList(new NavigationEvent(CLASSIC, Type.INVALIDATED, NodePath.root(), null, 8)),
+                listener.notifications.get(0));
+
+        // The queue accepts changes again once the invalidation is delivered
+        NavigationEvent added = dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("home"));
+        executor.runAll();
+        assertEquals(Arrays.asList(added), listener.notifications.get(1));
+    }
+
+    @Test
+    public void rejected() {
+        executor.rejecting = true;
+        dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("home"));
+        dispatcher.publish(CLASSIC, Type.NODE_REMOVED, NodePath.path("news"));
+        assertEquals(0, executor.tasks.size());
+
+        // The rejected changes are delivered as an invalidation with the next change
+        executor.rejecting = false;
+        dispatcher.publish(CLASSIC, Type.NODE_UPDATED, NodePath.path("home"));
+        executor.runAll();
+        assertEquals(Arrays.asList(Arrays.asList(new NavigationEvent(CLASSIC, Type.INVALIDATED, NodePath.root(), null, 3))),
+                listener.notifications);
+    }
+
+    @Test
+    public void siteListener() {
+        RecordingListener mobileListener = new RecordingListener();
+        dispatcher.addListener(MOBILE, mobileListener);
+
+        NavigationEvent classic = dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("home"));
+        NavigationEvent mobile = dispatcher.publish(MOBILE, Type.NODE_ADDED, NodePath.path("home"));
+        assertEquals(1, classic.getVersion());
+        assertEquals(1, mobile.getVersion());
+        executor.runAll();
+
+        assertEquals(2, listener.notifications.size());
+        assertEquals(Arrays.asList(Arrays.asList(mobile)), mobileListener.notifications);
+
+        dispatcher.removeListener(mobileListener);
+        dispatcher.publish(MOBILE, Type.NODE_REMOVED, NodePath.path("home"));
+        executor.runAll();
+        assertEquals(1, mobileListener.notifications.size());
+        assertEquals(3, listener.notifications.size());
+    }
+
+    @Test
+    public void listenerFailure() {
+        final RuntimeException failure = new RuntimeException();
+        dispatcher.addListener(new NavigationListener() {
+            @Override
+            public void navigationChanged(SiteId siteId, List<NavigationEvent> events) {
+                throw failure;
+            }
+        });
+        RecordingListener last = new RecordingListener();
+        dispatcher.addListener(last);
+
+        dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("home"));
+        try {
+            executor.runNext();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e == failure);
+        }
+        assertEquals(1, listener.notifications.size());
+        assertEquals(1, last.notifications.size());
+
+        dispatcher.publish(CLASSIC, Type.NODE_ADDED, NodePath.path("news"));
+        assertEquals(1, executor.tasks.size());
+    }
+
+    @Test
+    public void publish_Patch() {
+        SimpleNode from = SimpleNode.root().with("home", "news", "about");
+        from.getChild("news").with("sports");
+        SimpleNode to = from.load(Nodes.visitAll());
+        to.addChild("contact");
+        to.getChild("news").getChild("sports").moveTo(to);
+        to.getChild("about").setName("company");
+        to.getChild("home").setIconName("house");
+        to.removeChild("news");
+
+        NodePatch patch = NodePatch.diff(from, to);
+        List<NavigationEvent> events = dispatcher.publish(CLASSIC, patch);
+        assertEquals(patch.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            NodePatch.Operation operation = patch.getOperations().get(i);
+            NavigationEvent event = events.get(i);
+            assertEquals(i + 1, event.getVersion());
+            switch (operation.getType()) {
+                case ADD:
+                    assertEquals(Type.NODE_ADDED, event.getType());
+                    assertEquals(operation.getNodePath(), event.getNodePath());
+                    break;
+                case REMOVE:
+                    assertEquals(Type.NODE_REMOVED, event.getType());
+                    assertEquals(NodePath.path("news"), event.getNodePath());
+                    break;
+                case RENAME:
+                    assertEquals(Type.NODE_RENAMED, event.getType());
+                    assertEquals(NodePath.path("about"), event.getPreviousPath());
+                    assertEquals(NodePath.path("company"), event.getNodePath());
+                    break;
+                case MOVE:
+                    assertEquals(Type.NODE_MOVED, event.getType());
+                    // Moves include reorderings within the same parent
+                    assertEquals(operation.getNodePath(), event.getPreviousPath());
+                    assertEquals(NodePath.path(operation.getNodePath().getLastSegment()), event.getNodePath());
+                    break;
+                case UPDATE:
+                    assertEquals(Type.NODE_UPDATED, event.getType());
+                    assertEquals(NodePath.path("home"), event.getNodePath());
+                    break;
+            }
+        }
+    }
+
+    @Test
+    public void navigationSnapshots() {
+        SimpleNode root = SimpleNode.root().with("home", "news");
+        Navigation navigation = navigation(root);
+        NavigationSnapshots snapshots = new NavigationSnapshots(Nodes.visitAll(), null, dispatcher);
+
+        // Creating the first snapshot is not a change
+        snapshots.getSnapshot(navigation);
+        assertEquals(0, executor.tasks.size());
+
+        root.getChild("home").setIconName("house");
+        snapshots.saveNode(navigation, root.getChild("home"));
+        snapshots.removeNode(navigation, NodePath.path("news"));
+        snapshots.invalidate(CLASSIC);
+        executor.runAll();
+
+        assertEquals(Arrays.asList(Arrays.asList(
+                new NavigationEvent(CLASSIC, Type.NODE_UPDATED, NodePath.path("home"), null, 1),
+                new NavigationEvent(CLASSIC, Type.NODE_REMOVED, NodePath.path("news"), null, 2),
+                new NavigationEvent(CLASSIC, Type.INVALIDATED, NodePath.root(), null, 3))), listener.notifications);
+
+        // A rejected notification does not fail the save
+        executor.rejecting = true;
+        root.getChild("home").setIconName("home");
+        assertEquals("home", snapshots.saveNode(navigation, root.getChild("home")).getNode(NodePath.path("home"))
+                .getIconName());
+    }
+
+    @Test
+    public void navigationSnapshots_Projected() {
+        SimpleNode root = SimpleNode.root().with("home", "news");
+        Navigation navigation = navigation(root);
+        NodeVisitor visitor = Nodes.project(Nodes.visitAll(), NodeProjection.of(NodeProjection.Field.PAGE_ID));
+        NavigationSnapshots snapshots = new NavigationSnapshots(visitor, null, dispatcher);
+        snapshots.getSnapshot(navigation);
+
+        // Changes of the fields which are not in the snapshots are not seen
+        root.getChild("news").setIconName("paper");
+        snapshots.saveNode(navigation, root.getChild("news"));
+        root.getChild("home").page(new PageId("classic", "homepage"));
+        NavigationSnapshot snapshot = snapshots.saveNode(navigation, root.getChild("home"));
+        snapshots.removeNode(navigation, NodePath.path("news"));
+        executor.runAll();
+
+        assertEquals(new PageId("classic", "homepage"), snapshot.getNode(NodePath.path("home")).getPageId());
+        assertEquals(Arrays.asList(Arrays.asList(
+                new NavigationEvent(CLASSIC, Type.NODE_UPDATED, NodePath.path("home"), null, 1),
+                new NavigationEvent(CLASSIC, Type.NODE_REMOVED, NodePath.path("news"), null, 2))), listener.notifications);
+    }
+
+    private Navigation navigation(SimpleNode root) {
+        return new TestNavigation(CLASSIC, root).create();
+    }
+
+    private static class RecordingListener implements NavigationListener {
+        private final List<List<NavigationEvent>> notifications = new ArrayList<List<NavigationEvent>>();
+
+        @Override
+        public void navigationChanged(SiteId siteId, List<NavigationEvent> events) {
+            for (NavigationEvent event : events) {
+                assertEquals(siteId, event.getSiteId());
+            }
+            notifications.add(new ArrayList<NavigationEvent>(events));
+        }
+    }
+
+    private static class QueueExecutor implements Executor {
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+        private boolean rejecting;
+
+        @Override
+        public void execute(Runnable command) {
+            if (rejecting)
+                throw new RejectedExecutionException();
+
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.removeFirst().run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+}
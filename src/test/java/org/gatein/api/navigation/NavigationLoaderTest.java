@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gatein.api.ApiException;
+import org.gatein.api.Portal;
+import org.gatein.api.security.Group;
+import org.gatein.api.site.SiteId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NavigationLoaderTest {
+    private static final SiteId FAILING = new SiteId(new Group("failing"));
+    private static final SiteId MISSING = new SiteId(new Group("missing"));
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final ApiException failure = new ApiException("Storage unavailable");
+    private ExecutorService executor;
+    private Portal portal;
+
+    @Before
+    public void before() {
+        executor = NavigationLoader.newExecutor(8);
+        portal = portal();
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void getNavigations() {
+        List<SiteId> siteIds = spaces(40);
+        List<NavigationResult> results = new NavigationLoader(executor, 3).getNavigations(portal, siteIds, Nodes.visitAll());
+
+        assertEquals(siteIds.size(), results.size());
+        for (int i = 0; i < siteIds.size(); i++) {
+            NavigationResult result = results.get(i);
+            assertEquals(siteIds.get(i), result.getSiteId());
+            assertEquals(siteIds.get(i), result.getNavigation().getSiteId());
+            assertEquals(result.getSiteId().getName(), result.getRootNode().getChild(0).getName());
+        }
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void getNavigations_PartialFailures() {
+        List<SiteId> siteIds = spaces(2);
+        siteIds.add(1, FAILING);
+        siteIds.add(MISSING);
+        List<NavigationResult> results = new NavigationLoader(executor, 2).getNavigations(portal, siteIds, Nodes.visitAll());
+
+        assertFalse(results.get(0).isFailed());
+        assertTrue(results.get(1).isFailed());
+        assertSame(failure, results.get(1).getFailure());
+        assertNull(results.get(1).getNavigation());
+        assertFalse(results.get(2).isFailed());
+        assertFalse(results.get(3).isFailed());
+        assertNull(results.get(3).getNavigation());
+    }
+
+    @Test
+    public void getNavigations_Rejected() {
+        Executor rejecting = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        List<NavigationResult> results = new NavigationLoader(rejecting, 4).getNavigations(portal, spaces(5), Nodes.visitAll());
+
+        // Loaded by the calling thread
+        assertEquals(5, results.size());
+        for (NavigationResult result : results) {
+            assertFalse(result.isFailed());
+        }
+    }
+
+    private static List<SiteId> spaces(int count) {
+        List<SiteId> siteIds = new ArrayList<SiteId>();
+        for (int i = 0; i < count; i++) {
+            siteIds.add(new SiteId(new Group("group" + i)));
+        }
+        return siteIds;
+    }
+
+    private Portal portal() {
+        return new TestPortal() {
+            @Override
+            protected Navigation getNavigation(SiteId siteId) throws Exception {
+                if (siteId.equals(FAILING))
+                    throw failure;
+
+                return siteId.equals(MISSING) ? null : navigation(siteId);
+            }
+        }.create();
+    }
+
+    private Navigation navigation(SiteId siteId) {
+        return new TestNavigation(siteId, SimpleNode.root().with(siteId.getName())) {
+            @Override
+            protected Node getRootNode(NodeVisitor visitor) throws Exception {
+                int current = running.incrementAndGet();
+                try {
+                    int max;
+                    while ((max = maxRunning.get()) < current && !maxRunning.compareAndSet(max, current)) {
+                    }
+                    Thread.sleep(2);
+                    return super.getRootNode(visitor);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        }.create();
+    }
+}
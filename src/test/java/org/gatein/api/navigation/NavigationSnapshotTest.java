@@ -0,0 +1,311 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.gatein.api.common.Attributes;
+import org.gatein.api.navigation.NavigationSnapshot.SnapshotNode;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NavigationSnapshotTest {
+    private SimpleNode root;
+    private NavigationSnapshot snapshot;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news");
+        root.getChild("home").page(new PageId("classic", "homepage")).setDisplayName("Home");
+        root.getChild("news").with("sports", "weather");
+        root.getChild("news").getChild("weather").setVisibility(false);
+
+        snapshot = NavigationSnapshot.of(new SiteId("classic"), root);
+    }
+
+    @Test
+    public void copy() {
+        assertEquals(1, snapshot.getVersion());
+        assertEquals(new SiteId("classic"), snapshot.getSiteId());
+
+        Node home = snapshot.getNode(NodePath.path("home"));
+        assertEquals("Home", home.getDisplayName());
+        assertEquals(new PageId("classic", "homepage"), home.getPageId());
+        assertEquals(NodePath.path("home"), home.getNodePath());
+        assertSame(snapshot.getRootNode(), home.getParent());
+
+        Node news = snapshot.getNode(NodePath.path("news"));
+        assertEquals(2, news.getChildCount());
+        assertEquals("weather", news.getChild(1).getName());
+        assertEquals(1, news.indexOf("weather"));
+        assertSame(news.getChild("sports"), news.getNode("sports"));
+        assertNull(snapshot.getNode(NodePath.path("news", "missing")));
+
+        // Changes to the source tree are not visible
+        root.getChild("home").setName("homepage");
+        assertEquals("home", home.getName());
+    }
+
+    @Test
+    public void wideNode() {
+        SimpleNode wide = SimpleNode.root();
+        for (int i = 0; i < 100; i++) {
+            wide.with("n" + i);
+        }
+        NavigationSnapshot wideSnapshot = NavigationSnapshot.of(new SiteId("classic"), wide);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, wideSnapshot.getRootNode().indexOf("n" + i));
+        }
+        assertNull(wideSnapshot.getNode(NodePath.path("n100")));
+        assertEquals(98, wideSnapshot.withoutNode(NodePath.path("n0")).getRootNode().indexOf("n99"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnly() {
+        snapshot.getRootNode().addChild("foo");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnlyAttributes() {
+        snapshot.getRootNode().getAttributes().put("foo", "bar");
+    }
+
+    @Test
+    public void readOnlyAttributes_AllMutators() {
+        Attributes attributes = new Attributes();
+        attributes.put("foo", "bar");
+        assertReadOnly(new ReadOnlyNode.ReadOnlyAttributes(attributes));
+        assertReadOnly(ReadOnlyNode.ReadOnlyAttributes.EMPTY);
+        assertTrue(ReadOnlyNode.ReadOnlyAttributes.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void projection() {
+        NodeProjection projection = NodeProjection.of(NodeProjection.Field.PAGE_ID);
+        NavigationSnapshot projected = NavigationSnapshot.of(new SiteId("classic"), root, projection);
+        assertEquals(projection, projected.getProjection());
+
+        Node home = projected.getNode(NodePath.path("home"));
+        assertEquals(new PageId("classic", "homepage"), home.getPageId());
+        try {
+            home.getDisplayName();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        try {
+            home.isVisible();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+
+        // Changes to fields outside of the projection are ignored
+        root.getChild("home").setIconName("house");
+        assertSame(projected, projected.withNode(root.getChild("home")));
+    }
+
+    @Test
+    public void projection_FromVisitor() {
+        NodeVisitor visitor = Nodes.project(Nodes.visitAll(), NodeProjection.of(NodeProjection.Field.VISIBILITY));
+        assertEquals(NodeProjection.of(NodeProjection.Field.VISIBILITY), NodeProjection.of(visitor));
+        assertEquals(NodeProjection.all(), NodeProjection.of(Nodes.visitAll()));
+        assertEquals(NodeProjection.all(), NodeProjection.of(Nodes.project(visitor, NodeProjection.all())));
+    }
+
+    @Test
+    public void projection_FromCombinedVisitors() {
+        NodeProjection visibility = NodeProjection.of(NodeProjection.Field.VISIBILITY);
+        NodeVisitor visitor = Nodes.project(Nodes.visitAll(), visibility);
+
+        // Combinations declare the union of the projections of the visitors declaring one
+        assertEquals(visibility, NodeProjection.of(Nodes.and(Nodes.visitAll(), visitor)));
+        assertEquals(visibility, NodeProjection.of(Nodes.or(visitor, Nodes.visitNone())));
+        assertEquals(visibility, NodeProjection.of(Nodes.not(visitor)));
+        assertEquals(visibility, NodeProjection.of(Nodes.visitNodes(NodePath.path("news"), visitor)));
+        assertEquals(visibility, NodeProjection.of(Nodes.visitNodes(Arrays.asList(NodePath.path("news")), Nodes.and(
+                Nodes.visible(), visitor))));
+        assertEquals(visibility.with(NodeProjection.Field.PAGE_ID), NodeProjection.of(Nodes.and(visitor, Nodes.project(
+                Nodes.visitAll(), NodeProjection.of(NodeProjection.Field.PAGE_ID)))));
+        assertEquals(NodeProjection.all(), NodeProjection.of(Nodes.and(Nodes.visitAll(), Nodes.visible())));
+    }
+
+    @Test
+    public void withNode() {
+        Node news = root.getChild("news");
+        news.getChild("sports").setIconName("ball");
+
+        NavigationSnapshot updated = snapshot.withNode(news);
+
+        assertEquals(2, updated.getVersion());
+        assertEquals("ball", updated.getNode(NodePath.path("news", "sports")).getIconName());
+        assertNull(snapshot.getNode(NodePath.path("news", "sports")).getIconName());
+
+        // Only the changed spine is copied
+        assertEquals(2, version(updated, NodePath.root()));
+        assertEquals(2, version(updated, NodePath.path("news")));
+        assertEquals(2, version(updated, NodePath.path("news", "sports")));
+        assertEquals(1, version(updated, NodePath.path("news", "weather")));
+        assertEquals(1, version(updated, NodePath.path("home")));
+    }
+
+    @Test
+    public void contentHash() {
+        assertEquals(Nodes.contentHash(root), snapshot.getContentHash());
+        assertEquals(Nodes.contentHash(root), Nodes.contentHash(snapshot.getRootNode()));
+        assertEquals(Nodes.contentHash(root.getChild("news")),
+                Nodes.contentHash(snapshot.getNode(NodePath.path("news"))));
+        assertEquals(16, snapshot.getETag().length());
+    }
+
+    @Test
+    public void contentHash_WithNode() {
+        long home = Nodes.contentHash(snapshot.getNode(NodePath.path("home")));
+        root.getChild("news").getChild("sports").setIconName("ball");
+
+        NavigationSnapshot updated = snapshot.withNode(root.getChild("news"));
+
+        assertEquals(Nodes.contentHash(root), updated.getContentHash());
+        assertFalse(snapshot.getETag().equals(updated.getETag()));
+        assertEquals(home, Nodes.contentHash(updated.getNode(NodePath.path("home"))));
+
+        root.getChild("news").getChild("sports").setIconName(null);
+        assertEquals(snapshot.getETag(), updated.withNode(root.getChild("news")).getETag());
+    }
+
+    @Test
+    public void withNode_Unchanged() {
+        assertSame(snapshot, snapshot.withNode(root));
+    }
+
+    @Test
+    public void withNode_AddedAndRemovedChildren() {
+        root.getChild("news").removeChild("weather");
+        root.getChild("news").addChild("business");
+
+        NavigationSnapshot updated = snapshot.withNode(root);
+        Node news = updated.getNode(NodePath.path("news"));
+
+        assertEquals(2, news.getChildCount());
+        assertFalse(news.hasChild("weather"));
+        assertTrue(news.hasChild("business"));
+        assertEquals(1, version(updated, NodePath.path("home")));
+    }
+
+    @Test
+    public void withNode_InsertedChild() {
+        Node first = root.getChild("news").addChild(0, "business");
+        Node middle = root.getChild("news").addChild(2, "economy");
+
+        NavigationSnapshot updated = snapshot.withNode(first).withNode(middle);
+        Node news = updated.getNode(NodePath.path("news"));
+
+        assertEquals(Arrays.asList("business", "sports", "economy", "weather"), names(news));
+    }
+
+    @Test
+    public void withoutNode() {
+        NavigationSnapshot updated = snapshot.withoutNode(NodePath.path("news", "sports"));
+
+        assertEquals(2, updated.getVersion());
+        assertNull(updated.getNode(NodePath.path("news", "sports")));
+        assertEquals(1, updated.getNode(NodePath.path("news")).getChildCount());
+        assertSame(updated, updated.withoutNode(NodePath.path("news", "sports")));
+    }
+
+    @Test
+    public void filter() {
+        FilteredNode news = snapshot.getNode(NodePath.path("news")).filter().showVisible();
+
+        assertEquals(1, news.getChildCount());
+        assertEquals("sports", news.getChild(0).getName());
+        assertEquals(-1, news.indexOf("weather"));
+
+        news.showAll();
+        assertEquals(2, news.getChildCount());
+    }
+
+    private static List<String> names(Node node) {
+        List<String> names = new ArrayList<String>();
+        for (Node child : node) {
+            names.add(child.getName());
+        }
+        return names;
+    }
+
+    private static long version(NavigationSnapshot snapshot, NodePath path) {
+        return ((SnapshotNode) snapshot.getNode(path)).getVersion();
+    }
+
+    private static void assertReadOnly(Attributes attributes) {
+        Map<String, String> copy = new HashMap<String, String>(attributes);
+        Map<String, String> other = Collections.singletonMap("foo", "baz");
+        int failures = 0;
+        for (int i = 0; i < 17; i++) {
+            try {
+                switch (i) {
+                    case 0: attributes.put("foo", "baz"); break;
+                    case 1: attributes.putAll(other); break;
+                    case 2: attributes.remove("foo"); break;
+                    case 3: attributes.clear(); break;
+                    case 4: attributes.putIfAbsent("baz", "baz"); break;
+                    case 5: attributes.remove("foo", "bar"); break;
+                    case 6: attributes.replace("foo", "bar", "baz"); break;
+                    case 7: attributes.replace("foo", "baz"); break;
+                    case 8: attributes.computeIfAbsent("baz", null); break;
+                    case 9: attributes.computeIfPresent("foo", null); break;
+                    case 10: attributes.compute("foo", null); break;
+                    case 11: attributes.merge("foo", "baz", null); break;
+                    case 12: attributes.replaceAll(null); break;
+                    case 13: attributes.keySet().clear(); break;
+                    case 14: attributes.values().clear(); break;
+                    case 15: attributes.entrySet().clear(); break;
+                    default:
+                        Iterator<Map.Entry<String, String>> iterator = attributes.entrySet().iterator();
+                        if (iterator.hasNext()) {
+                            iterator.next().setValue("baz");
+                        } else {
+                            failures++;
+                        }
+                }
+            } catch (UnsupportedOperationException e) {
+                failures++;
+            }
+        }
+        assertEquals(17, failures);
+        assertEquals(copy, attributes);
+    }
+}
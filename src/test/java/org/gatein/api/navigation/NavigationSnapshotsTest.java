@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NavigationSnapshotsTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+
+    private SimpleNode storage;
+    private Runnable onApplyPatch;
+    private Navigation navigation;
+    private NavigationSnapshots snapshots;
+
+    @Before
+    public void before() {
+        storage = SimpleNode.root().with("home", "news");
+        storage.getChild("news").with("sports", "weather");
+
+        navigation = new TestNavigation(CLASSIC, storage) {
+            @Override
+            protected void applyPatch(NodePatch patch) {
+                if (onApplyPatch != null) {
+                    Runnable runnable = onApplyPatch;
+                    onApplyPatch = null;
+                    runnable.run();
+                }
+                super.applyPatch(patch);
+            }
+        }.create();
+        snapshots = new NavigationSnapshots();
+    }
+
+    @Test
+    public void saveNode_IndependentSubtrees() {
+        SimpleNode first = checkout();
+        SimpleNode second = checkout();
+
+        first.getChild("home").setIconName("house");
+        snapshots.saveNode(navigation, first.getChild("home"));
+
+        // The root changed, but not the subtree saved by the second editor
+        second.getChild("news").addChild("economy");
+        NavigationSnapshot snapshot = snapshots.saveNode(navigation, second.getChild("news"));
+
+        assertEquals("house", storage.getChild("home").getIconName());
+        assertTrue(storage.getChild("news").hasChild("economy"));
+        assertEquals("house", snapshot.getNode(NodePath.path("home")).getIconName());
+        assertEquals(3, snapshot.getNode(NodePath.path("news")).getChildCount());
+        assertEquals(3, snapshot.getVersion());
+    }
+
+    @Test
+    public void saveNode_Conflict() {
+        SimpleNode first = checkout();
+        SimpleNode second = checkout();
+
+        first.getChild("news").getChild("sports").setIconName("ball");
+        snapshots.saveNode(navigation, first.getChild("news"));
+
+        second.getChild("news").setIconName("paper");
+        try {
+            snapshots.saveNode(navigation, second.getChild("news"));
+            fail();
+        } catch (NodeConflictException e) {
+            // Only the node changed concurrently is reported
+            assertEquals(Arrays.asList(NodePath.path("news", "sports")), e.getNodePaths());
+        }
+        assertEquals(null, storage.getChild("news").getIconName());
+
+        // Saving the refreshed node succeeds
+        SimpleNode refreshed = checkout();
+        refreshed.getChild("news").setIconName("paper");
+        snapshots.saveNode(navigation, refreshed.getChild("news"));
+        assertEquals("paper", storage.getChild("news").getIconName());
+    }
+
+    @Test
+    public void saveNode_RemovedConcurrently() {
+        SimpleNode first = checkout();
+        SimpleNode second = checkout();
+
+        first.getChild("news").removeChild("weather");
+        snapshots.saveNode(navigation, first.getChild("news"));
+
+        second.getChild("news").getChild("weather").setIconName("sun");
+        try {
+            snapshots.saveNode(navigation, second.getChild("news").getChild("weather"));
+            fail();
+        } catch (NodeConflictException e) {
+            assertEquals(Arrays.asList(NodePath.path("news", "weather")), e.getNodePaths());
+        }
+    }
+
+    @Test
+    public void saveNode_Overlapping() {
+        final SimpleNode first = checkout();
+        final SimpleNode second = checkout();
+        first.getChild("news").setIconName("paper");
+        second.getChild("news").getChild("sports").setIconName("ball");
+
+        // Saving a descendant while its ancestor is being saved fails, even though no change was published yet
+        onApplyPatch = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    snapshots.saveNode(navigation, second.getChild("news").getChild("sports"));
+                    fail();
+                } catch (NodeConflictException e) {
+                    assertEquals(Collections.singletonList(NodePath.path("news")), e.getNodePaths());
+                }
+
+                // Independent subtrees can still be saved
+                second.getChild("home").setIconName("house");
+                snapshots.saveNode(navigation, second.getChild("home"));
+            }
+        };
+        snapshots.saveNode(navigation, first.getChild("news"));
+
+        assertEquals("paper", storage.getChild("news").getIconName());
+        assertEquals("house", storage.getChild("home").getIconName());
+        assertEquals(null, storage.getChild("news").getChild("sports").getIconName());
+    }
+
+    @Test
+    public void saveNode_Unversioned() {
+        final SimpleNode unversioned = storage.load(Nodes.visitAll());
+        SimpleNode first = checkout();
+        first.getChild("news").setIconName("paper");
+
+        // Unversioned saves do not fail while a versioned save is in progress
+        onApplyPatch = new Runnable() {
+            @Override
+            public void run() {
+                unversioned.getChild("home").setIconName("house");
+                NavigationSnapshot snapshot = snapshots.saveNode(navigation, unversioned.getChild("home"));
+                assertEquals("house", snapshot.getNode(NodePath.path("home")).getIconName());
+            }
+        };
+        snapshots.saveNode(navigation, first.getChild("news"));
+        assertEquals("paper", storage.getChild("news").getIconName());
+    }
+
+    @Test
+    public void saveNode_Renamed() {
+        SimpleNode first = checkout();
+        SimpleNode second = checkout();
+
+        first.getChild("news").setName("articles");
+        first.getChild("articles").getChild("sports").setIconName("ball");
+        NavigationSnapshot snapshot = snapshots.saveNode(navigation, first.getChild("articles"));
+
+        assertEquals(Arrays.asList("home", "articles"), Arrays.asList(storage.getChild("home").getName(),
+                storage.getChild(1).getName()));
+        assertEquals("ball", storage.getChild("articles").getChild("sports").getIconName());
+        assertEquals(null, snapshot.getNode(NodePath.path("news")));
+        assertEquals("ball", snapshot.getNode(NodePath.path("articles", "sports")).getIconName());
+
+        // The renamed subtree was changed since the second editor loaded it
+        second.getChild("news").setName("stories");
+        try {
+            snapshots.saveNode(navigation, second.getChild("stories"));
+            fail();
+        } catch (NodeConflictException e) {
+            assertTrue(e.getNodePaths().contains(NodePath.path("stories", "sports")));
+        }
+        assertTrue(storage.hasChild("articles"));
+    }
+
+    @Test
+    public void saveNode_Projected() {
+        snapshots = new NavigationSnapshots(Nodes.project(Nodes.visitAll(), NodeProjection.of(NodeProjection.Field.PAGE_ID)));
+        SimpleNode first = checkout();
+
+        first.getChild("home").page(new PageId("classic", "homepage")).setIconName("house");
+        NavigationSnapshot snapshot = snapshots.saveNode(navigation, first.getChild("home"));
+
+        assertEquals(new PageId("classic", "homepage"), storage.getChild("home").getPageId());
+        assertEquals(new PageId("classic", "homepage"), snapshot.getNode(NodePath.path("home")).getPageId());
+    }
+
+    @Test
+    public void invalidate() {
+        SimpleNode stale = checkout();
+        SimpleNode first = checkout();
+        first.getChild("home").setIconName("house");
+        snapshots.saveNode(navigation, first.getChild("home"));
+
+        snapshots.invalidate(CLASSIC);
+
+        // The recreated snapshot does not reuse the versions the stale nodes were loaded with
+        stale.getChild("home").setIconName("home");
+        try {
+            snapshots.saveNode(navigation, stale.getChild("home"));
+            fail();
+        } catch (NodeConflictException e) {
+            assertEquals(Arrays.asList(NodePath.path("home")), e.getNodePaths());
+        }
+        assertEquals(3, snapshots.getSnapshot(navigation).getVersion());
+    }
+
+    /**
+     * Loads a copy of the stored tree with the versions of the current snapshot, like a navigation backed by the snapshots.
+     */
+    private SimpleNode checkout() {
+        NavigationSnapshot snapshot = snapshots.getSnapshot(navigation);
+        SimpleNode copy = storage.load(Nodes.visitAll());
+        stamp(copy, snapshot.getRootNode());
+        return copy;
+    }
+
+    private static void stamp(SimpleNode node, Node source) {
+        node.version(source.getVersion());
+        for (Node child : node) {
+            stamp((SimpleNode) child, source.getChild(child.getName()));
+        }
+    }
+}
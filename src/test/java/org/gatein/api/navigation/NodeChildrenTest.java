@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NodeChildrenTest {
+    private static final Comparator<Node> BY_NAME = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            return a.getName().compareTo(b.getName());
+        }
+    };
+
+    @Test
+    public void addAndGet() {
+        NodeChildren<SimpleNode> children = children("a", "b", "c");
+        children.add(1, node("x"));
+
+        assertEquals(4, children.size());
+        assertEquals("x", children.get(1).getName());
+        assertEquals(2, children.indexOf("b"));
+        assertSame(children.get(3), children.get("c"));
+        assertNull(children.get("missing"));
+        assertEquals(-1, children.indexOf("missing"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_Duplicate() {
+        children("a", "b").add(node("a"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void add_OutOfBounds() {
+        children("a", "b").add(3, node("c"));
+    }
+
+    @Test
+    public void removeMoveRename_Wide() {
+        NodeChildren<SimpleNode> children = new NodeChildren<SimpleNode>();
+        for (int i = 0; i < 100; i++) {
+            children.add(node("n" + i));
+        }
+
+        assertEquals("n10", children.remove(10).getName());
+        assertEquals(10, children.indexOf("n11"));
+        assertFalse(children.contains("n10"));
+
+        children.move(0, 98);
+        assertEquals(98, children.indexOf("n0"));
+        assertEquals(0, children.indexOf("n1"));
+
+        children.move(98, 0);
+        assertEquals(0, children.indexOf("n0"));
+        assertEquals(1, children.indexOf("n1"));
+
+        assertTrue(children.rename("n50", "renamed"));
+        assertEquals(49, children.indexOf("renamed"));
+        assertFalse(children.contains("n50"));
+        assertFalse(children.rename("n50", "other"));
+    }
+
+    @Test
+    public void sort() {
+        NodeChildren<SimpleNode> children = new NodeChildren<SimpleNode>();
+        for (int i = 20; i > 0; i--) {
+            children.add(node(String.format("n%02d", i)));
+        }
+        children.sort(BY_NAME);
+
+        for (int i = 0; i < 20; i++) {
+            String name = String.format("n%02d", i + 1);
+            assertEquals(name, children.get(i).getName());
+            assertEquals(i, children.indexOf(name));
+        }
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(42);
+        NodeChildren<SimpleNode> children = new NodeChildren<SimpleNode>();
+        List<SimpleNode> expected = new ArrayList<SimpleNode>();
+
+        for (int i = 0; i < 5000; i++) {
+            int op = random.nextInt(10);
+            if (op < 5 || expected.isEmpty()) {
+                SimpleNode node = node("n" + random.nextInt(300));
+                if (!children.contains(node.getName())) {
+                    int index = random.nextInt(expected.size() + 1);
+                    children.add(index, node);
+                    expected.add(index, node);
+                }
+            } else if (op < 7) {
+                int index = random.nextInt(expected.size());
+                assertSame(expected.remove(index), children.remove(index));
+            } else if (op < 9) {
+                int from = random.nextInt(expected.size());
+                int to = random.nextInt(expected.size());
+                children.move(from, to);
+                expected.add(to, expected.remove(from));
+            } else if (random.nextBoolean()) {
+                children.sort(BY_NAME);
+                Collections.sort(expected, BY_NAME);
+            } else {
+                SimpleNode node = expected.get(random.nextInt(expected.size()));
+                String newName = "r" + i;
+                children.rename(node.getName(), newName);
+                node.setName(newName);
+            }
+
+            assertEquals(expected, children.asList());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(j, children.indexOf(expected.get(j).getName()));
+            }
+        }
+    }
+
+    private static NodeChildren<SimpleNode> children(String... names) {
+        NodeChildren<SimpleNode> children = new NodeChildren<SimpleNode>();
+        for (String name : names) {
+            children.add(node(name));
+        }
+        return children;
+    }
+
+    private static SimpleNode node(String name) {
+        return SimpleNode.root().with(name).getChild(name);
+    }
+}
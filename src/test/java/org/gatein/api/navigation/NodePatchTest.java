@@ -0,0 +1,302 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import org.gatein.api.EntityNotFoundException;
+import org.gatein.api.navigation.NodePatch.Operation;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NodePatchTest {
+    private SimpleNode from;
+    private SimpleNode to;
+
+    @Before
+    public void before() {
+        from = SimpleNode.root().with("home", "news", "about");
+        from.getChild("home").page(new PageId("classic", "homepage")).setDisplayName("Home");
+        from.getChild("news").with("sports", "weather", "business");
+        from.getChild("news").getChild("sports").with("football", "tennis");
+        from.getChild("about").with("contact");
+
+        to = from.load(Nodes.visitAll());
+    }
+
+    @Test
+    public void diff_Unchanged() {
+        assertTrue(NodePatch.diff(from, to).isEmpty());
+    }
+
+    @Test
+    public void diff_Update() {
+        to.getChild("news").getChild("sports").setIconName("ball");
+        to.getChild("home").getAttributes().put("key", "value");
+
+        assertPatch(Operation.update(NodePath.path("home"), EnumSet.of(NodeProjection.Field.ATTRIBUTES), to.getChild("home")),
+                Operation.update(NodePath.path("news", "sports"), EnumSet.of(NodeProjection.Field.ICON_NAME), to
+                        .getChild("news").getChild("sports")));
+    }
+
+    @Test
+    public void diff_AddAndRemove() {
+        to.getChild("news").removeChild("weather");
+        to.getChild("news").addChild(1, "local").addChild("city");
+
+        assertPatch(Operation.add(NodePath.path("news", "local"), 1, to.getChild("news").getChild("local")),
+                Operation.add(NodePath.path("news", "local", "city"), 0, to.getNode("news", "local", "city")),
+                Operation.remove(NodePath.path("news", "weather")));
+    }
+
+    @Test
+    public void diff_Rename() {
+        to.getChild("news").getChild("sports").setName("sport");
+
+        assertPatch(Operation.rename(NodePath.path("news", "sports"), "sport"));
+    }
+
+    @Test
+    public void diff_Move() {
+        to.getChild("news").getChild("sports").moveTo(0, to.getChild("about"));
+
+        assertPatch(Operation.move(NodePath.path("news", "sports"), NodePath.path("about"), 0));
+    }
+
+    @Test
+    public void diff_MoveAndRename() {
+        to.getChild("news").getChild("sports").moveTo(1, to.getChild("about"));
+        to.getChild("about").getChild("sports").setName("sport");
+
+        assertPatch(Operation.move(NodePath.path("news", "sports"), NodePath.path("about"), 1),
+                Operation.rename(NodePath.path("about", "sports"), "sport"));
+    }
+
+    @Test
+    public void diff_RenameLeaf() {
+        to.getChild("news").getChild("weather").setName("forecast");
+        to.getChild("about").addChild("help");
+        to.getChild("news").getChild("business").moveTo(to.getChild("about"));
+
+        assertPatch(Operation.rename(NodePath.path("news", "weather"), "forecast"),
+                Operation.add(NodePath.path("about", "help"), 1, to.getNode("about", "help")),
+                Operation.move(NodePath.path("news", "business"), NodePath.path("about"), 2));
+    }
+
+    @Test
+    public void diff_Reorder() {
+        to.getChild("news").getChild("sports").moveTo(2);
+
+        assertPatch(Operation.move(NodePath.path("news", "sports"), NodePath.path("news"), 2));
+
+        to.getChild("news").getChild("sports").moveTo(0);
+        to.getChild("news").getChild("business").moveTo(0);
+
+        assertPatch(Operation.move(NodePath.path("news", "weather"), NodePath.path("news"), 2));
+    }
+
+    @Test
+    public void diff_ChildrenNotLoaded() {
+        SimpleNode partial = to.load(Nodes.visitNodes(1));
+        partial.getChild("home").setIconName("house");
+
+        NodePatch patch = NodePatch.diff(from, partial);
+
+        assertEquals(1, patch.size());
+        assertEquals(Operation.Type.UPDATE, patch.getOperations().get(0).getType());
+    }
+
+    @Test
+    public void diff_Subtree() {
+        to.getChild("news").getChild("sports").addChild("golf");
+
+        NodePatch patch = NodePatch.diff(from.getChild("news"), to.getChild("news"));
+
+        assertEquals(NodePath.path("news"), patch.getNodePath());
+        assertEquals(Operation.add(NodePath.path("sports", "golf"), 2, to.getNode("news", "sports", "golf")), patch
+                .getOperations().get(0));
+    }
+
+    @Test
+    public void applyTo() {
+        to.getChild("news").getChild("sports").setIconName("ball");
+        to.getChild("news").getChild("sports").moveTo(0, to.getChild("about"));
+        to.getChild("about").getChild("contact").setName("address");
+        to.getChild("news").addChild(0, "local").setDisplayName("Local");
+        to.removeChild("home");
+
+        NodePatch.diff(from, to).applyTo(from);
+
+        assertEquals(Nodes.contentHash(to), Nodes.contentHash(from));
+        assertTrue(NodePatch.diff(from, to).isEmpty());
+    }
+
+    @Test
+    public void applyTo_Random() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            SimpleNode source = randomTree(random);
+            SimpleNode target = source.load(Nodes.visitAll());
+            for (int j = random.nextInt(10); j >= 0; j--) {
+                mutate(random, target);
+            }
+
+            NodePatch patch = NodePatch.diff(source, target);
+            patch.applyTo(source);
+
+            assertEquals(patch.toString(), Nodes.contentHash(target), Nodes.contentHash(source));
+        }
+    }
+
+    @Test
+    public void diff_Snapshots() {
+        Random random = new Random(7);
+        SiteId siteId = new SiteId("classic");
+        for (int i = 0; i < 200; i++) {
+            SimpleNode source = randomTree(random);
+            SimpleNode target = source.load(Nodes.visitAll());
+            for (int j = random.nextInt(10); j >= 0; j--) {
+                mutate(random, target);
+            }
+
+            // Unchanged subtrees of snapshots are skipped with their cached hashes, which gives the same patch
+            NavigationSnapshot snapshot = NavigationSnapshot.of(siteId, source);
+            assertEquals(NodePatch.diff(source, target), NodePatch.diff(snapshot.getRootNode(), NavigationSnapshot.of(
+                    siteId, target).getRootNode()));
+            assertEquals(NodePatch.diff(source, target), NodePatch.diff(snapshot.getRootNode(), target));
+        }
+    }
+
+    @Test
+    public void diff_Projected() {
+        SiteId siteId = new SiteId("classic");
+        NodeProjection projection = NodeProjection.of(NodeProjection.Field.PAGE_ID);
+        to.getChild("home").page(new PageId("classic", "welcome")).setDisplayName("Welcome");
+        to.getChild("news").getChild("sports").setIconName("ball");
+        Node team = to.getChild("about").addChild("team");
+        team.setPageId(new PageId("classic", "team"));
+        team.setIconName("people");
+
+        // Only the page ids are read from the snapshots, changes of the other fields are not seen
+        NodePatch patch = NodePatch.diff(NavigationSnapshot.of(siteId, from, projection).getRootNode(),
+                NavigationSnapshot.of(siteId, to, projection).getRootNode());
+        assertEquals(2, patch.size());
+        Operation update = patch.getOperations().get(0);
+        assertEquals(EnumSet.of(NodeProjection.Field.PAGE_ID), update.getFields());
+        assertEquals(new PageId("classic", "welcome"), update.getPageId());
+        Operation add = patch.getOperations().get(1);
+        assertEquals(Operation.Type.ADD, add.getType());
+        assertEquals(EnumSet.of(NodeProjection.Field.PAGE_ID), add.getFields());
+        assertEquals(null, add.getIconName());
+
+        // A projected snapshot compared with a loaded tree only compares the fields of the projection
+        assertEquals(patch, NodePatch.diff(NavigationSnapshot.of(siteId, from, projection).getRootNode(), to));
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void applyTo_NotFound() {
+        to.getChild("news").getChild("sports").setIconName("ball");
+        NodePatch patch = NodePatch.diff(from, to);
+
+        from.getChild("news").removeChild("sports");
+        patch.applyTo(from);
+    }
+
+    private void assertPatch(Operation... operations) {
+        NodePatch patch = NodePatch.diff(from, to);
+        assertEquals(new NodePatch(NodePath.root(), Arrays.asList(operations)), patch);
+
+        patch.applyTo(from);
+        assertEquals(Nodes.contentHash(to), Nodes.contentHash(from));
+        to = from.load(Nodes.visitAll());
+        assertFalse(patch.isEmpty());
+    }
+
+    private static SimpleNode randomTree(Random random) {
+        SimpleNode root = SimpleNode.root();
+        List<SimpleNode> nodes = new ArrayList<SimpleNode>();
+        nodes.add(root);
+        for (int i = random.nextInt(30); i >= 0; i--) {
+            SimpleNode parent = nodes.get(random.nextInt(nodes.size()));
+            String name = "n" + random.nextInt(8);
+            if (!parent.hasChild(name)) {
+                SimpleNode child = (SimpleNode) parent.addChild(name);
+                child.setIconName(random.nextBoolean() ? null : "i" + random.nextInt(3));
+                nodes.add(child);
+            }
+        }
+        return root;
+    }
+
+    private static void mutate(Random random, SimpleNode root) {
+        List<Node> nodes = new ArrayList<Node>();
+        for (Node node : Nodes.preOrder(root, Nodes.visitAll())) {
+            nodes.add(node);
+        }
+        Node node = nodes.get(random.nextInt(nodes.size()));
+        Node other = nodes.get(random.nextInt(nodes.size()));
+        String name = "n" + random.nextInt(8);
+
+        switch (random.nextInt(6)) {
+            case 0:
+                if (!node.hasChild(name)) {
+                    node.addChild(random.nextInt(node.getChildCount() + 1), name);
+                }
+                break;
+            case 1:
+                if (!node.isRoot()) {
+                    node.getParent().removeChild(node.getName());
+                }
+                break;
+            case 2:
+                if (!node.isRoot() && !node.getParent().hasChild(name)) {
+                    node.setName(name);
+                }
+                break;
+            case 3:
+                if (!node.isRoot() && !other.getNodePath().equals(node.getNodePath())
+                        && !node.getNodePath().isParent(other.getNodePath()) && !other.hasChild(node.getName())) {
+                    node.moveTo(random.nextInt(other.getChildCount() + 1), other);
+                }
+                break;
+            case 4:
+                if (!node.isRoot()) {
+                    node.moveTo(random.nextInt(node.getParent().getChildCount()));
+                }
+                break;
+            default:
+                node.setIconName("i" + random.nextInt(3));
+                break;
+        }
+    }
+}
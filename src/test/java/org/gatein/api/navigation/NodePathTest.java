@@ -24,9 +24,18 @@ package org.gatein.api.navigation;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.gatein.api.internal.StringSplitter;
 import org.junit.Test;
 
 public class NodePathTest {
@@ -38,6 +47,34 @@ public class NodePathTest {
         assertArrayEquals(new String[] { "one", "two" }, NodePath.fromString("/one/two").asArray());
     }
 
+    @Test
+    public void fromString_TrimAndIgnoreEmpty() {
+        assertArrayEquals(new String[] {}, NodePath.fromString("").asArray());
+        assertArrayEquals(new String[] {}, NodePath.fromString("// / ").asArray());
+        assertArrayEquals(new String[] { "one" }, NodePath.fromString("one").asArray());
+        assertArrayEquals(new String[] { "one", "two" }, NodePath.fromString("one//two/").asArray());
+        assertArrayEquals(new String[] { "one", "t w o" }, NodePath.fromString(" / one /\tt w o\n/").asArray());
+    }
+
+    @Test
+    public void fromString_SameAsSplitter() {
+        String[] paths = { "/", "a", "/a/b/c", "a/ /b", "\t/a\t/ b /", "///x//", " " };
+        for (String path : paths) {
+            assertArrayEquals(path, StringSplitter.splitter("/").trim().ignoreEmptyStrings().split(path),
+                    NodePath.fromString(path).asArray());
+        }
+    }
+
+    @Test
+    public void fromString_SharesSegments() {
+        assertSame(NodePath.fromString("/home/news").getSegment(0), NodePath.fromString("/home/sports").getSegment(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromString_Null() {
+        NodePath.fromString(null);
+    }
+
     @Test
     public void isParent() {
         assertTrue(NodePath.root().isParent(NodePath.path("one", "two")));
@@ -68,4 +105,83 @@ public class NodePathTest {
         assertEquals("/one/two", NodePath.path("one", "two").toString());
     }
 
+    @Test
+    public void toString_Cached() {
+        NodePath path = NodePath.path("one", "two");
+        assertSame(path.toString(), path.toString());
+        assertEquals("/one", path.parent().toString());
+    }
+
+    @Test
+    public void append() {
+        NodePath parent = NodePath.path("one");
+        NodePath child = parent.append("two");
+
+        assertArrayEquals(new String[] { "one", "two" }, child.asArray());
+        assertSame(parent, child.parent());
+        assertArrayEquals(new String[] { "one", "two", "three" }, parent.append("two", "three").asArray());
+        assertArrayEquals(new String[] { "one", "two", "three" }, parent.append(NodePath.path("two", "three")).asArray());
+        assertSame(parent, parent.append(NodePath.root()));
+    }
+
+    @Test
+    public void equalsAndHashCode() {
+        NodePath path = NodePath.path("one", "two");
+        NodePath other = NodePath.root().append("one").append("two");
+
+        assertNotSame(path, other);
+        assertEquals(path, other);
+        assertEquals(path.hashCode(), other.hashCode());
+        assertEquals(Arrays.asList("one", "two").hashCode(), path.hashCode());
+        assertEquals(NodePath.path("one", "two", "three").parent(), path);
+
+        assertFalse(path.equals(NodePath.path("one", "three")));
+        assertFalse(path.equals(NodePath.path("one")));
+        assertFalse(path.equals(NodePath.path("two", "one")));
+    }
+
+    @Test
+    public void compareTo() {
+        assertEquals(0, NodePath.path("one", "two").compareTo(NodePath.path("one", "two")));
+        assertTrue(NodePath.root().compareTo(NodePath.path("one")) < 0);
+        assertTrue(NodePath.path("one").compareTo(NodePath.path("one", "two")) < 0);
+        assertTrue(NodePath.path("one", "two").compareTo(NodePath.path("one")) > 0);
+        assertTrue(NodePath.path("a", "z").compareTo(NodePath.path("b")) < 0);
+    }
+
+    @Test
+    public void segments() {
+        NodePath path = NodePath.path("one", "two", "three");
+
+        assertEquals("one", path.getSegment(0));
+        assertEquals("three", path.getSegment(2));
+        assertEquals("three", path.getLastSegment());
+        assertNull(NodePath.root().getLastSegment());
+        assertEquals(Arrays.asList("one", "two", "three"), path.asList());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getSegment_OutOfBounds() {
+        NodePath.path("one").getSegment(1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void asList_Unmodifiable() {
+        NodePath.path("one").asList().add("two");
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        NodePath path = NodePath.path("one", "two");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(path);
+        out.writeObject(NodePath.root());
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(path, in.readObject());
+        assertSame(NodePath.root(), in.readObject());
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.gatein.api.common.Pagination;
+import org.junit.Test;
+
+public class NodeWindowTest {
+    @Test
+    public void of() {
+        SimpleNode root = SimpleNode.root().with("a", "b", "c", "d", "e");
+
+        NodeWindow window = NodeWindow.of(root, new Pagination(1, 2));
+        assertEquals(NodePath.root(), window.getParentPath());
+        assertEquals(5, window.getTotalCount());
+        assertEquals(2, window.getNodes().size());
+        assertEquals("b", window.getNodes().get(0).getName());
+        assertEquals("c", window.getNodes().get(1).getName());
+        assertTrue(window.hasNext());
+
+        // The nodes are the children of the parent, not copies
+        assertSame(root.getChild("b"), window.getNodes().get(0));
+
+        window = NodeWindow.of(root, new Pagination(4, 2));
+        assertEquals(1, window.getNodes().size());
+        assertFalse(window.hasNext());
+
+        window = NodeWindow.of(root, new Pagination(10, 2));
+        assertEquals(0, window.getNodes().size());
+        assertEquals(5, window.getTotalCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void of_ChildrenNotLoaded() {
+        NodeWindow.of(SimpleNode.root().unloadChildren(), new Pagination(0, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void totalCount() {
+        new NodeWindow(NodePath.root(), new Pagination(0, 10), Collections.<Node> singletonList(SimpleNode.root()), 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiable() {
+        NodeWindow.of(SimpleNode.root().with("a"), new Pagination(0, 10)).getNodes().clear();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.gatein.api.Portal;
+import org.gatein.api.common.Clock;
+import org.gatein.api.page.Page;
+import org.gatein.api.page.PageId;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NodesTest {
+    private SimpleNode root;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news", "about");
+        root.getChild("news").with("sports", "weather");
+        root.getChild("news").getChild("sports").with("football", "tennis");
+        root.getChild("about").with("contact");
+    }
+
+    @Test
+    public void visitNodes_Paths() {
+        NodeVisitor visitor = Nodes.visitNodes(
+                Arrays.asList(NodePath.path("news", "sports"), NodePath.path("news", "weather"), NodePath.path("about")),
+                Nodes.visitNone());
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather"), load(visitor));
+    }
+
+    @Test
+    public void visitNodes_PathsWithChildren() {
+        NodeVisitor visitor = Nodes.visitNodes(Arrays.asList(NodePath.path("news", "sports"), NodePath.path("about")),
+                Nodes.visitChildren());
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/about/contact", "/news/sports", "/news/weather",
+                "/news/sports/football", "/news/sports/tennis"), load(visitor));
+    }
+
+    @Test
+    public void visitNodes_NestedPaths() {
+        NodeVisitor visitor = Nodes.visitNodes(Arrays.asList(NodePath.path("news"), NodePath.path("news", "sports")),
+                Nodes.visitNone());
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather"), load(visitor));
+    }
+
+    @Test
+    public void visitNodes_Root() {
+        assertEquals(paths("/", "/home", "/news", "/about"),
+                load(Nodes.visitNodes(Collections.singleton(NodePath.root()), Nodes.visitChildren())));
+        assertEquals(paths("/"), load(Nodes.visitNodes(Collections.<NodePath> emptyList(), Nodes.visitAll())));
+    }
+
+    @Test
+    public void preOrder() {
+        assertEquals(Arrays.asList("/", "/home", "/news", "/news/sports", "/news/sports/football", "/news/sports/tennis",
+                "/news/weather", "/about", "/about/contact"), paths(Nodes.preOrder(root, Nodes.visitAll())));
+        assertEquals(Arrays.asList("/news", "/news/sports", "/news/weather"),
+                paths(Nodes.preOrder(root.getChild("news"), Nodes.visitChildren())));
+        assertEquals(Arrays.asList("/"), paths(Nodes.preOrder(root, Nodes.visitNone())));
+    }
+
+    @Test
+    public void postOrder() {
+        assertEquals(Arrays.asList("/home", "/news/sports/football", "/news/sports/tennis", "/news/sports", "/news/weather",
+                "/news", "/about/contact", "/about", "/"), paths(Nodes.postOrder(root, Nodes.visitAll())));
+        assertEquals(Arrays.asList("/home", "/news", "/about", "/"), paths(Nodes.postOrder(root, Nodes.visitChildren())));
+    }
+
+    @Test
+    public void stream() {
+        List<String> expected = paths(Nodes.preOrder(root, Nodes.visitNodes(2)));
+
+        assertEquals(expected, paths(Nodes.stream(root, Nodes.visitNodes(2)).collect(Collectors.<Node> toList())));
+        assertEquals(expected, paths(Nodes.parallelStream(root, Nodes.visitNodes(2)).collect(Collectors.<Node> toList())));
+    }
+
+    @Test
+    public void parallelStream_Wide() {
+        SimpleNode wide = SimpleNode.root();
+        for (int i = 0; i < 20; i++) {
+            Node child = wide.addChild("c" + i);
+            Node chain = child.addChild("single");
+            for (int j = 0; j < 50; j++) {
+                chain.addChild("g" + j);
+            }
+        }
+
+        assertEquals(1041L, Nodes.parallelStream(wide, Nodes.visitAll()).count());
+        assertEquals(paths(Nodes.preOrder(wide, Nodes.visitAll())),
+                paths(Nodes.parallelStream(wide, Nodes.visitAll()).collect(Collectors.<Node> toList())));
+    }
+
+    @Test
+    public void spliterator_SplitAll() {
+        root.getChild("about").getChild("contact").addChild("form");
+        NodeVisitor[] visitors = { Nodes.visitAll(), Nodes.visitNodes(2), Nodes.visitNone() };
+        for (NodeVisitor visitor : visitors) {
+            Iterable<Node> preOrder = Nodes.preOrder(root, visitor);
+            Iterable<Node> postOrder = Nodes.postOrder(root, visitor);
+
+            assertEquals(paths(preOrder), splitAll(preOrder.spliterator()));
+            assertEquals(paths(postOrder), splitAll(postOrder.spliterator()));
+        }
+    }
+
+    @Test
+    public void preOrder_ChildrenNotLoaded() {
+        SimpleNode loaded = root.load(Nodes.visitNodes(2));
+
+        assertEquals(Arrays.asList("/", "/home", "/news", "/news/sports", "/news/weather", "/about", "/about/contact"),
+                paths(Nodes.preOrder(loaded, Nodes.visitAll())));
+    }
+
+    @Test
+    public void preOrder_Pruned() {
+        root.getChild("news").setVisibility(false);
+        NodeVisitor visible = new NodeVisitor() {
+            @Override
+            public boolean visit(int depth, String name, NodeDetails details) {
+                return details == null || details.getVisibility().isVisible();
+            }
+        };
+
+        assertEquals(Arrays.asList("/", "/home", "/news", "/about", "/about/contact"),
+                paths(Nodes.preOrder(root, visible)));
+    }
+
+    @Test
+    public void and_Visible() {
+        root.getChild("news").setVisibility(false);
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/about/contact"),
+                load(Nodes.and(Nodes.visitNodes(2), Nodes.visible())));
+    }
+
+    @Test
+    public void visible_System() {
+        root.getChild("about").setVisibility(new Visibility(Visibility.Status.SYSTEM));
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather"),
+                load(Nodes.and(Nodes.visitNodes(2), Nodes.visible())));
+    }
+
+    @Test
+    public void visible_Clock() {
+        root.getChild("news").setVisibility(new Visibility(PublicationDate.startingOn(new Date(1000))));
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/about/contact"),
+                load(Nodes.and(Nodes.visitNodes(2), Nodes.visible(Clock.fixed(0)))));
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather", "/about/contact"),
+                load(Nodes.and(Nodes.visitNodes(2), Nodes.visible(Clock.fixed(1000)))));
+    }
+
+    @Test
+    public void nextVisibilityTransition() {
+        assertEquals(-1, Nodes.nextVisibilityTransition(root, 0));
+
+        root.getChild("news").setVisibility(new Visibility(PublicationDate.startingOn(new Date(5000))));
+        root.getChild("news").getChild("sports").setVisibility(
+                new Visibility(PublicationDate.between(new Date(1000), new Date(3000))));
+
+        assertEquals(1000, Nodes.nextVisibilityTransition(root, 0));
+        assertEquals(3001, Nodes.nextVisibilityTransition(root, 1000));
+        assertEquals(5000, Nodes.nextVisibilityTransition(root, 3001));
+        assertEquals(-1, Nodes.nextVisibilityTransition(root, 5000));
+        assertEquals(-1, Nodes.nextVisibilityTransition(root.getChild("about"), 0));
+    }
+
+    @Test
+    public void nextVisibilityTransition_Cached() {
+        root.getChild("news").setVisibility(new Visibility(PublicationDate.startingOn(new Date(5000))));
+        root.getChild("news").getChild("sports").setVisibility(
+                new Visibility(PublicationDate.between(new Date(1000), new Date(5000))));
+        root.getChild("about").setVisibility(new Visibility(PublicationDate.endingOn(new Date(3000))));
+
+        NavigationSnapshot snapshot = NavigationSnapshot.of(new SiteId("classic"), root);
+        CompactNodeTree tree = CompactNodeTree.of(new SiteId("classic"), root);
+        for (long time : new long[] { -1, 0, 999, 1000, 3000, 3001, 4999, 5000, 5001 }) {
+            long expected = Nodes.nextVisibilityTransition(root, time);
+            assertEquals(expected, snapshot.nextVisibilityTransition(time));
+            assertEquals(expected, tree.nextVisibilityTransition(time));
+            assertEquals(expected, Nodes.nextVisibilityTransition(snapshot.getRootNode(), time));
+            assertEquals(expected, Nodes.nextVisibilityTransition(tree.getRootNode(), time));
+        }
+        assertEquals(5000, Nodes.nextVisibilityTransition(snapshot.getNode(NodePath.path("news")), 3001));
+    }
+
+    @Test
+    public void or_Not() {
+        NodeVisitor news = Nodes.visitNodes(NodePath.path("news"), Nodes.visitChildren());
+        NodeVisitor about = Nodes.visitNodes(NodePath.path("about"), Nodes.visitChildren());
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather", "/about/contact"),
+                load(Nodes.or(news, about)));
+        assertEquals(paths("/"), load(Nodes.not(Nodes.visitAll())));
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather", "/about/contact",
+                "/news/sports/football", "/news/sports/tennis"), load(Nodes.not(Nodes.visitNone())));
+    }
+
+    @Test
+    public void expandFirstChildren() {
+        assertEquals(paths("/", "/home", "/news", "/about"), load(Nodes.and(Nodes.visitAll(), Nodes.expandFirstChildren(1))));
+        assertEquals(paths("/", "/home", "/news", "/about", "/news/sports", "/news/weather", "/news/sports/football",
+                "/news/sports/tennis"), load(Nodes.and(Nodes.visitAll(), Nodes.expandFirstChildren(2))));
+
+        // Single use, the children counted by the first load are not expanded by the second one
+        NodeVisitor visitor = Nodes.expandFirstChildren(2);
+        load(visitor);
+        assertEquals(paths("/", "/home", "/news", "/about"), load(visitor));
+    }
+
+    @Test
+    public void pageAccessible() {
+        final PageId secured = new PageId("classic", "secured");
+        root.getChild("news").setPageId(secured);
+        root.getChild("about").setPageId(new PageId("classic", "about"));
+
+        Portal portal = new TestPortal() {
+            @Override
+            protected Page getPage(PageId pageId) {
+                return pageId.equals(secured) ? null : super.getPage(pageId);
+            }
+        }.create();
+
+        assertEquals(paths("/", "/home", "/news", "/about", "/about/contact"),
+                load(Nodes.and(Nodes.visitAll(), Nodes.pageAccessible(portal, new User("john")))));
+    }
+
+    @Test
+    public void contentHash() {
+        SimpleNode copy = SimpleNode.root().with("home", "news", "about");
+        copy.getChild("news").with("sports", "weather");
+        copy.getChild("news").getChild("sports").with("football", "tennis");
+        copy.getChild("about").with("contact");
+
+        assertEquals(Nodes.contentHash(root), Nodes.contentHash(copy));
+        assertEquals(Nodes.contentHash(root.getChild("news")), Nodes.contentHash(copy.getChild("news")));
+
+        copy.getChild("news").getChild("sports").getChild("tennis").setIconName("ball");
+        assertTrue(Nodes.contentHash(root) != Nodes.contentHash(copy));
+        assertTrue(Nodes.contentHash(root.getChild("news")) != Nodes.contentHash(copy.getChild("news")));
+        assertEquals(Nodes.contentHash(root.getChild("about")), Nodes.contentHash(copy.getChild("about")));
+    }
+
+    @Test
+    public void contentHash_Fields() {
+        long hash = Nodes.contentHash(root);
+
+        root.getChild("home").setDisplayName("Home");
+        long displayName = Nodes.contentHash(root);
+        root.getChild("home").setVisibility(false);
+        long visibility = Nodes.contentHash(root);
+        root.getChild("home").setPageId(new PageId("classic", "homepage"));
+        long pageId = Nodes.contentHash(root);
+        root.getChild("home").getAttributes().put("key", "value");
+        long attributes = Nodes.contentHash(root);
+
+        assertEquals(5, new HashSet<Long>(Arrays.asList(hash, displayName, visibility, pageId, attributes)).size());
+
+        root.getChild("home").getAttributes().remove("key");
+        assertEquals(pageId, Nodes.contentHash(root));
+    }
+
+    @Test
+    public void contentHash_ChildOrder() {
+        long hash = Nodes.contentHash(root);
+
+        root.getChild("about").moveTo(0);
+        assertTrue(hash != Nodes.contentHash(root));
+
+        root.getChild("about").moveTo(2);
+        assertEquals(hash, Nodes.contentHash(root));
+    }
+
+    @Test
+    public void contentHash_ChildrenNotLoaded() {
+        long hash = Nodes.contentHash(root);
+
+        root.getChild("about").removeChild("contact");
+        long empty = Nodes.contentHash(root);
+        root.getChild("about").unloadChildren();
+
+        assertTrue(hash != empty);
+        assertTrue(empty != Nodes.contentHash(root));
+    }
+
+    /**
+     * Splits the spliterator as much as possible, and returns the paths of the parts in order.
+     */
+    private static List<String> splitAll(Spliterator<Node> spliterator) {
+        final List<String> paths = new ArrayList<String>();
+        Spliterator<Node> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            paths.addAll(splitAll(prefix));
+            paths.addAll(splitAll(spliterator));
+        } else {
+            spliterator.forEachRemaining(new Consumer<Node>() {
+                @Override
+                public void accept(Node node) {
+                    paths.add(node.getNodePath().toString());
+                }
+            });
+        }
+        return paths;
+    }
+
+    private static List<String> paths(Iterable<Node> nodes) {
+        List<String> paths = new ArrayList<String>();
+        for (Node node : nodes) {
+            paths.add(node.getNodePath().toString());
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the paths of the nodes a navigation would load with the visitor
+     */
+    private Set<String> load(NodeVisitor visitor) {
+        Set<String> loaded = new HashSet<String>();
+        collect(root.load(visitor), loaded);
+        return loaded;
+    }
+
+    private static void collect(Node node, Set<String> loaded) {
+        loaded.add(node.getNodePath().toString());
+        if (node.isChildrenLoaded()) {
+            for (Node child : node) {
+                collect(child, loaded);
+            }
+        }
+    }
+
+    private static Set<String> paths(String... paths) {
+        return new HashSet<String>(Arrays.asList(paths));
+    }
+}
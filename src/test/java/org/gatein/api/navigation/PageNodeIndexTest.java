@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageNodeIndexTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+    private static final SiteId MOBILE = new SiteId("mobile");
+    private static final PageId HOMEPAGE = new PageId("classic", "homepage");
+    private static final PageId NEWS = new PageId("classic", "news");
+
+    private SimpleNode root;
+    private PageNodeIndex index;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news", "about");
+        root.getChild("home").page(HOMEPAGE);
+        root.getChild("news").page(NEWS).with("sports", "weather");
+        root.getChild("news").getChild("sports").page(NEWS);
+
+        index = new PageNodeIndex();
+    }
+
+    @Test
+    public void update() {
+        index.update(CLASSIC, NavigationSnapshot.of(CLASSIC, root));
+
+        assertEquals(references(CLASSIC, "/home"), index.getNodes(HOMEPAGE));
+        assertEquals(references(CLASSIC, "/news", "/news/sports"), index.getNodes(NEWS));
+        assertTrue(index.getNodes(new PageId("classic", "missing")).isEmpty());
+    }
+
+    @Test
+    public void update_Changes() {
+        NavigationSnapshot snapshot = NavigationSnapshot.of(CLASSIC, root);
+        index.update(CLASSIC, snapshot);
+
+        root.getChild("news").getChild("sports").setPageId(HOMEPAGE);
+        root.getChild("news").getChild("weather").setPageId(NEWS);
+        root.getChild("about").addChild("contact").setPageId(HOMEPAGE);
+        root.removeChild("home");
+        index.update(CLASSIC, snapshot.withNode(root));
+
+        assertEquals(references(CLASSIC, "/news/sports", "/about/contact"), index.getNodes(HOMEPAGE));
+        assertEquals(references(CLASSIC, "/news", "/news/weather"), index.getNodes(NEWS));
+    }
+
+    @Test
+    public void update_RecreatedSnapshot() {
+        index.update(CLASSIC, NavigationSnapshot.of(CLASSIC, root));
+
+        root.getChild("home").setPageId(null);
+        index.update(CLASSIC, NavigationSnapshot.of(CLASSIC, root));
+
+        assertTrue(index.getNodes(HOMEPAGE).isEmpty());
+        assertEquals(references(CLASSIC, "/news", "/news/sports"), index.getNodes(NEWS));
+    }
+
+    @Test
+    public void update_Sites() {
+        index.update(CLASSIC, NavigationSnapshot.of(CLASSIC, root));
+        index.update(MOBILE, NavigationSnapshot.of(MOBILE, mobile()));
+
+        Set<NodeReference> expected = references(CLASSIC, "/home");
+        expected.add(new NodeReference(MOBILE, NodePath.path("home")));
+        assertEquals(expected, index.getNodes(HOMEPAGE));
+
+        index.removeSite(MOBILE);
+        assertEquals(references(CLASSIC, "/home"), index.getNodes(HOMEPAGE));
+
+        index.update(CLASSIC, (NavigationSnapshot) null);
+        assertTrue(index.getNodes(NEWS).isEmpty());
+    }
+
+    @Test
+    public void update_Node() {
+        index.update(CLASSIC, root);
+        assertEquals(references(CLASSIC, "/news", "/news/sports"), index.getNodes(NEWS));
+
+        root.getChild("news").setPageId(null);
+        index.update(CLASSIC, root);
+        assertEquals(references(CLASSIC, "/news/sports"), index.getNodes(NEWS));
+    }
+
+    @Test
+    public void removePage() {
+        NavigationSnapshot snapshot = NavigationSnapshot.of(CLASSIC, root);
+        index.update(CLASSIC, snapshot);
+
+        index.removePage(NEWS);
+        assertTrue(index.getNodes(NEWS).isEmpty());
+
+        root.getChild("news").getChild("sports").setPageId(HOMEPAGE);
+        index.update(CLASSIC, snapshot.withNode(root));
+        assertEquals(references(CLASSIC, "/home", "/news/sports"), index.getNodes(HOMEPAGE));
+        assertTrue(index.getNodes(NEWS).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void update_NoPageIds() {
+        index.update(CLASSIC, NavigationSnapshot.of(CLASSIC, root, NodeProjection.of(NodeProjection.Field.VISIBILITY)));
+    }
+
+    @Test
+    public void navigationSnapshots() {
+        Navigation navigation = new TestNavigation(CLASSIC, root).create();
+        NavigationSnapshots snapshots = new NavigationSnapshots(Nodes.visitAll(), index);
+
+        snapshots.getSnapshot(navigation);
+        assertEquals(references(CLASSIC, "/home"), index.getNodes(HOMEPAGE));
+
+        root.getChild("about").setPageId(HOMEPAGE);
+        snapshots.saveNode(navigation, root.getChild("about"));
+        assertEquals(references(CLASSIC, "/home", "/about"), index.getNodes(HOMEPAGE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void navigationSnapshots_WithoutPageId() {
+        new NavigationSnapshots(Nodes.project(Nodes.visitAll(), NodeProjection.of(NodeProjection.Field.ICON_NAME)), index);
+    }
+
+    private static SimpleNode mobile() {
+        SimpleNode mobile = SimpleNode.root().with("home");
+        mobile.getChild("home").page(HOMEPAGE);
+        return mobile;
+    }
+
+    private static Set<NodeReference> references(SiteId siteId, String... paths) {
+        Set<NodeReference> references = new HashSet<NodeReference>();
+        for (String path : Arrays.asList(paths)) {
+            references.add(new NodeReference(siteId, NodePath.fromString(path)));
+        }
+        return references;
+    }
+}
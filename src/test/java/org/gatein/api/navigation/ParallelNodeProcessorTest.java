@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelNodeProcessorTest {
+    private ForkJoinPool pool;
+    private SimpleNode root;
+
+    @Before
+    public void before() {
+        pool = new ForkJoinPool(4);
+        root = SimpleNode.root();
+        for (int i = 0; i < 10; i++) {
+            Node child = root.addChild("c" + i);
+            for (int j = 0; j < 10; j++) {
+                Node grandChild = child.addChild("g" + j);
+                for (int k = 0; k < 5; k++) {
+                    grandChild.addChild("l" + k);
+                }
+            }
+        }
+    }
+
+    @After
+    public void after() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void reduce_Count() {
+        ParallelNodeProcessor processor = new ParallelNodeProcessor(pool);
+
+        assertEquals(611, processor.reduce(root, Nodes.visitAll(), new Count()).intValue());
+        assertEquals(111, processor.reduce(root, Nodes.visitNodes(2), new Count()).intValue());
+        assertEquals(61, processor.reduce(root.getChild("c1"), Nodes.visitAll(), new Count()).intValue());
+    }
+
+    @Test
+    public void reduce_PreOrder() {
+        List<String> expected = new ArrayList<String>();
+        for (Node node : Nodes.preOrder(root, Nodes.visitAll())) {
+            expected.add(node.getNodePath().toString());
+        }
+
+        ParallelNodeProcessor processor = new ParallelNodeProcessor(pool);
+        assertEquals(expected, processor.reduce(root, Nodes.visitAll(), new Paths()));
+        assertEquals(expected, processor.maxSplitDepth(0).reduce(root, Nodes.visitAll(), new Paths()));
+        assertEquals(expected, processor.splitThreshold(1).maxSplitDepth(10).reduce(root, Nodes.visitAll(), new Paths()));
+        assertEquals(expected, processor.splitThreshold(11).reduce(root, Nodes.visitAll(), new Paths()));
+    }
+
+    @Test
+    public void forEach() {
+        final AtomicInteger count = new AtomicInteger();
+        new ParallelNodeProcessor(pool).forEach(root, new ParallelNodeProcessor.Callback() {
+            @Override
+            public boolean visit(int depth, Node node) {
+                count.incrementAndGet();
+                return depth < 2;
+            }
+        });
+
+        assertEquals(111, count.get());
+    }
+
+    @Test
+    public void reduce_Wide() {
+        SimpleNode wide = SimpleNode.root();
+        for (int i = 0; i < 10000; i++) {
+            wide.addChild("c" + i).addChild("g");
+        }
+
+        List<String> expected = new ArrayList<String>();
+        for (Node node : Nodes.preOrder(wide, Nodes.visitAll())) {
+            expected.add(node.getNodePath().toString());
+        }
+
+        assertEquals(expected, new ParallelNodeProcessor(pool).reduce(wide, Nodes.visitAll(), new Paths()));
+        assertEquals(20001, new ParallelNodeProcessor().reduce(wide, Nodes.visitAll(), new Count()).intValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void forEach_Failure() {
+        new ParallelNodeProcessor(pool).forEach(root, new ParallelNodeProcessor.Callback() {
+            @Override
+            public boolean visit(int depth, Node node) {
+                if ("l3".equals(node.getName()))
+                    throw new IllegalStateException();
+
+                return true;
+            }
+        });
+    }
+
+    private static class Count implements ParallelNodeProcessor.Reduction<Integer> {
+        @Override
+        public Integer map(Node node) {
+            return 1;
+        }
+
+        @Override
+        public Integer combine(Integer left, Integer right) {
+            return left + right;
+        }
+    }
+
+    private static class Paths implements ParallelNodeProcessor.Reduction<List<String>> {
+        @Override
+        public List<String> map(Node node) {
+            List<String> list = new ArrayList<String>();
+            list.add(node.getNodePath().toString());
+            return list;
+        }
+
+        @Override
+        public List<String> combine(List<String> left, List<String> right) {
+            left.addAll(right);
+            return left;
+        }
+    }
+}
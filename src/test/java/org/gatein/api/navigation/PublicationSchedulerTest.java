@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.gatein.api.common.Clock;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PublicationSchedulerTest {
+    private static final SiteId CLASSIC = new SiteId("classic");
+    private static final SiteId OTHER = new SiteId("other");
+
+    private PublicationScheduler scheduler;
+    private List<String> events;
+
+    @Before
+    public void before() {
+        scheduler = new PublicationScheduler(Clock.fixed(0), 10);
+        events = new ArrayList<String>();
+        scheduler.addListener(new PublicationScheduler.Listener() {
+            @Override
+            public void visibilityChanged(SiteId siteId, long time, List<NodePath> nodePaths) {
+                events.add(siteId.getName() + "@" + time + nodePaths);
+            }
+        });
+    }
+
+    @Test
+    public void startAndEnd() {
+        assertTrue(scheduler.schedule(CLASSIC, NodePath.path("news"), between(100, 200)));
+        assertEquals(1, scheduler.size());
+
+        scheduler.advanceTo(99);
+        assertEquals(0, events.size());
+
+        scheduler.advanceTo(100);
+        assertEquals(Arrays.asList("classic@100[/news]"), events);
+
+        // Left one millisecond after the end, notified at the end of that tick
+        scheduler.advanceTo(200);
+        assertEquals(1, events.size());
+        scheduler.advanceTo(210);
+        assertEquals(Arrays.asList("classic@100[/news]", "classic@210[/news]"), events);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void groupedBySite() {
+        scheduler.schedule(CLASSIC, NodePath.path("a"), PublicationDate.startingOn(new Date(55)));
+        scheduler.schedule(CLASSIC, NodePath.path("b"), PublicationDate.startingOn(new Date(60)));
+        scheduler.schedule(OTHER, NodePath.path("c"), PublicationDate.endingOn(new Date(51)));
+
+        scheduler.advanceTo(1000);
+        assertEquals(Arrays.asList("classic@60[/a, /b]", "other@60[/c]"), events);
+    }
+
+    @Test
+    public void cancel() {
+        scheduler.schedule(CLASSIC, NodePath.path("a"), PublicationDate.startingOn(new Date(100)));
+        scheduler.schedule(CLASSIC, NodePath.path("b"), PublicationDate.startingOn(new Date(100)));
+        scheduler.schedule(OTHER, NodePath.path("c"), PublicationDate.startingOn(new Date(100)));
+
+        assertTrue(scheduler.cancel(CLASSIC, NodePath.path("a")));
+        assertFalse(scheduler.cancel(CLASSIC, NodePath.path("a")));
+        assertEquals(1, scheduler.cancelAll(OTHER));
+
+        scheduler.advanceTo(1000);
+        assertEquals(Arrays.asList("classic@100[/b]"), events);
+    }
+
+    @Test
+    public void schedule_Replaces() {
+        scheduler.schedule(CLASSIC, NodePath.path("a"), PublicationDate.startingOn(new Date(100)));
+        scheduler.schedule(CLASSIC, NodePath.path("a"), PublicationDate.startingOn(new Date(300)));
+        assertEquals(1, scheduler.size());
+
+        scheduler.advanceTo(1000);
+        assertEquals(Arrays.asList("classic@300[/a]"), events);
+    }
+
+    @Test
+    public void schedule_Past() {
+        scheduler.advanceTo(500);
+        assertFalse(scheduler.schedule(CLASSIC, NodePath.path("a"), between(100, 200)));
+        assertTrue(scheduler.schedule(CLASSIC, NodePath.path("a"), between(100, 600)));
+
+        scheduler.advanceTo(1000);
+        assertEquals(Arrays.asList("classic@610[/a]"), events);
+    }
+
+    @Test
+    public void scheduleAll() {
+        SimpleNode root = SimpleNode.root().with("home", "news");
+        root.getChild("news").with("sports");
+        root.getChild("news").setVisibility(new Visibility(between(100, 200)));
+        root.getChild("news").getChild("sports").setVisibility(new Visibility(PublicationDate.startingOn(new Date(150))));
+
+        assertEquals(2, scheduler.scheduleAll(CLASSIC, root));
+
+        scheduler.advanceTo(1000);
+        assertEquals(Arrays.asList("classic@100[/news]", "classic@150[/news/sports]", "classic@210[/news]"), events);
+    }
+
+    @Test
+    public void random() {
+        scheduler = new PublicationScheduler(Clock.fixed(0), 1);
+        final List<Long> fired = new ArrayList<Long>();
+        scheduler.addListener(new PublicationScheduler.Listener() {
+            @Override
+            public void visibilityChanged(SiteId siteId, long time, List<NodePath> nodePaths) {
+                for (int i = 0; i < nodePaths.size(); i++) {
+                    fired.add(time);
+                }
+            }
+        });
+
+        // Spans several rotations of all the wheels, and of the overflow
+        Random random = new Random(7);
+        TreeMap<Long, Integer> expected = new TreeMap<Long, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            long start = 1 + (long) (random.nextDouble() * (1L << 38));
+            long end = start + random.nextInt(1 << 20);
+            scheduler.schedule(CLASSIC, NodePath.path("n" + i), between(start, end));
+            increment(expected, start);
+            increment(expected, end + 1);
+        }
+
+        long time = 0;
+        while (scheduler.size() > 0) {
+            time += 1 + (long) (random.nextDouble() * (1L << 32));
+            scheduler.advanceTo(time);
+        }
+
+        List<Long> expectedTimes = new ArrayList<Long>();
+        for (Long t : expected.keySet()) {
+            for (int i = 0; i < expected.get(t); i++) {
+                expectedTimes.add(t);
+            }
+        }
+        assertEquals(expectedTimes, fired);
+    }
+
+    private static void increment(TreeMap<Long, Integer> counts, long time) {
+        Integer count = counts.get(time);
+        counts.put(time, (count == null) ? 1 : count + 1);
+    }
+
+    private static PublicationDate between(long start, long end) {
+        return PublicationDate.between(new Date(start), new Date(end));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.gatein.api.page.PageId;
+import org.gatein.api.navigation.Visibility.Status;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoutingTableTest {
+    private SimpleNode root;
+    private RoutingTable table;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news");
+        root.getChild("home").page(new PageId("classic", "homepage"));
+        root.getChild("news").with("sports", "weather");
+        root.getChild("news").getChild("sports").page(new PageId("classic", "sports"));
+        root.getChild("news").getChild("weather").setVisibility(false);
+
+        table = RoutingTable.compile(root);
+    }
+
+    @Test
+    public void getRoute() {
+        RoutingTable.Route route = table.getRoute(NodePath.path("news", "sports"));
+        assertEquals(new PageId("classic", "sports"), route.getPageId());
+        assertEquals(NodePath.path("news", "sports"), route.getNodePath());
+
+        // Routes are not changed by the nodes they were compiled from
+        root.getChild("news").getChild("sports").page(new PageId("classic", "football"));
+        assertEquals(new PageId("classic", "sports"), table.getRoute(NodePath.path("news", "sports")).getPageId());
+
+        assertEquals(Status.HIDDEN, table.getRoute(NodePath.fromString("/news/weather")).getVisibility().getStatus());
+        assertEquals(NodePath.root(), table.getRoute(NodePath.root()).getNodePath());
+        assertNull(table.getRoute(NodePath.path("news")).getPageId());
+        assertNull(table.getRoute(NodePath.path("missing")));
+        assertNull(table.getRoute(NodePath.path("home", "missing")));
+    }
+
+    @Test
+    public void update() {
+        Node news = root.getChild("news");
+        news.addChild("business").setPageId(new PageId("classic", "business"));
+        news.getChild("sports").setPageId(new PageId("classic", "football"));
+
+        RoutingTable updated = table.update(news);
+
+        assertEquals(new PageId("classic", "business"), updated.getRoute(NodePath.path("news", "business")).getPageId());
+        assertEquals(new PageId("classic", "football"), updated.getRoute(NodePath.path("news", "sports")).getPageId());
+        assertSame(table.getRoute(NodePath.path("home")), updated.getRoute(NodePath.path("home")));
+
+        // The previous table is unchanged
+        assertNull(table.getRoute(NodePath.path("news", "business")));
+        assertEquals(new PageId("classic", "sports"), table.getRoute(NodePath.path("news", "sports")).getPageId());
+    }
+
+    @Test
+    public void update_ChildrenNotLoaded() {
+        SimpleNode partial = SimpleNode.root().with("news");
+        partial.getChild("news").page(new PageId("classic", "news")).unloadChildren();
+
+        RoutingTable updated = table.update(partial.getChild("news"));
+
+        assertEquals(new PageId("classic", "news"), updated.getRoute(NodePath.path("news")).getPageId());
+        assertNotNull(updated.getRoute(NodePath.path("news", "sports")));
+    }
+
+    @Test
+    public void update_Renamed() {
+        root.getChild("news").setName("articles");
+
+        // The previous path is still routed unless it is specified
+        assertNotNull(table.update(root.getChild("articles")).getRoute(NodePath.path("news")));
+
+        RoutingTable updated = table.update(root.getChild("articles"), NodePath.path("news"));
+
+        assertNull(updated.getRoute(NodePath.path("news")));
+        assertNull(updated.getRoute(NodePath.path("news", "sports")));
+        assertEquals(new PageId("classic", "sports"), updated.getRoute(NodePath.path("articles", "sports")).getPageId());
+        assertEquals(NodePath.path("articles", "sports"), updated.getRoute(NodePath.path("articles", "sports")).getNodePath());
+    }
+
+    @Test
+    public void update_MovedChildrenNotLoaded() {
+        SimpleNode partial = SimpleNode.root().with("home");
+        partial.getChild("home").with("news");
+        partial.getChild("home").getChild("news").page(new PageId("classic", "news")).unloadChildren();
+
+        RoutingTable updated = table.update(partial.getNode("home", "news"), NodePath.path("news"));
+
+        assertNull(updated.getRoute(NodePath.path("news")));
+        assertEquals(new PageId("classic", "news"), updated.getRoute(NodePath.path("home", "news")).getPageId());
+        RoutingTable.Route sports = updated.getRoute(NodePath.path("home", "news", "sports"));
+        assertEquals(new PageId("classic", "sports"), sports.getPageId());
+        assertEquals(NodePath.path("home", "news", "sports"), sports.getNodePath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void update_ParentNotRouted() {
+        SimpleNode other = SimpleNode.root().with("a");
+        other.getChild("a").with("b");
+
+        table.update(other.getNode("a", "b"));
+    }
+
+    @Test
+    public void remove() {
+        RoutingTable updated = table.remove(NodePath.path("news"));
+
+        assertNull(updated.getRoute(NodePath.path("news")));
+        assertNull(updated.getRoute(NodePath.path("news", "sports")));
+        assertNotNull(updated.getRoute(NodePath.path("home")));
+        assertNotNull(table.getRoute(NodePath.path("news", "sports")));
+        assertSame(updated, updated.remove(NodePath.path("news")));
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gatein.api.EntityAlreadyExistsException;
+import org.gatein.api.common.Attributes;
+import org.gatein.api.common.i18n.LocalizedString;
+import org.gatein.api.internal.Parameters;
+import org.gatein.api.page.PageId;
+
+/**
+ * Minimal in memory node used by the navigation tests.
+ */
+public class SimpleNode implements Node {
+    private String name;
+    private SimpleNode parent;
+    private LocalizedString displayNames;
+    private String iconName;
+    private Visibility visibility = new Visibility();
+    private PageId pageId;
+    private final Attributes attributes = new Attributes();
+    private List<SimpleNode> children = new ArrayList<SimpleNode>();
+    private long version;
+
+    public static SimpleNode root() {
+        return new SimpleNode(null, null);
+    }
+
+    private SimpleNode(SimpleNode parent, String name) {
+        this.parent = parent;
+        this.name = name;
+    }
+
+    /**
+     * Adds the child and returns this node, used to build trees in tests.
+     */
+    public SimpleNode with(String... childNames) {
+        for (String childName : childNames) {
+            addChild(childName);
+        }
+        return this;
+    }
+
+    public SimpleNode page(PageId pageId) {
+        setPageId(pageId);
+        return this;
+    }
+
+    public SimpleNode version(long version) {
+        this.version = version;
+        return this;
+    }
+
+    public SimpleNode unloadChildren() {
+        children = null;
+        return this;
+    }
+
+    /**
+     * Returns a copy of this tree with the nodes a navigation would load with the visitor.
+     */
+    public SimpleNode load(NodeVisitor visitor) {
+        SimpleNode copy = root();
+        load(this, copy, 0, visitor);
+        return copy;
+    }
+
+    private static void load(final SimpleNode source, SimpleNode target, int depth, NodeVisitor visitor) {
+        target.displayNames = source.displayNames;
+        target.iconName = source.iconName;
+        target.visibility = source.visibility;
+        target.pageId = source.pageId;
+        target.version = source.version;
+        target.attributes.putAll(source.attributes);
+
+        NodeVisitor.NodeDetails details = source.isRoot() ? null : new NodeVisitor.NodeDetails() {
+            @Override
+            public Visibility getVisibility() {
+                return source.visibility;
+            }
+
+            @Override
+            public String getIconName() {
+                return source.iconName;
+            }
+
+            @Override
+            public PageId getPageId() {
+                return source.pageId;
+            }
+
+            @Override
+            public NodePath getNodePath() {
+                return source.getNodePath();
+            }
+        };
+
+        if (source.children != null && visitor.visit(depth, source.name, details)) {
+            for (SimpleNode child : source.children) {
+                SimpleNode copy = new SimpleNode(target, child.name);
+                target.children.add(copy);
+                load(child, copy, depth + 1, visitor);
+            }
+        } else {
+            target.children = null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = Parameters.requireNonNull(name, "name");
+    }
+
+    @Override
+    public Node getParent() {
+        return parent;
+    }
+
+    @Override
+    public NodePath getNodePath() {
+        return (parent == null) ? NodePath.root() : parent.getNodePath().append(name);
+    }
+
+    @Override
+    public String getURI() {
+        return getNodePath().toString();
+    }
+
+    @Override
+    public boolean isVisible() {
+        return visibility.isVisible();
+    }
+
+    @Override
+    public Visibility getVisibility() {
+        return visibility;
+    }
+
+    @Override
+    public void setVisibility(Visibility visibility) {
+        this.visibility = Parameters.requireNonNull(visibility, "visibility");
+    }
+
+    @Override
+    public void setVisibility(boolean visible) {
+        setVisibility(new Visibility(visible ? Visibility.Status.VISIBLE : Visibility.Status.HIDDEN));
+    }
+
+    @Override
+    public void setVisibility(PublicationDate publicationDate) {
+        setVisibility(new Visibility(publicationDate));
+    }
+
+    @Override
+    public String getIconName() {
+        return iconName;
+    }
+
+    @Override
+    public void setIconName(String iconName) {
+        this.iconName = iconName;
+    }
+
+    @Override
+    public PageId getPageId() {
+        return pageId;
+    }
+
+    @Override
+    public void setPageId(PageId pageId) {
+        this.pageId = pageId;
+    }
+
+    @Override
+    public Attributes getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return (displayNames == null) ? null : displayNames.getValue();
+    }
+
+    @Override
+    public void setDisplayName(String displayName) {
+        this.displayNames = (displayName == null) ? null : new LocalizedString(displayName);
+    }
+
+    @Override
+    public LocalizedString getDisplayNames() {
+        return displayNames;
+    }
+
+    @Override
+    public void setDisplayNames(LocalizedString displayNames) {
+        this.displayNames = displayNames;
+    }
+
+    @Override
+    public boolean isRoot() {
+        return parent == null;
+    }
+
+    @Override
+    public Node addChild(String childName) {
+        return addChild(loadedChildren().size(), childName);
+    }
+
+    @Override
+    public Node addChild(int index, String childName) {
+        Parameters.requireNonNull(childName, "childName");
+        if (hasChild(childName))
+            throw new EntityAlreadyExistsException("Child " + childName + " already exists");
+
+        SimpleNode child = new SimpleNode(this, childName);
+        loadedChildren().add(index, child);
+        return child;
+    }
+
+    @Override
+    public SimpleNode getChild(String childName) {
+        int index = indexOf(childName);
+        return (index < 0) ? null : loadedChildren().get(index);
+    }
+
+    @Override
+    public SimpleNode getChild(int index) {
+        return loadedChildren().get(index);
+    }
+
+    @Override
+    public int getChildCount() {
+        return loadedChildren().size();
+    }
+
+    @Override
+    public boolean hasChild(String childName) {
+        return indexOf(childName) >= 0;
+    }
+
+    @Override
+    public boolean isChildrenLoaded() {
+        return children != null;
+    }
+
+    @Override
+    public Node getNode(String... nodePath) {
+        return getNode(NodePath.path(nodePath));
+    }
+
+    @Override
+    public Node getNode(NodePath nodePath) {
+        Node node = this;
+        for (String segment : nodePath) {
+            node = node.getChild(segment);
+            if (node == null)
+                return null;
+        }
+        return node;
+    }
+
+    @Override
+    public int indexOf(String childName) {
+        Parameters.requireNonNull(childName, "childName");
+        List<SimpleNode> list = loadedChildren();
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).name.equals(childName))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean removeChild(String childName) {
+        int index = indexOf(childName);
+        if (index < 0)
+            return false;
+
+        loadedChildren().remove(index).parent = null;
+        return true;
+    }
+
+    @Override
+    public FilteredNode filter() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sort(Comparator<Node> comparator) {
+        Collections.sort(loadedChildren(), comparator);
+    }
+
+    @Override
+    public void moveTo(int index) {
+        List<SimpleNode> siblings = parent.loadedChildren();
+        siblings.remove(this);
+        siblings.add(index, this);
+    }
+
+    @Override
+    public void moveTo(Node parent) {
+        moveTo(((SimpleNode) parent).getChildCount(), parent);
+    }
+
+    @Override
+    public void moveTo(int index, Node parent) {
+        SimpleNode target = (SimpleNode) Parameters.requireNonNull(parent, "parent");
+        if (target.hasChild(name))
+            throw new EntityAlreadyExistsException("Child " + name + " already exists");
+
+        this.parent.loadedChildren().remove(this);
+        target.loadedChildren().add(index, this);
+        this.parent = target;
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Iterator<Node> iterator() {
+        return (Iterator) loadedChildren().iterator();
+    }
+
+    private List<SimpleNode> loadedChildren() {
+        if (children == null)
+            throw new IllegalStateException("Children are not loaded");
+
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleNode[" + getNodePath() + "]";
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.gatein.api.common.Filter;
+import org.gatein.api.common.URIResolver;
+import org.gatein.api.navigation.SitemapWriter.Format;
+import org.gatein.api.page.PageId;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SitemapWriterTest {
+    private SimpleNode root;
+    private Navigation navigation;
+    private List<Integer> batches;
+    private List<ByteArrayOutputStream> chunks;
+    private SitemapWriter.Sink sink;
+    private URIResolver resolver;
+    private int resolved;
+
+    @Before
+    public void before() {
+        root = SimpleNode.root().with("home", "news", "about", "q&a");
+        root.getChild("home").page(page("home"));
+        root.getChild("news").page(page("news")).with("sports", "weather");
+        root.getChild("news").getChild("sports").page(page("sports")).with("football");
+        root.getChild("news").getChild("sports").getChild("football").page(page("football"));
+        root.getChild("news").getChild("weather").page(page("weather")).with("storm");
+        root.getChild("news").getChild("weather").setVisibility(false);
+        root.getChild("news").getChild("weather").getChild("storm").page(page("storm"));
+        root.getChild("about").with("contact");
+        root.getChild("about").getChild("contact").page(page("contact"));
+        root.getChild("q&a").page(page("faq"));
+
+        batches = new ArrayList<Integer>();
+        navigation = navigation(root);
+
+        chunks = new ArrayList<ByteArrayOutputStream>();
+        sink = new SitemapWriter.Sink() {
+            @Override
+            public OutputStream open(int chunk) throws IOException {
+                assertEquals(chunks.size(), chunk);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                chunks.add(out);
+                return out;
+            }
+        };
+        resolver = new URIResolver() {
+            @Override
+            public String resolveURI(SiteId siteId) {
+                resolved++;
+                return "http://localhost/portal/" + siteId.getName();
+            }
+        };
+    }
+
+    @Test
+    public void writeXml() throws Exception {
+        assertEquals(1, new SitemapWriter(Format.XML, resolver).write(navigation, sink));
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "  <url><loc>http://localhost/portal/classic/home</loc></url>\n"
+                + "  <url><loc>http://localhost/portal/classic/news</loc></url>\n"
+                + "  <url><loc>http://localhost/portal/classic/q&amp;a</loc></url>\n"
+                + "  <url><loc>http://localhost/portal/classic/news/sports</loc></url>\n"
+                + "  <url><loc>http://localhost/portal/classic/about/contact</loc></url>\n"
+                + "  <url><loc>http://localhost/portal/classic/news/sports/football</loc></url>\n"
+                + "</urlset>\n", chunks.get(0).toString("UTF-8"));
+
+        // Once for the children of the root, and once per batch of nodes having children with a page
+        assertEquals(3, batches.size());
+        // The URI of the site is only resolved once
+        assertEquals(1, resolved);
+    }
+
+    @Test
+    public void writeText() throws Exception {
+        new SitemapWriter(Format.TEXT, resolver).filter(new Filter<Node>() {
+            @Override
+            public boolean accept(Node node) {
+                return !node.getName().equals("sports");
+            }
+        }).write(navigation, sink);
+
+        assertEquals(Arrays.asList("http://localhost/portal/classic/home", "http://localhost/portal/classic/news",
+                "http://localhost/portal/classic/q&a", "http://localhost/portal/classic/about/contact"), lines(0));
+    }
+
+    @Test
+    public void chunks() throws Exception {
+        assertEquals(3, new SitemapWriter(Format.XML, resolver).maxURLs(2).write(navigation, sink));
+
+        assertEquals(3, chunks.size());
+        for (ByteArrayOutputStream chunk : chunks) {
+            String xml = chunk.toString("UTF-8");
+            assertTrue(xml.endsWith("</urlset>\n"));
+            assertEquals(2, xml.split("<url>").length - 1);
+        }
+    }
+
+    @Test
+    public void batches() throws Exception {
+        new SitemapWriter(Format.TEXT, resolver).batchSize(2).write(navigation, sink);
+
+        assertEquals(6, lines(0).size());
+        for (int batch : batches) {
+            assertTrue(batch <= 2);
+        }
+        // The hidden weather node is never expanded
+        int expanded = 0;
+        for (int batch : batches) {
+            expanded += batch;
+        }
+        assertEquals(7, expanded);
+    }
+
+    @Test
+    public void empty() throws Exception {
+        assertEquals(1, new SitemapWriter(Format.XML, resolver).write(navigation(SimpleNode.root()), sink));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n</urlset>\n",
+                chunks.get(0).toString("UTF-8"));
+    }
+
+    @Test
+    public void writeIndex() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SitemapWriter.writeIndex(Arrays.asList("http://localhost/sitemap-0.xml?a=1&b=2"), out);
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "  <sitemap><loc>http://localhost/sitemap-0.xml?a=1&amp;b=2</loc></sitemap>\n" + "</sitemapindex>\n",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void utf8Length() throws Exception {
+        String value = "a\u00e9\u20ac\ud83d\ude00";
+        assertEquals(value.getBytes("UTF-8").length, SitemapWriter.utf8Length(value));
+    }
+
+    private List<String> lines(int chunk) throws Exception {
+        return Arrays.asList(chunks.get(chunk).toString("UTF-8").split("\n"));
+    }
+
+    private static PageId page(String name) {
+        return new PageId("classic", name);
+    }
+
+    private Navigation navigation(SimpleNode root) {
+        return new TestNavigation(new SiteId("classic"), root) {
+            @Override
+            protected Map<NodePath, Node> getNodes(Collection<NodePath> nodePaths, NodeVisitor visitor) {
+                batches.add(nodePaths.size());
+                return super.getNodes(nodePaths, visitor);
+            }
+        }.create();
+    }
+}
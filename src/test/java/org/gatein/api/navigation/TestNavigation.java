@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gatein.api.site.SiteId;
+
+/**
+ * Navigation backed by a {@link SimpleNode} tree, used by the navigation tests. The methods used by the tests can be
+ * overridden, the other methods of {@link Navigation} throw an <code>UnsupportedOperationException</code>.
+ */
+public class TestNavigation implements InvocationHandler {
+    protected final SiteId siteId;
+    protected final SimpleNode root;
+
+    public TestNavigation(SiteId siteId, SimpleNode root) {
+        this.siteId = siteId;
+        this.root = root;
+    }
+
+    /**
+     * Creates the navigation.
+     */
+    public Navigation create() {
+        return (Navigation) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Navigation.class }, this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+        String name = method.getName();
+        if (name.equals("getSiteId")) {
+            return siteId;
+        } else if (name.equals("getPriority")) {
+            return getPriority();
+        } else if (name.equals("getRootNode")) {
+            return getRootNode((NodeVisitor) args[0]);
+        } else if (name.equals("getNodes")) {
+            return getNodes((Collection<NodePath>) args[0], (NodeVisitor) args[1]);
+        } else if (name.equals("saveNode")) {
+            return null;
+        } else if (name.equals("removeNode")) {
+            NodePath nodePath = (NodePath) args[0];
+            return root.getNode(nodePath.parent()).removeChild(nodePath.getLastSegment());
+        } else if (name.equals("applyPatch")) {
+            applyPatch((NodePatch) args[0]);
+            return null;
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    protected int getPriority() {
+        return 0;
+    }
+
+    protected Node getRootNode(NodeVisitor visitor) throws Exception {
+        return root.load(visitor);
+    }
+
+    protected Map<NodePath, Node> getNodes(Collection<NodePath> nodePaths, NodeVisitor visitor) {
+        Map<NodePath, Node> nodes = new LinkedHashMap<NodePath, Node>();
+        for (NodePath nodePath : nodePaths) {
+            SimpleNode node = (SimpleNode) root.getNode(nodePath);
+            if (node != null) {
+                nodes.put(nodePath, node.load(visitor));
+            }
+        }
+        return nodes;
+    }
+
+    protected void applyPatch(NodePatch patch) {
+        patch.applyTo(root.getNode(patch.getNodePath()));
+    }
+}
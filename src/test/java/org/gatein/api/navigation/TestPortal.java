@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.gatein.api.Portal;
+import org.gatein.api.page.Page;
+import org.gatein.api.page.PageId;
+import org.gatein.api.security.Permission;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Portal used by the navigation tests, where every page exists and is accessible to everyone by default. The methods used by
+ * the tests can be overridden, the other methods of {@link Portal} throw an <code>UnsupportedOperationException</code>.
+ */
+public class TestPortal implements InvocationHandler {
+    /**
+     * Creates the portal.
+     */
+    public Portal create() {
+        return (Portal) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Portal.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+        String name = method.getName();
+        if (name.equals("getNavigation")) {
+            return getNavigation((SiteId) args[0]);
+        } else if (name.equals("getPage")) {
+            return getPage((PageId) args[0]);
+        } else if (name.equals("hasPermission")) {
+            return hasPermission((User) args[0], (Permission) args[1]);
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    protected Navigation getNavigation(SiteId siteId) throws Exception {
+        throw new UnsupportedOperationException("getNavigation");
+    }
+
+    /**
+     * Returns a page with the access permission of {@link #getAccessPermission(PageId)}.
+     */
+    protected Page getPage(final PageId pageId) {
+        return (Page) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Page.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getAccessPermission")) {
+                            return getAccessPermission(pageId);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    protected Permission getAccessPermission(PageId pageId) {
+        return Permission.everyone();
+    }
+
+    protected boolean hasPermission(User user, Permission permission) {
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.gatein.api.navigation;
+
+import java.util.Locale;
+
+import org.gatein.api.Portal;
+import org.gatein.api.PortalRequest;
+import org.gatein.api.common.Clock;
+import org.gatein.api.common.URIResolver;
+import org.gatein.api.security.User;
+import org.gatein.api.site.SiteId;
+
+/**
+ * Portal request of the classic site used by the navigation tests, set as the current request with {@link #set(Portal)},
+ * {@link #set(String)} or {@link #set(Clock)} and removed with {@link #clear()}.
+ */
+public class TestRequest extends PortalRequest {
+    private final Portal portal;
+    private final String base;
+    private final Clock clock;
+
+    private TestRequest(Portal portal, String base, Clock clock) {
+        this.portal = portal;
+        this.base = base;
+        this.clock = clock;
+    }
+
+    /**
+     * Sets a request of the portal as the current request, resolving the URIs of the sites under <code>/portal</code>.
+     */
+    public static void set(Portal portal) {
+        setInstance(new TestRequest(portal, "/portal", Clock.system()));
+    }
+
+    /**
+     * Sets a request without portal as the current request, resolving the URIs of the sites under the base URI.
+     */
+    public static void set(String base) {
+        setInstance(new TestRequest(null, base, Clock.system()));
+    }
+
+    /**
+     * Sets a request without portal as the current request, evaluating the visibility of the nodes with the clock.
+     */
+    public static void set(Clock clock) {
+        setInstance(new TestRequest(null, "/portal", clock));
+    }
+
+    public static void clear() {
+        setInstance(null);
+    }
+
+    @Override
+    public User getUser() {
+        return null;
+    }
+
+    @Override
+    public SiteId getSiteId() {
+        return new SiteId("classic");
+    }
+
+    @Override
+    public NodePath getNodePath() {
+        return NodePath.root();
+    }
+
+    @Override
+    public Locale getLocale() {
+        return Locale.ENGLISH;
+    }
+
+    @Override
+    public Portal getPortal() {
+        return portal;
+    }
+
+    @Override
+    public Clock getClock() {
+        return clock;
+    }
+
+    @Override
+    public URIResolver getURIResolver() {
+        return new URIResolver() {
+            @Override
+            public String resolveURI(SiteId siteId) {
+                return base + (base.endsWith("/") ? "" : "/") + siteId.getName();
+            }
+        };
+    }
+}
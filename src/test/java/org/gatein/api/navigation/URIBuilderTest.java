@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.gatein.api.navigation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.gatein.api.common.URIResolver;
+import org.gatein.api.site.SiteId;
+import org.junit.Before;
+import org.junit.Test;
+
+public class URIBuilderTest {
+    private List<SiteId> resolved;
+    private URIBuilder builder;
+
+    @Before
+    public void before() {
+        resolved = new ArrayList<SiteId>();
+        builder = new URIBuilder(new URIResolver() {
+            @Override
+            public String resolveURI(SiteId siteId) {
+                resolved.add(siteId);
+                return siteId.getName().equals("classic") ? "/portal/classic" : "/portal/" + siteId.getName() + "/";
+            }
+        });
+    }
+
+    @Test
+    public void getURI() {
+        SiteId classic = new SiteId("classic");
+        SiteId mobile = new SiteId("mobile");
+
+        assertEquals("/portal/classic/", builder.getURI(classic, NodePath.root()));
+        assertEquals("/portal/classic/home", builder.getURI(classic, NodePath.path("home")));
+        assertEquals("/portal/mobile/", builder.getURI(mobile, NodePath.root()));
+        assertEquals("/portal/mobile/news/sports", builder.getURI(mobile, NodePath.path("news", "sports")));
+        assertEquals("/portal/classic/news/top 10", builder.getURI(classic, NodePath.path("news", "top 10")));
+
+        // The base URI of each site is only resolved once
+        assertEquals(Arrays.asList(classic, mobile), resolved);
+    }
+
+    @Test
+    public void getURIs() {
+        NodePath home = NodePath.path("home");
+        NodePath news = NodePath.path("news");
+
+        Map<NodePath, String> uris = builder.getURIs(new SiteId("classic"), Arrays.asList(news, home));
+
+        assertEquals(Arrays.asList(news, home), new ArrayList<NodePath>(uris.keySet()));
+        assertEquals(Arrays.asList("/portal/classic/news", "/portal/classic/home"), new ArrayList<String>(uris.values()));
+        assertEquals(1, resolved.size());
+    }
+}
@@ -21,12 +21,15 @@
  */
 package org.gatein.api.navigation;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
 
+import org.gatein.api.common.Clock;
 import org.gatein.api.navigation.Visibility.Status;
+import org.gatein.api.site.SiteId;
 import org.junit.Test;
 
 public class VisiblityTest {
@@ -52,4 +55,51 @@ public class VisiblityTest {
                 new Date(System.currentTimeMillis() - 1000))).isVisible());
     }
 
+    @Test
+    public void isVisible_Clock() {
+        Visibility visibility = new Visibility(PublicationDate.between(new Date(1000), new Date(2000)));
+
+        assertFalse(visibility.isVisible(Clock.fixed(999)));
+        assertTrue(visibility.isVisible(Clock.fixed(1000)));
+        assertTrue(visibility.isVisible(Clock.fixed(2000)));
+        assertFalse(visibility.isVisible(Clock.fixed(2001)));
+    }
+
+    @Test
+    public void isVisible_RequestClock() {
+        Visibility visibility = new Visibility(PublicationDate.between(new Date(1000), new Date(2000)));
+        SimpleNode node = SimpleNode.root().with("news").getChild("news");
+        node.setVisibility(visibility);
+        Node snapshotNode = NavigationSnapshot.of(new SiteId("classic"), node.getParent()).getNode(NodePath.path("news"));
+
+        try {
+            TestRequest.set(Clock.fixed(1500));
+            assertTrue(visibility.isVisible());
+            assertTrue(snapshotNode.isVisible());
+
+            TestRequest.set(Clock.fixed(2001));
+            assertFalse(visibility.isVisible());
+            assertFalse(snapshotNode.isVisible());
+        } finally {
+            TestRequest.clear();
+        }
+        assertFalse(visibility.isVisible());
+    }
+
+    @Test
+    public void nextTransition() {
+        Visibility visibility = new Visibility(PublicationDate.between(new Date(1000), new Date(2000)));
+
+        assertEquals(1000, visibility.nextTransition(0));
+        assertEquals(2001, visibility.nextTransition(1000));
+        assertEquals(2001, visibility.nextTransition(2000));
+        assertEquals(-1, visibility.nextTransition(2001));
+
+        assertEquals(1000, new Visibility(PublicationDate.startingOn(new Date(1000))).nextTransition(0));
+        assertEquals(-1, new Visibility(PublicationDate.startingOn(new Date(1000))).nextTransition(1000));
+        assertEquals(2001, new Visibility(PublicationDate.endingOn(new Date(2000))).nextTransition(0));
+        assertEquals(-1, new Visibility().nextTransition(0));
+        assertEquals(-1, new Visibility(Status.HIDDEN).nextTransition(0));
+    }
+
 }
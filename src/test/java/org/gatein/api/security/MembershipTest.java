@@ -22,8 +22,12 @@
 package org.gatein.api.security;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.junit.Test;
 
 public class MembershipTest {
@@ -74,4 +78,19 @@ public class MembershipTest {
         assertEquals(expectedType, actual.getMembershipType());
     }
 
+    @Test
+    public void fingerprint() {
+        MembershipFingerprint a = MembershipFingerprint.of(Arrays.asList(Membership.fromString("member:/platform/users"),
+                Membership.fromString("*:/platform/administrators")));
+        MembershipFingerprint b = MembershipFingerprint.of(Arrays.asList(Membership.fromString("*:/platform/administrators"),
+                Membership.fromString("member:/platform/users"), Membership.fromString("member:/platform/users")));
+        MembershipFingerprint c = MembershipFingerprint.of(Arrays.asList(Membership.fromString("member:/platform/users")));
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.getHash(), b.getHash());
+        assertEquals(2, a.size());
+        assertFalse(a.equals(c));
+        assertEquals(MembershipFingerprint.anonymous(), MembershipFingerprint.of(Collections.<Membership> emptyList()));
+    }
 }